@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.pages.BenchmarkPage;
+import org.apache.wicket.request.IRequestMapper;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Measures the heap kept by the mappings and mappers of a synthetic routes table (10,000 routes by default, or the
+ * count given as first argument). Routes use 15 distinct regular expressions and 5 distinct sets of roles, as real
+ * routes files do, so the report shows what is shared between the routes. Run it against two builds of the library
+ * to compare their footprint :
+ * <pre>
+ * java -cp target/benchmarks.jar codetroopers.wicket.web.routes.HeapFootprintReport 10000
+ * </pre>
+ *
+ * @author cgatay
+ */
+public final class HeapFootprintReport {
+    private static final String[] REGEXES = {"[0-9]+", "[a-z-]+", "[a-z]+", "[A-Z]{2}", "[a-z]{2}(_[A-Z]{2})?",
+                                             "\\d{4}", "\\d{2}", "[0-9a-f]{8}", "(asc|desc)", "[a-zA-Z0-9_-]+",
+                                             "(json|xml)", "[a-z0-9-]{3,40}", "[^/]+", "\\w+", "[0-9]{1,6}"};
+    private static final String[] ROLES = {"ADMIN", "USER", "ADMIN,USER", "EDITOR,USER", "SUPER_ROLE"};
+
+    private HeapFootprintReport() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final String routesFile = routesFile(count);
+        // loads the classes involved before measuring
+        BenchmarkPage.class.getName();
+        newMappers(new RoutesMountParser().parse(new StringReader(routesFile(10))));
+
+        final long before = usedHeap();
+        final List<RoutesMountParser.URLPageMapping> mappings = new RoutesMountParser().parse(
+                new StringReader(routesFile));
+        final List<IRequestMapper> mappers = newMappers(mappings);
+        final long after = usedHeap();
+
+        final Set<List<String>> roleLists = Collections.newSetFromMap(new IdentityHashMap<List<String>, Boolean>());
+        for (RoutesMountParser.URLPageMapping mapping : mappings) {
+            if (!mapping.getRoles().isEmpty()) {
+                roleLists.add(mapping.getRoles());
+            }
+        }
+        final long retained = after - before;
+        System.out.printf("Routes                  : %d (%d mappers)%n", mappings.size(), mappers.size());
+        System.out.printf("Retained heap           : %,d bytes%n", retained);
+        System.out.printf("Retained heap per route : %,d bytes%n", retained / Math.max(1, mappings.size()));
+        System.out.printf("Distinct role lists     : %d, for %d distinct role sets in the file%n",
+                          roleLists.size(), ROLES.length);
+    }
+
+    /**
+     * @return a routes file whose routes have one or two placeholders checked by one of the {@link #REGEXES}, a
+     * third of them having roles
+     */
+    static String routesFile(final int count) {
+        final StringBuilder builder = new StringBuilder();
+        for (int route = 0; route < count; route++) {
+            builder.append("/section").append(route).append("/${id:").append(REGEXES[route % REGEXES.length])
+                    .append('}');
+            if (route % 2 == 0) {
+                builder.append("/#{format:").append(REGEXES[(route / 2) % REGEXES.length]).append('}');
+            }
+            builder.append("    ").append(BenchmarkPage.class.getName());
+            if (route % 3 == 0) {
+                builder.append("    ").append(ROLES[(route / 3) % ROLES.length]);
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static List<IRequestMapper> newMappers(final List<RoutesMountParser.URLPageMapping> mappings) {
+        final List<IRequestMapper> mappers = new ArrayList<>(mappings.size());
+        for (RoutesMountParser.URLPageMapping mapping : mappings) {
+            mappers.add(mapping.newRequestMapper());
+        }
+        return mappers;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.mapper.ParamCheckingPatternMapper;
+import codetroopers.wicket.web.routes.mounts.MountPathExtractor;
+import codetroopers.wicket.web.routes.pages.BenchmarkPage;
+import org.apache.wicket.mock.MockApplication;
+import org.apache.wicket.mock.MockWebRequest;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.util.tester.BaseWicketTester;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single {@link ParamCheckingPatternMapper}, for a request it handles, a request whose parameter is
+ * rejected by the regular expression and a request for another path.
+ *
+ * @author cgatay
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParamCheckingPatternMapperBenchmark {
+
+    @Param({"HIT", "MISS", "NOT_FOUND"})
+    SyntheticRoutes.Case urlCase;
+
+    @Param({"true", "false"})
+    boolean ignoreIncorrectParameters;
+
+    private BaseWicketTester tester;
+    private ParamCheckingPatternMapper mapper;
+    private MockWebRequest request;
+
+    @Setup
+    public void setUp() {
+        tester = new BaseWicketTester(new MockApplication());
+        final MountPathExtractor extractor = new MountPathExtractor("/items/${id:[0-9]+}/#{query:[a-z]+}");
+        mapper = ParamCheckingPatternMapper.builder(extractor.getPath(), BenchmarkPage.class)
+                .mountParameters(extractor.getParameters())
+                .ignoreIncorrectParameters(ignoreIncorrectParameters)
+                .build();
+        final String url;
+        switch (urlCase) {
+            case HIT:
+                url = "items/1234/wicket";
+                break;
+            case MISS:
+                url = "items/abcd/wicket";
+                break;
+            default:
+                url = "nowhere/to/be/found";
+        }
+        request = new MockWebRequest(Url.parse(url));
+    }
+
+    @TearDown
+    public void tearDown() {
+        tester.destroy();
+    }
+
+    @Benchmark
+    public IRequestHandler mapRequest() {
+        return mapper.mapRequest(request);
+    }
+
+    @Benchmark
+    public int getCompatibilityScore() {
+        return mapper.getCompatibilityScore(request);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.mapper.RoutesTrieMapper;
+import org.apache.wicket.mock.MockApplication;
+import org.apache.wicket.mock.MockWebRequest;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.mapper.CompoundRequestMapper;
+import org.apache.wicket.util.tester.BaseWicketTester;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching of requests against the mappers created from a generated routes file, either mounted one per line
+ * (as Wicket's compound mapper would try them) or compiled into a {@link RoutesTrieMapper}.
+ *
+ * @author cgatay
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteMatchingBenchmark {
+    private static final int REQUESTS = 1024;
+
+    @Param({"10", "100", "1000", "10000"})
+    int routes;
+
+    @Param({"HIT", "MISS", "NOT_FOUND"})
+    SyntheticRoutes.Case urlCase;
+
+    @Param({"PER_LINE", "TRIE"})
+    String mounting;
+
+    private BaseWicketTester tester;
+    private IRequestMapper mapper;
+    private MockWebRequest[] requests;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        tester = new BaseWicketTester(new MockApplication());
+        final List<RoutesMountParser.URLPageMapping> mappings =
+                new RoutesMountParser().parse(new StringReader(SyntheticRoutes.routesFile(routes)));
+        if ("TRIE".equals(mounting)) {
+            final RoutesTrieMapper trieMapper = new RoutesTrieMapper();
+            for (RoutesMountParser.URLPageMapping mapping : mappings) {
+                trieMapper.add(mapping.getMountPoint(), mapping.newRequestMapper());
+            }
+            mapper = trieMapper;
+        } else {
+            final CompoundRequestMapper compoundMapper = new CompoundRequestMapper();
+            for (RoutesMountParser.URLPageMapping mapping : mappings) {
+                compoundMapper.add(mapping.newRequestMapper());
+            }
+            mapper = compoundMapper;
+        }
+        final Random random = new Random(42);
+        requests = new MockWebRequest[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            requests[i] = new MockWebRequest(Url.parse(SyntheticRoutes.url(random.nextInt(routes), urlCase)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        tester.destroy();
+    }
+
+    @Benchmark
+    public IRequestHandler mapRequest() {
+        next = (next + 1) & (REQUESTS - 1);
+        return mapper.mapRequest(requests[next]);
+    }
+}
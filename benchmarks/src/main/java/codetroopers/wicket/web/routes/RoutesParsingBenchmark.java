@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.pages.BenchmarkPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of generated routes files, as done once at startup by {@link RoutesMountParser#mount}.
+ *
+ * @author cgatay
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutesParsingBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    int routes;
+
+    private String routesFile;
+
+    @Setup
+    public void setUp() {
+        // package mounts are only resolved once a class of the package has been loaded
+        BenchmarkPage.class.getName();
+        routesFile = SyntheticRoutes.routesFile(routes);
+    }
+
+    @Benchmark
+    public List<RoutesMountParser.URLPageMapping> parse() throws IOException {
+        return new RoutesMountParser().parse(new StringReader(routesFile));
+    }
+
+    /**
+     * Mappings given one by one as the file is read, as when mounting one mapper per line : run with
+     * <code>-prof gc</code> to compare the allocations with {@link #parse()}
+     */
+    @Benchmark
+    public void stream(final Blackhole blackhole) throws IOException {
+        new RoutesMountParser().parse(RoutesMountParser.ROUTES_FILE, null, new StringReader(routesFile),
+                                      new RoutesMountParser.MappingListener() {
+                                          @Override
+                                          public void mapping(final RoutesMountParser.URLPageMapping mapping) {
+                                              blackhole.consume(mapping);
+                                          }
+                                      });
+    }
+
+    /**
+     * Splitting of the routes file into fields
+     */
+    @Benchmark
+    public List<RoutesMountParser.RouteLine> readLines() throws IOException {
+        return RoutesMountParser.readLines(new StringReader(routesFile));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.pages.BenchmarkPage;
+import codetroopers.wicket.web.routes.pages.LastRoutePage;
+
+/**
+ * Generates routes files with a realistic mix of mounts, and URLs hitting or missing them.
+ * Out of ten routes, four are literal mounts, three have a <code>${id:[0-9]+}</code> parameter, two a strict
+ * optional <code>#{query:[a-z]+}</code> parameter and one mounts a whole package.
+ *
+ * @author cgatay
+ */
+final class SyntheticRoutes {
+
+    enum Kind {
+        LITERAL, REGEX, OPTIONAL, PACKAGE
+    }
+
+    enum Case {
+        /** The URL is handled by a route */
+        HIT,
+        /** The URL shares its first segment with a route which rejects it */
+        MISS,
+        /** No route shares anything with the URL */
+        NOT_FOUND
+    }
+
+    private SyntheticRoutes() {
+    }
+
+    static Kind kind(final int route) {
+        final int slot = route % 10;
+        if (slot < 4) {
+            return Kind.LITERAL;
+        }
+        if (slot < 7) {
+            return Kind.REGEX;
+        }
+        if (slot < 9) {
+            return Kind.OPTIONAL;
+        }
+        return Kind.PACKAGE;
+    }
+
+    /**
+     * @return the content of a routes file holding {@code count} routes
+     */
+    static String routesFile(final int count) {
+        final StringBuilder builder = new StringBuilder("# mountPoint            class                           roles\n");
+        for (int route = 0; route < count; route++) {
+            builder.append(mountPoint(route)).append("    ").append(target(route, count));
+            if (route % 25 == 0) {
+                builder.append("    ADMIN,USER");
+            }
+            if (kind(route) == Kind.OPTIONAL) {
+                // incorrect values are rejected instead of stripped, so that these routes can be missed
+                builder.append("    strict=true");
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    static String mountPoint(final int route) {
+        switch (kind(route)) {
+            case LITERAL:
+                return "/section" + route + "/page";
+            case REGEX:
+                return "/items" + route + "/${id:[0-9]+}";
+            case OPTIONAL:
+                return "/search" + route + "/#{query:[a-z]+}";
+            default:
+                return "/pkg" + route;
+        }
+    }
+
+    static String target(final int route, final int count) {
+        if (kind(route) == Kind.PACKAGE) {
+            return BenchmarkPage.class.getPackage().getName();
+        }
+        return route == lastPageRoute(count) ? LastRoutePage.class.getName() : BenchmarkPage.class.getName();
+    }
+
+    /**
+     * @return index of the last route mounting a page (and not a package)
+     */
+    static int lastPageRoute(final int count) {
+        int route = count - 1;
+        while (kind(route) == Kind.PACKAGE) {
+            route--;
+        }
+        return route;
+    }
+
+    static String url(final int route, final Case urlCase) {
+        switch (urlCase) {
+            case HIT:
+                return hitUrl(route);
+            case MISS:
+                return missUrl(route);
+            default:
+                return "nowhere" + route + "/to/be/found";
+        }
+    }
+
+    private static String hitUrl(final int route) {
+        switch (kind(route)) {
+            case LITERAL:
+                return "section" + route + "/page";
+            case REGEX:
+                return "items" + route + "/" + (route * 31);
+            case OPTIONAL:
+                return "search" + route + "/wicket";
+            default:
+                return "pkg" + route + "/" + BenchmarkPage.class.getSimpleName();
+        }
+    }
+
+    private static String missUrl(final int route) {
+        switch (kind(route)) {
+            case LITERAL:
+                return "section" + route + "/other";
+            case REGEX:
+                return "items" + route;
+            case OPTIONAL:
+                return "search" + route + "/" + route;
+            default:
+                return "pkg" + route + "/UnknownPage";
+        }
+    }
+}
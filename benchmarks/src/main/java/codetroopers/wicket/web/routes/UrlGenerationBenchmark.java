@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.mapper.RoutesTrieMapper;
+import codetroopers.wicket.web.routes.pages.BenchmarkPage;
+import codetroopers.wicket.web.routes.pages.LastRoutePage;
+import org.apache.wicket.core.request.handler.BookmarkablePageRequestHandler;
+import org.apache.wicket.core.request.handler.PageProvider;
+import org.apache.wicket.mock.MockApplication;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.mapper.CompoundRequestMapper;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.tester.BaseWicketTester;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * URL generation (what every bookmarkable link does) through the mappers of a generated routes file.
+ * {@code BenchmarkPage} is mounted by the first route while {@code LastRoutePage} is only mounted by the last one.
+ * {@code TRIE_CACHED} also keeps the generated URLs in the trie's bounded cache.
+ *
+ * @author cgatay
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlGenerationBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    int routes;
+
+    @Param({"FIRST_ROUTE", "LAST_ROUTE"})
+    String target;
+
+    @Param({"PER_LINE", "TRIE", "TRIE_CACHED"})
+    String mounting;
+
+    private BaseWicketTester tester;
+    private IRequestMapper mapper;
+    private IRequestHandler handler;
+
+    @Setup
+    public void setUp() throws Exception {
+        tester = new BaseWicketTester(new MockApplication());
+        final CompoundRequestMapper compoundMapper = new CompoundRequestMapper();
+        final RoutesTrieMapper trieMapper = new RoutesTrieMapper();
+        for (RoutesMountParser.URLPageMapping mapping :
+                new RoutesMountParser().parse(new StringReader(SyntheticRoutes.routesFile(routes)))) {
+            compoundMapper.add(mapping.newRequestMapper());
+            trieMapper.add(mapping.getMountPoint(), mapping.newRequestMapper());
+        }
+        if ("TRIE_CACHED".equals(mounting)) {
+            trieMapper.cacheUrls(1024);
+        }
+        mapper = mounting.startsWith("TRIE") ? trieMapper : compoundMapper;
+        final PageParameters parameters = new PageParameters().add("id", 1234).add("sort", "name");
+        handler = new BookmarkablePageRequestHandler(
+                new PageProvider("LAST_ROUTE".equals(target) ? LastRoutePage.class : BenchmarkPage.class, parameters));
+    }
+
+    @TearDown
+    public void tearDown() {
+        tester.destroy();
+    }
+
+    @Benchmark
+    public Url mapHandler() {
+        return mapper.mapHandler(handler);
+    }
+}
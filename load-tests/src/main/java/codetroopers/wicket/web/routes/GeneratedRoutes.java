@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.pages.LoadTestPage;
+
+/**
+ * Routes files of a given size mounting {@link LoadTestPage}, with a mix of literal mounts, <code>${id:[0-9]+}</code>
+ * parameters and optional <code>#{query:[a-z]+}</code> parameters, and URLs handled by each route.
+ *
+ * @author cgatay
+ */
+final class GeneratedRoutes {
+
+    private GeneratedRoutes() {
+    }
+
+    /**
+     * @return the content of a routes file holding {@code count} routes
+     */
+    static String routesFile(final int count) {
+        final StringBuilder builder = new StringBuilder("# mountPoint            class\n");
+        for (int route = 0; route < count; route++) {
+            builder.append(mountPoint(route)).append("    ").append(LoadTestPage.class.getName()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    static String mountPoint(final int route) {
+        switch (route % 3) {
+            case 0:
+                return "/section" + route + "/page";
+            case 1:
+                return "/items" + route + "/${id:[0-9]+}";
+            default:
+                return "/search" + route + "/#{query:[a-z]+}";
+        }
+    }
+
+    /**
+     * @return a path handled by the route, without leading slash
+     */
+    static String path(final int route) {
+        switch (route % 3) {
+            case 0:
+                return "section" + route + "/page";
+            case 1:
+                return "items" + route + "/" + (route * 31);
+            default:
+                return "search" + route + "/wicket";
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.mapper.RoutesTrieMapper;
+import codetroopers.wicket.web.routes.pages.LoadTestPage;
+import org.apache.wicket.Page;
+import org.apache.wicket.RuntimeConfigurationType;
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.protocol.http.WebApplication;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Application mounting a generated routes file, either one mapper per line or compiled into a
+ * {@link RoutesTrieMapper}, and timing the routing of every request.
+ *
+ * @author cgatay
+ */
+class LoadTestApplication extends WebApplication {
+    private final String routesFile;
+    private final boolean compileToTrie;
+    private RoutingTimer routingTimer;
+
+    LoadTestApplication(final String routesFile, final boolean compileToTrie) {
+        this.routesFile = routesFile;
+        this.compileToTrie = compileToTrie;
+    }
+
+    @Override
+    protected void init() {
+        super.init();
+        try {
+            final RoutesTrieMapper trieMapper = compileToTrie ? new RoutesTrieMapper() : null;
+            for (RoutesMountParser.URLPageMapping mapping : new RoutesMountParser().parse(new StringReader(routesFile))) {
+                if (trieMapper != null) {
+                    trieMapper.add(mapping.getMountPoint(), mapping.newRequestMapper());
+                } else {
+                    mapping.mount(this);
+                }
+            }
+            if (trieMapper != null) {
+                mount(trieMapper);
+            }
+        } catch (IOException e) {
+            throw new WicketRuntimeException("Unable to mount the generated routes", e);
+        }
+        routingTimer = new RoutingTimer(getRootRequestMapper());
+        setRootRequestMapper(routingTimer);
+    }
+
+    @Override
+    public Class<? extends Page> getHomePage() {
+        return LoadTestPage.class;
+    }
+
+    @Override
+    public RuntimeConfigurationType getConfigurationType() {
+        return RuntimeConfigurationType.DEPLOYMENT;
+    }
+
+    RoutingTimer getRoutingTimer() {
+        return routingTimer;
+    }
+}
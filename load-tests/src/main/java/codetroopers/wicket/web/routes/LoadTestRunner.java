@@ -0,0 +1,165 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves routes files of growing size from an embedded Jetty, and sends them requests from concurrent clients over
+ * the loopback interface. For each size, reports the throughput and the percentiles of the routing time (measured
+ * in the application around the root mapper) and of the response time (measured by the clients).
+ * <p>
+ * Options are given as system properties :
+ * <ul>
+ *     <li><code>routes</code> : comma separated numbers of routes, <code>10,100,1000,10000</code> by default</li>
+ *     <li><code>clients</code> : number of concurrent clients, <code>64</code> by default</li>
+ *     <li><code>warmup</code> and <code>duration</code> : seconds of warm-up and of measure, <code>5</code> and
+ *     <code>10</code> by default</li>
+ *     <li><code>trie</code> : <code>true</code> to compile the routes into a trie</li>
+ * </ul>
+ *
+ * @author cgatay
+ */
+public final class LoadTestRunner {
+
+    private LoadTestRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int clients = Integer.getInteger("clients", 64);
+        final long warmup = TimeUnit.SECONDS.toNanos(Integer.getInteger("warmup", 5));
+        final long duration = TimeUnit.SECONDS.toNanos(Integer.getInteger("duration", 10));
+        final boolean trie = Boolean.getBoolean("trie");
+        System.out.println(String.format(Locale.ENGLISH, "%8s %8s %10s %10s  %-24s %-24s %s", "routes", "clients",
+                                         "requests", "req/s", "routing p50/p99/p999 µs",
+                                         "response p50/p99/p999 µs", "errors"));
+        for (String routes : System.getProperty("routes", "10,100,1000,10000").split(",")) {
+            run(Integer.parseInt(routes.trim()), clients, warmup, duration, trie);
+        }
+    }
+
+    private static void run(final int routes, final int clients, final long warmup, final long duration,
+                            final boolean trie) throws Exception {
+        final LoadTestApplication application = new LoadTestApplication(GeneratedRoutes.routesFile(routes), trie);
+        final LoadTestServer server = new LoadTestServer(application);
+        final String base = server.start();
+        final ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            drive(executor, base, routes, clients, warmup);
+            application.getRoutingTimer().reset();
+            final long start = System.nanoTime();
+            final Load load = drive(executor, base, routes, clients, duration);
+            final double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+            final long requests = load.responseTime.getCount();
+            System.out.println(String.format(Locale.ENGLISH, "%8d %8d %10d %10.0f  %-24s %-24s %d", routes, clients,
+                                             requests, requests / seconds,
+                                             percentiles(application.getRoutingTimer().getRoutingTime()),
+                                             percentiles(load.responseTime), load.errors.get()));
+        } finally {
+            executor.shutdownNow();
+            server.stop();
+        }
+    }
+
+    /**
+     * Sends requests to random routes from every client until the duration has elapsed
+     */
+    private static Load drive(final ExecutorService executor, final String base, final int routes,
+                              final int clients, final long duration) throws Exception {
+        final Load load = new Load();
+        final long end = System.nanoTime() + duration;
+        final List<Future<Void>> futures = new ArrayList<>(clients);
+        for (int client = 0; client < clients; client++) {
+            final Random random = new Random(client);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    while (System.nanoTime() < end) {
+                        final URL url = new URL(base + GeneratedRoutes.path(random.nextInt(routes)));
+                        final long start = System.nanoTime();
+                        final boolean ok = get(url);
+                        load.responseTime.record(System.nanoTime() - start);
+                        if (!ok) {
+                            load.errors.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+        return load;
+    }
+
+    /**
+     * Reads the whole response, so that the connection is kept alive for the next request of the client
+     * @return whether the page was served
+     */
+    private static boolean get(final URL url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setInstanceFollowRedirects(false);
+        final int status = connection.getResponseCode();
+        final InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (body != null) {
+            final byte[] buffer = new byte[4096];
+            try {
+                while (body.read(buffer) >= 0) {
+                    // drained
+                }
+            } finally {
+                body.close();
+            }
+        }
+        return status == HttpURLConnection.HTTP_OK;
+    }
+
+    private static String percentiles(final LatencyHistogram histogram) {
+        return micros(histogram.getValueAtPercentile(50)) + "/" + micros(histogram.getValueAtPercentile(99)) + "/"
+               + micros(histogram.getValueAtPercentile(99.9));
+    }
+
+    private static String micros(final long nanos) {
+        return String.format(Locale.ENGLISH, "%.1f", nanos / 1000.0);
+    }
+
+    private static final class Load {
+        private final LatencyHistogram responseTime = new LatencyHistogram();
+        private final AtomicLong errors = new AtomicLong();
+    }
+}
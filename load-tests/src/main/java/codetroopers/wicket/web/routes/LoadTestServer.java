@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import org.apache.wicket.protocol.http.WicketFilter;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.servlet.DefaultServlet;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+
+import javax.servlet.DispatcherType;
+import java.util.EnumSet;
+
+/**
+ * Embedded Jetty serving a {@link LoadTestApplication} on a free port of the loopback interface.
+ *
+ * @author cgatay
+ */
+final class LoadTestServer {
+    private final Server server = new Server();
+    private final SelectChannelConnector connector = new SelectChannelConnector();
+
+    LoadTestServer(final LoadTestApplication application) {
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+        connector.setAcceptQueueSize(1024);
+        server.addConnector(connector);
+
+        final FilterHolder filter = new FilterHolder(new WicketFilter(application));
+        filter.setInitParameter(WicketFilter.FILTER_MAPPING_PARAM, "/*");
+        final ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/");
+        context.addFilter(filter, "/*", EnumSet.of(DispatcherType.REQUEST));
+        context.addServlet(DefaultServlet.class, "/");
+        server.setHandler(context);
+    }
+
+    /**
+     * @return the base URL of the application, ending with a slash
+     */
+    String start() throws Exception {
+        server.start();
+        return "http://127.0.0.1:" + connector.getLocalPort() + "/";
+    }
+
+    void stop() throws Exception {
+        server.stop();
+    }
+}
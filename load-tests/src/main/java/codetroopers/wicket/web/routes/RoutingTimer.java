@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.metrics.LatencyHistogram;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+
+/**
+ * Root mapper recording the time spent finding the handler of each request, which is the routing latency apart
+ * from the rendering of the pages and the network.
+ *
+ * @author cgatay
+ */
+final class RoutingTimer implements IRequestMapper {
+    private final IRequestMapper delegate;
+    private volatile LatencyHistogram routingTime = new LatencyHistogram();
+
+    RoutingTimer(final IRequestMapper delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public IRequestHandler mapRequest(final Request request) {
+        final long start = System.nanoTime();
+        final IRequestHandler handler = delegate.mapRequest(request);
+        routingTime.record(System.nanoTime() - start);
+        return handler;
+    }
+
+    @Override
+    public int getCompatibilityScore(final Request request) {
+        return delegate.getCompatibilityScore(request);
+    }
+
+    @Override
+    public Url mapHandler(final IRequestHandler requestHandler) {
+        return delegate.mapHandler(requestHandler);
+    }
+
+    /**
+     * Starts a new histogram, after the warm-up
+     */
+    void reset() {
+        routingTime = new LatencyHistogram();
+    }
+
+    LatencyHistogram getRoutingTime() {
+        return routingTime;
+    }
+}
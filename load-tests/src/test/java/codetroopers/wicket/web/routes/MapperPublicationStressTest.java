@@ -0,0 +1,169 @@
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.mapper.ParamCheckingPatternMapper;
+import codetroopers.wicket.web.routes.mapper.RoutesTrieMapper;
+import codetroopers.wicket.web.routes.mounts.MountPathExtractor;
+import codetroopers.wicket.web.routes.pages.LoadTestPage;
+import org.apache.wicket.Application;
+import org.apache.wicket.ThreadContext;
+import org.apache.wicket.core.request.handler.IPageClassRequestHandler;
+import org.apache.wicket.mock.MockApplication;
+import org.apache.wicket.mock.MockWebRequest;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.mapper.parameter.INamedParameters;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Maps requests from several threads at once, while mappers are built and published by another thread,
+ * checking that each thread sees the mappers with the options they were built with and gets the same results as a
+ * single thread.
+ *
+ * @author cgatay
+ */
+public class MapperPublicationStressTest {
+    private static final int ROUTES = 300;
+    private static final int THREADS = 8;
+    private static final long DURATION = TimeUnit.SECONDS.toNanos(2);
+
+    private WicketTester tester;
+    private volatile ParamCheckingPatternMapper published;
+
+    @Before
+    public void setUp() throws Exception {
+        tester = new WicketTester(new MockApplication());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tester.destroy();
+    }
+
+    @Test
+    public void testPublishedMappersAreSeenConfigured() throws Exception {
+        final MountPathExtractor extractor = new MountPathExtractor("/items/${id:[0-9]+}");
+        final AtomicBoolean done = new AtomicBoolean();
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    published = ParamCheckingPatternMapper.builder(extractor.getPath(), LoadTestPage.class)
+                            .mountParameters(extractor.getParameters())
+                            .exact(true)
+                            .ignoreIncorrectParameters(false)
+                            .displayVersionInUrl(false)
+                            .build();
+                }
+            }
+        });
+        writer.start();
+        try {
+            runConcurrently(new Runnable() {
+                @Override
+                public void run() {
+                    final ParamCheckingPatternMapper mapper = published;
+                    if (mapper == null) {
+                        return;
+                    }
+                    Assert.assertNotNull(mapper.mapRequest(request("items/42")));
+                    Assert.assertNull("exact matching not seen", mapper.mapRequest(request("items/42/extra")));
+                    Assert.assertNull("strict parameters not seen", mapper.mapRequest(request("items/abc")));
+                }
+            });
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+    }
+
+    @Test
+    public void testConcurrentMatchingGivesTheSameResults() throws Exception {
+        final List<RoutesMountParser.URLPageMapping> mappings =
+                new RoutesMountParser().parse(new StringReader(GeneratedRoutes.routesFile(ROUTES)));
+        // smaller than the number of routes, so that matches are evicted while threads read the cache
+        final RoutesTrieMapper trieMapper = new RoutesTrieMapper().cacheMatches(ROUTES / 4).cacheNotFound(16);
+        for (RoutesMountParser.URLPageMapping mapping : mappings) {
+            trieMapper.add(mapping.getMountPoint(), mapping.newRequestMapper());
+        }
+        final List<String> expected = new ArrayList<>(ROUTES);
+        for (int route = 0; route < ROUTES; route++) {
+            expected.add(describe(trieMapper.mapRequest(request(GeneratedRoutes.path(route)))));
+        }
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                final int route = ThreadLocalRandom.current().nextInt(ROUTES);
+                Assert.assertEquals(expected.get(route),
+                                    describe(trieMapper.mapRequest(request(GeneratedRoutes.path(route)))));
+                Assert.assertNull(trieMapper.mapRequest(request("nowhere" + route + "/to/be/found")));
+            }
+        });
+    }
+
+    private static MockWebRequest request(final String path) {
+        return new MockWebRequest(Url.parse(path));
+    }
+
+    private static String describe(final IRequestHandler handler) {
+        Assert.assertTrue(handler instanceof IPageClassRequestHandler);
+        final IPageClassRequestHandler pageHandler = (IPageClassRequestHandler) handler;
+        final StringBuilder description = new StringBuilder(pageHandler.getPageClass().getName());
+        for (INamedParameters.NamedPair pair : pageHandler.getPageParameters().getAllNamed()) {
+            description.append(' ').append(pair.getKey()).append('=').append(pair.getValue());
+        }
+        return description.toString();
+    }
+
+    /**
+     * Runs the iteration from {@link #THREADS} threads at once until the duration has elapsed
+     * @throws AssertionError the first failure of an iteration
+     */
+    private void runConcurrently(final Runnable iteration) throws Exception {
+        final Application application = tester.getApplication();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        final List<Thread> threads = new ArrayList<>(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ThreadContext.setApplication(application);
+                    try {
+                        start.await();
+                        final long end = System.nanoTime() + DURATION;
+                        while (System.nanoTime() < end && failures.isEmpty()) {
+                            iteration.run();
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    } finally {
+                        ThreadContext.detach();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.peek());
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.processor;
+
+import codetroopers.wicket.web.routes.MountRoute;
+import codetroopers.wicket.web.routes.RouteTable;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes the routes of the pages annotated with {@link MountRoute} in the routes index of the module
+ * ({@link MountRoute#INDEX}), read by <code>RoutesMountParser</code> at startup.
+ *
+ * Every route is checked when the module is compiled : the annotated class must be a public concrete page, each path
+ * must follow the grammar of the routes file (placeholders and their regular expressions are checked as by
+ * {@link RouteTable#checkMountPoint(String)}), and a path may only be declared once in the module. Errors are reported
+ * on the annotated class and fail the compilation.
+ * <p/>
+ * The index uses the syntax of <code>routes.conf</code>, one line per path, sorted by class name so that builds are
+ * reproducible. The processor is found by javac through <code>META-INF/services</code> once this module is on the
+ * compile class path.
+ * <p/>
+ * Incremental builds only compile some of the classes of the module : the routes of the index written by a previous
+ * compilation are kept for the classes which are not compiled again and still exist, their paths being checked
+ * against the new ones as well. The processor is therefore run for every compilation, even without annotated classes,
+ * and does not claim any annotation.
+ *
+ * @author cgatay
+ */
+@SupportedAnnotationTypes("*")
+public class RoutesIndexProcessor extends AbstractProcessor {
+    private static final String PAGE_CLASS = "org.apache.wicket.Page";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** lines of the index, by binary class name */
+    private final Map<String, List<String>> routes = new TreeMap<>();
+    /** annotated class of each path, to report duplicates */
+    private final Map<String, String> classOfPaths = new HashMap<>();
+    private final List<Element> originatingElements = new ArrayList<>();
+    /** binary names of the classes of the compilation, whose previous routes are replaced */
+    private final Set<String> compiledClasses = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getRootElements()) {
+            collectCompiled(element);
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(MountRoute.class)) {
+            collect(element);
+        }
+        if (roundEnv.processingOver() && !roundEnv.errorRaised()) {
+            final Map<String, List<String>> index = mergePreviousIndex();
+            if (index != null) {
+                writeIndex(index);
+            }
+        }
+        return false;
+    }
+
+    private void collectCompiled(final Element element) {
+        if (element instanceof TypeElement) {
+            compiledClasses.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+            for (Element enclosed : element.getEnclosedElements()) {
+                collectCompiled(enclosed);
+            }
+        }
+    }
+
+    private void collect(final Element element) {
+        final Messager messager = processingEnv.getMessager();
+        if (!isPage(element)) {
+            return;
+        }
+        final TypeElement type = (TypeElement) element;
+        final String className = processingEnv.getElementUtils().getBinaryName(type).toString();
+        final MountRoute route = type.getAnnotation(MountRoute.class);
+        final String roles = roles(type, route.roles());
+        if (roles == null) {
+            return;
+        }
+        if (route.value().length == 0) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@MountRoute must give at least one path", type);
+            return;
+        }
+        final List<String> lines = new ArrayList<>();
+        for (String path : route.value()) {
+            final String error = checkPath(path);
+            if (error != null) {
+                messager.printMessage(Diagnostic.Kind.ERROR, error, type);
+                continue;
+            }
+            final String previous = classOfPaths.put(path, className);
+            if (previous != null) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Path " + path + " is already mounted by " + previous,
+                                      type);
+                continue;
+            }
+            lines.add(path + '\t' + className + (roles.isEmpty() ? "" : '\t' + roles));
+        }
+        routes.put(className, lines);
+        originatingElements.add(type);
+    }
+
+    /**
+     * @return whether the element is a class Wicket can instantiate as a page, errors being reported otherwise
+     */
+    private boolean isPage(final Element element) {
+        final Messager messager = processingEnv.getMessager();
+        if (element.getKind() != ElementKind.CLASS) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@MountRoute can only be given to page classes", element);
+            return false;
+        }
+        final TypeElement type = (TypeElement) element;
+        final Set<Modifier> modifiers = type.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.ABSTRACT)
+            || type.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC)) {
+            messager.printMessage(Diagnostic.Kind.ERROR,
+                                  "@MountRoute can only be given to public, concrete and static classes", type);
+            return false;
+        }
+        final TypeElement page = processingEnv.getElementUtils().getTypeElement(PAGE_CLASS);
+        if (page == null) {
+            messager.printMessage(Diagnostic.Kind.ERROR,
+                                  PAGE_CLASS + " cannot be found, is wicket-core on the classpath ?", type);
+            return false;
+        }
+        if (!processingEnv.getTypeUtils().isSubtype(processingEnv.getTypeUtils().erasure(type.asType()),
+                                                    page.asType())) {
+            messager.printMessage(Diagnostic.Kind.ERROR, type.getQualifiedName() + " is not a wicket Page !", type);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the roles separated by commas, {@code null} if a role cannot be written in the routes file
+     */
+    private String roles(final TypeElement type, final String[] roles) {
+        final StringBuilder joined = new StringBuilder();
+        for (String role : roles) {
+            if (role.isEmpty() || !isToken(role) || role.indexOf(',') >= 0 || role.indexOf('=') >= 0) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Invalid role '" + role + "'", type);
+                return null;
+            }
+            if (joined.length() > 0) {
+                joined.append(',');
+            }
+            joined.append(role);
+        }
+        return joined.toString();
+    }
+
+    /**
+     * @return a description of the problem of the path, {@code null} if it can be mounted
+     */
+    static String checkPath(final String path) {
+        if (!path.startsWith("/") || !isToken(path)) {
+            return "Invalid path '" + path + "', paths start with / and have no spaces";
+        }
+        try {
+            return RouteTable.checkMountPoint(path);
+        } catch (RuntimeException e) {
+            return "Malformed pattern in " + path;
+        }
+    }
+
+    private static boolean isToken(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.isWhitespace(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the routes of the previous index whose classes are neither compiled again nor removed
+     * @return the routes of the index, {@code null} if the previous index is still right or a path is duplicated
+     */
+    private Map<String, List<String>> mergePreviousIndex() {
+        final Map<String, List<String>> index = new TreeMap<>(routes);
+        boolean changed = !routes.isEmpty();
+        boolean duplicated = false;
+        for (Map.Entry<String, List<String>> previous : readPreviousIndex().entrySet()) {
+            final String className = previous.getKey();
+            if (compiledClasses.contains(className)
+                || processingEnv.getElementUtils().getTypeElement(className.replace('$', '.')) == null) {
+                changed = true;
+                continue;
+            }
+            for (String line : previous.getValue()) {
+                final String path = line.substring(0, line.indexOf('\t'));
+                final String other = classOfPaths.get(path);
+                if (other != null) {
+                    duplicated = true;
+                    processingEnv.getMessager().printMessage(
+                            Diagnostic.Kind.ERROR, "Path " + path + " is already mounted by " + className,
+                            processingEnv.getElementUtils().getTypeElement(other.replace('$', '.')));
+                }
+            }
+            index.put(className, previous.getValue());
+        }
+        return changed && !duplicated ? index : null;
+    }
+
+    /**
+     * @return the lines of the index written by a previous compilation, by class name, empty if there is none
+     */
+    private Map<String, List<String>> readPreviousIndex() {
+        final Map<String, List<String>> lines = new TreeMap<>();
+        try {
+            final FileObject index = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+                                                                          MountRoute.INDEX);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openInputStream(), UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String[] fields = line.split("\t");
+                    if (line.startsWith("#") || fields.length < 2) {
+                        continue;
+                    }
+                    List<String> classLines = lines.get(fields[1]);
+                    if (classLines == null) {
+                        classLines = new ArrayList<>();
+                        lines.put(fields[1], classLines);
+                    }
+                    classLines.add(line);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // first compilation of the module
+        }
+        return lines;
+    }
+
+    private void writeIndex(final Map<String, List<String>> index) {
+        try {
+            final FileObject resource = processingEnv.getFiler().createResource(
+                    StandardLocation.CLASS_OUTPUT, "", MountRoute.INDEX,
+                    originatingElements.toArray(new Element[originatingElements.size()]));
+            try (Writer writer = new OutputStreamWriter(resource.openOutputStream(), UTF_8)) {
+                writer.write("# Generated by " + getClass().getName() + " from the @MountRoute pages\n");
+                for (List<String> lines : index.values()) {
+                    for (String line : lines) {
+                        writer.write(line);
+                        writer.write('\n');
+                    }
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                                                     "Unable to write " + MountRoute.INDEX + " : " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package codetroopers.wicket.web.routes.processor;
+
+import codetroopers.wicket.web.routes.MountRoute;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author cgatay
+ */
+public class RoutesIndexProcessorTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File sources;
+    private File classes;
+    private DiagnosticCollector<JavaFileObject> diagnostics;
+
+    @Before
+    public void setUp() throws Exception {
+        sources = Files.createTempDirectory("sources").toFile();
+        classes = Files.createTempDirectory("classes").toFile();
+        diagnostics = new DiagnosticCollector<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        delete(sources);
+        delete(classes);
+    }
+
+    @Test
+    public void testIndexOfAnnotatedPages() throws Exception {
+        Assert.assertTrue(compile(page("UserPage", "@MountRoute(value = {\"/user/${id:[0-9]+}\", \"/u/${id}\"},"
+                                                   + " roles = {\"ADMIN\", \"USER\"})"),
+                                  page("HomePage", "@MountRoute(\"/home\")")));
+        final List<String> index = Files.readAllLines(new File(classes, MountRoute.INDEX).toPath(), UTF_8);
+        Assert.assertEquals(4, index.size());
+        Assert.assertEquals("/home\tpages.HomePage", index.get(1));
+        Assert.assertEquals("/user/${id:[0-9]+}\tpages.UserPage\tADMIN,USER", index.get(2));
+        Assert.assertEquals("/u/${id}\tpages.UserPage\tADMIN,USER", index.get(3));
+    }
+
+    @Test
+    public void testMalformedPathFailsCompilation() throws Exception {
+        Assert.assertFalse(compile(page("UserPage", "@MountRoute(\"/user/${id:[0-9+}\")")));
+        Assert.assertTrue(errors().get(0).startsWith("Malformed regular expression for id"));
+        Assert.assertFalse(compile(page("UserPage", "@MountRoute(\"user\")")));
+        Assert.assertFalse(new File(classes, MountRoute.INDEX).exists());
+    }
+
+    @Test
+    public void testDuplicatedPathFailsCompilation() throws Exception {
+        Assert.assertFalse(compile(page("UserPage", "@MountRoute(\"/user\")"),
+                                   page("OtherPage", "@MountRoute(\"/user\")")));
+        Assert.assertTrue(errors().get(0).startsWith("Path /user is already mounted by pages."));
+    }
+
+    @Test
+    public void testOnlyPagesCanBeMounted() throws Exception {
+        Assert.assertFalse(compile(source("NotAPage", "@MountRoute(\"/user\") public class NotAPage {}")));
+        Assert.assertEquals("pages.NotAPage is not a wicket Page !", errors().get(0));
+        Assert.assertFalse(compile(source("AbstractPage", "@MountRoute(\"/user\") public abstract class AbstractPage"
+                                                          + " extends org.apache.wicket.markup.html.WebPage {}")));
+        Assert.assertFalse(compile(page("UserPage", "@MountRoute(value = \"/user\", roles = \"A B\")")));
+    }
+
+    @Test
+    public void testIncrementalCompilationKeepsTheRoutesOfOtherPages() throws Exception {
+        Assert.assertTrue(compile(page("UserPage", "@MountRoute(\"/user\")"),
+                                  page("HomePage", "@MountRoute(\"/home\")")));
+        Assert.assertTrue(compile(page("UserPage", "@MountRoute(\"/users\")")));
+        Assert.assertEquals(Arrays.asList("/home\tpages.HomePage", "/users\tpages.UserPage"), routes());
+
+        // routes of removed pages and of pages no longer annotated go away
+        new File(classes, "pages/HomePage.class").delete();
+        Assert.assertTrue(compile(page("UserPage", "")));
+        Assert.assertEquals(Collections.<String>emptyList(), routes());
+
+        Assert.assertTrue(compile(page("UserPage", "@MountRoute(\"/user\")")));
+        Assert.assertFalse(compile(page("OtherPage", "@MountRoute(\"/user\")")));
+        Assert.assertTrue(errors().get(0).startsWith("Path /user is already mounted by pages.UserPage"));
+        Assert.assertEquals(Arrays.asList("/user\tpages.UserPage"), routes());
+    }
+
+    private List<String> routes() throws IOException {
+        final List<String> routes = new ArrayList<>();
+        for (String line : Files.readAllLines(new File(classes, MountRoute.INDEX).toPath(), UTF_8)) {
+            if (!line.startsWith("#")) {
+                routes.add(line);
+            }
+        }
+        return routes;
+    }
+
+    private File page(final String name, final String annotation) throws IOException {
+        return source(name, annotation + " public class " + name
+                            + " extends org.apache.wicket.markup.html.WebPage {}");
+    }
+
+    private File source(final String name, final String declaration) throws IOException {
+        final File file = new File(sources, "pages/" + name + ".java");
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), ("package pages;\nimport codetroopers.wicket.web.routes.MountRoute;\n"
+                                    + declaration + "\n").getBytes(UTF_8));
+        return file;
+    }
+
+    private boolean compile(final File... files) throws IOException {
+        diagnostics = new DiagnosticCollector<>();
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, UTF_8)) {
+            final JavaCompiler.CompilationTask task = compiler.getTask(
+                    null, fileManager, diagnostics,
+                    Arrays.asList("-d", classes.getPath(), "-classpath",
+                                  System.getProperty("java.class.path") + File.pathSeparator + classes.getPath()),
+                    null, fileManager.getJavaFileObjects(files));
+            task.setProcessors(Collections.singletonList(new RoutesIndexProcessor()));
+            return task.call();
+        }
+    }
+
+    private List<String> errors() {
+        final List<String> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic.getMessage(null));
+            }
+        }
+        return errors;
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.maven;
+
+import codetroopers.wicket.web.routes.InvalidRoutesException;
+import codetroopers.wicket.web.routes.RouteTable;
+import codetroopers.wicket.web.routes.RoutesAnalyzer;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+/**
+ * Checks every route of <code>routes.conf</code> against the compiled classes of the project and writes the
+ * precompiled route table loaded by <code>RoutesMountParser</code> at startup.
+ *
+ * Missing classes, classes which are not pages and malformed patterns or regular expressions fail the build,
+ * with the file and line of each error. Routes which can never be reached or which overlap are reported by the
+ * {@link RoutesAnalyzer}, and fail the build as well if asked.
+ *
+ * @author cgatay
+ */
+@Mojo(name = "compile-routes", defaultPhase = LifecyclePhase.PROCESS_CLASSES,
+      requiresDependencyResolution = ResolutionScope.COMPILE, threadSafe = true)
+public class CompileRoutesMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+
+    /**
+     * Routes file to compile
+     */
+    @Parameter(property = "routes.file", defaultValue = "${project.basedir}/src/main/resources/routes.conf")
+    private File routesFile;
+
+    /**
+     * Directory the table is written to, as {@link RouteTable#RESOURCE}
+     */
+    @Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+    private File outputDirectory;
+
+    /**
+     * Only check the routes, without writing the table
+     */
+    @Parameter(property = "routes.checkOnly", defaultValue = "false")
+    private boolean checkOnly;
+
+    /**
+     * Fail the build when a route is duplicated or shadowed by another one
+     */
+    @Parameter(property = "routes.failOnConflicts", defaultValue = "false")
+    private boolean failOnConflicts;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (!routesFile.isFile()) {
+            getLog().info("No routes file found at " + routesFile + ", skipping");
+            return;
+        }
+        final RouteTable table;
+        try (URLClassLoader classLoader = newProjectClassLoader()) {
+            // included files are resolved against the routes file
+            table = RouteTable.compile(routesFile.getPath(), routesFile.toURI().toURL(), classLoader);
+        } catch (InvalidRoutesException e) {
+            for (String error : e.getErrors()) {
+                getLog().error(error);
+            }
+            throw new MojoFailureException(e.getErrors().size() + " invalid route(s) in " + routesFile);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to read " + routesFile, e);
+        }
+        getLog().info(table.getRoutes().size() + " route(s) checked in " + routesFile);
+        analyze(table);
+        if (!checkOnly) {
+            write(table);
+        }
+    }
+
+    private void analyze(final RouteTable table) throws MojoFailureException {
+        final RoutesAnalyzer.Report report = RoutesAnalyzer.analyze(routesFile.getPath(), table);
+        for (String message : report.getMessages()) {
+            getLog().warn(message);
+        }
+        for (String expression : report.getUnsupportedExpressions()) {
+            getLog().debug(expression + " : regular expression not analyzed");
+        }
+        if (failOnConflicts && report.hasErrors()) {
+            throw new MojoFailureException("Some routes of " + routesFile + " can never be reached");
+        }
+    }
+
+    private void write(final RouteTable table) throws MojoExecutionException {
+        final File output = new File(outputDirectory, RouteTable.RESOURCE.substring(1));
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new MojoExecutionException("Unable to create " + outputDirectory);
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+            table.write(out);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to write " + output, e);
+        }
+        getLog().info("Route table written to " + output);
+    }
+
+    private URLClassLoader newProjectClassLoader() throws MojoExecutionException {
+        try {
+            final List<String> elements = project.getCompileClasspathElements();
+            final URL[] urls = new URL[elements.size()];
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = new File(elements.get(i)).toURI().toURL();
+            }
+            return new URLClassLoader(urls, null);
+        } catch (DependencyResolutionRequiredException | MalformedURLException e) {
+            throw new MojoExecutionException("Unable to build the project classpath", e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+/**
+ * How page classes named in the routes file are resolved when the file is parsed.
+ *
+ * @author cgatay
+ */
+public enum ClassResolution {
+    /**
+     * Every class is loaded on the calling thread, line after line.
+     */
+    EAGER,
+    /**
+     * Classes are loaded concurrently on a bounded {@link java.util.concurrent.ForkJoinPool}, errors are still
+     * reported in line order. Classes are not initialized, their static initializers run when they are first used.
+     */
+    PARALLEL,
+    /**
+     * Only the presence of the class file is checked, the page class is loaded when its route is first used.
+     * Routes having roles are still resolved eagerly as roles are set on the class itself.
+     */
+    LAZY
+}
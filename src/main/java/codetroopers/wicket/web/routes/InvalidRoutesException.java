@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when a routes file contains routes which cannot be mounted.
+ *
+ * @author cgatay
+ */
+public class InvalidRoutesException extends Exception {
+    private static final long serialVersionUID = 1L;
+    private final List<String> errors;
+
+    public InvalidRoutesException(final List<String> errors) {
+        super(errors.size() + " invalid route(s) : " + errors);
+        this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+
+    /**
+     * @return the errors, one per invalid line, as <code>file:line: message</code>
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+}
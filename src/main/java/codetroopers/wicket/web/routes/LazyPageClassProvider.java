@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import org.apache.wicket.Page;
+import org.apache.wicket.util.ClassProvider;
+
+/**
+ * Provides a page class loaded the first time it is needed.
+ *
+ * @author cgatay
+ */
+class LazyPageClassProvider extends ClassProvider<Page> {
+    private final String className;
+    private volatile Class<Page> pageClass;
+
+    LazyPageClassProvider(final String className) {
+        super(null);
+        this.className = className;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Class<Page> get() {
+        Class<Page> result = pageClass;
+        if (result == null) {
+            final Class<?> aClass;
+            try {
+                aClass = Class.forName(className);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Unable to load page class " + className, e);
+            }
+            if (!Page.class.isAssignableFrom(aClass)) {
+                throw new IllegalArgumentException(className + " is not a wicket Page !");
+            }
+            result = (Class<Page>) aClass;
+            pageClass = result;
+        }
+        return result;
+    }
+
+    String getClassName() {
+        return className;
+    }
+}
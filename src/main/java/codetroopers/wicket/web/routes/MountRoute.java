@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the routes of a page on its class instead of in <code>routes.conf</code>.
+ *
+ * The annotation is read at compile time by the processor of the <code>wicket-routes-mount-processor</code> module,
+ * which checks the paths with the grammar of the routes file and writes the routes of the module in an index
+ * ({@link #INDEX}). {@link RoutesMountParser} mounts the routes of every index of the class path before the routes
+ * of <code>routes.conf</code>, so pages are found without scanning the class path.
+ * <pre>
+ * &#064;MountRoute(value = "/user/${id:[0-9]+}", roles = "ADMIN")
+ * public class UserPage extends WebPage {
+ * </pre>
+ *
+ * @author cgatay
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface MountRoute {
+    /**
+     * Classpath location of the index written by the processor, one in each module having annotated pages
+     */
+    String INDEX = "META-INF/wicket-routes.index";
+
+    /**
+     * @return the mount paths of the page, with their <code>${name:regex}</code> and <code>#{name:regex}</code>
+     * placeholders as in the routes file
+     */
+    String[] value();
+
+    /**
+     * @return the roles allowed to instantiate the page, any user if empty
+     */
+    String[] roles() default {};
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.RoutesMountParser.URLPageMapping;
+import codetroopers.wicket.web.routes.authorization.RoleIndex;
+import codetroopers.wicket.web.routes.authorization.RoutesRoleAuthorizationStrategy;
+import codetroopers.wicket.web.routes.mapper.ResponseCache;
+import codetroopers.wicket.web.routes.metrics.RouteMetricsPublisher;
+import org.apache.wicket.Application;
+import org.apache.wicket.IApplicationListener;
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.authroles.authorization.strategies.role.IRoleCheckingStrategy;
+import org.apache.wicket.protocol.http.WebApplication;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Mapper holding the routes of a routes file which is reloaded when it changes.
+ *
+ * The checksum of the file and of the files it includes is polled from a background thread. When it changes, the file is parsed again and compared to
+ * the mounted routes : mappers of unchanged routes are kept, new ones are created and the resulting routes table
+ * replaces the previous one with a single volatile write. Requests never see a partially updated table and never
+ * wait for a lock.
+ * <p/>
+ * Roles are always registered in a {@link RoleIndex} set on a {@link RoutesRoleAuthorizationStrategy}, built with
+ * the table and replaced at once as well, so that the roles of the reloaded routes never mix with the previous ones.
+ * The roles of the user are asked to the strategy given to
+ * {@link RoutesMountSettings#indexRoles(IRoleCheckingStrategy)}, or to the application itself when it is an
+ * {@link IRoleCheckingStrategy}.
+ * <p/>
+ * Routes are always read from the routes file and the indexes of the annotated pages : the precompiled route table
+ * written by the build is not used, it would not follow the changes of the file.
+ *
+ * @author cgatay
+ */
+public class ReloadingRoutesMapper implements IRequestMapper {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReloadingRoutesMapper.class);
+    private static final MetaDataKey<ReloadingRoutesMapper> KEY = new MetaDataKey<ReloadingRoutesMapper>() {
+        private static final long serialVersionUID = 1L;
+    };
+
+    private final WebApplication application;
+    private final RoutesMountSettings settings;
+    private final URL routes;
+    private final IRoleCheckingStrategy roleCheckingStrategy;
+    /** routes file and the files it includes */
+    private List<URL> sources;
+    private volatile RoutesTable table;
+    private final ResponseCache responseCache;
+    private ScheduledExecutorService scheduler;
+
+    private long checksum;
+    private final AtomicLong reloads = new AtomicLong();
+    private volatile long lastReloadDuration;
+    private volatile int lastAddedRoutes;
+    private volatile int lastRemovedRoutes;
+
+    ReloadingRoutesMapper(final WebApplication application, final RoutesMountSettings settings, final URL routes)
+            throws IOException {
+        this.application = application;
+        this.settings = settings;
+        this.routes = routes;
+        this.sources = Collections.singletonList(routes);
+        this.responseCache = settings.getResponseCacheSize() > 0
+                             ? new ResponseCache(settings.getResponseCacheSize()) : null;
+        if (settings.getRoleCheckingStrategy() != null) {
+            this.roleCheckingStrategy = settings.getRoleCheckingStrategy();
+        } else if (application instanceof IRoleCheckingStrategy) {
+            this.roleCheckingStrategy = (IRoleCheckingStrategy) application;
+        } else {
+            this.roleCheckingStrategy = null;
+        }
+        this.table = newTable(parse(), RoutesTable.EMPTY);
+        this.checksum = checksum();
+        RoutesRoleAuthorizationStrategy.install(application, table.roleIndex, roleCheckingStrategy);
+    }
+
+    /**
+     * Collects the roles of the routes
+     * @throws IllegalArgumentException if routes have roles while there is no strategy to check them
+     */
+    private RoleIndex roleIndex(final List<URLPageMapping> mappings) {
+        final RoleIndex.Builder builder = RoleIndex.builder();
+        for (URLPageMapping mapping : mappings) {
+            mapping.authorizeRoles(builder);
+        }
+        final RoleIndex index = builder.build();
+        if (index.size() > 0 && roleCheckingStrategy == null) {
+            throw new IllegalArgumentException("Reloaded routes having roles need a role checking strategy, "
+                                               + "see RoutesMountSettings.indexRoles()");
+        }
+        return index;
+    }
+
+    /**
+     * @return the reloading mapper mounted in the application, {@code null} if routes are not reloaded
+     */
+    public static ReloadingRoutesMapper get(final Application application) {
+        return application.getMetaData(KEY);
+    }
+
+    @Override
+    public IRequestHandler mapRequest(final Request request) {
+        return table.mapper.mapRequest(request);
+    }
+
+    @Override
+    public int getCompatibilityScore(final Request request) {
+        return table.mapper.getCompatibilityScore(request);
+    }
+
+    @Override
+    public Url mapHandler(final IRequestHandler requestHandler) {
+        return table.mapper.mapHandler(requestHandler);
+    }
+
+    /**
+     * Starts watching the routes file, until the application is destroyed.
+     */
+    void start() {
+        application.setMetaData(KEY, this);
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "routes-reloader-" + application.getName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        RoutesMountParser.startRoutesTable(table.mapper, settings);
+        final long interval = settings.getReloadInterval();
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                reloadIfChanged();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        application.getApplicationListeners().add(new IApplicationListener() {
+            @Override
+            public void onAfterInitialized(final Application application) {
+            }
+
+            @Override
+            public void onBeforeDestroyed(final Application application) {
+                scheduler.shutdownNow();
+                RoutesMountParser.stopRoutesTable(table.mapper);
+                for (URLPageMapping mapping : table.mappings) {
+                    mapping.unpublishMetrics(settings.getMetricsPublisher());
+                }
+            }
+        });
+    }
+
+    /**
+     * Reloads the routes if the checksum of the file changed
+     * @return {@code true} if the routes have been reloaded
+     */
+    synchronized boolean reloadIfChanged() {
+        try {
+            final long newChecksum = checksum();
+            if (newChecksum == checksum) {
+                return false;
+            }
+            checksum = newChecksum;
+            final List<URL> previousSources = sources;
+            reload();
+            if (!sources.equals(previousSources)) {
+                // includes changed, files read for the first time are watched from now on
+                checksum = checksum();
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to reload routes from {}, current routes are kept until the file changes again : {}",
+                         routes, e.getMessage());
+            return false;
+        }
+    }
+
+    private void reload() throws IOException {
+        final long start = System.nanoTime();
+        final RoutesTable previous = this.table;
+        final RoutesTable next = newTable(parse(), previous);
+        for (URLPageMapping removed : next.removed) {
+            removed.unpublishMetrics(settings.getMetricsPublisher());
+        }
+        RoutesMountParser.startRoutesTable(next.mapper, settings);
+        // the index of the new routes replaces the previous one at once, roles of removed routes go away with it
+        RoutesRoleAuthorizationStrategy.install(application, next.roleIndex, roleCheckingStrategy);
+        this.table = next;
+        if (responseCache != null) {
+            // pages rendered by the previous routes may link to removed routes
+            responseCache.clear();
+        }
+        RoutesMountParser.stopRoutesTable(previous.mapper);
+        lastReloadDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        lastAddedRoutes = next.added;
+        lastRemovedRoutes = next.removed.size();
+        reloads.incrementAndGet();
+        LOGGER.info("Routes reloaded from {} in {} ms : {} added, {} removed",
+                    routes, lastReloadDuration, lastAddedRoutes, lastRemovedRoutes);
+    }
+
+    private List<URLPageMapping> parse() throws IOException {
+        // the precompiled route table is ignored, it holds the routes file of the last build. The indexes of the
+        // annotated pages are not watched, they only change when the application is rebuilt
+        final List<URLPageMapping> mappings = new RoutesMountParser(settings, responseCache).parseIndexes();
+        final RoutesMountParser parser = new RoutesMountParser(settings, responseCache);
+        mappings.addAll(parser.parse(routes));
+        sources = parser.getSources();
+        return mappings;
+    }
+
+    private long checksum() throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[4096];
+        for (URL source : sources) {
+            try (InputStream stream = source.openStream()) {
+                int read;
+                while ((read = stream.read(buffer)) >= 0) {
+                    crc.update(buffer, 0, read);
+                }
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Builds the table for the given mappings, reusing the mappers of the previous table for unchanged routes.
+     */
+    private RoutesTable newTable(final List<URLPageMapping> mappings, final RoutesTable previous) {
+        // checked before any mapper is created, a rejected table must not publish the metrics of its routes
+        final RoleIndex roleIndex = roleIndex(mappings);
+        final Map<URLPageMapping, Deque<Integer>> reusable = new HashMap<>();
+        for (int i = 0; i < previous.mappings.size(); i++) {
+            Deque<Integer> indexes = reusable.get(previous.mappings.get(i));
+            if (indexes == null) {
+                indexes = new ArrayDeque<>();
+                reusable.put(previous.mappings.get(i), indexes);
+            }
+            indexes.add(i);
+        }
+        final RouteMetricsPublisher publisher = settings.getMetricsPublisher();
+        final List<IRequestMapper> mappers = new ArrayList<>(mappings.size());
+        final List<URLPageMapping> added = new ArrayList<>();
+        final IRequestMapper mapper;
+        try {
+            for (URLPageMapping mapping : mappings) {
+                final Deque<Integer> indexes = reusable.get(mapping);
+                if (indexes != null && !indexes.isEmpty()) {
+                    final int index = indexes.poll();
+                    mappers.add(previous.mappers.get(index));
+                    mapping.reuseMetrics(previous.mappings.get(index));
+                } else {
+                    added.add(mapping);
+                    mappers.add(mapping.newRequestMapper(publisher));
+                }
+            }
+            mapper = RoutesMountParser.newRoutesTable(mappings, mappers, settings);
+        } catch (RuntimeException e) {
+            for (URLPageMapping mapping : added) {
+                mapping.unpublishMetrics(publisher);
+            }
+            throw e;
+        }
+        final List<URLPageMapping> removed = new ArrayList<>();
+        for (Deque<Integer> indexes : reusable.values()) {
+            for (Integer index : indexes) {
+                removed.add(previous.mappings.get(index));
+            }
+        }
+        return new RoutesTable(mappings, mappers, mapper, roleIndex, added.size(), removed);
+    }
+
+    /**
+     * @return number of reloads since the application started
+     */
+    public long getReloadCount() {
+        return reloads.get();
+    }
+
+    /**
+     * @return duration in milliseconds of the last reload
+     */
+    public long getLastReloadDuration() {
+        return lastReloadDuration;
+    }
+
+    /**
+     * @return number of routes added by the last reload
+     */
+    public int getLastAddedRoutes() {
+        return lastAddedRoutes;
+    }
+
+    /**
+     * @return number of routes removed by the last reload
+     */
+    public int getLastRemovedRoutes() {
+        return lastRemovedRoutes;
+    }
+
+    /**
+     * @return number of routes currently mounted
+     */
+    public int getRoutesCount() {
+        return table.mappings.size();
+    }
+
+    /**
+     * @return the mount points of the routes currently mounted
+     */
+    List<String> getMountPoints() {
+        final List<URLPageMapping> mappings = table.mappings;
+        final List<String> mountPoints = new ArrayList<>(mappings.size());
+        for (URLPageMapping mapping : mappings) {
+            mountPoints.add(mapping.getMountPoint());
+        }
+        return mountPoints;
+    }
+
+    /**
+     * Immutable set of mounted routes, published at once.
+     */
+    private static final class RoutesTable {
+        static final RoutesTable EMPTY = new RoutesTable(new ArrayList<URLPageMapping>(),
+                                                         new ArrayList<IRequestMapper>(), null, RoleIndex.EMPTY, 0,
+                                                         new ArrayList<URLPageMapping>());
+        private final List<URLPageMapping> mappings;
+        private final List<IRequestMapper> mappers;
+        private final IRequestMapper mapper;
+        private final RoleIndex roleIndex;
+        private final int added;
+        private final List<URLPageMapping> removed;
+
+        RoutesTable(final List<URLPageMapping> mappings, final List<IRequestMapper> mappers,
+                    final IRequestMapper mapper, final RoleIndex roleIndex, final int added,
+                    final List<URLPageMapping> removed) {
+            this.mappings = mappings;
+            this.mappers = mappers;
+            this.mapper = mapper;
+            this.roleIndex = roleIndex;
+            this.added = added;
+            this.removed = removed;
+        }
+    }
+}
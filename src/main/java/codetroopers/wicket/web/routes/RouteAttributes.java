@@ -0,0 +1,327 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.mapper.CacheDirectives;
+import codetroopers.wicket.web.routes.mapper.RouteLimiter;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attributes of a route, given as <code>name=value</code> fields after its roles :
+ * <ul>
+ *     <li><code>cache=duration</code> : maximum age of the page in browsers and proxies, in seconds or with a
+ *     <code>s</code>, <code>m</code>, <code>h</code> or <code>d</code> unit (<code>cache=10m</code>)</li>
+ *     <li><code>stateless=true</code> : the page is stateless, its rendering may be kept in the response cache</li>
+ *     <li><code>validate=etag</code> or <code>validate=last-modified</code> : how browsers revalidate the page</li>
+ *     <li><code>rate=count/period</code> : number of requests handled per second, minute or hour
+ *     (<code>rate=20/s</code>, <code>rate=100/m</code>), the others being answered with
+ *     <code>429 Too Many Requests</code></li>
+ *     <li><code>burst=count</code> : number of requests handled at once after a quiet period, the count of the rate
+ *     by default</li>
+ *     <li><code>concurrency=count</code> : number of requests handled at the same time, the others being answered
+ *     with <code>503 Service Unavailable</code></li>
+ *     <li><code>exact=true</code> : URLs having segments after the mount path are not matched</li>
+ *     <li><code>strict=true</code> : URLs having a parameter not matching its regular expression are not matched,
+ *     instead of having the parameter removed</li>
+ *     <li><code>versionInUrl=false</code> : the page version is not added to the URLs of the stateful pages</li>
+ *     <li><code>host=name[,name]</code> : the route is only mounted for requests whose <code>Host</code> header
+ *     names one of the hosts, the routes without this attribute being shared by every host. The only attribute
+ *     allowed for packages.</li>
+ * </ul>
+ *
+ * @author cgatay
+ */
+final class RouteAttributes {
+    static final String CACHE = "cache";
+    static final String STATELESS = "stateless";
+    static final String VALIDATE = "validate";
+    static final String RATE = "rate";
+    static final String BURST = "burst";
+    static final String CONCURRENCY = "concurrency";
+    static final String EXACT = "exact";
+    static final String STRICT = "strict";
+    static final String VERSION_IN_URL = "versionInUrl";
+    static final String HOST = "host";
+
+    static final RouteAttributes NONE = new RouteAttributes(Collections.<String>emptyList(), CacheDirectives.NONE,
+                                                            0, TimeUnit.SECONDS, 0, 0, false, false, true,
+                                                            Collections.<String>emptySet());
+
+    private final List<String> attributes;
+    private final CacheDirectives cacheDirectives;
+    private final long rate;
+    private final TimeUnit ratePeriod;
+    private final int burst;
+    private final int concurrency;
+    private final boolean exact;
+    private final boolean strict;
+    private final boolean versionInUrl;
+    private final Set<String> hosts;
+
+    private RouteAttributes(final List<String> attributes, final CacheDirectives cacheDirectives, final long rate,
+                            final TimeUnit ratePeriod, final int burst, final int concurrency, final boolean exact,
+                            final boolean strict, final boolean versionInUrl, final Set<String> hosts) {
+        this.attributes = attributes;
+        this.cacheDirectives = cacheDirectives;
+        this.rate = rate;
+        this.ratePeriod = ratePeriod;
+        this.burst = burst;
+        this.concurrency = concurrency;
+        this.exact = exact;
+        this.strict = strict;
+        this.versionInUrl = versionInUrl;
+        this.hosts = hosts;
+    }
+
+    /**
+     * @param attributes <code>name=value</code> fields of a route line
+     * @throws IllegalArgumentException if an attribute is unknown, repeated or has an invalid value
+     */
+    static RouteAttributes parse(final List<String> attributes) {
+        if (attributes.isEmpty()) {
+            return NONE;
+        }
+        long maxAge = 0;
+        boolean stateless = false;
+        CacheDirectives.Validation validation = CacheDirectives.Validation.NONE;
+        long rate = 0;
+        TimeUnit ratePeriod = TimeUnit.SECONDS;
+        int burst = 0;
+        int concurrency = 0;
+        boolean exact = false;
+        boolean strict = false;
+        boolean versionInUrl = true;
+        Set<String> hosts = Collections.emptySet();
+        final Set<String> names = new HashSet<>();
+        for (String attribute : attributes) {
+            final int equals = attribute.indexOf('=');
+            final String name = attribute.substring(0, equals);
+            final String value = attribute.substring(equals + 1);
+            if (!names.add(name)) {
+                throw new IllegalArgumentException("Attribute " + name + " is given twice");
+            }
+            if (CACHE.equals(name)) {
+                maxAge = parseDuration(value);
+            } else if (STATELESS.equals(name)) {
+                stateless = parseBoolean(name, value);
+            } else if (VALIDATE.equals(name)) {
+                validation = parseValidation(value);
+            } else if (RATE.equals(name)) {
+                final int slash = value.indexOf('/');
+                ratePeriod = slash < 0 ? TimeUnit.SECONDS : parsePeriod(value.substring(slash + 1));
+                rate = parseCount(name, slash < 0 ? value : value.substring(0, slash));
+            } else if (BURST.equals(name)) {
+                burst = (int) Math.min(Integer.MAX_VALUE, parseCount(name, value));
+            } else if (CONCURRENCY.equals(name)) {
+                concurrency = (int) Math.min(Integer.MAX_VALUE, parseCount(name, value));
+            } else if (EXACT.equals(name)) {
+                exact = parseBoolean(name, value);
+            } else if (STRICT.equals(name)) {
+                strict = parseBoolean(name, value);
+            } else if (VERSION_IN_URL.equals(name)) {
+                versionInUrl = parseBoolean(name, value);
+            } else if (HOST.equals(name)) {
+                hosts = parseHosts(value);
+            } else {
+                throw new IllegalArgumentException("Unknown attribute " + attribute);
+            }
+        }
+        if (burst > 0 && rate == 0) {
+            throw new IllegalArgumentException("Attribute " + BURST + " is given without " + RATE);
+        }
+        return new RouteAttributes(attributes,
+                                   new CacheDirectives(maxAge, TimeUnit.SECONDS, stateless, validation),
+                                   rate, ratePeriod, burst > 0 ? burst : (int) Math.min(Integer.MAX_VALUE, rate),
+                                   concurrency, exact, strict, versionInUrl, hosts);
+    }
+
+    private static long parseCount(final String name, final String value) {
+        try {
+            final long count = Long.parseLong(value);
+            if (count > 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid value for " + name + " : " + value
+                                           + ", expected a positive number");
+    }
+
+    private static Set<String> parseHosts(final String value) {
+        final Set<String> hosts = new LinkedHashSet<>();
+        for (String host : value.split(",", -1)) {
+            if (host.isEmpty() || host.indexOf(':') >= 0 || host.indexOf('/') >= 0) {
+                throw new IllegalArgumentException("Invalid value for " + HOST + " : " + value
+                                                   + ", expected host names separated by commas");
+            }
+            hosts.add(host.toLowerCase(Locale.ENGLISH));
+        }
+        return Collections.unmodifiableSet(hosts);
+    }
+
+    private static TimeUnit parsePeriod(final String value) {
+        switch (value) {
+            case "s":
+                return TimeUnit.SECONDS;
+            case "m":
+                return TimeUnit.MINUTES;
+            case "h":
+                return TimeUnit.HOURS;
+            default:
+                throw new IllegalArgumentException("Invalid period for " + RATE + " : " + value
+                                                   + ", expected s, m or h");
+        }
+    }
+
+    /**
+     * @return the duration in seconds
+     */
+    static long parseDuration(final String value) {
+        final char unit = value.isEmpty() ? ' ' : value.charAt(value.length() - 1);
+        final TimeUnit timeUnit;
+        switch (unit) {
+            case 's':
+                timeUnit = TimeUnit.SECONDS;
+                break;
+            case 'm':
+                timeUnit = TimeUnit.MINUTES;
+                break;
+            case 'h':
+                timeUnit = TimeUnit.HOURS;
+                break;
+            case 'd':
+                timeUnit = TimeUnit.DAYS;
+                break;
+            default:
+                timeUnit = null;
+        }
+        final String amount = timeUnit == null ? value : value.substring(0, value.length() - 1);
+        try {
+            final long duration = Long.parseLong(amount);
+            if (duration >= 0) {
+                return (timeUnit == null ? TimeUnit.SECONDS : timeUnit).toSeconds(duration);
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid duration " + value);
+    }
+
+    private static boolean parseBoolean(final String name, final String value) {
+        if ("true".equals(value) || "false".equals(value)) {
+            return Boolean.parseBoolean(value);
+        }
+        throw new IllegalArgumentException("Invalid value for " + name + " : " + value + ", expected true or false");
+    }
+
+    private static CacheDirectives.Validation parseValidation(final String value) {
+        for (CacheDirectives.Validation validation : CacheDirectives.Validation.values()) {
+            if (validation.name().replace('_', '-').toLowerCase(Locale.ENGLISH).equals(value)) {
+                return validation;
+            }
+        }
+        throw new IllegalArgumentException("Invalid value for " + VALIDATE + " : " + value
+                                           + ", expected none, etag or last-modified");
+    }
+
+    /**
+     * @return the caching of the pages of the route, {@link CacheDirectives#NONE} if not given
+     */
+    CacheDirectives getCacheDirectives() {
+        return cacheDirectives;
+    }
+
+    /**
+     * @return a new limiter for the mapper of the route, {@code null} if the route has no limit
+     */
+    RouteLimiter newLimiter() {
+        if (rate == 0 && concurrency == 0) {
+            return null;
+        }
+        return new RouteLimiter(rate, ratePeriod, burst, concurrency);
+    }
+
+    /**
+     * @return whether URLs having segments after the mount path are rejected
+     */
+    boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * @return whether URLs having an incorrect parameter are rejected, instead of having the parameter removed
+     */
+    boolean isStrict() {
+        return strict;
+    }
+
+    boolean isVersionInUrl() {
+        return versionInUrl;
+    }
+
+    /**
+     * @return the lower case names of the hosts the route is mounted for, empty if the route is shared by every host
+     */
+    Set<String> getHosts() {
+        return hosts;
+    }
+
+    boolean isEmpty() {
+        return attributes.isEmpty();
+    }
+
+    /**
+     * @return whether attributes change the mapper of the route, all of them but <code>host</code>
+     */
+    boolean hasMapperOptions() {
+        return attributes.size() > (hosts.isEmpty() ? 0 : 1);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return attributes.equals(((RouteAttributes) o).attributes);
+    }
+
+    @Override
+    public int hashCode() {
+        return attributes.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return attributes.toString();
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.mounts.MountParameter;
+import codetroopers.wicket.web.routes.mounts.MountPathExtractor;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Routes of a routes file, checked and split at build time.
+ *
+ * The table is compiled from <code>routes.conf</code> by the <code>wicket-routes-mount-maven-plugin</code>, which
+ * checks every class and regular expression, and written as a binary resource ({@link #RESOURCE}). When this
+ * resource is present, {@link RoutesMountParser} maps it directly into mappers instead of parsing the routes file.
+ *
+ * @author cgatay
+ */
+public final class RouteTable {
+    /**
+     * Classpath location of the precompiled table
+     */
+    public static final String RESOURCE = "/routes.bin";
+    private static final int MAGIC = 0x574d5254;
+    private static final short VERSION = 2;
+    /** version without route attributes, still read */
+    private static final short VERSION_1 = 1;
+    private static final String PAGE_CLASS = "org.apache.wicket.Page";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final List<Route> routes;
+
+    private RouteTable(final List<Route> routes) {
+        this.routes = Collections.unmodifiableList(routes);
+    }
+
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Compiles a routes file, resolving classes with the given class loader.
+     * @param sourceName name of the routes file, used in error messages
+     * @param routes content of the routes file
+     * @param classLoader class loader of the application classes
+     * @return the compiled table
+     * @throws InvalidRoutesException if at least one route cannot be mounted, with every error found
+     */
+    public static RouteTable compile(final String sourceName, final Reader routes, final ClassLoader classLoader)
+            throws IOException, InvalidRoutesException {
+        return compile(sourceName, null, routes, classLoader);
+    }
+
+    /**
+     * Compiles a routes file and the files it includes, resolving classes with the given class loader.
+     * @param sourceName name of the routes file, used in error messages
+     * @param routes location of the routes file, relative includes are resolved against it
+     * @param classLoader class loader of the application classes
+     * @return the compiled table
+     * @throws InvalidRoutesException if at least one route cannot be mounted, with every error found
+     */
+    public static RouteTable compile(final String sourceName, final URL routes, final ClassLoader classLoader)
+            throws IOException, InvalidRoutesException {
+        return compile(sourceName, routes, new InputStreamReader(routes.openStream(), UTF_8), classLoader);
+    }
+
+    private static RouteTable compile(final String sourceName, final URL url, final Reader routes,
+                                      final ClassLoader classLoader) throws IOException, InvalidRoutesException {
+        final List<Route> compiled = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+        final Class<?> pageClass = loadClass(classLoader, PAGE_CLASS);
+        if (pageClass == null) {
+            throw new IllegalArgumentException(PAGE_CLASS + " cannot be loaded, is wicket-core on the classpath ?");
+        }
+        for (RoutesMountParser.RouteLine line : RoutesMountParser.readLines(sourceName, url, routes, classLoader,
+                                                                            UTF_8)) {
+            final String error = check(line, classLoader, pageClass);
+            if (error != null) {
+                errors.add(line.source + ":" + line.number + ": " + error);
+                continue;
+            }
+            final boolean page = loadClass(classLoader, line.className) != null;
+            final MountPathExtractor extractor = new MountPathExtractor(line.mountPoint);
+            final List<String> roles = new ArrayList<>();
+            if (line.roles != null && line.roles.length() > 0) {
+                Collections.addAll(roles, line.roles.split(","));
+            }
+            compiled.add(new Route(line.number, line.mountPoint, page ? extractor.getPath() : line.mountPoint,
+                                   line.className, page, roles,
+                                   page ? extractor.getParameters() : new ArrayList<MountParameter>(),
+                                   line.attributes));
+        }
+        if (!errors.isEmpty()) {
+            throw new InvalidRoutesException(errors);
+        }
+        return new RouteTable(compiled);
+    }
+
+    /**
+     * @return a description of the problem of the line, {@code null} if it can be mounted
+     */
+    private static String check(final RoutesMountParser.RouteLine line, final ClassLoader classLoader,
+                                final Class<?> pageClass) {
+        final RouteAttributes attributes;
+        try {
+            attributes = RouteAttributes.parse(line.attributes);
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        final Class<?> aClass = loadClass(classLoader, line.className);
+        if (aClass == null) {
+            if (classLoader.getResource(line.className.replace('.', '/')) == null) {
+                return "ClassNotFound " + line.className;
+            }
+            if (attributes.hasMapperOptions()) {
+                return "Attributes cannot be given to package " + line.className;
+            }
+            return null;
+        }
+        if (!pageClass.isAssignableFrom(aClass)) {
+            return line.className + " is not a wicket Page !";
+        }
+        return checkMountPoint(line.mountPoint);
+    }
+
+    /**
+     * Checks the placeholders of a mount path and their regular expressions
+     * @return a description of the problem of the mount path, {@code null} if it can be mounted
+     */
+    public static String checkMountPoint(final String mountPoint) {
+        final MountPathExtractor extractor = new MountPathExtractor(mountPoint);
+        int placeholders = 0;
+        for (String segment : mountPoint.split("/")) {
+            if (segment.startsWith("${") || segment.startsWith("#{")) {
+                placeholders++;
+            }
+        }
+        if (placeholders != extractor.getParameters().size()) {
+            return "Malformed pattern in " + mountPoint;
+        }
+        for (MountParameter parameter : extractor.getParameters()) {
+            if (parameter.regex() != null) {
+                try {
+                    Pattern.compile(parameter.regex());
+                } catch (PatternSyntaxException e) {
+                    return "Malformed regular expression for " + parameter.value() + " : " + e.getDescription();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Class<?> loadClass(final ClassLoader classLoader, final String className) {
+        try {
+            return Class.forName(className, false, classLoader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    public void write(final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeInt(routes.size());
+        for (Route route : routes) {
+            data.writeInt(route.line);
+            data.writeUTF(route.mountPoint);
+            data.writeUTF(route.path);
+            data.writeUTF(route.target);
+            data.writeBoolean(route.page);
+            data.writeInt(route.roles.size());
+            for (String role : route.roles) {
+                data.writeUTF(role);
+            }
+            data.writeInt(route.parameters.size());
+            for (MountParameter parameter : route.parameters) {
+                data.writeChar(parameter.type().marker());
+                data.writeUTF(parameter.value());
+                data.writeBoolean(parameter.regex() != null);
+                if (parameter.regex() != null) {
+                    data.writeUTF(parameter.regex());
+                }
+            }
+            data.writeInt(route.attributes.size());
+            for (String attribute : route.attributes) {
+                data.writeUTF(attribute);
+            }
+        }
+        data.flush();
+    }
+
+    public static RouteTable read(final InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a routes table");
+        }
+        final short version = data.readShort();
+        if (version != VERSION && version != VERSION_1) {
+            throw new IOException("Unsupported routes table version " + version + ", expected " + VERSION);
+        }
+        final int count = data.readInt();
+        final List<Route> routes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int line = data.readInt();
+            final String mountPoint = data.readUTF();
+            final String path = data.readUTF();
+            final String target = data.readUTF();
+            final boolean page = data.readBoolean();
+            final int roleCount = data.readInt();
+            final List<String> roles = new ArrayList<>(roleCount);
+            for (int r = 0; r < roleCount; r++) {
+                roles.add(data.readUTF());
+            }
+            final int parameterCount = data.readInt();
+            final List<MountParameter> parameters = new ArrayList<>(parameterCount);
+            for (int p = 0; p < parameterCount; p++) {
+                final MountParameter.Type type = MountParameter.Type.parse(String.valueOf(data.readChar()));
+                final String name = data.readUTF();
+                parameters.add(data.readBoolean() ? new MountParameter(type, name, data.readUTF())
+                                                  : new MountParameter(type, name));
+            }
+            final int attributeCount = version == VERSION_1 ? 0 : data.readInt();
+            final List<String> attributes = new ArrayList<>(attributeCount);
+            for (int a = 0; a < attributeCount; a++) {
+                attributes.add(data.readUTF());
+            }
+            routes.add(new Route(line, mountPoint, path, target, page, roles, parameters, attributes));
+        }
+        return new RouteTable(routes);
+    }
+
+    /**
+     * Route of the table
+     */
+    public static final class Route {
+        private final int line;
+        private final String mountPoint;
+        private final String path;
+        private final String target;
+        private final boolean page;
+        private final List<String> roles;
+        private final List<MountParameter> parameters;
+        private final List<String> attributes;
+
+        Route(final int line, final String mountPoint, final String path, final String target, final boolean page,
+              final List<String> roles, final List<MountParameter> parameters, final List<String> attributes) {
+            this.line = line;
+            this.mountPoint = mountPoint;
+            this.path = path;
+            this.target = target;
+            this.page = page;
+            this.roles = Collections.unmodifiableList(roles);
+            this.parameters = Collections.unmodifiableList(parameters);
+            this.attributes = Collections.unmodifiableList(attributes);
+        }
+
+        /**
+         * @return line of the route in the routes file
+         */
+        public int getLine() {
+            return line;
+        }
+
+        public String getMountPoint() {
+            return mountPoint;
+        }
+
+        /**
+         * @return mount path as expected by the mapper, placeholders stripped from their regular expression
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return name of the page class, or of the package for package mounts
+         */
+        public String getTarget() {
+            return target;
+        }
+
+        public boolean isPage() {
+            return page;
+        }
+
+        public List<String> getRoles() {
+            return roles;
+        }
+
+        public List<MountParameter> getParameters() {
+            return parameters;
+        }
+
+        /**
+         * @return <code>name=value</code> attributes of the route
+         */
+        public List<String> getAttributes() {
+            return attributes;
+        }
+    }
+}
@@ -0,0 +1,833 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.automaton.Automaton;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Finds the routes which can never be reached or whose precedence is ambiguous, without mounting them.
+ *
+ * Every pair of routes sharing a literal prefix is compared segment by segment, for each number of segments a URL
+ * may have. The regular expressions of the placeholders are compiled to automata (see {@link Automaton}) which are
+ * intersected and compared, so that <code>/user/${id:[0-9]+}</code> and <code>/user/new</code> only conflict when
+ * incorrect parameters are ignored. Of two routes matching the same URL, the one with the best compatibility score
+ * wins, the last one in the file on equal scores. The analyzer reports :
+ * <ul>
+ * <li>{@link Finding.Kind#DUPLICATE} routes, mounted twice with the same path</li>
+ * <li>{@link Finding.Kind#SHADOWED} routes, all of whose URLs are handled by a single other route</li>
+ * <li>{@link Finding.Kind#OVERLAP} routes, sharing some URLs with another route which neither contains nor is
+ * contained in them. A route whose URLs are all matched by a catch-all route it wins over is expected and not
+ * reported.</li>
+ * </ul>
+ * Routes shadowed by several routes together are not detected. Regular expressions which cannot be compiled to an
+ * automaton (back references, look-arounds...) are considered to accept any value.
+ * <p/>
+ * The report also suggests an order of the routes file grouping the routes by literal prefix, which keeps the
+ * precedence of every conflicting pair, and lists the routes starting with a placeholder : no request can be
+ * rejected by them on a literal prefix.
+ * <p/>
+ * The analyzer can be run on a routes file from the command line, and fails (exit code 1) on duplicated or
+ * shadowed routes :
+ * <pre>
+ * java -cp ... codetroopers.wicket.web.routes.RoutesAnalyzer [--fail-on-overlap] [--order] src/main/resources/routes.conf
+ * </pre>
+ *
+ * @author cgatay
+ */
+public final class RoutesAnalyzer {
+    private static final Segment ANY_SEGMENT = new Segment(null, null, false, "*");
+
+    private final String sourceName;
+    private final List<Template> templates = new ArrayList<>();
+    private final Map<String, Automaton> languages = new HashMap<>();
+    private final Map<Long, String> intersections = new HashMap<>();
+    private final Map<Long, Boolean> inclusions = new HashMap<>();
+    private final Map<Automaton, Integer> automatonIds = new HashMap<>();
+    private final List<String> unsupportedExpressions = new ArrayList<>();
+    private final Automaton nonEmptyValue = Automaton.compile("[\\s\\S]+");
+
+    private RoutesAnalyzer(final String sourceName) {
+        this.sourceName = sourceName;
+    }
+
+    /**
+     * Analyzes a routes file. Targets are classes or packages, a target is considered a package if the class loader
+     * knows no class but a directory with its name, or, without class loader, if its last part starts with a lower
+     * case letter.
+     * @param sourceName name of the routes file, used in the report
+     * @param routes content of the routes file
+     * @param classLoader class loader of the application classes, may be {@code null}
+     */
+    public static Report analyze(final String sourceName, final Reader routes, final ClassLoader classLoader)
+            throws IOException {
+        final List<Route> parsed = new ArrayList<>();
+        for (RoutesMountParser.RouteLine line : RoutesMountParser.readLines(routes)) {
+            parsed.add(route(line.number, line.mountPoint, line.className, isPage(line.className, classLoader),
+                             line.attributes).withText(line.text));
+        }
+        return analyze(sourceName, parsed);
+    }
+
+    /**
+     * Analyzes a precompiled routes table
+     */
+    public static Report analyze(final String sourceName, final RouteTable table) {
+        final List<Route> routes = new ArrayList<>();
+        for (RouteTable.Route route : table.getRoutes()) {
+            routes.add(route(route.getLine(), route.getMountPoint(), route.getTarget(), route.isPage(),
+                             route.getAttributes()));
+        }
+        return analyze(sourceName, routes);
+    }
+
+    /**
+     * Creates a route matching as its <code>exact</code> and <code>strict</code> attributes tell, invalid attributes
+     * being left to the checks of the routes file
+     */
+    private static Route route(final int line, final String mountPoint, final String target, final boolean page,
+                               final List<String> attributes) {
+        try {
+            final RouteAttributes parsed = RouteAttributes.parse(attributes);
+            return new Route(line, mountPoint, target, page, parsed.isExact(), parsed.isStrict())
+                    .withHosts(parsed.getHosts());
+        } catch (IllegalArgumentException e) {
+            return new Route(line, mountPoint, target, page);
+        }
+    }
+
+    /**
+     * Analyzes routes, in the order they are mounted
+     */
+    public static Report analyze(final String sourceName, final List<Route> routes) {
+        final RoutesAnalyzer analyzer = new RoutesAnalyzer(sourceName);
+        for (Route route : routes) {
+            analyzer.templates.add(analyzer.new Template(route, analyzer.templates.size()));
+        }
+        return analyzer.analyze();
+    }
+
+    private static boolean isPage(final String target, final ClassLoader classLoader) {
+        final String resource = target.replace('.', '/');
+        if (classLoader != null) {
+            if (classLoader.getResource(resource + ".class") != null) {
+                return true;
+            }
+            if (classLoader.getResource(resource) != null) {
+                return false;
+            }
+        }
+        final String simpleName = target.substring(target.lastIndexOf('.') + 1);
+        return simpleName.isEmpty() || !Character.isLowerCase(simpleName.charAt(0));
+    }
+
+    private Report analyze() {
+        final List<Finding> findings = new ArrayList<>();
+        // overlapping pairs of equal score, whose order in the file decides which one wins
+        final List<int[]> ties = new ArrayList<>();
+        final PrefixNode root = new PrefixNode();
+        for (Template template : templates) {
+            PrefixNode node = root;
+            for (String literal : template.prefix) {
+                PrefixNode child = node.children.get(literal);
+                if (child == null) {
+                    child = new PrefixNode();
+                    node.children.put(literal, child);
+                }
+                node = child;
+            }
+            node.templates.add(template);
+        }
+        // two routes may only conflict if the literal prefix of one of them starts with the prefix of the other
+        compareAll(root, new ArrayList<Template>(), findings, ties);
+        Collections.sort(findings, new Comparator<Finding>() {
+            @Override
+            public int compare(final Finding first, final Finding second) {
+                final int byLine = Integer.compare(first.route.line, second.route.line);
+                return byLine != 0 ? byLine : Integer.compare(first.other.line, second.other.line);
+            }
+        });
+        final List<Route> unprefixed = new ArrayList<>();
+        for (Template template : templates) {
+            if (template.prefix.isEmpty()) {
+                unprefixed.add(template.route);
+            }
+        }
+        return new Report(sourceName, findings, suggestOrder(root, ties), unprefixed, unsupportedExpressions);
+    }
+
+    private void compareAll(final PrefixNode node, final List<Template> ancestors, final List<Finding> findings,
+                            final List<int[]> ties) {
+        for (int i = 0; i < node.templates.size(); i++) {
+            final Template template = node.templates.get(i);
+            for (Template ancestor : ancestors) {
+                compare(ancestor, template, findings, ties);
+            }
+            for (int j = 0; j < i; j++) {
+                compare(node.templates.get(j), template, findings, ties);
+            }
+        }
+        final int size = ancestors.size();
+        ancestors.addAll(node.templates);
+        for (PrefixNode child : node.children.values()) {
+            compareAll(child, ancestors, findings, ties);
+        }
+        ancestors.subList(size, ancestors.size()).clear();
+    }
+
+    private void compare(final Template first, final Template second, final List<Finding> findings,
+                         final List<int[]> ties) {
+        if (!first.route.sharesHost(second.route)) {
+            return;
+        }
+        final String example = overlapExample(first, second);
+        if (example == null) {
+            return;
+        }
+        final Template winner = first.precedes(second) ? first : second;
+        final Template loser = winner == first ? second : first;
+        if (winner.score == loser.score) {
+            ties.add(new int[]{Math.min(first.index, second.index), Math.max(first.index, second.index)});
+        }
+        if (winner.sameAs(loser)) {
+            findings.add(new Finding(Finding.Kind.DUPLICATE, loser.route, winner.route, example));
+        } else if (contains(winner, loser)) {
+            findings.add(new Finding(Finding.Kind.SHADOWED, loser.route, winner.route, example));
+        } else if (!contains(loser, winner)) {
+            findings.add(new Finding(Finding.Kind.OVERLAP, loser.route, winner.route, example));
+        }
+    }
+
+    /**
+     * @return a URL matched by both routes, {@code null} if there is none
+     */
+    private String overlapExample(final Template first, final Template second) {
+        final int longest = Math.max(first.segments.length, second.segments.length) + 1;
+        for (int length = 1; length <= longest; length++) {
+            final Segment[] mine = first.expand(length);
+            final Segment[] theirs = second.expand(length);
+            if (mine == null || theirs == null) {
+                continue;
+            }
+            final StringBuilder url = new StringBuilder();
+            boolean matched = true;
+            for (int i = 0; i < length && matched; i++) {
+                final String value = intersectionExample(mine[i], theirs[i]);
+                matched = value != null;
+                url.append('/').append(value);
+            }
+            if (matched) {
+                return url.toString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether every URL matched by {@code inner} is matched by {@code outer}
+     */
+    private boolean contains(final Template outer, final Template inner) {
+        final int longest = Math.max(outer.segments.length, inner.segments.length) + 1;
+        for (int length = 1; length <= longest; length++) {
+            final Segment[] innerSegments = inner.expand(length);
+            if (innerSegments == null) {
+                continue;
+            }
+            final Segment[] outerSegments = outer.expand(length);
+            if (outerSegments == null) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (!contains(outerSegments[i], innerSegments[i])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private String intersectionExample(final Segment first, final Segment second) {
+        if (first.literal != null || second.literal != null) {
+            final Segment other = first.literal != null ? second : first;
+            final String literal = first.literal != null ? first.literal : second.literal;
+            if (other.literal != null) {
+                return other.literal.equals(literal) ? literal : null;
+            }
+            return other.language == null || other.language.matches(literal) ? literal : null;
+        }
+        if (first.language == null && second.language == null) {
+            return "x";
+        }
+        if (first.language == null || second.language == null) {
+            return example(first.language != null ? first.language : second.language);
+        }
+        final long key = pairKey(first.language, second.language);
+        if (!intersections.containsKey(key)) {
+            intersections.put(key, first.language.intersectionExample(second.language));
+        }
+        return intersections.get(key);
+    }
+
+    private String example(final Automaton language) {
+        final String example = language.intersectionExample(nonEmptyValue);
+        return example != null ? example : language.example();
+    }
+
+    /**
+     * @return whether every value accepted by {@code inner} is accepted by {@code outer}
+     */
+    private boolean contains(final Segment outer, final Segment inner) {
+        if (outer.literal == null && outer.language == null) {
+            return true;
+        }
+        if (inner.literal != null) {
+            return outer.literal != null ? outer.literal.equals(inner.literal) : outer.language.matches(inner.literal);
+        }
+        final Automaton innerLanguage = inner.language != null ? inner.language : Automaton.anyValue();
+        final Automaton outerLanguage = outer.language != null ? outer.language : literalLanguage(outer.literal);
+        final long key = pairKey(innerLanguage, outerLanguage);
+        Boolean included = inclusions.get(key);
+        if (included == null) {
+            included = innerLanguage.isSubsetOf(outerLanguage);
+            inclusions.put(key, included);
+        }
+        return included;
+    }
+
+    private long pairKey(final Automaton first, final Automaton second) {
+        return ((long) id(first) << 32) | id(second);
+    }
+
+    private int id(final Automaton automaton) {
+        Integer id = automatonIds.get(automaton);
+        if (id == null) {
+            id = automatonIds.size();
+            automatonIds.put(automaton, id);
+        }
+        return id;
+    }
+
+    private Automaton literalLanguage(final String literal) {
+        final String key = "=" + literal;
+        Automaton language = languages.get(key);
+        if (language == null) {
+            language = Automaton.literal(literal);
+            languages.put(key, language);
+        }
+        return language;
+    }
+
+    /**
+     * @return the automaton of a placeholder regular expression, {@code null} if it is not supported
+     */
+    private Automaton language(final String regex, final boolean optional, final Route route) {
+        final String key = (optional ? "#" : "$") + regex;
+        if (languages.containsKey(key)) {
+            return languages.get(key);
+        }
+        final Automaton language = optional ? Automaton.compileOptional(regex) : Automaton.compile(regex);
+        if (language == null) {
+            unsupportedExpressions.add(sourceName + ":" + route.line + ": " + regex);
+        }
+        languages.put(key, language);
+        return language;
+    }
+
+    /**
+     * Orders the routes depth first in the prefix tree, routes of equal score sharing URLs keeping their order.
+     */
+    private List<Route> suggestOrder(final PrefixNode root, final List<int[]> ties) {
+        final int[] rank = new int[templates.size()];
+        rank(root, rank, new int[1]);
+        final List<List<Integer>> successors = new ArrayList<>(templates.size());
+        final int[] pending = new int[templates.size()];
+        for (int i = 0; i < templates.size(); i++) {
+            successors.add(new ArrayList<Integer>());
+        }
+        for (int[] tie : ties) {
+            successors.get(tie[0]).add(tie[1]);
+            pending[tie[1]]++;
+        }
+        final PriorityQueue<Integer> available = new PriorityQueue<>(Math.max(1, templates.size()),
+                                                                     new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer first, final Integer second) {
+                return Integer.compare(rank[first], rank[second]);
+            }
+        });
+        for (int i = 0; i < templates.size(); i++) {
+            if (pending[i] == 0) {
+                available.add(i);
+            }
+        }
+        final List<Route> order = new ArrayList<>(templates.size());
+        while (!available.isEmpty()) {
+            final int index = available.poll();
+            order.add(templates.get(index).route);
+            for (int successor : successors.get(index)) {
+                if (--pending[successor] == 0) {
+                    available.add(successor);
+                }
+            }
+        }
+        return order;
+    }
+
+    private static void rank(final PrefixNode node, final int[] rank, final int[] next) {
+        for (PrefixNode child : node.children.values()) {
+            rank(child, rank, next);
+        }
+        for (Template template : node.templates) {
+            rank[template.index] = next[0]++;
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        boolean failOnOverlap = false;
+        boolean printOrder = false;
+        String file = null;
+        for (String arg : args) {
+            if ("--fail-on-overlap".equals(arg)) {
+                failOnOverlap = true;
+            } else if ("--order".equals(arg)) {
+                printOrder = true;
+            } else if (file == null && !arg.startsWith("--")) {
+                file = arg;
+            } else {
+                file = null;
+                break;
+            }
+        }
+        if (file == null) {
+            System.err.println("Usage : RoutesAnalyzer [--fail-on-overlap] [--order] <routes file>");
+            System.exit(2);
+            return;
+        }
+        final long start = System.nanoTime();
+        final Report report;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8")) {
+            report = analyze(file, reader, Thread.currentThread().getContextClassLoader());
+        }
+        for (Finding finding : report.getFindings()) {
+            System.out.println(finding);
+        }
+        for (String expression : report.getUnsupportedExpressions()) {
+            System.out.println(expression + " : regular expression not analyzed, considered to accept any value");
+        }
+        System.out.println(report.getRoutesCount() + " route(s) analyzed in "
+                           + (System.nanoTime() - start) / 1000000 + " ms : " + report.getFindings().size()
+                           + " finding(s), " + report.getUnprefixedRoutes().size()
+                           + " route(s) starting with a placeholder");
+        if (printOrder) {
+            System.out.println();
+            for (Route route : report.getSuggestedOrder()) {
+                System.out.println(route.text != null ? route.text : route.mountPoint + "\t" + route.target);
+            }
+        }
+        System.exit(report.hasErrors() || (failOnOverlap && !report.getFindings().isEmpty()) ? 1 : 0);
+    }
+
+    /**
+     * Route to analyze
+     */
+    public static final class Route {
+        private final int line;
+        private final String mountPoint;
+        private final String target;
+        private final boolean page;
+        private final boolean exact;
+        private final boolean strict;
+        private Set<String> hosts = Collections.emptySet();
+        private String text;
+
+        /**
+         * Route mounted from a routes file : extra segments are accepted and incorrect parameters ignored.
+         * @param line line of the route in its file
+         * @param mountPoint mount path, with its placeholders
+         * @param target page class or package name
+         * @param page whether the target is a page class, or a package
+         */
+        public Route(final int line, final String mountPoint, final String target, final boolean page) {
+            this(line, mountPoint, target, page, false, false);
+        }
+
+        /**
+         * @param exact whether extra segments are rejected, see
+         * {@link codetroopers.wicket.web.routes.mapper.ParamCheckingPatternMapper.Builder#exact(boolean)}
+         * @param strict whether incorrect parameters are rejected, see
+         * {@link codetroopers.wicket.web.routes.mapper.ParamCheckingPatternMapper.Builder#ignoreIncorrectParameters(boolean)}
+         */
+        public Route(final int line, final String mountPoint, final String target, final boolean page,
+                     final boolean exact, final boolean strict) {
+            this.line = line;
+            this.mountPoint = mountPoint;
+            this.target = target;
+            this.page = page;
+            this.exact = exact;
+            this.strict = strict;
+        }
+
+        private Route withText(final String text) {
+            this.text = text;
+            return this;
+        }
+
+        /**
+         * @param hosts hosts the route is mounted for, empty if it is shared by every host
+         * @return {@code this} to allow chaining
+         */
+        public Route withHosts(final Set<String> hosts) {
+            this.hosts = hosts;
+            return this;
+        }
+
+        /**
+         * @return the hosts the route is mounted for, empty if it is shared by every host
+         */
+        public Set<String> getHosts() {
+            return hosts;
+        }
+
+        /**
+         * @return whether a request may be dispatched to both routes, which are mounted for a same host
+         */
+        boolean sharesHost(final Route other) {
+            return hosts.isEmpty() || other.hosts.isEmpty() || !Collections.disjoint(hosts, other.hosts);
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getMountPoint() {
+            return mountPoint;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        @Override
+        public String toString() {
+            return mountPoint + " -> " + target;
+        }
+    }
+
+    /**
+     * Conflict between a route and the route handling its URLs
+     */
+    public static final class Finding {
+        public enum Kind {
+            /** the route is mounted twice, only one of them is used */
+            DUPLICATE,
+            /** every URL of the route is handled by the other one */
+            SHADOWED,
+            /** some URLs of the route are handled by the other one */
+            OVERLAP
+        }
+
+        private final Kind kind;
+        private final Route route;
+        private final Route other;
+        private final String example;
+
+        Finding(final Kind kind, final Route route, final Route other, final String example) {
+            this.kind = kind;
+            this.route = route;
+            this.other = other;
+            this.example = example;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the route losing the URLs
+         */
+        public Route getRoute() {
+            return route;
+        }
+
+        /**
+         * @return the route handling the URLs
+         */
+        public Route getOther() {
+            return other;
+        }
+
+        /**
+         * @return a URL both routes match, handled by {@link #getOther()}
+         */
+        public String getExample() {
+            return example;
+        }
+
+        @Override
+        public String toString() {
+            final String description;
+            switch (kind) {
+                case DUPLICATE:
+                    description = "duplicates";
+                    break;
+                case SHADOWED:
+                    description = "is shadowed by";
+                    break;
+                default:
+                    description = "overlaps";
+            }
+            return route.mountPoint + " (line " + route.line + ") " + description + " " + other.mountPoint
+                   + " (line " + other.line + "), e.g. " + example + " is handled by " + other.target;
+        }
+    }
+
+    /**
+     * Result of an analysis
+     */
+    public static final class Report {
+        private final String sourceName;
+        private final List<Finding> findings;
+        private final List<Route> suggestedOrder;
+        private final List<Route> unprefixedRoutes;
+        private final List<String> unsupportedExpressions;
+
+        Report(final String sourceName, final List<Finding> findings, final List<Route> suggestedOrder,
+               final List<Route> unprefixedRoutes, final List<String> unsupportedExpressions) {
+            this.sourceName = sourceName;
+            this.findings = Collections.unmodifiableList(findings);
+            this.suggestedOrder = Collections.unmodifiableList(suggestedOrder);
+            this.unprefixedRoutes = Collections.unmodifiableList(unprefixedRoutes);
+            this.unsupportedExpressions = Collections.unmodifiableList(unsupportedExpressions);
+        }
+
+        /**
+         * @return the conflicts found, by line of the losing route
+         */
+        public List<Finding> getFindings() {
+            return findings;
+        }
+
+        public List<Finding> getFindings(final Finding.Kind kind) {
+            final List<Finding> result = new ArrayList<>();
+            for (Finding finding : findings) {
+                if (finding.kind == kind) {
+                    result.add(finding);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return whether some routes are never used (duplicated or shadowed)
+         */
+        public boolean hasErrors() {
+            for (Finding finding : findings) {
+                if (finding.kind != Finding.Kind.OVERLAP) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int getRoutesCount() {
+            return suggestedOrder.size();
+        }
+
+        /**
+         * @return every route, grouped by literal prefix, conflicting routes of equal score keeping their order
+         */
+        public List<Route> getSuggestedOrder() {
+            return suggestedOrder;
+        }
+
+        /**
+         * @return the routes whose first segment is a placeholder
+         */
+        public List<Route> getUnprefixedRoutes() {
+            return unprefixedRoutes;
+        }
+
+        /**
+         * @return the regular expressions not compiled to an automaton, as <code>file:line: regex</code>
+         */
+        public List<String> getUnsupportedExpressions() {
+            return unsupportedExpressions;
+        }
+
+        /**
+         * @return the findings as <code>file:line: message</code>
+         */
+        public List<String> getMessages() {
+            final List<String> messages = new ArrayList<>(findings.size());
+            for (Finding finding : findings) {
+                messages.add(sourceName + ":" + finding.route.line + ": " + finding);
+            }
+            return messages;
+        }
+    }
+
+    /**
+     * Segment of a mount path : a literal, or a placeholder accepting the values of its language
+     */
+    private static final class Segment {
+        private final String literal;
+        /** values accepted by the placeholder, {@code null} for any value */
+        private final Automaton language;
+        private final boolean optional;
+        private final String text;
+
+        Segment(final String literal, final Automaton language, final boolean optional, final String text) {
+            this.literal = literal;
+            this.language = language;
+            this.optional = optional;
+            this.text = text;
+        }
+    }
+
+    private final class Template {
+        private final Route route;
+        private final int index;
+        private final Segment[] segments;
+        private final List<String> prefix = new ArrayList<>();
+        private final int required;
+        private final boolean exact;
+        /** compatibility score of the mapper on the URLs it matches */
+        private final int score;
+
+        Template(final Route route, final int index) {
+            this.route = route;
+            this.index = index;
+            final List<Segment> parsed = new ArrayList<>();
+            boolean fixed = true;
+            int requiredSegments = 0;
+            for (String chunk : route.mountPoint.split("/")) {
+                if (chunk.isEmpty()) {
+                    continue;
+                }
+                final boolean placeholder = route.page && chunk.length() > 3 && chunk.charAt(1) == '{'
+                                            && (chunk.charAt(0) == '$' || chunk.charAt(0) == '#')
+                                            && chunk.charAt(chunk.length() - 1) == '}';
+                if (!placeholder) {
+                    parsed.add(new Segment(chunk, null, false, chunk));
+                    if (fixed) {
+                        prefix.add(chunk);
+                    }
+                    requiredSegments++;
+                    continue;
+                }
+                final boolean optional = chunk.charAt(0) == '#';
+                final String inner = chunk.substring(2, chunk.length() - 1);
+                final int colon = inner.indexOf(':');
+                final String regex = colon > 0 ? inner.substring(colon + 1) : null;
+                final Automaton language = route.strict && regex != null ? language(regex, optional, route) : null;
+                parsed.add(new Segment(null, language, optional, chunk.charAt(0) + (regex == null ? "" : regex)));
+                if (!optional) {
+                    requiredSegments++;
+                }
+                // following literals are not a prefix anymore
+                fixed = false;
+            }
+            if (!route.page) {
+                // the package mapper expects the name of the class after the mount path
+                parsed.add(new Segment(null, null, false, "$"));
+                requiredSegments++;
+            }
+            this.segments = parsed.toArray(new Segment[parsed.size()]);
+            this.required = requiredSegments;
+            this.exact = route.page && route.exact;
+            // MountedMapper scores the required segments, and the literal ones twice. MountMapper scores the
+            // segments of its mount path.
+            int literals = 0;
+            for (Segment segment : segments) {
+                if (segment.literal != null) {
+                    literals++;
+                }
+            }
+            this.score = route.page ? requiredSegments + literals : literals;
+        }
+
+        /**
+         * Optional placeholders are given values from the left, extra segments are accepted if not exact.
+         * @return the segment matching each position of a URL of the given length, {@code null} if no URL of this
+         * length is matched
+         */
+        Segment[] expand(final int length) {
+            if (length < required || (exact && length > segments.length)) {
+                return null;
+            }
+            int optionals = length - required;
+            final Segment[] expanded = new Segment[length];
+            int position = 0;
+            for (Segment segment : segments) {
+                if (segment.optional) {
+                    if (optionals == 0) {
+                        continue;
+                    }
+                    optionals--;
+                }
+                expanded[position++] = segment;
+            }
+            while (position < length) {
+                expanded[position++] = ANY_SEGMENT;
+            }
+            return expanded;
+        }
+
+        /**
+         * @return whether this route is tried before the other one by the compound mapper
+         */
+        boolean precedes(final Template other) {
+            return score != other.score ? score > other.score : index > other.index;
+        }
+
+        boolean sameAs(final Template other) {
+            if (segments.length != other.segments.length || exact != other.exact || route.page != other.route.page) {
+                return false;
+            }
+            for (int i = 0; i < segments.length; i++) {
+                if (!segments[i].text.equals(other.segments[i].text)
+                    || segments[i].language != other.segments[i].language) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class PrefixNode {
+        private final Map<String, PrefixNode> children = new TreeMap<>();
+        private final List<Template> templates = new ArrayList<>();
+    }
+}
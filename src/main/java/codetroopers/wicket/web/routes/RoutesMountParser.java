@@ -21,39 +21,166 @@
 
 package codetroopers.wicket.web.routes;
 
+import codetroopers.wicket.web.routes.authorization.RoleIndex;
+import codetroopers.wicket.web.routes.authorization.RoutesRoleAuthorizationStrategy;
+import codetroopers.wicket.web.routes.mapper.AdaptiveRoutesMapper;
+import codetroopers.wicket.web.routes.mapper.AutomatonRoutesMapper;
+import codetroopers.wicket.web.routes.mapper.CacheDirectives;
+import codetroopers.wicket.web.routes.mapper.HostRoutesMapper;
+import codetroopers.wicket.web.routes.mapper.IndexedPackageMapper;
+import codetroopers.wicket.web.routes.mapper.InstrumentedMountMapper;
 import codetroopers.wicket.web.routes.mapper.ParamCheckingPatternMapper;
+import codetroopers.wicket.web.routes.mapper.ResponseCache;
+import codetroopers.wicket.web.routes.mapper.RoutesTrieMapper;
+import codetroopers.wicket.web.routes.metrics.RouteMetrics;
+import codetroopers.wicket.web.routes.metrics.RouteMetricsPublisher;
+import codetroopers.wicket.web.routes.mounts.MountParameter;
 import codetroopers.wicket.web.routes.mounts.MountPathExtractor;
+import org.apache.wicket.Application;
+import org.apache.wicket.IApplicationListener;
 import org.apache.wicket.Page;
 import org.apache.wicket.authroles.authorization.strategies.role.metadata.MetaDataRoleAuthorizationStrategy;
 import org.apache.wicket.core.request.mapper.PackageMapper;
 import org.apache.wicket.protocol.http.WebApplication;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.mapper.CompoundRequestMapper;
 import org.apache.wicket.request.mapper.mount.MountMapper;
 import org.apache.wicket.util.lang.PackageName;
 import org.apache.wicket.util.string.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author cgatay
  */
 public class RoutesMountParser {
-    static Pattern routePattern = Pattern.compile("^([^\\t\\s]*)[\\t\\s]*([^\\t\\s]*)[\\t\\s]*([^\\t\\s]*)[\\t\\s]*$");
     private static final Logger LOGGER = LoggerFactory.getLogger(RoutesMountParser.class);
+    static final String ROUTES_FILE = "/routes.conf";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     public static void mount(WebApplication application) {
+        mount(application, new RoutesMountSettings());
+    }
+
+    public static void mount(final WebApplication application, final RoutesMountSettings settings) {
         try {
-            final List<URLPageMapping> mappings = new RoutesMountParser().parse();
-            for (URLPageMapping mapping : mappings) {
-                mapping.mount(application);
+            if (settings.getReloadInterval() > 0) {
+                final URL routes = RoutesMountParser.class.getResource(ROUTES_FILE);
+                if (routes == null) {
+                    throw new IllegalArgumentException("Cannot open file " + ROUTES_FILE);
+                }
+                if (RoutesMountParser.class.getResource(RouteTable.RESOURCE) != null) {
+                    LOGGER.info("Routes are reloaded from {}, the precompiled {} is not used", routes,
+                                RouteTable.RESOURCE);
+                }
+                final ReloadingRoutesMapper reloadingMapper = new ReloadingRoutesMapper(application, settings, routes);
+                application.mount(reloadingMapper);
+                reloadingMapper.start();
+                if (settings.getWarmUpIterations() > 0) {
+                    RoutesWarmUp.schedule(application, reloadingMapper.getMountPoints(),
+                                          settings.getWarmUpIterations());
+                }
+                return;
+            }
+            final RouteMetricsPublisher publisher = settings.getMetricsPublisher();
+            final RoleIndex.Builder roleIndex = settings.getRoleCheckingStrategy() != null ? RoleIndex.builder() : null;
+            final List<URLPageMapping> mappings;
+            if (settings.isCompiledToTrie() || settings.isCompiledToAutomaton() || settings.getReorderInterval() > 0) {
+                mappings = new RoutesMountParser(settings).parse();
+                final List<IRequestMapper> mappers = new ArrayList<>(mappings.size());
+                for (URLPageMapping mapping : mappings) {
+                    mappers.add(mapping.newRequestMapper(publisher));
+                    mapping.authorizeRoles(roleIndex);
+                }
+                final IRequestMapper routesTable = newRoutesTable(mappings, mappers, settings);
+                application.mount(routesTable);
+                startRoutesTable(routesTable, settings);
+                application.getApplicationListeners().add(new IApplicationListener() {
+                    @Override
+                    public void onAfterInitialized(final Application application) {
+                    }
+
+                    @Override
+                    public void onBeforeDestroyed(final Application application) {
+                        stopRoutesTable(routesTable);
+                    }
+                });
+            } else {
+                // each shared route is mounted as soon as it is read, mappings are only kept to unpublish their
+                // metrics and to warm up the routes. From the first route of a host on, every route is mounted at
+                // the end in a single mapper, so that routes keep the precedence of the order of the file
+                mappings = new ArrayList<>();
+                final List<URLPageMapping> hostMappings = new ArrayList<>();
+                final List<IRequestMapper> hostMappers = new ArrayList<>();
+                new RoutesMountParser(settings).parse(new MappingListener() {
+                    @Override
+                    public void mapping(final URLPageMapping mapping) {
+                        if (hostMappings.isEmpty() && mapping.getHosts().isEmpty()) {
+                            mapping.mount(application, publisher, roleIndex);
+                        } else {
+                            hostMappings.add(mapping);
+                            hostMappers.add(mapping.newRequestMapper(publisher));
+                            mapping.authorizeRoles(roleIndex);
+                        }
+                        if (publisher != null || settings.getWarmUpIterations() > 0) {
+                            mappings.add(mapping);
+                        }
+                    }
+                });
+                if (!hostMappings.isEmpty()) {
+                    application.mount(newRoutesTable(hostMappings, hostMappers, settings));
+                }
+            }
+            if (settings.getWarmUpIterations() > 0) {
+                final List<String> mountPoints = new ArrayList<>(mappings.size());
+                for (URLPageMapping mapping : mappings) {
+                    mountPoints.add(mapping.getMountPoint());
+                }
+                RoutesWarmUp.schedule(application, mountPoints, settings.getWarmUpIterations());
+            }
+            if (roleIndex != null) {
+                RoutesRoleAuthorizationStrategy.install(application, roleIndex.build(),
+                                                        settings.getRoleCheckingStrategy());
+            }
+            if (publisher != null) {
+                application.getApplicationListeners().add(new IApplicationListener() {
+                    @Override
+                    public void onAfterInitialized(final Application application) {
+                    }
+
+                    @Override
+                    public void onBeforeDestroyed(final Application application) {
+                        for (URLPageMapping mapping : mappings) {
+                            mapping.unpublishMetrics(publisher);
+                        }
+                    }
+                });
             }
         } catch (IOException e) {
             LOGGER.error("Unable to mount pages : {}", e.getMessage());
@@ -61,55 +188,455 @@ public class RoutesMountParser {
 
     }
 
+    /**
+     * Builds a single mapper dispatching to the mappers of the given mappings (in the same order). When routes are
+     * mounted for given hosts, a {@link HostRoutesMapper} dispatches to a table for each host, holding its routes and
+     * the shared ones, the hosts having the same routes sharing their table.
+     */
+    static IRequestMapper newRoutesTable(final List<URLPageMapping> mappings, final List<IRequestMapper> mappers,
+                                         final RoutesMountSettings settings) {
+        final Map<String, BitSet> routesOfHosts = new LinkedHashMap<>();
+        for (int i = 0; i < mappings.size(); i++) {
+            for (String host : mappings.get(i).getHosts()) {
+                BitSet routes = routesOfHosts.get(host);
+                if (routes == null) {
+                    routes = new BitSet(mappings.size());
+                    routesOfHosts.put(host, routes);
+                }
+                routes.set(i);
+            }
+        }
+        if (routesOfHosts.isEmpty()) {
+            return newRoutesSet(mappings, mappers, settings);
+        }
+        final BitSet shared = new BitSet(mappings.size());
+        for (int i = 0; i < mappings.size(); i++) {
+            if (mappings.get(i).getHosts().isEmpty()) {
+                shared.set(i);
+            }
+        }
+        final Map<BitSet, IRequestMapper> tables = new HashMap<>();
+        final Map<String, IRequestMapper> tablesOfHosts = new HashMap<>();
+        for (Map.Entry<String, BitSet> entry : routesOfHosts.entrySet()) {
+            final BitSet routes = entry.getValue();
+            routes.or(shared);
+            IRequestMapper table = tables.get(routes);
+            if (table == null) {
+                table = newRoutesSet(mappings, mappers, routes, settings);
+                tables.put(routes, table);
+            }
+            tablesOfHosts.put(entry.getKey(), table);
+        }
+        return new HostRoutesMapper(tablesOfHosts, newRoutesSet(mappings, mappers, shared, settings));
+    }
+
+    /**
+     * @param routes indexes of the mappings kept in the table
+     */
+    private static IRequestMapper newRoutesSet(final List<URLPageMapping> mappings, final List<IRequestMapper> mappers,
+                                               final BitSet routes, final RoutesMountSettings settings) {
+        final List<URLPageMapping> keptMappings = new ArrayList<>(routes.cardinality());
+        final List<IRequestMapper> keptMappers = new ArrayList<>(routes.cardinality());
+        for (int i = routes.nextSetBit(0); i >= 0; i = routes.nextSetBit(i + 1)) {
+            keptMappings.add(mappings.get(i));
+            keptMappers.add(mappers.get(i));
+        }
+        return newRoutesSet(keptMappings, keptMappers, settings);
+    }
+
+    private static IRequestMapper newRoutesSet(final List<URLPageMapping> mappings, final List<IRequestMapper> mappers,
+                                               final RoutesMountSettings settings) {
+        if (settings.isCompiledToTrie()) {
+            final RoutesTrieMapper trieMapper = new RoutesTrieMapper().cacheUrls(settings.getUrlCacheSize())
+                    .cacheMatches(settings.getMatchCacheSize())
+                    .cacheNotFound(settings.getNotFoundCacheSize());
+            for (int i = 0; i < mappings.size(); i++) {
+                trieMapper.add(mappings.get(i).getMountPoint(), mappers.get(i));
+            }
+            return trieMapper;
+        }
+        if (settings.isCompiledToAutomaton()) {
+            final AutomatonRoutesMapper automatonMapper = new AutomatonRoutesMapper();
+            for (int i = 0; i < mappings.size(); i++) {
+                automatonMapper.add(mappings.get(i).getMountPoint(), mappers.get(i));
+            }
+            return automatonMapper;
+        }
+        if (settings.getReorderInterval() > 0) {
+            final AdaptiveRoutesMapper adaptiveMapper = new AdaptiveRoutesMapper();
+            for (int i = 0; i < mappings.size(); i++) {
+                adaptiveMapper.add(mappings.get(i).getMountPoint(), mappers.get(i));
+            }
+            return adaptiveMapper;
+        }
+        final CompoundRequestMapper compoundMapper = new CompoundRequestMapper();
+        for (IRequestMapper mapper : mappers) {
+            compoundMapper.add(mapper);
+        }
+        return compoundMapper;
+    }
+
+    /**
+     * Starts the background work of a mapper built by {@link #newRoutesTable(List, List, RoutesMountSettings)}
+     */
+    static void startRoutesTable(final IRequestMapper routesTable, final RoutesMountSettings settings) {
+        if (routesTable instanceof HostRoutesMapper) {
+            for (IRequestMapper table : ((HostRoutesMapper) routesTable).getTables()) {
+                startRoutesTable(table, settings);
+            }
+        } else if (routesTable instanceof AdaptiveRoutesMapper) {
+            ((AdaptiveRoutesMapper) routesTable).start(settings.getReorderInterval(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the background work of a mapper built by {@link #newRoutesTable(List, List, RoutesMountSettings)}
+     */
+    static void stopRoutesTable(final IRequestMapper routesTable) {
+        if (routesTable instanceof HostRoutesMapper) {
+            for (IRequestMapper table : ((HostRoutesMapper) routesTable).getTables()) {
+                stopRoutesTable(table);
+            }
+        } else if (routesTable instanceof AdaptiveRoutesMapper) {
+            ((AdaptiveRoutesMapper) routesTable).stop();
+        }
+    }
+
+    private final RoutesMountSettings settings;
+    private final RoutesReader reader;
+    private final ResponseCache responseCache;
+    /** lists of roles already given to a route by this parser, shared by the routes having the same roles */
+    private final ConcurrentMap<List<String>, List<String>> internedRoles = new ConcurrentHashMap<>();
+
     RoutesMountParser() {
+        this(new RoutesMountSettings());
+    }
+
+    RoutesMountParser(final RoutesMountSettings settings) {
+        this(settings, settings.getResponseCacheSize() > 0 ? new ResponseCache(settings.getResponseCacheSize())
+                                                          : null);
+    }
+
+    /**
+     * @param responseCache cache of the rendered pages given to the cacheable routes, {@code null} for none
+     */
+    RoutesMountParser(final RoutesMountSettings settings, final ResponseCache responseCache) {
+        this.settings = settings;
+        this.reader = new RoutesReader(RoutesMountParser.class.getClassLoader(), Charset.defaultCharset(),
+                                       settings.getParallelism());
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Receives the mappings of the routes, in the order of the routes files
+     */
+    interface MappingListener {
+        void mapping(URLPageMapping mapping) throws IOException;
     }
 
     List<URLPageMapping> parseFile(final String fileName) throws IOException {
-        final InputStream resourceAsStream = getClass().getResourceAsStream(fileName);
-        if (resourceAsStream == null) {
+        final URL url = getClass().getResource(fileName);
+        if (url == null) {
             throw new IllegalArgumentException("Cannot open file " + fileName);
         }
-        List<URLPageMapping> mapping = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resourceAsStream))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (!line.startsWith("#") && line.trim().length() > 0) {
-                    final Matcher matcher = routePattern.matcher(line);
-                    if (matcher.matches()) {
-                        try {
-                            final URLPageMapping pageMapping = new URLPageMapping(matcher.group(1), matcher.group(2));
-                            if (matcher.groupCount() == 3) {
-                                pageMapping.addRoles(matcher.group(3));
-                            }
-                            mapping.add(pageMapping);
-                        } catch (ClassNotFoundException e) {
-                            LOGGER.error("Unable to parse line (ClassNotFound) : {}", line);
-                        } catch (IllegalArgumentException e) {
-                            LOGGER.error("Unable to mount page : '{}'", e.getMessage());
-                        }
-                    }
+        return parse(url);
+    }
+
+    /**
+     * Parses a routes file and the files it includes
+     */
+    List<URLPageMapping> parse(final URL routes) throws IOException {
+        final List<URLPageMapping> mappings = new ArrayList<>();
+        parse(routes.getPath().substring(routes.getPath().lastIndexOf('/') + 1), routes,
+              new InputStreamReader(routes.openStream(), Charset.defaultCharset()), collect(mappings));
+        return mappings;
+    }
+
+    List<URLPageMapping> parse(final Reader routes) throws IOException {
+        final List<URLPageMapping> mappings = new ArrayList<>();
+        parse(ROUTES_FILE, null, routes, collect(mappings));
+        return mappings;
+    }
+
+    private static MappingListener collect(final List<URLPageMapping> mappings) {
+        return new MappingListener() {
+            @Override
+            public void mapping(final URLPageMapping mapping) {
+                mappings.add(mapping);
+            }
+        };
+    }
+
+    /**
+     * Reads a routes file, giving the mapping of each route to the listener as soon as its class is resolved.
+     * Classes are resolved all together with {@link ClassResolution#PARALLEL}.
+     * @param source name of the file in error messages
+     * @param url location of the file, {@code null} if unknown
+     */
+    void parse(final String source, final URL url, final Reader routes, final MappingListener listener)
+            throws IOException {
+        if (settings.getClassResolution() == ClassResolution.PARALLEL) {
+            final List<RouteLine> lines = new ArrayList<>();
+            reader.read(source, url, routes, lines(lines));
+            for (URLPageMapping mapping : resolveAll(lines)) {
+                listener.mapping(mapping);
+            }
+            return;
+        }
+        reader.read(source, url, routes, new RoutesReader.Handler<ResolvedLine>() {
+            @Override
+            public ResolvedLine resolve(final RouteLine line) {
+                return RoutesMountParser.this.resolve(line);
+            }
+
+            @Override
+            public void accept(final ResolvedLine resolved) throws IOException {
+                final URLPageMapping mapping = mappingOf(resolved);
+                if (mapping != null) {
+                    listener.mapping(mapping);
                 }
             }
+        });
+    }
+
+    /**
+     * @return the routes files read by this parser, included files too
+     */
+    List<URL> getSources() {
+        return reader.getSources();
+    }
+
+    /**
+     * Creates the mappings of a precompiled routes table, see {@link RouteTable}
+     */
+    List<URLPageMapping> load(final RouteTable table) throws IOException {
+        final List<RouteLine> lines = new ArrayList<>(table.getRoutes().size());
+        for (RouteTable.Route route : table.getRoutes()) {
+            lines.add(new RouteLine(route));
+        }
+        return resolveAll(lines);
+    }
+
+    /**
+     * Reads the lines of a routes file, skipping comments and empty lines. Included files are resources of the
+     * class loader of this class.
+     */
+    static List<RouteLine> readLines(final Reader routes) throws IOException {
+        return readLines(ROUTES_FILE, null, routes, RoutesMountParser.class.getClassLoader(),
+                         Charset.defaultCharset());
+    }
+
+    /**
+     * Reads the lines of a routes file and of the files it includes, skipping comments and empty lines
+     * @param source name of the file in error messages
+     * @param url location of the file, {@code null} if unknown
+     * @param classLoader class loader of the included resources
+     * @param charset charset of the included files
+     */
+    static List<RouteLine> readLines(final String source, final URL url, final Reader routes,
+                                     final ClassLoader classLoader, final Charset charset) throws IOException {
+        final List<RouteLine> lines = new ArrayList<>();
+        new RoutesReader(classLoader, charset, 1).read(source, url, routes, lines(lines));
+        return lines;
+    }
+
+    private static RoutesReader.Handler<RouteLine> lines(final List<RouteLine> lines) {
+        return new RoutesReader.Handler<RouteLine>() {
+            @Override
+            public RouteLine resolve(final RouteLine line) {
+                return line;
+            }
+
+            @Override
+            public void accept(final RouteLine line) {
+                lines.add(line);
+            }
+        };
+    }
+
+    private List<URLPageMapping> resolveAll(final List<RouteLine> lines) throws IOException {
+        final List<URLPageMapping> mapping = new ArrayList<>(lines.size());
+        for (ResolvedLine resolved : resolve(lines)) {
+            final URLPageMapping resolvedMapping = mappingOf(resolved);
+            if (resolvedMapping != null) {
+                mapping.add(resolvedMapping);
+            }
         }
         return mapping;
     }
 
-    private List<URLPageMapping> parse() throws IOException {
-        return parseFile("/routes.conf");
+    /**
+     * @return the mapping of a resolved line, {@code null} (and the error logged) if it cannot be mounted
+     */
+    private static URLPageMapping mappingOf(final ResolvedLine resolved) {
+        if (resolved.mapping == null) {
+            if (resolved.error instanceof ClassNotFoundException) {
+                LOGGER.error("{}:{}: Unable to parse line (ClassNotFound) : {}", resolved.line.source,
+                             resolved.line.number, resolved.line.text);
+            } else {
+                LOGGER.error("{}:{}: Unable to mount page : '{}'", resolved.line.source, resolved.line.number,
+                             resolved.error.getMessage());
+            }
+        }
+        return resolved.mapping;
+    }
+
+    /**
+     * Resolves the classes of the given lines, results are in the same order as the lines.
+     */
+    private List<ResolvedLine> resolve(final List<RouteLine> lines) throws IOException {
+        final List<ResolvedLine> resolved = new ArrayList<>(lines.size());
+        if (settings.getClassResolution() != ClassResolution.PARALLEL || lines.size() < 2) {
+            for (RouteLine line : lines) {
+                resolved.add(resolve(line));
+            }
+            return resolved;
+        }
+        final List<Callable<ResolvedLine>> tasks = new ArrayList<>(lines.size());
+        for (final RouteLine line : lines) {
+            tasks.add(new Callable<ResolvedLine>() {
+                @Override
+                public ResolvedLine call() {
+                    return resolve(line);
+                }
+            });
+        }
+        final ForkJoinPool pool = new ForkJoinPool(Math.min(settings.getParallelism(), lines.size()));
+        try {
+            for (Future<ResolvedLine> future : pool.invokeAll(tasks)) {
+                resolved.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while resolving page classes");
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to resolve page classes", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return resolved;
+    }
+
+    private ResolvedLine resolve(final RouteLine line) {
+        try {
+            final RouteAttributes attributes = RouteAttributes.parse(line.attributes);
+            final URLPageMapping pageMapping;
+            if (settings.getClassResolution() == ClassResolution.LAZY && Strings.isEmpty(line.roles)) {
+                pageMapping = URLPageMapping.lazy(line.mountPoint, line.className);
+            } else {
+                // page classes initialized concurrently may deadlock on each other's static initializers
+                pageMapping = new URLPageMapping(line.mountPoint, line.className,
+                                                 settings.getClassResolution() != ClassResolution.PARALLEL);
+            }
+            pageMapping.addRoles(line.roles, internedRoles);
+            pageMapping.setAttributes(attributes, responseCache);
+            pageMapping.lazyPageParameters(settings.isLazyPageParameters());
+            pageMapping.indexPackage(settings.isIndexingPackages());
+            if (line.parameters != null) {
+                pageMapping.setMountPath(line.path, line.parameters);
+            }
+            return new ResolvedLine(line, pageMapping, null);
+        } catch (ClassNotFoundException | IllegalArgumentException e) {
+            return new ResolvedLine(line, null, e);
+        }
+    }
+
+    /**
+     * Reads the routes indexes of the annotated pages, then the precompiled routes table if the build generated one,
+     * the routes file otherwise
+     */
+    List<URLPageMapping> parse() throws IOException {
+        final List<URLPageMapping> mappings = new ArrayList<>();
+        parse(collect(mappings));
+        return mappings;
+    }
+
+    /**
+     * Reads the routes indexes of the annotated pages, then the precompiled routes table if the build generated one,
+     * the routes file otherwise, giving the mappings to the listener as they are read. The routes file may be missing
+     * if an index is found.
+     */
+    void parse(final MappingListener listener) throws IOException {
+        final boolean indexed = parseIndexes(RoutesMountParser.class.getClassLoader(), listener);
+        final InputStream table = getClass().getResourceAsStream(RouteTable.RESOURCE);
+        if (table != null) {
+            try (InputStream in = new BufferedInputStream(table)) {
+                for (URLPageMapping mapping : load(RouteTable.read(in))) {
+                    listener.mapping(mapping);
+                }
+            }
+            return;
+        }
+        final URL url = getClass().getResource(ROUTES_FILE);
+        if (url == null) {
+            if (indexed) {
+                return;
+            }
+            throw new IllegalArgumentException("Cannot open file " + ROUTES_FILE);
+        }
+        parse(ROUTES_FILE, url, new InputStreamReader(url.openStream(), Charset.defaultCharset()), listener);
+    }
+
+    /**
+     * Reads the routes indexes written by the annotation processor for the {@link MountRoute} pages, in the order
+     * of the class path
+     */
+    List<URLPageMapping> parseIndexes() throws IOException {
+        return parseIndexes(RoutesMountParser.class.getClassLoader());
+    }
+
+    /**
+     * @param classLoader class loader of the indexes
+     */
+    List<URLPageMapping> parseIndexes(final ClassLoader classLoader) throws IOException {
+        final List<URLPageMapping> mappings = new ArrayList<>();
+        parseIndexes(classLoader, collect(mappings));
+        return mappings;
+    }
+
+    /**
+     * @return whether an index was found
+     */
+    private boolean parseIndexes(final ClassLoader classLoader, final MappingListener listener) throws IOException {
+        final Enumeration<URL> indexes = classLoader.getResources(MountRoute.INDEX);
+        boolean indexed = false;
+        while (indexes.hasMoreElements()) {
+            final URL index = indexes.nextElement();
+            parse(index.toString(), index, new InputStreamReader(index.openStream(), UTF_8), listener);
+            indexed = true;
+        }
+        return indexed;
     }
 
 
     @SuppressWarnings("unchecked")
     static class URLPageMapping {
-        private final List<String> roles;
+        private List<String> roles = Collections.emptyList();
         private final String mountPoint;
         private Class<? extends Page> clazz;
+        private LazyPageClassProvider lazyClass;
         private PackageName packageName;
+        private String path;
+        private List<MountParameter> parameters;
+        private boolean lazyPageParameters;
+        private boolean indexPackage;
+        private RouteAttributes attributes = RouteAttributes.NONE;
+        private ResponseCache responseCache;
+        private RouteMetrics metrics;
 
         public URLPageMapping(final String mountPoint, final String clazzName) throws ClassNotFoundException {
+            this(mountPoint, clazzName, true);
+        }
+
+        /**
+         * @param initialize whether the page class is initialized, otherwise it is only loaded and initialized on
+         *                   first use
+         */
+        URLPageMapping(final String mountPoint, final String clazzName, final boolean initialize)
+                throws ClassNotFoundException {
             this.mountPoint = mountPoint;
             try {
-                final Class<?> aClass = Class.forName(clazzName);
+                final Class<?> aClass = Class.forName(clazzName, initialize, URLPageMapping.class.getClassLoader());
                 if (!Page.class.isAssignableFrom(aClass)) {
                     throw new IllegalArgumentException(clazzName + " is not a wicket Page !");
                 } else {
@@ -126,39 +653,299 @@ public class RoutesMountParser {
             if (packageName == null && clazz == null){
                 throw new ClassNotFoundException();
             }
-            this.roles = new ArrayList<>();
+        }
+
+        private URLPageMapping(final String mountPoint, final LazyPageClassProvider lazyClass) {
+            this.mountPoint = mountPoint;
+            this.lazyClass = lazyClass;
+        }
+
+        /**
+         * Creates a mapping whose page class is only loaded when first needed, if the class file exists.
+         * Otherwise the name is resolved as usual, it may be a package.
+         */
+        static URLPageMapping lazy(final String mountPoint, final String clazzName) throws ClassNotFoundException {
+            final ClassLoader classLoader = URLPageMapping.class.getClassLoader();
+            if (classLoader != null && classLoader.getResource(clazzName.replace('.', '/') + ".class") != null) {
+                return new URLPageMapping(mountPoint, new LazyPageClassProvider(clazzName));
+            }
+            return new URLPageMapping(mountPoint, clazzName);
+        }
+
+        /**
+         * Uses an already extracted path and parameters instead of extracting them from the mount point
+         */
+        void setMountPath(final String path, final List<MountParameter> parameters) {
+            this.path = path;
+            this.parameters = parameters;
+        }
+
+        /**
+         * Applies the attributes of the route to its mapper
+         * @param responseCache cache of the rendered pages, {@code null} to render every request
+         * @throws IllegalArgumentException if the route mounts a package with other attributes than its hosts
+         */
+        void setAttributes(final RouteAttributes attributes, final ResponseCache responseCache) {
+            if (packageName != null && attributes.hasMapperOptions()) {
+                throw new IllegalArgumentException("Attributes " + attributes + " cannot be given to package "
+                                                   + packageName.getName());
+            }
+            this.attributes = attributes;
+            this.responseCache = responseCache;
+        }
+
+        /**
+         * Makes the mapper of the page read its parameters lazily
+         */
+        void lazyPageParameters(final boolean lazy) {
+            this.lazyPageParameters = lazy;
+        }
+
+        /**
+         * Makes the mapper of the package resolve its pages through an index of the package
+         */
+        void indexPackage(final boolean index) {
+            this.indexPackage = index;
         }
 
         public void mount(WebApplication application) {
-            if (this.clazz != null) {
-                mountPage(application);
-            }else if (this.packageName != null){
-                application.mount(new MountMapper(mountPoint, new PackageMapper(packageName)));
+            mount(application, null, null);
+        }
+
+        /**
+         * Mounts the mapper of the route and authorizes its roles
+         * @param roleIndex index receiving the roles, {@code null} to give them to the page class
+         */
+        void mount(final WebApplication application, final RouteMetricsPublisher publisher,
+                   final RoleIndex.Builder roleIndex) {
+            final IRequestMapper mapper = newRequestMapper(publisher);
+            if (mapper != null) {
+                application.mount(mapper);
+                authorizeRoles(roleIndex);
             }
         }
 
-        private void mountPage(final WebApplication application) {
-            final MountPathExtractor extractor = new MountPathExtractor(mountPoint);
-            application.mount(new ParamCheckingPatternMapper(extractor.getPath(),
-                                                             clazz,
-                                                             extractor.getParameters()));
-            for (String role : roles) {
-                MetaDataRoleAuthorizationStrategy.authorize(clazz, role);
+        /**
+         * Creates the mapper of the route, recording its metrics if a publisher is given
+         */
+        IRequestMapper newRequestMapper(final RouteMetricsPublisher publisher) {
+            if (publisher == null) {
+                return newRequestMapper();
+            }
+            final RouteMetrics routeMetrics = new RouteMetrics(mountPoint, targetName());
+            final IRequestMapper mapper;
+            if (this.clazz != null || this.lazyClass != null) {
+                mapper = newPageMapper(routeMetrics);
+            } else if (this.packageName != null) {
+                mapper = new InstrumentedMountMapper(mountPoint, newPackageMapper(), routeMetrics);
+            } else {
+                return null;
             }
+            this.metrics = routeMetrics;
+            publisher.publish(routeMetrics);
+            return mapper;
         }
 
-        public void addRoles(final String commaSeparatedRoles) {
-            if (!Strings.isEmpty(commaSeparatedRoles)) {
-                final String[] roles = Strings.split(commaSeparatedRoles, ',');
+        /**
+         * Keeps the metrics of an equal mapping whose mapper is reused
+         */
+        void reuseMetrics(final URLPageMapping previous) {
+            this.metrics = previous.metrics;
+        }
+
+        void unpublishMetrics(final RouteMetricsPublisher publisher) {
+            if (metrics != null && publisher != null) {
+                publisher.unpublish(metrics);
+            }
+        }
+
+        IRequestMapper newRequestMapper() {
+            if (this.clazz != null || this.lazyClass != null) {
+                return newPageMapper(null);
+            } else if (this.packageName != null) {
+                return new MountMapper(mountPoint, newPackageMapper());
+            }
+            return null;
+        }
+
+        private PackageMapper newPackageMapper() {
+            return indexPackage ? new IndexedPackageMapper(packageName) : new PackageMapper(packageName);
+        }
+
+        /**
+         * Builds the mapper of a page route with the options of its attributes
+         * @param routeMetrics metrics of the route, {@code null} to record nothing
+         */
+        private ParamCheckingPatternMapper newPageMapper(final RouteMetrics routeMetrics) {
+            String mountPath = path;
+            List<MountParameter> mountParameters = parameters;
+            if (mountParameters == null) {
+                final MountPathExtractor extractor = new MountPathExtractor(mountPoint);
+                mountPath = extractor.getPath();
+                mountParameters = extractor.getParameters();
+            }
+            final ParamCheckingPatternMapper.Builder builder = this.clazz != null
+                    ? ParamCheckingPatternMapper.builder(mountPath, clazz)
+                    : ParamCheckingPatternMapper.builder(mountPath, lazyClass);
+            final CacheDirectives cacheDirectives = attributes.getCacheDirectives();
+            return builder.mountParameters(mountParameters)
+                    .exact(attributes.isExact())
+                    .ignoreIncorrectParameters(!attributes.isStrict())
+                    .displayVersionInUrl(attributes.isVersionInUrl())
+                    .lazyPageParameters(lazyPageParameters)
+                    .recordMetrics(routeMetrics)
+                    .cacheResponses(roles.isEmpty() ? cacheDirectives : cacheDirectives.privately(), responseCache)
+                    .limit(attributes.newLimiter())
+                    .build();
+        }
+
+        /**
+         * @param roleIndex index receiving the roles, {@code null} to give them to the page class
+         */
+        void authorizeRoles(final RoleIndex.Builder roleIndex) {
+            if (this.clazz != null) {
+                if (roleIndex != null) {
+                    roleIndex.add(clazz, roles);
+                    return;
+                }
                 for (String role : roles) {
-                    this.roles.add(role);
+                    MetaDataRoleAuthorizationStrategy.authorize(clazz, role);
                 }
             }
+        }
+
+        public void addRoles(final String commaSeparatedRoles) {
+            addRoles(commaSeparatedRoles, new ConcurrentHashMap<List<String>, List<String>>());
+        }
+
+        /**
+         * @param internedRoles lists of roles already given to the other routes, the list of this route is taken
+         * from it when another route has the same roles
+         */
+        void addRoles(final String commaSeparatedRoles, final ConcurrentMap<List<String>, List<String>> internedRoles) {
+            if (!Strings.isEmpty(commaSeparatedRoles)) {
+                final List<String> roles = new ArrayList<>(this.roles);
+                Collections.addAll(roles, Strings.split(commaSeparatedRoles, ','));
+                this.roles = internRoles(roles, internedRoles);
+            }
+        }
+
+        /**
+         * @return the immutable list of the given roles shared by every route having them
+         */
+        private static List<String> internRoles(final List<String> roles,
+                                                final ConcurrentMap<List<String>, List<String>> internedRoles) {
+            final List<String> interned = internedRoles.get(roles);
+            if (interned != null) {
+                return interned;
+            }
+            final List<String> immutable = Collections.unmodifiableList(
+                    Arrays.asList(roles.toArray(new String[roles.size()])));
+            final List<String> previous = internedRoles.putIfAbsent(immutable, immutable);
+            return previous != null ? previous : immutable;
+        }
 
+        String getMountPoint() {
+            return mountPoint;
         }
 
         List<String> getRoles() {
             return roles;
         }
+
+        /**
+         * @return the hosts the route is mounted for, empty if it is shared by every host
+         */
+        Set<String> getHosts() {
+            return attributes.getHosts();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final URLPageMapping that = (URLPageMapping) o;
+            return mountPoint.equals(that.mountPoint) && targetName().equals(that.targetName())
+                   && roles.equals(that.roles) && attributes.equals(that.attributes);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mountPoint.hashCode();
+            result = 31 * result + targetName().hashCode();
+            result = 31 * result + roles.hashCode();
+            result = 31 * result + attributes.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return mountPoint + " " + targetName() + " " + roles + (attributes.isEmpty() ? "" : " " + attributes);
+        }
+
+        private String targetName() {
+            if (clazz != null) {
+                return clazz.getName();
+            }
+            return lazyClass != null ? lazyClass.getClassName() : packageName.getName();
+        }
+    }
+
+    /**
+     * Line of the routes file, before its class is resolved
+     */
+    static final class RouteLine {
+        final String source;
+        final int number;
+        final String text;
+        final String mountPoint;
+        final String className;
+        final String roles;
+        /** <code>name=value</code> attributes, see {@link RouteAttributes} */
+        final List<String> attributes;
+        final String path;
+        final List<MountParameter> parameters;
+
+        RouteLine(final String source, final int number, final String text, final String mountPoint,
+                  final String className, final String roles, final List<String> attributes) {
+            this.source = source;
+            this.number = number;
+            this.text = text;
+            this.mountPoint = mountPoint;
+            this.className = className;
+            this.roles = roles;
+            this.attributes = attributes;
+            this.path = null;
+            this.parameters = null;
+        }
+
+        RouteLine(final RouteTable.Route route) {
+            this.source = RouteTable.RESOURCE;
+            this.number = route.getLine();
+            this.mountPoint = route.getMountPoint();
+            this.className = route.getTarget();
+            this.roles = Strings.join(",", route.getRoles());
+            this.attributes = route.getAttributes();
+            this.text = mountPoint + " " + className + " " + roles
+                        + (attributes.isEmpty() ? "" : " " + Strings.join(" ", attributes));
+            this.path = route.getPath();
+            this.parameters = route.getParameters();
+        }
+    }
+
+    private static final class ResolvedLine {
+        private final RouteLine line;
+        private final URLPageMapping mapping;
+        private final Exception error;
+
+        ResolvedLine(final RouteLine line, final URLPageMapping mapping, final Exception error) {
+            this.line = line;
+            this.mapping = mapping;
+            this.error = error;
+        }
     }
 }
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.metrics.RouteMetricsPublisher;
+import org.apache.wicket.authroles.authorization.strategies.role.IRoleCheckingStrategy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options used by {@link RoutesMountParser#mount(org.apache.wicket.protocol.http.WebApplication, RoutesMountSettings)}.
+ * Default values give the same behavior as {@link RoutesMountParser#mount(org.apache.wicket.protocol.http.WebApplication)}
+ *
+ * @author cgatay
+ */
+public class RoutesMountSettings {
+    private boolean compileToTrie = false;
+    private boolean compileToAutomaton = false;
+    private int urlCacheSize = 0;
+    private int matchCacheSize = 0;
+    private int notFoundCacheSize = 0;
+    private long reloadInterval = 0;
+    private long reorderInterval = 0;
+    private RouteMetricsPublisher metricsPublisher;
+    private ClassResolution classResolution = ClassResolution.EAGER;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private boolean lazyPageParameters = false;
+    private boolean indexPackages = false;
+    private IRoleCheckingStrategy roleCheckingStrategy;
+    private int responseCacheSize = 0;
+    private int warmUpIterations = 0;
+
+    /**
+     * Mounts a single {@link codetroopers.wicket.web.routes.mapper.RoutesTrieMapper} holding every route
+     * instead of one mapper per line. Dispatching then costs the depth of the path instead of the number of routes.
+     * @param compile whether to compile the routes into a trie
+     * @return {@code this} to allow chaining
+     */
+    public RoutesMountSettings compileToTrie(final boolean compile) {
+        this.compileToTrie = compile;
+        return this;
+    }
+
+    public boolean isCompiledToTrie() {
+        return compileToTrie;
+    }
+
+    /**
+     * Mounts a single {@link codetroopers.wicket.web.routes.mapper.AutomatonRoutesMapper} holding every route, which
+     * finds the routes matching a path in one pass over it, the mount paths and the regular expressions of their
+     * placeholders being compiled into a deterministic automaton. Ignored when routes are
+     * {@link #compileToTrie(boolean) compiled to a trie}.
+     * @param compile whether to compile the routes into an automaton
+     * @return {@code this} to allow chaining
+     */
+    public RoutesMountSettings compileToAutomaton(final boolean compile) {
+        this.compileToAutomaton = compile;
+        return this;
+    }
+
+    public boolean isCompiledToAutomaton() {
+        return compileToAutomaton;
+    }
+
+    /**
+     * Keeps the URLs generated for bookmarkable pages of the compiled routes in a bounded cache, the least recently
+     * used URLs being evicted first. Only used when routes are {@link #compileToTrie(boolean) compiled to a trie}.
+     * @param maxSize maximum number of URLs kept, {@code 0} (default) to disable the cache
+     * @return {@code this} to allow chaining
+     */
+    public RoutesMountSettings cacheUrls(final int maxSize) {
+        this.urlCacheSize = maxSize;
+        return this;
+    }
+
+    public int getUrlCacheSize() {
+        return urlCacheSize;
+    }
+
+    /**
+     * Remembers which route handled each requested path, so that the next requests to this path skip the dispatching.
+     * Only used when routes are {@link #compileToTrie(boolean) compiled to a trie}.
+     * @param maxSize maximum number of paths kept, {@code 0} (default) to disable the cache
+     * @return {@code this} to allow chaining
+     * @see codetroopers.wicket.web.routes.mapper.RoutesTrieMapper#cacheMatches(int)
+     */
+    public RoutesMountSettings cacheMatches(final int maxSize) {
+        this.matchCacheSize = maxSize;
+        return this;
+    }
+
+    public int getMatchCacheSize() {
+        return matchCacheSize;
+    }
+
+    /**
+     * Remembers the requested paths no route handles, apart from the matches.
+     * Only used when routes are {@link #compileToTrie(boolean) compiled to a trie}.
+     * @param maxSize maximum number of paths kept, {@code 0} (default) to disable the cache
+     * @return {@code this} to allow chaining
+     * @see codetroopers.wicket.web.routes.mapper.RoutesTrieMapper#cacheNotFound(int)
+     */
+    public RoutesMountSettings cacheNotFound(final int maxSize) {
+        this.notFoundCacheSize = maxSize;
+        return this;
+    }
+
+    public int getNotFoundCacheSize() {
+        return notFoundCacheSize;
+    }
+
+    /**
+     * Watches the routes file for changes and remounts the routes without restarting the application.
+     * The file checksum is checked at the given interval, a change is parsed in the background and the new routes
+     * replace the previous ones at once. The precompiled route table written by the build is not used then, routes
+     * are read from the routes file.
+     * @param interval interval between two checks, {@code 0} to disable reloading
+     * @param unit unit of the interval
+     * @return {@code this} to allow chaining
+     */
+    public RoutesMountSettings reloadRoutes(final long interval, final TimeUnit unit) {
+        this.reloadInterval = unit.toMillis(interval);
+        return this;
+    }
+
+    /**
+     * @return interval in milliseconds between two checks of the routes file, {@code 0} if disabled
+     */
+    public long getReloadInterval() {
+        return reloadInterval;
+    }
+
+    /**
+     * Mounts a single {@link codetroopers.wicket.web.routes.mapper.AdaptiveRoutesMapper} holding every route, which
+     * tries the most requested routes first and computes a new order at the given interval. Ignored when routes are
+     * {@link #compileToTrie(boolean) compiled to a trie} or {@link #compileToAutomaton(boolean) to an automaton}.
+     * @param interval interval between two reorderings, {@code 0} (default) to disable reordering
+     * @param unit unit of the interval
+     * @return {@code this} to allow chaining
+     */
+    public RoutesMountSettings reorderRoutes(final long interval, final TimeUnit unit) {
+        this.reorderInterval = unit.toMillis(interval);
+        return this;
+    }
+
+    /**
+     * @return interval in milliseconds between two reorderings of the routes, {@code 0} if disabled
+     */
+    public long getReorderInterval() {
+        return reorderInterval;
+    }
+
+    /**
+     * Chooses how the page classes of the routes file are loaded, see {@link ClassResolution}.
+     * @param resolution resolution mode, {@link ClassResolution#EAGER} by default
+     * @return {@code this} to allow chaining
+     */
+    public RoutesMountSettings resolveClasses(final ClassResolution resolution) {
+        this.classResolution = resolution;
+        return this;
+    }
+
+    public ClassResolution getClassResolution() {
+        return classResolution;
+    }
+
+    /**
+     * Sets the number of threads used to load classes with {@link ClassResolution#PARALLEL}.
+     * @param parallelism maximum number of threads, the number of available processors by default
+     * @return {@code this} to allow chaining
+     */
+    public RoutesMountSettings parallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive : " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Reads the page parameters of the routes from the request URL when pages ask for them, instead of copying every
+     * parameter when a request is mapped.
+     * @param lazy whether to read the page parameters lazily, {@code false} by default
+     * @return {@code this} to allow chaining
+     * @see codetroopers.wicket.web.routes.mapper.ParamCheckingPatternMapper.Builder#lazyPageParameters(boolean)
+     */
+    public RoutesMountSettings lazyPageParameters(final boolean lazy) {
+        this.lazyPageParameters = lazy;
+        return this;
+    }
+
+    public boolean isLazyPageParameters() {
+        return lazyPageParameters;
+    }
+
+    /**
+     * Resolves the pages of the package mounts through an index of each package, listed from the class path when
+     * the routes are mounted, instead of asking the class resolver for every requested name. Names which are not
+     * classes of the package are then rejected without any class loading.
+     * @param index whether to index the packages, {@code false} by default
+     * @return {@code this} to allow chaining
+     * @see codetroopers.wicket.web.routes.mapper.IndexedPackageMapper
+     */
+    public RoutesMountSettings indexPackages(final boolean index) {
+        this.indexPackages = index;
+        return this;
+    }
+
+    public boolean isIndexingPackages() {
+        return indexPackages;
+    }
+
+    /**
+     * Registers the roles of all the routes at once in a
+     * {@link codetroopers.wicket.web.routes.authorization.RoutesRoleAuthorizationStrategy} set on the application,
+     * instead of giving each page class its roles in the metadata of the application. The strategy the application
+     * had is still asked for every check.
+     * @param strategy strategy telling the roles of the current user, usually the application itself,
+     *                 {@code null} (default) to use the metadata
+     * @return {@code this} to allow chaining
+     */
+    public RoutesMountSettings indexRoles(final IRoleCheckingStrategy strategy) {
+        this.roleCheckingStrategy = strategy;
+        return this;
+    }
+
+    public IRoleCheckingStrategy getRoleCheckingStrategy() {
+        return roleCheckingStrategy;
+    }
+
+    /**
+     * Keeps the pages of the stateless routes having a <code>cache</code> attribute once rendered, until their
+     * maximum age, so that the next requests for the same parameters skip rendering. The cached pages are shared by
+     * every user.
+     * @param maxSize maximum number of pages kept, {@code 0} (default) to disable the cache
+     * @return {@code this} to allow chaining
+     * @see codetroopers.wicket.web.routes.mapper.ResponseCache
+     */
+    public RoutesMountSettings cacheResponses(final int maxSize) {
+        this.responseCacheSize = maxSize;
+        return this;
+    }
+
+    public int getResponseCacheSize() {
+        return responseCacheSize;
+    }
+
+    /**
+     * Maps synthetic requests to every route once the application is initialized, a URL matching the route and a URL
+     * it rejects being mapped the given number of times, so that the routing code is compiled before the first real
+     * requests. {@link RoutesWarmUp#isWarmedUp(org.apache.wicket.Application)} tells when it is over.
+     * @param iterations number of times the URLs of each route are mapped, {@code 0} (default) to disable the warm-up
+     * @return {@code this} to allow chaining
+     * @see RoutesWarmUp
+     */
+    public RoutesMountSettings warmUp(final int iterations) {
+        if (iterations < 0) {
+            throw new IllegalArgumentException("Warm-up iterations must not be negative : " + iterations);
+        }
+        this.warmUpIterations = iterations;
+        return this;
+    }
+
+    public int getWarmUpIterations() {
+        return warmUpIterations;
+    }
+
+    /**
+     * Records the matches, parameter rejections and parsing time of every route and gives them to the publisher,
+     * for instance a {@link codetroopers.wicket.web.routes.metrics.JmxRouteMetricsPublisher}.
+     * @param publisher publisher of the metrics, {@code null} (default) to record nothing
+     * @return {@code this} to allow chaining
+     */
+    public RoutesMountSettings publishMetrics(final RouteMetricsPublisher publisher) {
+        this.metricsPublisher = publisher;
+        return this;
+    }
+
+    public RouteMetricsPublisher getMetricsPublisher() {
+        return metricsPublisher;
+    }
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.RoutesMountParser.RouteLine;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Streaming reader of routes files : lines are tokenized as they are read and each route is given to a
+ * {@link Handler} right away, so that the routes never need to be held in memory all together.
+ *
+ * A line is made of at most three fields separated by spaces or tabs (mount point, class or package name and
+ * roles), followed by optional <code>name=value</code> attributes, lines starting with <code>#</code> are comments. A line <code>include path</code> reads the routes of
+ * another file at this place : paths starting with <code>/</code> are resources of the class loader, other paths
+ * are relative to the including file. Included files are read and resolved in the background, their routes are
+ * still handled in the order of the lines.
+ *
+ * @author cgatay
+ */
+final class RoutesReader {
+    static final String INCLUDE = "include";
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Receives the routes of the files
+     * @param <T> type of the resolved routes
+     */
+    interface Handler<T> {
+        /**
+         * Prepares a route, possibly in a background thread for the routes of included files
+         */
+        T resolve(RouteLine line);
+
+        /**
+         * Receives the prepared routes, in the order of the lines
+         */
+        void accept(T resolved) throws IOException;
+    }
+
+    private final ClassLoader classLoader;
+    private final Charset charset;
+    private final int parallelism;
+    private final Set<URL> sources = Collections.synchronizedSet(new LinkedHashSet<URL>());
+    private ExecutorService executor;
+
+    /**
+     * @param classLoader class loader of the included resources
+     * @param charset charset of the included files
+     * @param parallelism maximum number of included files read at the same time, {@code 1} to read them in turn
+     */
+    RoutesReader(final ClassLoader classLoader, final Charset charset, final int parallelism) {
+        this.classLoader = classLoader;
+        this.charset = charset;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Reads a routes file and the files it includes
+     * @param source name of the file in error messages
+     * @param url location of the file, {@code null} if unknown (its includes are then resources of the class loader)
+     * @param reader content of the file, closed once read
+     */
+    <T> void read(final String source, final URL url, final Reader reader, final Handler<T> handler)
+            throws IOException {
+        if (url != null) {
+            sources.add(url);
+        }
+        final OrderedVisitor<T> visitor = new OrderedVisitor<>(handler);
+        try {
+            tokenize(source, url, reader, url == null ? Collections.<String>emptyList()
+                                                       : Collections.singletonList(url.toExternalForm()), visitor);
+            visitor.drain(true);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * @return the files read so far, included files too
+     */
+    List<URL> getSources() {
+        synchronized (sources) {
+            return new ArrayList<>(sources);
+        }
+    }
+
+    private void tokenize(final String source, final URL url, final Reader reader, final List<String> chain,
+                          final Visitor visitor) throws IOException {
+        try (Tokenizer tokenizer = new Tokenizer(reader)) {
+            while (tokenizer.next()) {
+                final String[] fields = tokenizer.fields;
+                final List<String> attributes = tokenizer.attributes;
+                if (INCLUDE.equals(fields[0]) && fields[1].length() > 0 && fields[2].length() == 0
+                    && attributes.isEmpty()) {
+                    visitor.include(source, tokenizer.number, fields[1], url, chain);
+                } else {
+                    visitor.route(new RouteLine(source, tokenizer.number, tokenizer.text(), fields[0],
+                                                fields[1], fields[2],
+                                                attributes.isEmpty() ? Collections.<String>emptyList()
+                                                                     : new ArrayList<>(attributes)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an included file in the current thread
+     */
+    private void include(final String source, final int number, final String path, final URL base,
+                         final List<String> chain, final Visitor visitor) throws IOException {
+        final URL url = resolve(base, path);
+        if (url == null) {
+            throw new IOException(source + ":" + number + ": cannot find included file " + path);
+        }
+        final String location = url.toExternalForm();
+        if (chain.contains(location)) {
+            throw new IOException(source + ":" + number + ": " + path + " includes itself");
+        }
+        final List<String> included = new ArrayList<>(chain);
+        included.add(location);
+        sources.add(url);
+        final Reader reader;
+        try {
+            reader = new InputStreamReader(url.openStream(), charset);
+        } catch (IOException e) {
+            throw new IOException(source + ":" + number + ": cannot open included file " + path, e);
+        }
+        tokenize(includedSource(source, path), url, reader, included, visitor);
+    }
+
+    private URL resolve(final URL base, final String path) throws IOException {
+        if (path.startsWith("/")) {
+            return classLoader.getResource(path.substring(1));
+        }
+        if (base == null) {
+            return classLoader.getResource(path);
+        }
+        try {
+            return new URL(base, path);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the name of an included file in error messages
+     */
+    private static String includedSource(final String source, final String path) {
+        if (path.startsWith("/")) {
+            return path;
+        }
+        final int slash = source.lastIndexOf('/');
+        return slash < 0 ? path : source.substring(0, slash + 1) + path;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "routes-include");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private interface Visitor {
+        void route(RouteLine line) throws IOException;
+
+        void include(String source, int number, String path, URL base, List<String> chain) throws IOException;
+    }
+
+    /**
+     * Gives the routes to the handler in order, included files being read in the background when possible
+     */
+    private final class OrderedVisitor<T> implements Visitor {
+        private final Handler<T> handler;
+        /** routes and included files waiting for a previous included file */
+        private final Deque<Object> pending = new ArrayDeque<>();
+
+        OrderedVisitor(final Handler<T> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void route(final RouteLine line) throws IOException {
+            final T resolved = handler.resolve(line);
+            if (pending.isEmpty()) {
+                handler.accept(resolved);
+            } else {
+                pending.add(new Resolved<>(resolved));
+                drain(false);
+            }
+        }
+
+        @Override
+        public void include(final String source, final int number, final String path, final URL base,
+                            final List<String> chain) throws IOException {
+            if (parallelism <= 1) {
+                RoutesReader.this.include(source, number, path, base, chain, this);
+                return;
+            }
+            pending.add(executor().submit(new Callable<List<T>>() {
+                @Override
+                public List<T> call() throws IOException {
+                    final CollectingVisitor<T> collector = new CollectingVisitor<>(handler);
+                    RoutesReader.this.include(source, number, path, base, chain, collector);
+                    return collector.resolved;
+                }
+            }));
+            drain(false);
+        }
+
+        /**
+         * Gives the handler the pending routes which no longer wait for an included file
+         * @param wait whether to wait for the included files being read
+         */
+        @SuppressWarnings("unchecked")
+        void drain(final boolean wait) throws IOException {
+            while (!pending.isEmpty()) {
+                final Object next = pending.peek();
+                if (next instanceof Resolved) {
+                    handler.accept(((Resolved<T>) next).value);
+                } else {
+                    final Future<List<T>> future = (Future<List<T>>) next;
+                    if (!wait && !future.isDone()) {
+                        return;
+                    }
+                    for (T resolved : get(future)) {
+                        handler.accept(resolved);
+                    }
+                }
+                pending.poll();
+            }
+        }
+
+        private List<T> get(final Future<List<T>> future) throws IOException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading included routes");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Unable to read included routes", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Resolves the routes of an included file and its own includes in the current thread
+     */
+    private final class CollectingVisitor<T> implements Visitor {
+        private final Handler<T> handler;
+        private final List<T> resolved = new ArrayList<>();
+
+        CollectingVisitor(final Handler<T> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void route(final RouteLine line) {
+            resolved.add(handler.resolve(line));
+        }
+
+        @Override
+        public void include(final String source, final int number, final String path, final URL base,
+                            final List<String> chain) throws IOException {
+            RoutesReader.this.include(source, number, path, base, chain, this);
+        }
+    }
+
+    private static final class Resolved<T> {
+        private final T value;
+
+        Resolved(final T value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Splits the lines of a file into their fields, without regular expression. Fields are separated by white
+     * spaces, a line starting with a white space has an empty first field. Fields containing <code>=</code> after
+     * the class are attributes. Comments, blank lines and lines with more than three fields are skipped.
+     */
+    static final class Tokenizer implements AutoCloseable {
+        private final Reader reader;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        /** characters of the current line */
+        private char[] line = new char[256];
+        private int length;
+        /** fields of the current line, empty strings for missing fields */
+        final String[] fields = new String[3];
+        /** {@code name=value} fields following the class of the current line */
+        final List<String> attributes = new ArrayList<>();
+        /** number of the current line, starting at 1 */
+        int number;
+
+        Tokenizer(final Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return text of the current line
+         */
+        String text() {
+            return new String(line, 0, length);
+        }
+
+        /**
+         * Moves to the next route line
+         * @return {@code false} at the end of the file
+         */
+        boolean next() throws IOException {
+            while (readLine()) {
+                number++;
+                if (length > 0 && line[0] != '#' && !isBlank() && split()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Reads the characters of the next line, without its terminator
+         * @return {@code false} at the end of the file
+         */
+        private boolean readLine() throws IOException {
+            length = 0;
+            if (position == limit && !fill()) {
+                return false;
+            }
+            while (true) {
+                int end = position;
+                while (end < limit && buffer[end] != '\n' && buffer[end] != '\r') {
+                    end++;
+                }
+                append(position, end);
+                if (end < limit) {
+                    position = end + 1;
+                    if (buffer[end] == '\r' && (position < limit || fill()) && buffer[position] == '\n') {
+                        position++;
+                    }
+                    return true;
+                }
+                position = limit;
+                if (!fill()) {
+                    return true;
+                }
+            }
+        }
+
+        private void append(final int from, final int to) {
+            final int count = to - from;
+            if (length + count > line.length) {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+            }
+            System.arraycopy(buffer, from, line, length, count);
+            length += count;
+        }
+
+        private boolean isBlank() {
+            for (int i = 0; i < length; i++) {
+                if (line[i] > ' ') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Splits the current line into its fields and attributes
+         * @return {@code false} if the line has more than three fields, or a field after an attribute
+         */
+        private boolean split() {
+            attributes.clear();
+            int index = 0;
+            int i = 0;
+            while (true) {
+                final int start = i;
+                boolean attribute = false;
+                while (i < length && !isWhitespace(line[i])) {
+                    attribute |= line[i] == '=';
+                    i++;
+                }
+                if (attribute && index >= 2) {
+                    attributes.add(new String(line, start, i - start));
+                } else if (index == fields.length || !attributes.isEmpty()) {
+                    return false;
+                } else {
+                    fields[index++] = new String(line, start, i - start);
+                }
+                while (i < length && isWhitespace(line[i])) {
+                    i++;
+                }
+                if (i == length) {
+                    break;
+                }
+            }
+            while (index < fields.length) {
+                fields[index++] = "";
+            }
+            return true;
+        }
+
+        private static boolean isWhitespace(final int c) {
+            return c == ' ' || c == '\t' || c == '\u000B' || c == '\f';
+        }
+
+        private boolean fill() throws IOException {
+            final int read = reader.read(buffer, 0, buffer.length);
+            if (read <= 0) {
+                return false;
+            }
+            position = 0;
+            limit = read;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
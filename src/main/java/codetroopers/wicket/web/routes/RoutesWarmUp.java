@@ -0,0 +1,285 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.automaton.Automaton;
+import codetroopers.wicket.web.routes.mounts.MountParameter;
+import codetroopers.wicket.web.routes.mounts.MountPathExtractor;
+import org.apache.wicket.Application;
+import org.apache.wicket.IApplicationListener;
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.ThreadContext;
+import org.apache.wicket.mock.MockWebRequest;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Url;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Replays synthetic requests through the request mappers of the application once it is initialized, so that the
+ * first real requests do not pay for the class loading and the interpretation of the routing code.
+ *
+ * For every route, a URL matching it (each placeholder getting a value accepted by its regular expression) and a URL
+ * it rejects (a value refused by a regular expression, or a literal segment changed) are mapped by the root mapper
+ * of the application, and the URL of every handler found is generated back, as many times as asked. Handlers are
+ * never responded : no page is created and the limits of the routes are not used, but warm-up requests are part of
+ * the route metrics.
+ * <p/>
+ * The warm-up runs in a background thread, {@link #isWarmedUp(Application)} tells when it is over, for instance to
+ * report the node as ready to a load balancer only then.
+ *
+ * @author cgatay
+ */
+public final class RoutesWarmUp {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RoutesWarmUp.class);
+    private static final MetaDataKey<RoutesWarmUp> KEY = new MetaDataKey<RoutesWarmUp>() {
+        private static final long serialVersionUID = 1L;
+    };
+    private static final Automaton NON_EMPTY_VALUE = Automaton.compile("[\\s\\S]+");
+    /** values tried when the automaton cannot give a value of the expression, or a value it rejects */
+    private static final List<String> CANDIDATES = Arrays.asList("1", "a", "42", "abc", "A", "a-b", "2013", "ab_12",
+                                                                 "~", "-", "_", "a~b", "0x");
+    /** value of the placeholders accepting anything */
+    private static final String ANY_VALUE = "warmup";
+    /** suffix making a literal segment unknown */
+    private static final String MISS_SUFFIX = "~";
+
+    private final List<String> mountPoints;
+    private final int iterations;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile boolean stopped;
+    private volatile long requestCount;
+    private volatile long failureCount;
+    private volatile long duration;
+
+    RoutesWarmUp(final List<String> mountPoints, final int iterations) {
+        this.mountPoints = new ArrayList<>(mountPoints);
+        this.iterations = iterations;
+    }
+
+    /**
+     * Warms up the routes once the application is initialized, from a background thread
+     * @param mountPoints mount points of the routes, with their placeholders
+     */
+    static void schedule(final Application application, final List<String> mountPoints, final int iterations) {
+        final RoutesWarmUp warmUp = new RoutesWarmUp(mountPoints, iterations);
+        application.setMetaData(KEY, warmUp);
+        application.getApplicationListeners().add(new IApplicationListener() {
+            @Override
+            public void onAfterInitialized(final Application application) {
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        ThreadContext.setApplication(application);
+                        try {
+                            warmUp.run(application.getRootRequestMapper());
+                        } finally {
+                            ThreadContext.detach();
+                        }
+                    }
+                }, "routes-warm-up-" + application.getName());
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            @Override
+            public void onBeforeDestroyed(final Application application) {
+                warmUp.stopped = true;
+            }
+        });
+    }
+
+    /**
+     * @return the warm-up of the routes of the application, {@code null} if the routes are not warmed up
+     */
+    public static RoutesWarmUp get(final Application application) {
+        return application.getMetaData(KEY);
+    }
+
+    /**
+     * @return whether the routes of the application are warmed up, {@code true} if no warm-up was asked
+     */
+    public static boolean isWarmedUp(final Application application) {
+        final RoutesWarmUp warmUp = get(application);
+        return warmUp == null || warmUp.isWarmedUp();
+    }
+
+    /**
+     * Maps the URLs of the routes with the mapper, the given number of times
+     */
+    void run(final IRequestMapper mapper) {
+        final long start = System.nanoTime();
+        try {
+            final List<Url> urls = new ArrayList<>();
+            for (String mountPoint : mountPoints) {
+                try {
+                    for (List<String> segments : urls(mountPoint)) {
+                        urls.add(new Url(segments, Collections.<Url.QueryParameter>emptyList()));
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.debug("No warm-up request for {}", mountPoint, e);
+                }
+            }
+            for (int i = 0; i < iterations && !stopped; i++) {
+                for (Url url : urls) {
+                    map(mapper, url);
+                }
+            }
+            duration = System.nanoTime() - start;
+            LOGGER.info("Routes warmed up in {} ms : {} requests, {} failures",
+                        TimeUnit.NANOSECONDS.toMillis(duration), requestCount, failureCount);
+        } finally {
+            done.countDown();
+        }
+    }
+
+    private void map(final IRequestMapper mapper, final Url url) {
+        requestCount++;
+        try {
+            final IRequestHandler handler = mapper.mapRequest(new MockWebRequest(url));
+            if (handler != null) {
+                final Url generated = mapper.mapHandler(handler);
+                if (generated != null) {
+                    generated.toString();
+                }
+            }
+        } catch (RuntimeException e) {
+            failureCount++;
+            LOGGER.debug("Warm-up request to {} failed", url, e);
+        }
+    }
+
+    /**
+     * @return the segments of a URL matching the route, then of a URL it rejects
+     */
+    static List<List<String>> urls(final String mountPoint) {
+        final MountPathExtractor extractor = new MountPathExtractor(mountPoint);
+        final Iterator<MountParameter> parameters = extractor.getParameters().iterator();
+        final List<String> hit = new ArrayList<>();
+        final List<String> miss = new ArrayList<>();
+        boolean missing = false;
+        for (String segment : extractor.getPath().split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if ((segment.startsWith("${") || segment.startsWith("#{")) && parameters.hasNext()) {
+                final String regex = parameters.next().regex();
+                final String accepted = regex == null ? ANY_VALUE : accepted(regex);
+                final String rejected = regex == null || missing ? null : rejected(regex);
+                hit.add(accepted != null ? accepted : ANY_VALUE);
+                miss.add(rejected != null ? rejected : hit.get(hit.size() - 1));
+                missing |= rejected != null;
+            } else {
+                hit.add(segment);
+                miss.add(segment);
+            }
+        }
+        if (!missing) {
+            // no placeholder can be refused, the last literal segment is changed instead
+            miss.clear();
+            miss.addAll(hit);
+            if (miss.isEmpty()) {
+                miss.add(MISS_SUFFIX);
+            } else {
+                miss.set(miss.size() - 1, miss.get(miss.size() - 1) + MISS_SUFFIX);
+            }
+        }
+        return Arrays.asList(hit, miss);
+    }
+
+    /**
+     * @return a non empty value accepted by the expression, {@code null} if none is found
+     */
+    static String accepted(final String regex) {
+        final Pattern pattern = Pattern.compile(regex);
+        final Automaton automaton = Automaton.compile(regex);
+        final String example = automaton == null ? null : automaton.intersectionExample(NON_EMPTY_VALUE);
+        if (example != null && example.indexOf('/') < 0 && pattern.matcher(example).matches()) {
+            return example;
+        }
+        for (String candidate : CANDIDATES) {
+            if (pattern.matcher(candidate).matches()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a value refused by the expression, {@code null} if none is found
+     */
+    static String rejected(final String regex) {
+        final Pattern pattern = Pattern.compile(regex);
+        for (String candidate : CANDIDATES) {
+            if (!pattern.matcher(candidate).matches()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether every warm-up request was made
+     */
+    public boolean isWarmedUp() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * Waits for the end of the warm-up
+     * @return whether the warm-up is over
+     */
+    public boolean await(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    /**
+     * @return the number of requests mapped, the URLs of the routes being mapped once per iteration
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return the number of requests whose mapping threw an exception
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return the duration of the warm-up in nanoseconds, {@code 0} until it is over
+     */
+    public long getDuration() {
+        return duration;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.authorization;
+
+import org.apache.wicket.authroles.authorization.strategies.role.IRoleCheckingStrategy;
+import org.apache.wicket.authroles.authorization.strategies.role.Roles;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Roles allowed to instantiate each page class of the routes file. Each role name is given a bit position, the roles
+ * of a class being stored as a bit set, so that checking a class against the roles of a user is a single lookup and
+ * a bitwise AND.
+ * An index is immutable, a {@link Builder} collects the roles of every route before it is built.
+ *
+ * @author cgatay
+ */
+public final class RoleIndex {
+    public static final RoleIndex EMPTY = new Builder().build();
+
+    /** role names, by bit position */
+    private final String[] roles;
+    private final Map<String, Integer> bits;
+    private final Map<Class<?>, BitSet> classRoles;
+
+    private RoleIndex(final Map<String, Integer> bits, final Map<Class<?>, BitSet> classRoles) {
+        this.roles = new String[bits.size()];
+        for (Map.Entry<String, Integer> entry : bits.entrySet()) {
+            roles[entry.getValue()] = entry.getKey();
+        }
+        this.bits = Collections.unmodifiableMap(new HashMap<>(bits));
+        final Map<Class<?>, BitSet> copy = new HashMap<>(classRoles.size() * 2);
+        for (Map.Entry<Class<?>, BitSet> entry : classRoles.entrySet()) {
+            copy.put(entry.getKey(), (BitSet) entry.getValue().clone());
+        }
+        this.classRoles = copy;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the roles allowed to instantiate the class, {@code null} if the routes give no role for it
+     */
+    BitSet rolesOf(final Class<?> componentClass) {
+        return classRoles.get(componentClass);
+    }
+
+    /**
+     * @return whether a user having the given roles may instantiate the class, {@code true} if the routes give no
+     * role for it
+     */
+    public boolean isAuthorized(final Class<?> componentClass, final BitSet userRoles) {
+        final BitSet allowed = classRoles.get(componentClass);
+        return allowed == null || allowed.intersects(userRoles);
+    }
+
+    /**
+     * @return the bit set of the given roles, names unknown to the index are ignored
+     */
+    public BitSet bitsOf(final Collection<String> userRoles) {
+        final BitSet set = new BitSet(roles.length);
+        for (String role : userRoles) {
+            final Integer bit = bits.get(role);
+            if (bit != null) {
+                set.set(bit);
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Asks the strategy about each role of the index
+     * @return the bit set of the roles the strategy grants
+     */
+    public BitSet bitsOf(final IRoleCheckingStrategy strategy) {
+        final BitSet set = new BitSet(roles.length);
+        for (int i = 0; i < roles.length; i++) {
+            if (strategy.hasAnyRole(new Roles(roles[i]))) {
+                set.set(i);
+            }
+        }
+        return set;
+    }
+
+    /**
+     * @return the role names, by bit position
+     */
+    public List<String> getRoles() {
+        final List<String> names = new ArrayList<>(roles.length);
+        Collections.addAll(names, roles);
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @return the number of classes having roles
+     */
+    public int size() {
+        return classRoles.size();
+    }
+
+    /**
+     * Collects the roles of the routes, roles given to the same class by several routes are merged.
+     */
+    public static final class Builder {
+        private final Map<String, Integer> bits = new LinkedHashMap<>();
+        private final Map<Class<?>, BitSet> classRoles = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Allows the roles to instantiate the class, in addition to the roles it already has
+         * @return {@code this} to allow chaining
+         */
+        public Builder add(final Class<?> componentClass, final Collection<String> roles) {
+            if (roles.isEmpty()) {
+                return this;
+            }
+            BitSet set = classRoles.get(componentClass);
+            if (set == null) {
+                set = new BitSet();
+                classRoles.put(componentClass, set);
+            }
+            for (String role : roles) {
+                Integer bit = bits.get(role);
+                if (bit == null) {
+                    bit = bits.size();
+                    bits.put(role, bit);
+                }
+                set.set(bit);
+            }
+            return this;
+        }
+
+        public RoleIndex build() {
+            return new RoleIndex(bits, classRoles);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.authorization;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.Component;
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.authorization.Action;
+import org.apache.wicket.authorization.IAuthorizationStrategy;
+import org.apache.wicket.authroles.authorization.strategies.role.IRoleCheckingStrategy;
+import org.apache.wicket.request.component.IRequestableComponent;
+import org.apache.wicket.request.cycle.RequestCycle;
+
+import java.util.BitSet;
+
+/**
+ * Authorizes the instantiation of the pages of the routes file from a {@link RoleIndex}, instead of the per class
+ * metadata of {@link org.apache.wicket.authroles.authorization.strategies.role.metadata.MetaDataRoleAuthorizationStrategy}.
+ * The roles of the user are asked to the role checking strategy once per request, checking a class then costs a
+ * lookup and a bitwise AND.
+ * Other checks are left to the strategy the application had before, which must also authorize the instantiation.
+ * <p>
+ * As roles are read once per request, a request signing a user in must call {@link #rolesChanged()} before
+ * instantiating pages requiring the new roles.
+ *
+ * @author cgatay
+ */
+public class RoutesRoleAuthorizationStrategy implements IAuthorizationStrategy {
+    private static final MetaDataKey<UserRoles> USER_ROLES = new MetaDataKey<UserRoles>() {
+        private static final long serialVersionUID = 1L;
+    };
+
+    private final IRoleCheckingStrategy roleCheckingStrategy;
+    private final IAuthorizationStrategy delegate;
+    private volatile RoleIndex index;
+
+    public RoutesRoleAuthorizationStrategy(final RoleIndex index, final IRoleCheckingStrategy roleCheckingStrategy,
+                                           final IAuthorizationStrategy delegate) {
+        this.index = index;
+        this.roleCheckingStrategy = roleCheckingStrategy;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Sets the strategy of the application, keeping the one it had for the other checks
+     * @return the strategy set
+     */
+    public static RoutesRoleAuthorizationStrategy install(final Application application, final RoleIndex index,
+                                                          final IRoleCheckingStrategy roleCheckingStrategy) {
+        final IAuthorizationStrategy current = application.getSecuritySettings().getAuthorizationStrategy();
+        final RoutesRoleAuthorizationStrategy strategy;
+        if (current instanceof RoutesRoleAuthorizationStrategy) {
+            strategy = (RoutesRoleAuthorizationStrategy) current;
+            strategy.setIndex(index);
+        } else {
+            strategy = new RoutesRoleAuthorizationStrategy(index, roleCheckingStrategy, current);
+            application.getSecuritySettings().setAuthorizationStrategy(strategy);
+        }
+        return strategy;
+    }
+
+    /**
+     * @return the strategy of the application if it authorizes from an index, {@code null} otherwise
+     */
+    public static RoutesRoleAuthorizationStrategy get(final Application application) {
+        final IAuthorizationStrategy current = application.getSecuritySettings().getAuthorizationStrategy();
+        return current instanceof RoutesRoleAuthorizationStrategy ? (RoutesRoleAuthorizationStrategy) current : null;
+    }
+
+    /**
+     * Replaces the index at once, for instance when routes are reloaded
+     */
+    public void setIndex(final RoleIndex index) {
+        this.index = index;
+    }
+
+    public RoleIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Forgets the roles of the user read during the current request
+     */
+    public static void rolesChanged() {
+        final RequestCycle requestCycle = RequestCycle.get();
+        if (requestCycle != null) {
+            requestCycle.setMetaData(USER_ROLES, null);
+        }
+    }
+
+    @Override
+    public <T extends IRequestableComponent> boolean isInstantiationAuthorized(final Class<T> componentClass) {
+        final RoleIndex current = index;
+        final BitSet allowed = current.rolesOf(componentClass);
+        if (allowed != null && !allowed.intersects(userRoles(current))) {
+            return false;
+        }
+        return delegate == null || delegate.isInstantiationAuthorized(componentClass);
+    }
+
+    @Override
+    public boolean isActionAuthorized(final Component component, final Action action) {
+        return delegate == null || delegate.isActionAuthorized(component, action);
+    }
+
+    /**
+     * @return the roles of the user, read once per request and index
+     */
+    private BitSet userRoles(final RoleIndex current) {
+        final RequestCycle requestCycle = RequestCycle.get();
+        if (requestCycle == null) {
+            return current.bitsOf(roleCheckingStrategy);
+        }
+        UserRoles userRoles = requestCycle.getMetaData(USER_ROLES);
+        if (userRoles == null || userRoles.index != current) {
+            userRoles = new UserRoles(current, current.bitsOf(roleCheckingStrategy));
+            requestCycle.setMetaData(USER_ROLES, userRoles);
+        }
+        return userRoles.roles;
+    }
+
+    private static final class UserRoles {
+        private final RoleIndex index;
+        private final BitSet roles;
+
+        private UserRoles(final RoleIndex index, final BitSet roles) {
+            this.index = index;
+            this.roles = roles;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.automaton;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable deterministic automaton, matching values in a single pass without backtracking.
+ *
+ * Automata are compiled from regular expressions ({@link #compile(String)}) or built with a {@link Nfa}. Besides
+ * matching, two automata can be intersected or compared without building their product, which tells whether two
+ * route placeholders may accept the same value.
+ *
+ * @author cgatay
+ */
+public final class Automaton {
+    /**
+     * Symbol separating the segments of a path, distinct from every character
+     */
+    public static final int SEPARATOR = 0x10000;
+    /**
+     * Maximum number of states of the automata compiled from a single regular expression
+     */
+    public static final int MAX_STATES = 4096;
+    private static final int ASCII = 128;
+    /** above this number of states, ASCII characters are looked up like the others */
+    private static final int MAX_ASCII_TABLE_STATES = 4096;
+    private static final int[] NO_TRANSITIONS = new int[0];
+    private static final Automaton ANY_VALUE = anyValueAutomaton();
+
+    /** (low, high, target) triples of each state, sorted by low bound */
+    private final int[][] transitions;
+    /** target of each state on each ASCII character, -1 if none, {@code null} for large automata */
+    private final int[] ascii;
+    private final int[][] tags;
+
+    Automaton(final List<int[]> transitions, final int[][] tags) {
+        this.transitions = transitions.toArray(new int[transitions.size()][]);
+        this.tags = tags;
+        if (this.transitions.length > MAX_ASCII_TABLE_STATES) {
+            this.ascii = null;
+            return;
+        }
+        this.ascii = new int[this.transitions.length * ASCII];
+        Arrays.fill(ascii, -1);
+        for (int state = 0; state < this.transitions.length; state++) {
+            final int[] triples = this.transitions[state];
+            for (int i = 0; i < triples.length && triples[i] < ASCII; i += 3) {
+                for (int c = triples[i]; c <= triples[i + 1] && c < ASCII; c++) {
+                    ascii[state * ASCII + c] = triples[i + 2];
+                }
+            }
+        }
+    }
+
+    /**
+     * @param regex regular expression, see {@link java.util.regex.Pattern}
+     * @return the automaton matching the same values as the expression (as a whole), {@code null} if the expression
+     * uses a construct which is not supported or needs too many states
+     */
+    public static Automaton compile(final String regex) {
+        final Nfa nfa = new Nfa();
+        final int start = nfa.newState();
+        final int end = nfa.addRegex(start, regex, MAX_STATES * 16);
+        if (end < 0) {
+            return null;
+        }
+        nfa.accept(end, 0);
+        return nfa.determinize(MAX_STATES);
+    }
+
+    /**
+     * Same as {@link #compile(String)}, the empty value being accepted as well (optional placeholders).
+     */
+    public static Automaton compileOptional(final String regex) {
+        final Nfa nfa = new Nfa();
+        final int start = nfa.newState();
+        final int end = nfa.addRegex(start, regex, MAX_STATES * 16);
+        if (end < 0) {
+            return null;
+        }
+        nfa.addEpsilon(start, end);
+        nfa.accept(end, 0);
+        return nfa.determinize(MAX_STATES);
+    }
+
+    /**
+     * @return the automaton matching only the given value
+     */
+    public static Automaton literal(final CharSequence value) {
+        final Nfa nfa = new Nfa();
+        nfa.accept(nfa.addLiteral(nfa.newState(), value), 0);
+        return nfa.determinize(value.length() + 2);
+    }
+
+    /**
+     * @return the automaton matching any value without {@link #SEPARATOR}, including the empty one
+     */
+    public static Automaton anyValue() {
+        return ANY_VALUE;
+    }
+
+    private static Automaton anyValueAutomaton() {
+        final Nfa nfa = new Nfa();
+        nfa.accept(nfa.addAnyValue(nfa.newState()), 0);
+        return nfa.determinize(2);
+    }
+
+    public int getInitialState() {
+        return 0;
+    }
+
+    public int getStateCount() {
+        return transitions.length;
+    }
+
+    /**
+     * @return the state reached from {@code state} on {@code symbol}, {@code -1} if no value can be matched anymore
+     */
+    public int step(final int state, final int symbol) {
+        if (symbol < ASCII && ascii != null) {
+            return ascii[state * ASCII + symbol];
+        }
+        final int[] triples = transitions[state];
+        int low = 0;
+        int high = triples.length / 3 - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (triples[middle * 3 + 1] < symbol) {
+                low = middle + 1;
+            } else if (triples[middle * 3] > symbol) {
+                high = middle - 1;
+            } else {
+                return triples[middle * 3 + 2];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the state reached from {@code state} after the characters of the value, {@code -1} if none
+     */
+    public int run(final int state, final CharSequence value) {
+        int current = state;
+        for (int i = 0; i < value.length() && current >= 0; i++) {
+            current = step(current, value.charAt(i));
+        }
+        return current;
+    }
+
+    public boolean isAccepting(final int state) {
+        return tags[state].length > 0;
+    }
+
+    /**
+     * @return the sorted tags of the accepting state, an empty array if it is not accepting. The array is shared
+     * and must not be modified.
+     */
+    public int[] getTags(final int state) {
+        return tags[state];
+    }
+
+    /**
+     * Return {@code true} if the whole value is accepted
+     */
+    public boolean matches(final CharSequence value) {
+        final int state = run(0, value);
+        return state >= 0 && isAccepting(state);
+    }
+
+    public boolean isEmpty() {
+        return example() == null;
+    }
+
+    /**
+     * @return one of the shortest values accepted, {@code null} if none
+     */
+    public String example() {
+        return intersectionExample(this);
+    }
+
+    /**
+     * Return {@code true} if at least one value is accepted by both automata
+     */
+    public boolean intersects(final Automaton other) {
+        return intersectionExample(other) != null;
+    }
+
+    /**
+     * Explores the product of the two automata breadth first, without building it.
+     * @return one of the shortest values accepted by both automata, {@code null} if none. Separators are shown
+     * as {@code /}.
+     */
+    public String intersectionExample(final Automaton other) {
+        final Map<Long, Integer> visited = new HashMap<>();
+        final IntList firsts = new IntList();
+        final IntList seconds = new IntList();
+        final IntList parents = new IntList();
+        final IntList symbols = new IntList();
+        visited.put(0L, 0);
+        firsts.add(0);
+        seconds.add(0);
+        parents.add(-1);
+        symbols.add(-1);
+        for (int current = 0; current < firsts.size(); current++) {
+            final int first = firsts.get(current);
+            final int second = seconds.get(current);
+            if (isAccepting(first) && other.isAccepting(second)) {
+                return path(current, parents, symbols);
+            }
+            final int[] mine = transitions[first];
+            final int[] theirs = other.transitions[second];
+            int i = 0;
+            int j = 0;
+            while (i < mine.length && j < theirs.length) {
+                final int low = Math.max(mine[i], theirs[j]);
+                final int high = Math.min(mine[i + 1], theirs[j + 1]);
+                if (low <= high) {
+                    final long key = ((long) mine[i + 2] << 32) | theirs[j + 2];
+                    if (!visited.containsKey(key)) {
+                        visited.put(key, firsts.size());
+                        firsts.add(mine[i + 2]);
+                        seconds.add(theirs[j + 2]);
+                        parents.add(current);
+                        symbols.add(representative(low, high));
+                    }
+                }
+                if (mine[i + 1] < theirs[j + 1]) {
+                    i += 3;
+                } else {
+                    j += 3;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return {@code true} if every value accepted by this automaton is accepted by the other one
+     */
+    public boolean isSubsetOf(final Automaton other) {
+        // pairs of states, the second one being -1 once the other automaton cannot accept anymore
+        final Map<Long, Integer> visited = new HashMap<>();
+        final IntList firsts = new IntList();
+        final IntList seconds = new IntList();
+        visited.put(0L, 0);
+        firsts.add(0);
+        seconds.add(0);
+        for (int current = 0; current < firsts.size(); current++) {
+            final int first = firsts.get(current);
+            final int second = seconds.get(current);
+            if (isAccepting(first) && (second < 0 || !other.isAccepting(second))) {
+                return false;
+            }
+            final int[] mine = transitions[first];
+            final int[] theirs = second < 0 ? NO_TRANSITIONS : other.transitions[second];
+            int j = 0;
+            for (int i = 0; i < mine.length; i += 3) {
+                int low = mine[i];
+                final int high = mine[i + 1];
+                while (low <= high) {
+                    while (j < theirs.length && theirs[j + 1] < low) {
+                        j += 3;
+                    }
+                    final int target;
+                    final int end;
+                    if (j < theirs.length && theirs[j] <= low) {
+                        target = theirs[j + 2];
+                        end = Math.min(high, theirs[j + 1]);
+                    } else {
+                        target = -1;
+                        end = j < theirs.length ? Math.min(high, theirs[j] - 1) : high;
+                    }
+                    final long key = ((long) mine[i + 2] << 32) | (target & 0xFFFFFFFFL);
+                    if (!visited.containsKey(key)) {
+                        visited.put(key, firsts.size());
+                        firsts.add(mine[i + 2]);
+                        seconds.add(target);
+                    }
+                    low = end + 1;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static String path(final int node, final IntList parents, final IntList symbols) {
+        final StringBuilder path = new StringBuilder();
+        for (int current = node; parents.get(current) >= 0; current = parents.get(current)) {
+            final int symbol = symbols.get(current);
+            path.append(symbol == SEPARATOR ? '/' : (char) symbol);
+        }
+        return path.reverse().toString();
+    }
+
+    /**
+     * @return a readable symbol of the interval if there is one
+     */
+    private static int representative(final int low, final int high) {
+        final int[] preferred = {'a', 'z', '0', '9', 'A', 'Z', '-', '-', '_', '_'};
+        for (int i = 0; i < preferred.length; i += 2) {
+            if (low <= preferred[i + 1] && high >= preferred[i]) {
+                return Math.max(low, preferred[i]);
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.automaton;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nondeterministic automaton, built from literals and regular expressions and turned into an {@link Automaton}
+ * by {@link #determinize(int)}. The first state created is the initial state.
+ *
+ * Symbols are the characters of the values ({@code 0} to {@code 0xFFFF}) and {@link Automaton#SEPARATOR}, which
+ * separates the segments of a path. Accepting states carry tags, for instance the index of the route they
+ * accept, which the deterministic states reaching them inherit.
+ *
+ * @author cgatay
+ */
+public final class Nfa {
+    private static final int MAX_STATES = 1 << 20;
+
+    private final List<IntList> epsilons = new ArrayList<>();
+    /** (low, high, target) triples of each state */
+    private final List<IntList> ranges = new ArrayList<>();
+    private final Map<Integer, IntList> tags = new HashMap<>();
+    private int[] marks = new int[0];
+    private int lastMark;
+
+    /**
+     * @return the new state
+     */
+    public int newState() {
+        if (epsilons.size() >= MAX_STATES) {
+            throw new IllegalStateException("Automaton too large : " + MAX_STATES + " states");
+        }
+        epsilons.add(null);
+        ranges.add(null);
+        return epsilons.size() - 1;
+    }
+
+    public int getStateCount() {
+        return epsilons.size();
+    }
+
+    public void addEpsilon(final int from, final int to) {
+        IntList list = epsilons.get(from);
+        if (list == null) {
+            list = new IntList();
+            epsilons.set(from, list);
+        }
+        list.add(to);
+    }
+
+    /**
+     * Adds a transition on every symbol between {@code low} and {@code high} (inclusive)
+     */
+    public void addRange(final int from, final int low, final int high, final int to) {
+        IntList list = ranges.get(from);
+        if (list == null) {
+            list = new IntList();
+            ranges.set(from, list);
+        }
+        list.add(low);
+        list.add(high);
+        list.add(to);
+    }
+
+    /**
+     * @return the state reached after the characters of the literal
+     */
+    public int addLiteral(final int from, final CharSequence literal) {
+        int current = from;
+        for (int i = 0; i < literal.length(); i++) {
+            final int next = newState();
+            addRange(current, literal.charAt(i), literal.charAt(i), next);
+            current = next;
+        }
+        if (current == from) {
+            current = newState();
+            addEpsilon(from, current);
+        }
+        return current;
+    }
+
+    /**
+     * Adds a fragment accepting any value without {@link Automaton#SEPARATOR}
+     * @return the state reached after the value
+     */
+    public int addAnyValue(final int from) {
+        final int loop = newState();
+        addEpsilon(from, loop);
+        addRange(loop, 0, RegexParser.MAX_SYMBOL, loop);
+        return loop;
+    }
+
+    /**
+     * Adds a fragment accepting the values matched as a whole by the regular expression.
+     * @param maxStates maximum number of states the fragment may add
+     * @return the state reached after the value, {@code -1} (and nothing added) if the expression is not
+     * supported or too large
+     */
+    public int addRegex(final int from, final String regex, final int maxStates) {
+        final RegexParser.Node node = RegexParser.parse(regex);
+        if (node == null || node.size() > maxStates || getStateCount() + node.size() > MAX_STATES) {
+            return -1;
+        }
+        return node.emit(this, from);
+    }
+
+    /**
+     * Makes a state accepting, with the given tag
+     */
+    public void accept(final int state, final int tag) {
+        IntList list = tags.get(state);
+        if (list == null) {
+            list = new IntList();
+            tags.put(state, list);
+        }
+        list.add(tag);
+    }
+
+    /**
+     * Builds the equivalent deterministic automaton with the subset construction
+     * @param maxStates maximum number of deterministic states
+     * @return the deterministic automaton, {@code null} if it would need more than {@code maxStates} states
+     */
+    public Automaton determinize(final int maxStates) {
+        final Map<StateSet, Integer> ids = new HashMap<>();
+        final List<int[]> sets = new ArrayList<>();
+        final List<int[]> transitions = new ArrayList<>();
+        marks = new int[getStateCount()];
+        lastMark = 0;
+        final int[] initial = closure(new int[]{0});
+        ids.put(new StateSet(initial), 0);
+        sets.add(initial);
+        for (int current = 0; current < sets.size(); current++) {
+            final int[] set = sets.get(current);
+            // (low, high, target) triples leaving the set, sorted by low bound
+            final IntList leaving = new IntList();
+            for (int state : set) {
+                final IntList stateRanges = ranges.get(state);
+                if (stateRanges != null) {
+                    for (int i = 0; i < stateRanges.size(); i++) {
+                        leaving.add(stateRanges.get(i));
+                    }
+                }
+            }
+            final int[] triples = sortTriples(leaving.toArray());
+            final int[] bounds = bounds(triples);
+            final IntList result = new IntList();
+            final IntList targets = new IntList();
+            for (int b = 0; b + 1 < bounds.length; b++) {
+                final int low = bounds[b];
+                final int high = bounds[b + 1] - 1;
+                targets.clear();
+                for (int t = 0; t < triples.length && triples[t] <= low; t += 3) {
+                    if (triples[t + 1] >= high) {
+                        targets.add(triples[t + 2]);
+                    }
+                }
+                if (targets.size() == 0) {
+                    continue;
+                }
+                final int[] target = closure(targets.toArray());
+                final StateSet key = new StateSet(target);
+                Integer id = ids.get(key);
+                if (id == null) {
+                    if (sets.size() >= maxStates) {
+                        return null;
+                    }
+                    id = sets.size();
+                    ids.put(key, id);
+                    sets.add(target);
+                }
+                final int size = result.size();
+                if (size > 0 && result.get(size - 1) == id && result.get(size - 2) == low - 1) {
+                    result.set(size - 2, high);
+                } else {
+                    result.add(low);
+                    result.add(high);
+                    result.add(id);
+                }
+            }
+            transitions.add(result.toArray());
+        }
+        final int[][] stateTags = new int[sets.size()][];
+        for (int i = 0; i < sets.size(); i++) {
+            stateTags[i] = tagsOf(sets.get(i));
+        }
+        return new Automaton(transitions, stateTags);
+    }
+
+    /**
+     * @return the sorted states reachable from the given ones through epsilon transitions
+     */
+    private int[] closure(final int[] states) {
+        final int mark = ++lastMark;
+        final IntList result = new IntList();
+        final IntList stack = new IntList();
+        for (int state : states) {
+            if (marks[state] != mark) {
+                marks[state] = mark;
+                stack.add(state);
+            }
+        }
+        while (stack.size() > 0) {
+            final int state = stack.removeLast();
+            result.add(state);
+            final IntList next = epsilons.get(state);
+            if (next != null) {
+                for (int i = 0; i < next.size(); i++) {
+                    final int target = next.get(i);
+                    if (marks[target] != mark) {
+                        marks[target] = mark;
+                        stack.add(target);
+                    }
+                }
+            }
+        }
+        final int[] sorted = result.toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private int[] tagsOf(final int[] set) {
+        final IntList result = new IntList();
+        for (int state : set) {
+            final IntList stateTags = tags.get(state);
+            if (stateTags != null) {
+                for (int i = 0; i < stateTags.size(); i++) {
+                    result.add(stateTags.get(i));
+                }
+            }
+        }
+        final int[] sorted = result.toArray();
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, unique);
+    }
+
+    private static int[] sortTriples(final int[] triples) {
+        final int count = triples.length / 3;
+        final long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) triples[i * 3] << 32) | i;
+        }
+        Arrays.sort(keys);
+        final int[] sorted = new int[triples.length];
+        for (int i = 0; i < count; i++) {
+            final int index = (int) keys[i];
+            System.arraycopy(triples, index * 3, sorted, i * 3, 3);
+        }
+        return sorted;
+    }
+
+    /**
+     * @return the sorted distinct bounds splitting the symbols into intervals where the same triples apply
+     */
+    private static int[] bounds(final int[] triples) {
+        final int[] bounds = new int[triples.length / 3 * 2];
+        for (int i = 0, j = 0; i < triples.length; i += 3) {
+            bounds[j++] = triples[i];
+            bounds[j++] = triples[i + 1] + 1;
+        }
+        Arrays.sort(bounds);
+        int unique = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            if (i == 0 || bounds[i] != bounds[i - 1]) {
+                bounds[unique++] = bounds[i];
+            }
+        }
+        return Arrays.copyOf(bounds, unique);
+    }
+
+    private static final class StateSet {
+        private final int[] states;
+        private final int hash;
+
+        StateSet(final int[] states) {
+            this.states = states;
+            this.hash = Arrays.hashCode(states);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof StateSet && Arrays.equals(states, ((StateSet) o).states);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,549 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.automaton;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the subset of {@link java.util.regex.Pattern} syntax which describes a regular language : literals,
+ * escapes, character classes, {@code .}, groups, alternations and greedy or reluctant quantifiers. Leading
+ * {@code ^} and trailing {@code $} are accepted since values are always matched as a whole.
+ *
+ * Back references, look-arounds, possessive quantifiers, flags, class intersections, Unicode properties and
+ * supplementary characters are not supported : {@link #parse(String)} returns {@code null} and callers keep using
+ * the regular expression.
+ *
+ * @author cgatay
+ */
+final class RegexParser {
+    static final int MAX_SYMBOL = 0xFFFF;
+    private static final int MAX_REPETITION = 1000;
+    private static final int[] DIGITS = {'0', '9'};
+    private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+    private static final int[] SPACES = {'\t', '\r', ' ', ' '};
+    private static final int[] LINE_TERMINATORS = {'\n', '\n', '\r', '\r', '\u0085', '\u0085', '\u2028', '\u2029'};
+
+    private final String regex;
+    private int position;
+
+    private RegexParser(final String regex) {
+        this.regex = regex;
+    }
+
+    /**
+     * @return the syntax tree of the expression, {@code null} if it uses an unsupported construct
+     */
+    static Node parse(final String regex) {
+        final RegexParser parser = new RegexParser(regex);
+        try {
+            final Node node = parser.parseAlternation();
+            if (parser.position != regex.length()) {
+                return null;
+            }
+            return node;
+        } catch (UnsupportedSyntax e) {
+            return null;
+        }
+    }
+
+    private Node parseAlternation() {
+        final List<Node> alternatives = new ArrayList<>();
+        alternatives.add(parseConcatenation());
+        while (position < regex.length() && regex.charAt(position) == '|') {
+            position++;
+            alternatives.add(parseConcatenation());
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : new Alternation(alternatives);
+    }
+
+    private Node parseConcatenation() {
+        final List<Node> nodes = new ArrayList<>();
+        while (position < regex.length() && regex.charAt(position) != '|' && regex.charAt(position) != ')') {
+            nodes.add(parseRepetition());
+        }
+        return nodes.size() == 1 ? nodes.get(0) : new Concatenation(nodes);
+    }
+
+    private Node parseRepetition() {
+        final Node atom = parseAtom();
+        if (position >= regex.length()) {
+            return atom;
+        }
+        final int min;
+        final int max;
+        switch (regex.charAt(position)) {
+            case '*':
+                min = 0;
+                max = -1;
+                position++;
+                break;
+            case '+':
+                min = 1;
+                max = -1;
+                position++;
+                break;
+            case '?':
+                min = 0;
+                max = 1;
+                position++;
+                break;
+            case '{':
+                position++;
+                min = parseNumber();
+                if (peek() == ',') {
+                    position++;
+                    max = peek() == '}' ? -1 : parseNumber();
+                } else {
+                    max = min;
+                }
+                expect('}');
+                if (max >= 0 && max < min) {
+                    throw new UnsupportedSyntax();
+                }
+                break;
+            default:
+                return atom;
+        }
+        if (peek() == '?') {
+            // reluctant quantifiers accept the same values
+            position++;
+        }
+        if (peek() == '+' || peek() == '*' || peek() == '?' || peek() == '{') {
+            // possessive or stacked quantifiers
+            throw new UnsupportedSyntax();
+        }
+        return new Repetition(atom, min, max);
+    }
+
+    private Node parseAtom() {
+        final char c = regex.charAt(position++);
+        switch (c) {
+            case '(':
+                return parseGroup();
+            case '[':
+                return new Chars(parseClass());
+            case '.':
+                return new Chars(complement(LINE_TERMINATORS));
+            case '\\':
+                return new Chars(parseEscape(false));
+            case '^':
+                if (position == 1) {
+                    return new Concatenation(new ArrayList<Node>());
+                }
+                throw new UnsupportedSyntax();
+            case '$':
+                if (position == regex.length()) {
+                    return new Concatenation(new ArrayList<Node>());
+                }
+                throw new UnsupportedSyntax();
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw new UnsupportedSyntax();
+            default:
+                return new Chars(single(literal(c)));
+        }
+    }
+
+    private Node parseGroup() {
+        if (peek() == '?') {
+            position++;
+            final char kind = next();
+            if (kind == '<' && Character.isLetter(peek())) {
+                // named capturing group
+                while (Character.isLetterOrDigit(peek())) {
+                    position++;
+                }
+                expect('>');
+            } else if (kind != ':') {
+                throw new UnsupportedSyntax();
+            }
+        }
+        final Node inner = parseAlternation();
+        expect(')');
+        return inner;
+    }
+
+    private int[] parseClass() {
+        boolean negated = false;
+        if (peek() == '^') {
+            negated = true;
+            position++;
+        }
+        if (peek() == ']') {
+            throw new UnsupportedSyntax();
+        }
+        final List<int[]> elements = new ArrayList<>();
+        boolean first = true;
+        while (true) {
+            final char c = next();
+            if (c == ']') {
+                break;
+            }
+            if (c == '[' || (c == '&' && peek() == '&')) {
+                throw new UnsupportedSyntax();
+            }
+            int low;
+            if (c == '\\') {
+                final int[] escaped = parseEscape(true);
+                if (escaped.length > 2 || escaped[0] != escaped[1]) {
+                    elements.add(escaped);
+                    first = false;
+                    continue;
+                }
+                low = escaped[0];
+            } else if (c == '-' && !first && peek() != ']') {
+                throw new UnsupportedSyntax();
+            } else {
+                low = literal(c);
+            }
+            int high = low;
+            if (peek() == '-' && position + 1 < regex.length() && regex.charAt(position + 1) != ']') {
+                position++;
+                final char end = next();
+                if (end == '\\') {
+                    final int[] escaped = parseEscape(true);
+                    if (escaped.length > 2 || escaped[0] != escaped[1]) {
+                        throw new UnsupportedSyntax();
+                    }
+                    high = escaped[0];
+                } else if (end == '[') {
+                    throw new UnsupportedSyntax();
+                } else {
+                    high = literal(end);
+                }
+                if (high < low) {
+                    throw new UnsupportedSyntax();
+                }
+            }
+            elements.add(new int[]{low, high});
+            first = false;
+        }
+        int[] ranges = new int[0];
+        for (int[] element : elements) {
+            ranges = union(ranges, element);
+        }
+        return negated ? complement(ranges) : ranges;
+    }
+
+    /**
+     * Parses the escape following a backslash
+     * @return the ranges of characters it stands for
+     */
+    private int[] parseEscape(final boolean inClass) {
+        final char c = next();
+        switch (c) {
+            case 'd':
+                return DIGITS;
+            case 'D':
+                return complement(DIGITS);
+            case 'w':
+                return WORD;
+            case 'W':
+                return complement(WORD);
+            case 's':
+                return SPACES;
+            case 'S':
+                return complement(SPACES);
+            case 't':
+                return single('\t');
+            case 'n':
+                return single('\n');
+            case 'r':
+                return single('\r');
+            case 'f':
+                return single('\f');
+            case 'a':
+                return single('\u0007');
+            case 'e':
+                return single('\u001B');
+            case 'x':
+                return single(literal((char) parseHex(2)));
+            case 'u':
+                return single(literal((char) parseHex(4)));
+            default:
+                if (Character.isLetterOrDigit(c) || Character.isSurrogate(c)) {
+                    throw new UnsupportedSyntax();
+                }
+                return single(c);
+        }
+    }
+
+    private int parseHex(final int digits) {
+        if (position + digits > regex.length()) {
+            throw new UnsupportedSyntax();
+        }
+        int value = 0;
+        for (int i = 0; i < digits; i++) {
+            final int digit = Character.digit(regex.charAt(position++), 16);
+            if (digit < 0) {
+                throw new UnsupportedSyntax();
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    private int parseNumber() {
+        final int start = position;
+        while (position < regex.length() && regex.charAt(position) >= '0' && regex.charAt(position) <= '9') {
+            position++;
+        }
+        if (position == start || position - start > 4) {
+            throw new UnsupportedSyntax();
+        }
+        final int value = Integer.parseInt(regex.substring(start, position));
+        if (value > MAX_REPETITION) {
+            throw new UnsupportedSyntax();
+        }
+        return value;
+    }
+
+    private static char literal(final char c) {
+        if (Character.isSurrogate(c)) {
+            throw new UnsupportedSyntax();
+        }
+        return c;
+    }
+
+    private char peek() {
+        return position < regex.length() ? regex.charAt(position) : 0;
+    }
+
+    private char next() {
+        if (position >= regex.length()) {
+            throw new UnsupportedSyntax();
+        }
+        return regex.charAt(position++);
+    }
+
+    private void expect(final char c) {
+        if (next() != c) {
+            throw new UnsupportedSyntax();
+        }
+    }
+
+    private static int[] single(final int c) {
+        return new int[]{c, c};
+    }
+
+    /**
+     * @param ranges sorted and disjoint (low, high) pairs
+     * @return the characters not in the ranges
+     */
+    static int[] complement(final int[] ranges) {
+        final IntList result = new IntList();
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                result.add(next);
+                result.add(ranges[i] - 1);
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= MAX_SYMBOL) {
+            result.add(next);
+            result.add(MAX_SYMBOL);
+        }
+        return result.toArray();
+    }
+
+    /**
+     * @return the sorted and disjoint union of two sets of ranges
+     */
+    static int[] union(final int[] first, final int[] second) {
+        final int[] all = new int[first.length + second.length];
+        System.arraycopy(first, 0, all, 0, first.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
+        // insertion sort of the pairs by low bound, classes are small
+        for (int i = 2; i < all.length; i += 2) {
+            final int low = all[i];
+            final int high = all[i + 1];
+            int j = i - 2;
+            while (j >= 0 && all[j] > low) {
+                all[j + 2] = all[j];
+                all[j + 3] = all[j + 1];
+                j -= 2;
+            }
+            all[j + 2] = low;
+            all[j + 3] = high;
+        }
+        final IntList merged = new IntList();
+        for (int i = 0; i < all.length; i += 2) {
+            final int size = merged.size();
+            if (size > 0 && all[i] <= merged.get(size - 1) + 1) {
+                if (all[i + 1] > merged.get(size - 1)) {
+                    merged.set(size - 1, all[i + 1]);
+                }
+            } else {
+                merged.add(all[i]);
+                merged.add(all[i + 1]);
+            }
+        }
+        return merged.toArray();
+    }
+
+    /**
+     * Node of the syntax tree, emitted as a fragment of a {@link Nfa}
+     */
+    abstract static class Node {
+        /**
+         * @return an upper bound of the number of states the node creates
+         */
+        abstract long size();
+
+        /**
+         * Adds the fragment to the automaton, starting from a state
+         * @return the state reached after the fragment, created by this call and without outgoing edges
+         */
+        abstract int emit(Nfa nfa, int from);
+    }
+
+    static final class Chars extends Node {
+        private final int[] ranges;
+
+        Chars(final int[] ranges) {
+            this.ranges = ranges;
+        }
+
+        @Override
+        long size() {
+            return 1;
+        }
+
+        @Override
+        int emit(final Nfa nfa, final int from) {
+            final int to = nfa.newState();
+            for (int i = 0; i < ranges.length; i += 2) {
+                nfa.addRange(from, ranges[i], ranges[i + 1], to);
+            }
+            return to;
+        }
+    }
+
+    static final class Concatenation extends Node {
+        private final List<Node> nodes;
+
+        Concatenation(final List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        long size() {
+            long size = 1;
+            for (Node node : nodes) {
+                size += node.size();
+            }
+            return size;
+        }
+
+        @Override
+        int emit(final Nfa nfa, final int from) {
+            int current = nfa.newState();
+            nfa.addEpsilon(from, current);
+            for (Node node : nodes) {
+                current = node.emit(nfa, current);
+            }
+            return current;
+        }
+    }
+
+    static final class Alternation extends Node {
+        private final List<Node> alternatives;
+
+        Alternation(final List<Node> alternatives) {
+            this.alternatives = alternatives;
+        }
+
+        @Override
+        long size() {
+            long size = 1;
+            for (Node alternative : alternatives) {
+                size += alternative.size() + 1;
+            }
+            return size;
+        }
+
+        @Override
+        int emit(final Nfa nfa, final int from) {
+            final int end = nfa.newState();
+            for (Node alternative : alternatives) {
+                final int start = nfa.newState();
+                nfa.addEpsilon(from, start);
+                nfa.addEpsilon(alternative.emit(nfa, start), end);
+            }
+            return end;
+        }
+    }
+
+    static final class Repetition extends Node {
+        private final Node node;
+        private final int min;
+        /** -1 if unbounded */
+        private final int max;
+
+        Repetition(final Node node, final int min, final int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        long size() {
+            return (node.size() + 1) * (max < 0 ? min + 1 : Math.max(max, 1)) + 2;
+        }
+
+        @Override
+        int emit(final Nfa nfa, final int from) {
+            int current = nfa.newState();
+            nfa.addEpsilon(from, current);
+            for (int i = 0; i < min; i++) {
+                current = node.emit(nfa, current);
+            }
+            final int end = nfa.newState();
+            if (max < 0) {
+                final int loop = nfa.newState();
+                nfa.addEpsilon(current, loop);
+                nfa.addEpsilon(node.emit(nfa, loop), loop);
+                nfa.addEpsilon(loop, end);
+                return end;
+            }
+            for (int i = min; i < max; i++) {
+                nfa.addEpsilon(current, end);
+                current = node.emit(nfa, current);
+            }
+            nfa.addEpsilon(current, end);
+            return end;
+        }
+    }
+
+    /**
+     * Thrown while parsing an unsupported construct, never escapes {@link #parse(String)}
+     */
+    private static final class UnsupportedSyntax extends RuntimeException {
+        UnsupportedSyntax() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import codetroopers.wicket.web.routes.metrics.StripedCounter;
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.mapper.mount.MountMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single mapper trying the mappers created from the routes file with the most used first.
+ *
+ * Wicket's {@link org.apache.wicket.request.mapper.CompoundRequestMapper} asks every mapper for its compatibility
+ * score and then tries them from the best score, so a request to a route with a low score pays for parsing the
+ * request in every mapper before it. This mapper counts the requests handled by each mapper and, from a background
+ * thread, periodically publishes a new order with the most used mappers first, in a single volatile write.
+ * <p/>
+ * Two mappers which may match the same URL (see {@link RouteSignature#mayOverlap}) are said to conflict : they keep
+ * the relative order the compound mapper would give them when their scores are equal. When a mapper handles a
+ * request, the conflicting mappers tried after it are asked as well if their score for this request is better, so
+ * the handler is always the one the compound mapper would return.
+ * <p/>
+ * The compatibility score is the one of the route handling the request, found in the current order as well. Wicket
+ * asks for the score before mapping the request, the route found is kept in the request cycle for
+ * {@link #mapRequest(Request)}, so that the routes are only tried once.
+ * <p/>
+ * Routes must all be added before the mapper is mounted, it is not meant to be modified afterwards.
+ *
+ * @author cgatay
+ */
+public class AdaptiveRoutesMapper implements IRequestMapper {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveRoutesMapper.class);
+    /** route found for the URL of the current request by {@link #getCompatibilityScore(Request)} */
+    private static final MetaDataKey<Match> MATCH = new MetaDataKey<Match>() {
+        private static final long serialVersionUID = 1L;
+    };
+
+    private final List<Route> routes = new ArrayList<>();
+    private volatile Order order = new Order(new Route[0]);
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Adds a mapper, routes added last have precedence over the first ones when their scores are equal.
+     *
+     * @param mountPath path the mapper is mounted on (with its <code>${name:regex}</code> placeholders)
+     * @param mapper mapper handling the requests under this path
+     * @return {@code this} to allow chaining
+     */
+    public AdaptiveRoutesMapper add(final String mountPath, final IRequestMapper mapper) {
+        final Route route = new Route(routes.size(), mapper, mountPath);
+        for (Route previous : routes) {
+            if (route.mayOverlap(previous)) {
+                route.conflicts.add(previous);
+                previous.conflicts.add(route);
+            }
+        }
+        routes.add(route);
+        final Route[] initial = routes.toArray(new Route[routes.size()]);
+        Collections.reverse(Arrays.asList(initial));
+        this.order = new Order(initial);
+        return this;
+    }
+
+    @Override
+    public IRequestHandler mapRequest(final Request request) {
+        Match match = null;
+        final RequestCycle cycle = RequestCycle.get();
+        if (cycle != null) {
+            match = cycle.getMetaData(MATCH);
+            if (match != null && match.isFor(this, request)) {
+                // a handler is only given once
+                cycle.setMetaData(MATCH, null);
+            } else {
+                match = null;
+            }
+        }
+        if (match == null) {
+            match = match(request);
+        }
+        return match.route == null ? null : hit(match.route, match.handler);
+    }
+
+    /**
+     * @return the route handling the request, the first one of the current order unless a conflicting route has a
+     * better score
+     */
+    private Match match(final Request request) {
+        if (request.getUrl().getSegments().isEmpty()) {
+            // the home page may be handled by any mounted page, whatever its path
+            return matchByScore(request);
+        }
+        final Order current = order;
+        for (int i = 0; i < current.routes.length; i++) {
+            final Route route = current.routes[i];
+            final IRequestHandler handler = route.mapper.mapRequest(request);
+            if (handler != null) {
+                return route.conflicts.isEmpty() ? new Match(this, request, route, handler, -1)
+                                                 : resolveConflicts(request, current, route, handler);
+            }
+        }
+        return new Match(this, request, null, null, 0);
+    }
+
+    /**
+     * Asks the conflicting mappers tried after the one which handled the request, if the compound mapper would
+     * have tried them first.
+     */
+    private Match resolveConflicts(final Request request, final Order current, final Route matched,
+                                   final IRequestHandler handler) {
+        final int position = current.positions[matched.index];
+        Route best = matched;
+        IRequestHandler bestHandler = handler;
+        int bestScore = matched.mapper.getCompatibilityScore(request);
+        for (Route conflict : matched.conflicts) {
+            if (current.positions[conflict.index] < position) {
+                // already tried, it did not handle the request
+                continue;
+            }
+            final int score = conflict.mapper.getCompatibilityScore(request);
+            if (score > bestScore || (score == bestScore && conflict.index > best.index)) {
+                final IRequestHandler conflictHandler = conflict.mapper.mapRequest(request);
+                if (conflictHandler != null) {
+                    best = conflict;
+                    bestHandler = conflictHandler;
+                    bestScore = score;
+                }
+            }
+        }
+        return new Match(this, request, best, bestHandler, bestScore);
+    }
+
+    private Match matchByScore(final Request request) {
+        final List<Candidate> candidates = new ArrayList<>(routes.size());
+        for (Route route : routes) {
+            candidates.add(new Candidate(route, route.mapper.getCompatibilityScore(request)));
+        }
+        Collections.sort(candidates);
+        for (Candidate candidate : candidates) {
+            final IRequestHandler handler = candidate.route.mapper.mapRequest(request);
+            if (handler != null) {
+                return new Match(this, request, candidate.route, handler, candidate.score);
+            }
+        }
+        return new Match(this, request, null, null, 0);
+    }
+
+    private static IRequestHandler hit(final Route route, final IRequestHandler handler) {
+        route.hits.increment();
+        return handler;
+    }
+
+    /**
+     * @return the score of the route handling the request, {@code 0} if none does
+     */
+    @Override
+    public int getCompatibilityScore(final Request request) {
+        final Match match = match(request);
+        final RequestCycle cycle = RequestCycle.get();
+        if (cycle != null) {
+            cycle.setMetaData(MATCH, match);
+        }
+        if (match.score < 0) {
+            return match.route.mapper.getCompatibilityScore(request);
+        }
+        return match.score;
+    }
+
+    @Override
+    public Url mapHandler(final IRequestHandler requestHandler) {
+        for (int i = routes.size() - 1; i >= 0; i--) {
+            final Url url = routes.get(i).mapper.mapHandler(requestHandler);
+            if (url != null) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Computes the order of the mappers from the requests they handled since the previous call, and publishes it.
+     * Hit rates decay by half at each call, so that the order follows the changes of the traffic.
+     */
+    public void reorder() {
+        for (Route route : routes) {
+            final long hits = route.hits.sum();
+            route.rate = route.rate / 2 + (hits - route.sampledHits);
+            route.sampledHits = hits;
+        }
+        // topological sort of the conflicts (oriented by precedence), the most used available route first
+        final int[] pending = new int[routes.size()];
+        final PriorityQueue<Route> available = new PriorityQueue<>(Math.max(1, routes.size()), new Comparator<Route>() {
+            @Override
+            public int compare(final Route first, final Route second) {
+                if (first.rate != second.rate) {
+                    return first.rate > second.rate ? -1 : 1;
+                }
+                return first.index > second.index ? -1 : (first.index == second.index ? 0 : 1);
+            }
+        });
+        for (Route route : routes) {
+            for (Route conflict : route.conflicts) {
+                if (conflict.index > route.index) {
+                    pending[route.index]++;
+                }
+            }
+            if (pending[route.index] == 0) {
+                available.add(route);
+            }
+        }
+        final Route[] reordered = new Route[routes.size()];
+        int next = 0;
+        while (!available.isEmpty()) {
+            final Route route = available.poll();
+            reordered[next++] = route;
+            for (Route conflict : route.conflicts) {
+                if (conflict.index < route.index && --pending[conflict.index] == 0) {
+                    available.add(conflict);
+                }
+            }
+        }
+        this.order = new Order(reordered);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Routes reordered, first ones are now {}", reordered.length > 0 ? reordered[0] : null);
+        }
+    }
+
+    /**
+     * Starts reordering the mappers periodically from a daemon thread.
+     * @param interval interval between two reorderings
+     * @param unit unit of the interval
+     * @return {@code this} to allow chaining
+     */
+    public synchronized AdaptiveRoutesMapper start(final long interval, final TimeUnit unit) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "routes-reorder");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        reorder();
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Unable to reorder routes", e);
+                    }
+                }
+            }, interval, interval, unit);
+        }
+        return this;
+    }
+
+    /**
+     * Stops reordering the mappers, the current order is kept.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return the mappers in the order they are currently tried
+     */
+    List<IRequestMapper> getOrder() {
+        final List<IRequestMapper> mappers = new ArrayList<>();
+        for (Route route : order.routes) {
+            mappers.add(route.mapper);
+        }
+        return mappers;
+    }
+
+    private static final class Route {
+        private final int index;
+        private final IRequestMapper mapper;
+        private final String mountPath;
+        private final RouteSignature signature;
+        private final boolean exact;
+        private final boolean strict;
+        private final List<Route> conflicts = new ArrayList<>();
+        private final StripedCounter hits = new StripedCounter();
+        // only used by the reordering thread
+        private long sampledHits;
+        private long rate;
+
+        Route(final int index, final IRequestMapper mapper, final String mountPath) {
+            this.index = index;
+            this.mapper = mapper;
+            this.mountPath = mountPath;
+            if (mapper instanceof ParamCheckingPatternMapper) {
+                final ParamCheckingPatternMapper patternMapper = (ParamCheckingPatternMapper) mapper;
+                this.signature = patternMapper.getSignature();
+                this.exact = patternMapper.isExact();
+                this.strict = !patternMapper.isIgnoringIncorrectParameters();
+            } else if (mapper instanceof MountMapper) {
+                this.signature = new RouteSignature(mountPath,
+                                                    Collections.<ParamCheckingPatternMapper.PatternPlaceholder>emptyList());
+                this.exact = false;
+                this.strict = false;
+            } else {
+                // nothing is known about the URLs it handles
+                this.signature = null;
+                this.exact = false;
+                this.strict = false;
+            }
+        }
+
+        boolean mayOverlap(final Route other) {
+            return signature == null || other.signature == null
+                   || signature.mayOverlap(exact, strict, other.signature, other.exact, other.strict);
+        }
+
+        @Override
+        public String toString() {
+            return mountPath;
+        }
+    }
+
+    /**
+     * Order in which the routes are tried, with the position of each route
+     */
+    private static final class Order {
+        private final Route[] routes;
+        private final int[] positions;
+
+        Order(final Route[] routes) {
+            this.routes = routes;
+            this.positions = new int[routes.length];
+            for (int i = 0; i < routes.length; i++) {
+                positions[routes[i].index] = i;
+            }
+        }
+    }
+
+    /**
+     * Route found for the URL of a request, with its handler
+     */
+    private static final class Match {
+        private final AdaptiveRoutesMapper mapper;
+        private final Url url;
+        /** {@code null} if no route handles the request */
+        private final Route route;
+        private final IRequestHandler handler;
+        /** score of the route, {@code -1} if it was not asked */
+        private final int score;
+
+        Match(final AdaptiveRoutesMapper mapper, final Request request, final Route route,
+              final IRequestHandler handler, final int score) {
+            this.mapper = mapper;
+            this.url = request.getUrl();
+            this.route = route;
+            this.handler = handler;
+            this.score = score;
+        }
+
+        boolean isFor(final AdaptiveRoutesMapper mapper, final Request request) {
+            return this.mapper == mapper && this.url == request.getUrl();
+        }
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+        private final Route route;
+        private final int score;
+
+        Candidate(final Route route, final int score) {
+            this.route = route;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(final Candidate other) {
+            if (score != other.score) {
+                return score > other.score ? -1 : 1;
+            }
+            return route.index > other.route.index ? -1 : (route.index == other.route.index ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import codetroopers.wicket.web.routes.automaton.Automaton;
+import codetroopers.wicket.web.routes.automaton.Nfa;
+import codetroopers.wicket.web.routes.mounts.MountParameter;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.mapper.mount.MountMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Single mapper dispatching to the mappers created from the routes file through one deterministic automaton.
+ *
+ * The mount paths of all the routes (literal segments and placeholder regular expressions) are compiled into a
+ * single {@link Automaton} reading the segments of the request path, separated by {@link Automaton#SEPARATOR}.
+ * Matching a request is a single pass over its path without backtracking, whatever the number of routes and their
+ * expressions, and gives the few routes which may handle it. Those are then tried the way Wicket's
+ * {@link org.apache.wicket.request.mapper.CompoundRequestMapper} would : by compatibility score, then the most
+ * recently added first. The mappers stay the reference, the automaton never accepts less than them.
+ * <p/>
+ * Regular expressions only reject values for mappers which do not ignore incorrect parameters, the placeholders
+ * of the other mappers accept any value. Expressions the automaton does not support (back references,
+ * look-arounds...) are considered to accept any value as well, and mappers other than
+ * {@link ParamCheckingPatternMapper} and {@link MountMapper} are asked for every request.
+ * <p/>
+ * The automaton is compiled when the first request is mapped after routes have been added. If it would need more
+ * than {@link #MAX_STATES} states, every mapper is asked instead.
+ *
+ * @author cgatay
+ */
+public class AutomatonRoutesMapper implements IRequestMapper {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AutomatonRoutesMapper.class);
+    /**
+     * Maximum number of states of the automaton
+     */
+    public static final int MAX_STATES = 500000;
+    private static final int[] NONE = new int[0];
+
+    private final List<Route> routes = new ArrayList<>();
+    private volatile Compiled compiled;
+
+    /**
+     * Adds a mapper, routes added last have precedence over the first ones when their scores are equal.
+     *
+     * @param mountPath path the mapper is mounted on (with its <code>${name:regex}</code> placeholders)
+     * @param mapper mapper handling the requests under this path
+     * @return {@code this} to allow chaining
+     */
+    public synchronized AutomatonRoutesMapper add(final String mountPath, final IRequestMapper mapper) {
+        routes.add(new Route(routes.size(), mountPath, mapper));
+        compiled = null;
+        return this;
+    }
+
+    @Override
+    public IRequestHandler mapRequest(final Request request) {
+        for (ScoredRoute route : candidates(request)) {
+            final IRequestHandler handler = route.mapper.mapRequest(request);
+            if (handler != null) {
+                return handler;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The best score of the routes which may handle the request
+     */
+    @Override
+    public int getCompatibilityScore(final Request request) {
+        final List<ScoredRoute> candidates = candidates(request);
+        return candidates.isEmpty() ? 0 : candidates.get(0).score;
+    }
+
+    @Override
+    public Url mapHandler(final IRequestHandler requestHandler) {
+        final List<Route> all = compiled().routes;
+        for (int i = all.size() - 1; i >= 0; i--) {
+            final Url url = all.get(i).mapper.mapHandler(requestHandler);
+            if (url != null) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the routes which may handle the request, in the order the compound mapper would try them
+     */
+    private List<ScoredRoute> candidates(final Request request) {
+        final Compiled current = compiled();
+        final List<String> segments = request.getUrl().getSegments();
+        final int[] matched;
+        if (segments.isEmpty() || current.automaton == null) {
+            // the home page may be handled by any mounted page, whatever its path
+            matched = null;
+        } else {
+            final Automaton automaton = current.automaton;
+            int state = automaton.getInitialState();
+            for (int i = 0; i < segments.size() && state >= 0; i++) {
+                if (i > 0) {
+                    state = automaton.step(state, Automaton.SEPARATOR);
+                }
+                if (state >= 0) {
+                    state = automaton.run(state, segments.get(i));
+                }
+            }
+            matched = state < 0 ? NONE : automaton.getTags(state);
+        }
+        final List<ScoredRoute> candidates = new ArrayList<>();
+        if (matched == null) {
+            for (Route route : current.routes) {
+                candidates.add(new ScoredRoute(route.mapper, route.index, route.mapper.getCompatibilityScore(request)));
+            }
+        } else {
+            for (int index : matched) {
+                final Route route = current.routes.get(index);
+                candidates.add(new ScoredRoute(route.mapper, index, route.mapper.getCompatibilityScore(request)));
+            }
+            for (Route route : current.unchecked) {
+                candidates.add(new ScoredRoute(route.mapper, route.index, route.mapper.getCompatibilityScore(request)));
+            }
+        }
+        Collections.sort(candidates);
+        return candidates;
+    }
+
+    private Compiled compiled() {
+        Compiled current = compiled;
+        if (current == null) {
+            synchronized (this) {
+                current = compiled;
+                if (current == null) {
+                    current = new Compiled(new ArrayList<>(routes));
+                    compiled = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return the number of states of the automaton, {@code -1} if it could not be built
+     */
+    int getStateCount() {
+        final Automaton automaton = compiled().automaton;
+        return automaton == null ? -1 : automaton.getStateCount();
+    }
+
+    private static final class Route {
+        private final int index;
+        private final String mountPath;
+        private final IRequestMapper mapper;
+
+        Route(final int index, final String mountPath, final IRequestMapper mapper) {
+            this.index = index;
+            this.mountPath = mountPath;
+            this.mapper = mapper;
+        }
+    }
+
+    private static final class ScoredRoute implements Comparable<ScoredRoute> {
+        private final IRequestMapper mapper;
+        private final int index;
+        private final int score;
+
+        ScoredRoute(final IRequestMapper mapper, final int index, final int score) {
+            this.mapper = mapper;
+            this.index = index;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(final ScoredRoute other) {
+            if (score != other.score) {
+                return score > other.score ? -1 : 1;
+            }
+            return index > other.index ? -1 : (index == other.index ? 0 : 1);
+        }
+    }
+
+    /**
+     * Automaton of a set of routes, with the routes it cannot check
+     */
+    private static final class Compiled {
+        private final List<Route> routes;
+        private final List<Route> unchecked = new ArrayList<>();
+        private final Automaton automaton;
+
+        Compiled(final List<Route> routes) {
+            this.routes = routes;
+            final long start = System.nanoTime();
+            Automaton built;
+            try {
+                final Nfa nfa = new Nfa();
+                final int initial = nfa.newState();
+                for (Route route : routes) {
+                    if (!addRoute(nfa, initial, route)) {
+                        unchecked.add(route);
+                    }
+                }
+                built = nfa.determinize(MAX_STATES);
+            } catch (IllegalStateException e) {
+                built = null;
+            }
+            this.automaton = built;
+            if (automaton == null) {
+                LOGGER.warn("Routes automaton would need more than {} states, every route will be tried", MAX_STATES);
+            } else if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Routes automaton of {} states compiled in {} ms", automaton.getStateCount(),
+                             (System.nanoTime() - start) / 1000000);
+            }
+        }
+
+        /**
+         * Adds the paths the route may match, tagged with its index
+         * @return {@code false} if nothing is known about the paths of the route
+         */
+        private static boolean addRoute(final Nfa nfa, final int initial, final Route route) {
+            final boolean exact;
+            final boolean strict;
+            final String mountPath;
+            final List<ParamCheckingPatternMapper.PatternPlaceholder> placeholders;
+            if (route.mapper instanceof ParamCheckingPatternMapper) {
+                final ParamCheckingPatternMapper mapper = (ParamCheckingPatternMapper) route.mapper;
+                exact = mapper.isExact();
+                strict = !mapper.isIgnoringIncorrectParameters();
+                mountPath = mapper.getSignature().getMountPath();
+                placeholders = mapper.getPatternPlaceholders();
+            } else if (route.mapper instanceof MountMapper) {
+                exact = false;
+                strict = false;
+                mountPath = route.mountPath;
+                placeholders = Collections.emptyList();
+            } else {
+                return false;
+            }
+            // state where no segment has been read yet, while every previous segment is optional
+            int empty = initial;
+            // state after at least one segment
+            int some = -1;
+            for (String segment : mountPath.split("/")) {
+                if (segment.length() == 0) {
+                    continue;
+                }
+                final MountParameter.Type type = RouteSignature.placeholderType(segment);
+                final ParamCheckingPatternMapper.PatternPlaceholder placeholder =
+                        type == null ? null : RouteSignature.find(placeholders, segment);
+                final int next = nfa.newState();
+                if (empty >= 0) {
+                    nfa.addEpsilon(addSegment(nfa, empty, segment, type != null, placeholder, strict), next);
+                }
+                if (some >= 0) {
+                    final int separated = nfa.newState();
+                    nfa.addRange(some, Automaton.SEPARATOR, Automaton.SEPARATOR, separated);
+                    nfa.addEpsilon(addSegment(nfa, separated, segment, type != null, placeholder, strict), next);
+                }
+                if (type == MountParameter.Type.OPTIONAL) {
+                    // any optional placeholder may be left out
+                    if (some >= 0) {
+                        nfa.addEpsilon(some, next);
+                    }
+                } else {
+                    empty = -1;
+                }
+                some = next;
+            }
+            if (some >= 0) {
+                nfa.accept(some, route.index);
+            }
+            if (!exact) {
+                // extra segments
+                final int extra = nfa.newState();
+                nfa.accept(extra, route.index);
+                if (some >= 0) {
+                    nfa.addEpsilon(some, extra);
+                }
+                if (empty >= 0) {
+                    nfa.addEpsilon(nfa.addAnyValue(empty), extra);
+                }
+                final int separated = nfa.newState();
+                nfa.addRange(extra, Automaton.SEPARATOR, Automaton.SEPARATOR, separated);
+                nfa.addEpsilon(nfa.addAnyValue(separated), extra);
+            }
+            return true;
+        }
+
+        /**
+         * @return the state reached after the value of the segment
+         */
+        private static int addSegment(final Nfa nfa, final int from, final String segment, final boolean isPlaceholder,
+                                      final ParamCheckingPatternMapper.PatternPlaceholder placeholder,
+                                      final boolean strict) {
+            if (!isPlaceholder) {
+                return nfa.addLiteral(from, segment);
+            }
+            final String regex = placeholder == null ? null : placeholder.getRegex();
+            if (strict && regex != null) {
+                final int start = nfa.newState();
+                nfa.addEpsilon(from, start);
+                final int end = nfa.addRegex(start, regex, Automaton.MAX_STATES);
+                if (end >= 0) {
+                    if (placeholder.isOptional()) {
+                        nfa.addEpsilon(start, end);
+                    }
+                    return end;
+                }
+            }
+            return nfa.addAnyValue(from);
+        }
+    }
+}
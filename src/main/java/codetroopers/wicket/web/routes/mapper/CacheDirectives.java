@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP caching of the pages of a route, applied by {@link ParamCheckingPatternMapper.Builder#cacheResponses}.
+ *
+ * <ul>
+ *     <li>a maximum age lets browsers and proxies keep the page for that long
+ *     (<code>Cache-Control: public, max-age=...</code>), without one the page must be revalidated
+ *     (<code>Cache-Control: no-cache</code>). Public pages vary with the language and the session of the user
+ *     (<code>Vary: Accept-Language, Cookie</code>)</li>
+ *     <li>the validation gives the page an <code>ETag</code> (hash of its content) or a <code>Last-Modified</code>
+ *     date (time it was rendered), requests having a matching <code>If-None-Match</code> or
+ *     <code>If-Modified-Since</code> header get an empty <code>304 Not Modified</code> response</li>
+ *     <li>stateless routes are expected to render stateless pages, which can be kept in a {@link ResponseCache}</li>
+ * </ul>
+ *
+ * @author cgatay
+ */
+public final class CacheDirectives {
+    /**
+     * How clients revalidate a page they cached
+     */
+    public enum Validation {
+        NONE, ETAG, LAST_MODIFIED
+    }
+
+    public static final CacheDirectives NONE = new CacheDirectives(0, TimeUnit.SECONDS, false, Validation.NONE);
+
+    private final long maxAge;
+    private final boolean stateless;
+    private final Validation validation;
+    private final boolean shared;
+
+    public CacheDirectives(final long maxAge, final TimeUnit unit, final boolean stateless,
+                           final Validation validation) {
+        this(unit.toSeconds(maxAge), stateless, validation, true);
+    }
+
+    private CacheDirectives(final long maxAge, final boolean stateless, final Validation validation,
+                            final boolean shared) {
+        if (maxAge < 0) {
+            throw new IllegalArgumentException("Maximum age must not be negative : " + maxAge);
+        }
+        this.maxAge = maxAge;
+        this.stateless = stateless;
+        this.validation = validation;
+        this.shared = shared;
+    }
+
+    /**
+     * @return the same directives, the pages being only kept by browsers (<code>Cache-Control: private</code>),
+     * for routes requiring roles
+     */
+    public CacheDirectives privately() {
+        return shared ? new CacheDirectives(maxAge, stateless, validation, false) : this;
+    }
+
+    /**
+     * @return maximum age in seconds, {@code 0} if pages must be revalidated
+     */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    public boolean isStateless() {
+        return stateless;
+    }
+
+    public Validation getValidation() {
+        return validation;
+    }
+
+    /**
+     * @return whether proxies may keep the pages, {@code false} if only browsers may
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * @return whether the responses of the route get caching headers
+     */
+    boolean isEnabled() {
+        return maxAge > 0 || validation != Validation.NONE;
+    }
+
+    /**
+     * @return whether the rendered pages may be kept in a {@link ResponseCache} : stateless public pages having
+     * a maximum age
+     */
+    boolean allowsResponseCache() {
+        return stateless && shared && maxAge > 0;
+    }
+
+    String cacheControl() {
+        return (shared ? "public" : "private") + (maxAge > 0 ? ", max-age=" + maxAge : ", no-cache");
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final CacheDirectives that = (CacheDirectives) o;
+        return maxAge == that.maxAge && stateless == that.stateless && shared == that.shared
+               && validation == that.validation;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (maxAge ^ (maxAge >>> 32));
+        result = 31 * result + (stateless ? 1 : 0);
+        result = 31 * result + validation.hashCode();
+        result = 31 * result + (shared ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheDirectives{" + cacheControl() + ", stateless=" + stateless + ", validation=" + validation + '}';
+    }
+}
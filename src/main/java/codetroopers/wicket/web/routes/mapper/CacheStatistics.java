@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+/**
+ * Snapshot of the counters of a cache.
+ *
+ * @author cgatay
+ */
+public final class CacheStatistics {
+    private final int maxSize;
+    private final int size;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    CacheStatistics(final int maxSize, final int size, final long hits, final long misses, final long evictions) {
+        this.maxSize = maxSize;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return hits divided by lookups, {@code 0} if the cache has not been used yet
+     */
+    public double getHitRate() {
+        final long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics{size=" + size + "/" + maxSize + ", hits=" + hits + ", misses=" + misses
+               + ", evictions=" + evictions + '}';
+    }
+}
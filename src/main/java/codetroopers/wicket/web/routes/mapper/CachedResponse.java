@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import org.apache.wicket.request.http.WebRequest;
+import org.apache.wicket.request.http.WebResponse;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Rendered page : its headers and content, written by characters or by bytes, with its validators.
+ *
+ * @author cgatay
+ */
+final class CachedResponse {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String contentType;
+    /** headers other than the caching ones, as name, value and whether the value is added */
+    private final List<String[]> headers;
+    private final String text;
+    private final byte[] bytes;
+    private final String etag;
+    private final long lastModified;
+    private final long expires;
+
+    /**
+     * @param renderedAt time the page was rendered, its last modification
+     * @param maxAge seconds the page is kept
+     */
+    CachedResponse(final String contentType, final List<String[]> headers, final CharSequence text,
+                   final byte[] bytes, final long renderedAt, final long maxAge) {
+        this.contentType = contentType;
+        this.headers = Collections.unmodifiableList(headers);
+        this.text = text == null ? null : text.toString();
+        this.bytes = bytes;
+        this.etag = etag(this.text, bytes);
+        this.lastModified = renderedAt / 1000 * 1000;
+        this.expires = renderedAt + maxAge * 1000;
+    }
+
+    boolean isExpired(final long now) {
+        return now >= expires;
+    }
+
+    String getEtag() {
+        return etag;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return whether the client already has this content, according to the validation of the route
+     */
+    boolean isNotModified(final WebRequest request, final CacheDirectives.Validation validation) {
+        if (validation == CacheDirectives.Validation.ETAG) {
+            final String ifNoneMatch = request.getHeader("If-None-Match");
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                final String trimmed = tag.trim();
+                if ("*".equals(trimmed) || etag.equals(trimmed) || ("W/" + etag).equals(trimmed)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (validation == CacheDirectives.Validation.LAST_MODIFIED) {
+            final long since = parseDate(request.getHeader("If-Modified-Since"));
+            return since >= 0 && lastModified <= since;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the headers and the content of the page, the caching headers having been written already
+     */
+    void writeTo(final WebResponse response) {
+        for (String[] header : headers) {
+            if (header[2] != null) {
+                response.addHeader(header[0], header[1]);
+            } else {
+                response.setHeader(header[0], header[1]);
+            }
+        }
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        if (text != null) {
+            response.write(text);
+        }
+        if (bytes != null) {
+            response.write(bytes);
+        }
+    }
+
+    /**
+     * @return a strong entity tag hashing the content (64 bits FNV-1a)
+     */
+    static String etag(final String text, final byte[] bytes) {
+        long hash = FNV_OFFSET;
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                final char c = text.charAt(i);
+                hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+                hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+            }
+        }
+        if (bytes != null) {
+            for (byte b : bytes) {
+                hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+            }
+        }
+        return '"' + Long.toHexString(hash) + '"';
+    }
+
+    static String formatDate(final long time) {
+        return httpDateFormat().format(new Date(time));
+    }
+
+    /**
+     * @return the time of an HTTP date, {@code -1} if the date is missing or malformed
+     */
+    static long parseDate(final String date) {
+        if (date == null) {
+            return -1;
+        }
+        try {
+            return httpDateFormat().parse(date).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    private static SimpleDateFormat httpDateFormat() {
+        final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import org.apache.wicket.core.request.handler.IPageProvider;
+import org.apache.wicket.protocol.http.BufferedWebResponse;
+import org.apache.wicket.request.IRequestCycle;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestHandlerDelegate;
+import org.apache.wicket.request.component.IRequestablePage;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.http.WebRequest;
+import org.apache.wicket.request.http.WebResponse;
+import org.apache.wicket.util.time.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.Cookie;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Renders a page of a route having {@link CacheDirectives} into a buffer, then writes it with the caching headers
+ * of the route instead of the ones set by the page, or answers <code>304 Not Modified</code> when the client
+ * already has it. Stateless pages may be served from a {@link ResponseCache} without being rendered.
+ * Responses which are not plain pages (redirects, errors, cookies) are written as rendered.
+ *
+ * @author cgatay
+ */
+final class CachingRequestHandler implements IRequestHandlerDelegate {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingRequestHandler.class);
+
+    private final IRequestHandler delegate;
+    private final IPageProvider pageProvider;
+    private final CacheDirectives directives;
+    private final ResponseCache cache;
+    private final String key;
+    /** whether a stateful page has been reported for this route */
+    private final AtomicBoolean statefulReported;
+
+    /**
+     * @param pageProvider provider of the page rendered by the delegate
+     * @param cache cache of the rendered pages, {@code null} to render each request
+     * @param key route and parameters of the page
+     */
+    CachingRequestHandler(final IRequestHandler delegate, final IPageProvider pageProvider,
+                          final CacheDirectives directives, final ResponseCache cache, final String key,
+                          final AtomicBoolean statefulReported) {
+        this.delegate = delegate;
+        this.pageProvider = pageProvider;
+        this.directives = directives;
+        this.cache = directives.allowsResponseCache() ? cache : null;
+        this.key = key;
+        this.statefulReported = statefulReported;
+    }
+
+    @Override
+    public IRequestHandler getDelegateHandler() {
+        return delegate;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    @Override
+    public void respond(final IRequestCycle requestCycle) {
+        final WebRequest request = (WebRequest) requestCycle.getRequest();
+        final WebResponse response = (WebResponse) requestCycle.getResponse();
+        final long now = System.currentTimeMillis();
+        if (cache != null) {
+            final CachedResponse cached = cache.get(key, now);
+            if (cached != null) {
+                write(cached, request, response, now);
+                return;
+            }
+        }
+        final CapturingWebResponse capture = new CapturingWebResponse(response);
+        final RequestCycle cycle = (RequestCycle) requestCycle;
+        cycle.setResponse(capture);
+        try {
+            delegate.respond(requestCycle);
+        } finally {
+            cycle.setResponse(response);
+        }
+        if (!capture.isPlainPage() || !isPageStateless()) {
+            capture.writeTo(response);
+            return;
+        }
+        final CachedResponse rendered = capture.toCachedResponse(now, directives.getMaxAge());
+        if (cache != null) {
+            cache.put(key, rendered);
+        }
+        write(rendered, request, response, now);
+    }
+
+    private void write(final CachedResponse page, final WebRequest request, final WebResponse response,
+                       final long now) {
+        response.setHeader("Cache-Control", directives.cacheControl());
+        if (directives.isShared()) {
+            // pages are rendered in the language of the session
+            response.setHeader("Vary", "Accept-Language, Cookie");
+        }
+        if (directives.getMaxAge() > 0) {
+            response.setDateHeader("Expires", Time.millis(now + directives.getMaxAge() * 1000));
+        }
+        if (directives.getValidation() == CacheDirectives.Validation.ETAG) {
+            response.setHeader("ETag", page.getEtag());
+        } else if (directives.getValidation() == CacheDirectives.Validation.LAST_MODIFIED) {
+            response.setDateHeader("Last-Modified", Time.millis(page.getLastModified()));
+        }
+        if (page.isNotModified(request, directives.getValidation())) {
+            response.setStatus(304);
+            return;
+        }
+        page.writeTo(response);
+    }
+
+    /**
+     * A stateful page keeps its caching headers : its links point to the page instance stored in the session.
+     */
+    private boolean isPageStateless() {
+        final IRequestablePage page = pageProvider.getPageInstance();
+        if (page == null || page.isPageStateless()) {
+            return true;
+        }
+        if (directives.isStateless() && statefulReported.compareAndSet(false, true)) {
+            LOGGER.warn("{} is declared stateless but {} is stateful, its responses are not cached", key,
+                        page.getClass().getName());
+        }
+        return false;
+    }
+
+    @Override
+    public void detach(final IRequestCycle requestCycle) {
+        delegate.detach(requestCycle);
+    }
+
+    /**
+     * Buffers a response, keeping apart the headers a cached page needs
+     */
+    static final class CapturingWebResponse extends BufferedWebResponse {
+        private final List<String[]> headers = new ArrayList<>();
+        private String contentType;
+        private ByteArrayOutputStream bytes;
+        private boolean plainPage = true;
+
+        CapturingWebResponse(final WebResponse originalResponse) {
+            super(originalResponse);
+        }
+
+        /**
+         * @return whether the response is a page, without status, redirection nor cookie
+         */
+        boolean isPlainPage() {
+            return plainPage;
+        }
+
+        CachedResponse toCachedResponse(final long now, final long maxAge) {
+            return new CachedResponse(contentType, headers, getText(),
+                                      bytes == null ? null : bytes.toByteArray(), now, maxAge);
+        }
+
+        private static boolean isCachingHeader(final String name) {
+            return "Cache-Control".equalsIgnoreCase(name) || "Pragma".equalsIgnoreCase(name)
+                   || "Expires".equalsIgnoreCase(name) || "ETag".equalsIgnoreCase(name)
+                   || "Last-Modified".equalsIgnoreCase(name) || "Date".equalsIgnoreCase(name);
+        }
+
+        @Override
+        public void setHeader(final String name, final String value) {
+            super.setHeader(name, value);
+            if (!isCachingHeader(name)) {
+                headers.add(new String[]{name, value, null});
+            }
+        }
+
+        @Override
+        public void addHeader(final String name, final String value) {
+            super.addHeader(name, value);
+            if (!isCachingHeader(name)) {
+                headers.add(new String[]{name, value, "add"});
+            }
+        }
+
+        @Override
+        public void setDateHeader(final String name, final Time date) {
+            super.setDateHeader(name, date);
+            if (!isCachingHeader(name)) {
+                headers.add(new String[]{name, CachedResponse.formatDate(date.getMilliseconds()), null});
+            }
+        }
+
+        @Override
+        public void setContentType(final String mimeType) {
+            super.setContentType(mimeType);
+            this.contentType = mimeType;
+        }
+
+        @Override
+        public void setStatus(final int sc) {
+            super.setStatus(sc);
+            if (sc != 200) {
+                plainPage = false;
+            }
+        }
+
+        @Override
+        public void sendError(final int sc, final String msg) {
+            super.sendError(sc, msg);
+            plainPage = false;
+        }
+
+        @Override
+        public void sendRedirect(final String url) {
+            super.sendRedirect(url);
+            plainPage = false;
+        }
+
+        @Override
+        public void addCookie(final Cookie cookie) {
+            super.addCookie(cookie);
+            plainPage = false;
+        }
+
+        @Override
+        public void clearCookie(final Cookie cookie) {
+            super.clearCookie(cookie);
+            plainPage = false;
+        }
+
+        @Override
+        public void write(final byte[] array) {
+            write(array, 0, array.length);
+        }
+
+        @Override
+        public void write(final byte[] array, final int offset, final int length) {
+            super.write(array, offset, length);
+            if (bytes == null) {
+                bytes = new ByteArrayOutputStream();
+            }
+            bytes.write(array, offset, length);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded cache whose reads never lock.
+ *
+ * Entries are kept in a concurrent map and in a ring walked by a CLOCK hand when room is needed. Each read raises
+ * the frequency of the entry (up to {@link #MAX_FREQUENCY}) and each pass of the hand lowers it : an entry is
+ * evicted when the hand finds it at zero. Entries read only once are therefore evicted before the ones read again,
+ * which gives the scan resistance of a segmented LRU (probation and protected segments) without moving entries
+ * between lists on reads.
+ *
+ * @author cgatay
+ */
+final class ClockCache<K, V> {
+    static final int MAX_FREQUENCY = 3;
+
+    private final ConcurrentMap<K, Entry<K, V>> entries;
+    private final Entry<K, V>[] ring;
+    private int hand;
+    private int size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    ClockCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive : " + maxSize);
+        }
+        this.entries = new ConcurrentHashMap<>(maxSize * 4 / 3 + 1);
+        this.ring = new Entry[maxSize];
+    }
+
+    V get(final K key) {
+        final Entry<K, V> entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        // racy increment, losing a few updates only makes the frequency less accurate
+        if (entry.frequency < MAX_FREQUENCY) {
+            entry.frequency++;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Reads an entry without counting the lookup nor raising its frequency.
+     */
+    V peek(final K key) {
+        final Entry<K, V> entry = entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    synchronized void put(final K key, final V value) {
+        final Entry<K, V> existing = entries.get(key);
+        if (existing != null) {
+            existing.value = value;
+            return;
+        }
+        final int slot = size < ring.length ? size++ : evict();
+        final Entry<K, V> entry = new Entry<>(key, value);
+        ring[slot] = entry;
+        entries.put(key, entry);
+    }
+
+    /**
+     * Moves the hand until it finds an entry which has not been read since its last pass and removes it.
+     * @return the freed slot
+     */
+    private int evict() {
+        while (true) {
+            final int slot = hand;
+            hand = (hand + 1) % ring.length;
+            final Entry<K, V> entry = ring[slot];
+            if (entry.frequency > 0) {
+                entry.frequency--;
+            } else {
+                entries.remove(entry.key);
+                evictions.incrementAndGet();
+                return slot;
+            }
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        for (int i = 0; i < size; i++) {
+            ring[i] = null;
+        }
+        size = 0;
+        hand = 0;
+    }
+
+    CacheStatistics statistics() {
+        return new CacheStatistics(ring.length, entries.size(), hits.get(), misses.get(), evictions.get());
+    }
+
+    private static final class Entry<K, V> {
+        private final K key;
+        private volatile V value;
+        private volatile int frequency;
+
+        Entry(final K key, final V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
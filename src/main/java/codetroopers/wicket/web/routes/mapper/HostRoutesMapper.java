@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.http.WebRequest;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Single mapper dispatching each request to the routes of its host.
+ *
+ * Every host named by the routes file has its own routes table, holding the routes of this host and the routes shared
+ * by every host, the mappers of the shared routes being the same instances in all the tables. A request is dispatched
+ * to the table of the host of its <code>Host</code> header, found with a single hash lookup, so the routes of the other
+ * hosts are never tried. Requests to a host without routes of its own, or without <code>Host</code> header, are
+ * dispatched to the table of the shared routes.
+ * <p/>
+ * URLs are generated by the table of the host of the current request, the shared table outside of a request.
+ * The tables are given when the mapper is created, it is not meant to be modified afterwards.
+ *
+ * @author cgatay
+ */
+public final class HostRoutesMapper implements IRequestMapper {
+    private final Map<String, IRequestMapper> tables;
+    private final IRequestMapper shared;
+
+    /**
+     * @param tables routes table of each host, by host name
+     * @param shared table of the routes shared by every host, used for the other hosts
+     */
+    public HostRoutesMapper(final Map<String, ? extends IRequestMapper> tables, final IRequestMapper shared) {
+        final Map<String, IRequestMapper> lowerCaseTables = new HashMap<>();
+        for (Map.Entry<String, ? extends IRequestMapper> entry : tables.entrySet()) {
+            lowerCaseTables.put(entry.getKey().toLowerCase(Locale.ENGLISH), entry.getValue());
+        }
+        this.tables = lowerCaseTables;
+        this.shared = shared;
+    }
+
+    @Override
+    public IRequestHandler mapRequest(final Request request) {
+        return tableOf(request).mapRequest(request);
+    }
+
+    @Override
+    public int getCompatibilityScore(final Request request) {
+        return tableOf(request).getCompatibilityScore(request);
+    }
+
+    @Override
+    public Url mapHandler(final IRequestHandler requestHandler) {
+        final RequestCycle requestCycle = RequestCycle.get();
+        return tableOf(requestCycle != null ? requestCycle.getRequest() : null).mapHandler(requestHandler);
+    }
+
+    /**
+     * @return the routes table of the host of the request, the shared table if the host has no routes of its own
+     */
+    IRequestMapper tableOf(final Request request) {
+        final String host = hostOf(request);
+        if (host == null) {
+            return shared;
+        }
+        final IRequestMapper table = tables.get(host);
+        return table != null ? table : shared;
+    }
+
+    /**
+     * @return the lower case host name of the <code>Host</code> header of the request, without its port,
+     * {@code null} if the request has no such header
+     */
+    static String hostOf(final Request request) {
+        if (!(request instanceof WebRequest)) {
+            return null;
+        }
+        final String header = ((WebRequest) request).getHeader("Host");
+        if (header == null || header.isEmpty()) {
+            return null;
+        }
+        final int end;
+        if (header.charAt(0) == '[') {
+            // IPv6 literal, its port follows the closing bracket
+            final int bracket = header.indexOf(']');
+            end = bracket < 0 ? header.length() : bracket + 1;
+        } else {
+            final int colon = header.indexOf(':');
+            end = colon < 0 ? header.length() : colon;
+        }
+        return header.substring(0, end).toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @return the names of the hosts having their own routes table
+     */
+    public Set<String> getHosts() {
+        return Collections.unmodifiableSet(tables.keySet());
+    }
+
+    /**
+     * @return the routes tables of the hosts and the shared table, each table once even if several hosts use it
+     */
+    public Collection<IRequestMapper> getTables() {
+        final Set<IRequestMapper> distinct = Collections.newSetFromMap(new IdentityHashMap<IRequestMapper, Boolean>());
+        distinct.add(shared);
+        distinct.addAll(tables.values());
+        return distinct;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.core.request.mapper.PackageMapper;
+import org.apache.wicket.request.component.IRequestablePage;
+import org.apache.wicket.util.lang.PackageName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * {@link PackageMapper} resolving the page classes of the URLs through an index of the package, instead of asking the
+ * class resolver of the application for every requested name.
+ * <p>
+ * The names of the classes of the package are listed from the class path when the mapper is created (directories
+ * and jar files), so that a name outside of the package is rejected with a single hash lookup, without loading
+ * anything : probing random paths under the mount point costs no class loading. The classes of the index are
+ * resolved once, when first requested, and kept.
+ * When the package can not be listed, names are resolved when first requested, the classes found being kept and
+ * the names not found being remembered in a bounded cache.
+ *
+ * @author cgatay
+ */
+public class IndexedPackageMapper extends PackageMapper {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexedPackageMapper.class);
+    /** default number of names not found remembered when the package can not be listed */
+    public static final int NOT_FOUND_CACHE_SIZE = 1000;
+
+    /** value of the classes of the index not resolved yet */
+    private static final Object UNRESOLVED = new Object();
+    /** value of the names which are not page classes */
+    private static final Object NOT_A_PAGE = new Object();
+
+    private final boolean indexed;
+    /** page classes, {@link #UNRESOLVED} or {@link #NOT_A_PAGE} by fully qualified name */
+    private final ConcurrentMap<String, Object> classes = new ConcurrentHashMap<>();
+    /** names not found, only used when the package is not indexed */
+    private final ClockCache<String, Boolean> notFound;
+
+    /**
+     * Indexes the package with the class loader of the class resolver of the application, the one resolving the
+     * pages of a {@link PackageMapper}, or the context class loader of the thread outside of an application
+     */
+    public IndexedPackageMapper(final PackageName packageName) {
+        this(packageName, listClasses(packageName, applicationClassLoader()), NOT_FOUND_CACHE_SIZE);
+    }
+
+    /**
+     * @param classNames fully qualified names of the classes of the package, {@code null} if unknown
+     * @param notFoundCacheSize number of names not found remembered when the class names are unknown
+     */
+    public IndexedPackageMapper(final PackageName packageName, final Set<String> classNames,
+                                final int notFoundCacheSize) {
+        super(packageName);
+        this.indexed = classNames != null;
+        if (indexed) {
+            for (String className : classNames) {
+                classes.put(className, UNRESOLVED);
+            }
+            this.notFound = null;
+        } else {
+            this.notFound = new ClockCache<>(notFoundCacheSize);
+        }
+    }
+
+    private static ClassLoader applicationClassLoader() {
+        if (Application.exists()) {
+            return Application.get().getApplicationSettings().getClassResolver().getClassLoader();
+        }
+        return Thread.currentThread().getContextClassLoader();
+    }
+
+    /**
+     * Lists the classes of a package without loading them, from every directory and jar file of the class path
+     * holding it.
+     * @return fully qualified names of the classes, {@code null} if the class loader does not find the package or
+     * a location of the package can not be listed
+     */
+    public static Set<String> listClasses(final PackageName packageName, final ClassLoader classLoader) {
+        if (classLoader == null) {
+            return null;
+        }
+        final String path = packageName.getName().replace('.', '/');
+        final Set<String> classNames = new HashSet<>();
+        try {
+            final Enumeration<URL> locations = classLoader.getResources(path);
+            if (!locations.hasMoreElements()) {
+                // the pages may come from another class loader, an empty index would reject all of them
+                return null;
+            }
+            while (locations.hasMoreElements()) {
+                if (!listClasses(locations.nextElement(), packageName.getName(), path, classNames)) {
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to list the classes of package {} : {}", packageName.getName(), e.getMessage());
+            return null;
+        }
+        return classNames;
+    }
+
+    private static boolean listClasses(final URL location, final String packageName, final String path,
+                                       final Set<String> classNames) throws IOException {
+        if ("file".equals(location.getProtocol())) {
+            final File[] files;
+            try {
+                files = new File(location.toURI()).listFiles();
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                return false;
+            }
+            if (files == null) {
+                return false;
+            }
+            for (File file : files) {
+                addClass(file.getName(), packageName, classNames);
+            }
+            return true;
+        }
+        final URLConnection connection = location.openConnection();
+        if (!(connection instanceof JarURLConnection)) {
+            return false;
+        }
+        final JarURLConnection jarConnection = (JarURLConnection) connection;
+        jarConnection.setUseCaches(false);
+        try (JarFile jar = jarConnection.getJarFile()) {
+            final String prefix = path + '/';
+            final Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                final String name = entries.nextElement().getName();
+                if (name.startsWith(prefix) && name.indexOf('/', prefix.length()) < 0) {
+                    addClass(name.substring(prefix.length()), packageName, classNames);
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void addClass(final String fileName, final String packageName, final Set<String> classNames) {
+        if (fileName.endsWith(".class")) {
+            classNames.add(packageName + '.' + fileName.substring(0, fileName.length() - ".class".length()));
+        }
+    }
+
+    /**
+     * Looks the name up in the index, the class being resolved the first time it is asked for
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Class<? extends IRequestablePage> getPageClass(final String name) {
+        final Object known = classes.get(name);
+        if (known instanceof Class) {
+            return (Class<? extends IRequestablePage>) known;
+        }
+        if (known == NOT_A_PAGE) {
+            return null;
+        }
+        if (known == null && (indexed || notFound.get(name) != null)) {
+            return null;
+        }
+        final Class<? extends IRequestablePage> pageClass = resolve(name);
+        if (pageClass != null) {
+            classes.put(name, pageClass);
+        } else if (indexed) {
+            classes.put(name, NOT_A_PAGE);
+        } else {
+            notFound.put(name, Boolean.TRUE);
+        }
+        return pageClass;
+    }
+
+    private Class<? extends IRequestablePage> resolve(final String name) {
+        final Class<?> resolved;
+        try {
+            resolved = super.getPageClass(name);
+        } catch (RuntimeException e) {
+            LOGGER.debug("Unable to resolve class {} : {}", name, e.getMessage());
+            return null;
+        }
+        if (resolved == null || !IRequestablePage.class.isAssignableFrom(resolved)) {
+            return null;
+        }
+        return resolved.asSubclass(IRequestablePage.class);
+    }
+
+    /**
+     * @return whether the classes of the package are known, names outside of the package being rejected without
+     * resolving them
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * @return lookups of the names not found when the package is not indexed, {@code null} if it is
+     */
+    public CacheStatistics getNotFoundCacheStatistics() {
+        return notFound == null ? null : notFound.statistics();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import codetroopers.wicket.web.routes.metrics.RouteMetrics;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.mapper.mount.MountMapper;
+
+/**
+ * {@link MountMapper} recording its matches and the time spent mapping requests, used for package mounts.
+ *
+ * @author cgatay
+ */
+public class InstrumentedMountMapper extends MountMapper {
+    private final RouteMetrics metrics;
+
+    public InstrumentedMountMapper(final String mountPath, final IRequestMapper mapper, final RouteMetrics metrics) {
+        super(mountPath, mapper);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public IRequestHandler mapRequest(final Request request) {
+        final long start = System.nanoTime();
+        final IRequestHandler handler = super.mapRequest(request);
+        metrics.recordParse(System.nanoTime() - start, handler != null);
+        return handler;
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.mapper.info.PageComponentInfo;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.string.StringValue;
+
+import java.io.ObjectStreamException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Page parameters of a request matched by a {@link ParamCheckingPatternMapper}, read from the segments and the
+ * query parameters of its URL when asked for instead of being copied when the request is mapped.
+ *
+ * Reading the values of a parameter by name only looks at the URL. Any other operation (changing the parameters,
+ * listing them, indexed parameters, comparison, serialization...) first builds the same parameters as Wicket's
+ * {@link org.apache.wicket.core.request.mapper.MountedMapper} would, the view then behaves like plain
+ * {@link PageParameters}. Values stripped because they do not match their placeholder are left out in both cases.
+ * As with any subclass of {@link PageParameters}, a view is never equal to plain parameters holding the same values.
+ *
+ * @author cgatay
+ */
+final class LazyPageParameters extends PageParameters {
+    private static final long serialVersionUID = 1L;
+
+    /** mapper building the parameters, {@code null} once they are built */
+    private transient ParamCheckingPatternMapper mapper;
+    private transient Request request;
+    private transient Url url;
+    /** names of the placeholders and their values in the path, {@code null} if the segment is not in the URL */
+    private transient String[] names;
+    private transient String[] pathValues;
+    /** (name, value) pairs of the values to leave out */
+    private transient List<String> stripped;
+
+    LazyPageParameters(final ParamCheckingPatternMapper mapper, final Request request, final Url url,
+                       final String[] names, final String[] pathValues) {
+        this.mapper = mapper;
+        this.request = request;
+        this.url = url;
+        this.names = names;
+        this.pathValues = pathValues;
+    }
+
+    /**
+     * @return the values of the parameter in the URL, stripped values included, in the order Wicket would give them
+     */
+    List<String> getRawValues(final String name) {
+        List<String> values = null;
+        final List<Url.QueryParameter> queryParameters = url.getQueryParameters();
+        for (int i = 0; i < queryParameters.size(); i++) {
+            final Url.QueryParameter parameter = queryParameters.get(i);
+            if (name.equals(parameter.getName()) && !(i == 0 && isPageComponentInfo(parameter))) {
+                if (values == null) {
+                    values = new ArrayList<>(2);
+                }
+                values.add(parameter.getValue());
+            }
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (pathValues[i] != null && names[i].equals(name)) {
+                if (values == null) {
+                    values = new ArrayList<>(1);
+                }
+                values.add(pathValues[i]);
+            }
+        }
+        return values == null ? Collections.<String>emptyList() : values;
+    }
+
+    /**
+     * Leaves out a value which does not match its placeholder
+     */
+    void strip(final String name, final String value) {
+        if (mapper == null) {
+            super.remove(name, value);
+            return;
+        }
+        if (stripped == null) {
+            stripped = new ArrayList<>(2);
+        }
+        stripped.add(name);
+        stripped.add(value);
+    }
+
+    /**
+     * The version of the page in the first query parameter is not a page parameter
+     */
+    static boolean isPageComponentInfo(final Url.QueryParameter parameter) {
+        final String value = parameter.getValue();
+        return (value == null || value.length() == 0) && PageComponentInfo.parse(parameter.getName()) != null;
+    }
+
+    private boolean isStripped(final String name, final String value) {
+        if (stripped != null) {
+            for (int i = 0; i < stripped.size(); i += 2) {
+                if (stripped.get(i).equals(name) && stripped.get(i + 1).equals(value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the parameters, the view is then backed by them
+     */
+    private void materialize() {
+        if (mapper == null) {
+            return;
+        }
+        final PageParameters parameters = mapper.extractEagerly(request, url);
+        mapper = null;
+        if (parameters != null) {
+            if (stripped != null) {
+                for (int i = 0; i < stripped.size(); i += 2) {
+                    parameters.remove(stripped.get(i), stripped.get(i + 1));
+                }
+            }
+            for (int i = 0; i < parameters.getIndexedCount(); i++) {
+                super.set(i, parameters.get(i).toString());
+            }
+            for (NamedPair pair : parameters.getAllNamed()) {
+                super.add(pair.getKey(), pair.getValue());
+            }
+        }
+        request = null;
+        url = null;
+        names = null;
+        pathValues = null;
+        stripped = null;
+    }
+
+    @Override
+    public StringValue get(final String name) {
+        if (mapper == null) {
+            return super.get(name);
+        }
+        for (String value : getRawValues(name)) {
+            if (!isStripped(name, value)) {
+                return StringValue.valueOf(value);
+            }
+        }
+        return StringValue.valueOf((String) null);
+    }
+
+    @Override
+    public List<StringValue> getValues(final String name) {
+        if (mapper == null) {
+            return super.getValues(name);
+        }
+        final List<StringValue> values = new ArrayList<>();
+        for (String value : getRawValues(name)) {
+            if (!isStripped(name, value)) {
+                values.add(StringValue.valueOf(value));
+            }
+        }
+        return values.isEmpty() ? Collections.<StringValue>emptyList() : Collections.unmodifiableList(values);
+    }
+
+    @Override
+    public int getIndexedCount() {
+        materialize();
+        return super.getIndexedCount();
+    }
+
+    @Override
+    public PageParameters set(final int index, final Object object) {
+        materialize();
+        return super.set(index, object);
+    }
+
+    @Override
+    public StringValue get(final int index) {
+        materialize();
+        return super.get(index);
+    }
+
+    @Override
+    public PageParameters remove(final int index) {
+        materialize();
+        return super.remove(index);
+    }
+
+    @Override
+    public PageParameters clearIndexed() {
+        materialize();
+        return super.clearIndexed();
+    }
+
+    @Override
+    public Set<String> getNamedKeys() {
+        materialize();
+        return super.getNamedKeys();
+    }
+
+    @Override
+    public List<NamedPair> getAllNamed() {
+        materialize();
+        return super.getAllNamed();
+    }
+
+    @Override
+    public int getPosition(final String name) {
+        materialize();
+        return super.getPosition(name);
+    }
+
+    @Override
+    public PageParameters remove(final String name, final String... values) {
+        materialize();
+        return super.remove(name, values);
+    }
+
+    @Override
+    public PageParameters add(final String name, final Object value) {
+        materialize();
+        return super.add(name, value);
+    }
+
+    @Override
+    public PageParameters set(final String name, final Object value, final int index) {
+        materialize();
+        return super.set(name, value, index);
+    }
+
+    @Override
+    public PageParameters set(final String name, final Object value) {
+        materialize();
+        return super.set(name, value);
+    }
+
+    @Override
+    public PageParameters clearNamed() {
+        materialize();
+        return super.clearNamed();
+    }
+
+    @Override
+    public PageParameters overwriteWith(final PageParameters other) {
+        materialize();
+        return super.overwriteWith(other);
+    }
+
+    @Override
+    public PageParameters mergeWith(final PageParameters other) {
+        materialize();
+        return super.mergeWith(other);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        materialize();
+        return super.isEmpty();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        materialize();
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        materialize();
+        return super.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        materialize();
+        return super.toString();
+    }
+
+    /**
+     * The parameters are built before being serialized, the URL is not kept
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        materialize();
+        return this;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import codetroopers.wicket.web.routes.metrics.RouteMetrics;
+import org.apache.wicket.request.IRequestCycle;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestHandlerDelegate;
+import org.apache.wicket.request.http.WebResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asks the {@link RouteLimiter} of a route before responding, and answers at once with
+ * <code>429 Too Many Requests</code> when the rate of the route is exceeded, or with
+ * <code>503 Service Unavailable</code> when too many of its requests are in flight.
+ * The limiter is only asked when responding, so that handlers mapped but not run take nothing from it.
+ *
+ * @author cgatay
+ */
+final class LimitingRequestHandler implements IRequestHandlerDelegate {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LimitingRequestHandler.class);
+    static final int TOO_MANY_REQUESTS = 429;
+    static final int SERVICE_UNAVAILABLE = 503;
+
+    private final IRequestHandler delegate;
+    private final RouteLimiter limiter;
+    private final RouteMetrics metrics;
+
+    /**
+     * @param metrics metrics of the route, {@code null} if not recorded
+     */
+    LimitingRequestHandler(final IRequestHandler delegate, final RouteLimiter limiter, final RouteMetrics metrics) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public IRequestHandler getDelegateHandler() {
+        return delegate;
+    }
+
+    @Override
+    public void respond(final IRequestCycle requestCycle) {
+        final long wait = limiter.acquire(System.nanoTime());
+        if (wait > 0) {
+            if (metrics != null) {
+                metrics.recordRateLimited();
+            }
+            final long second = TimeUnit.SECONDS.toNanos(1);
+            // whole seconds, rounded up
+            reject(requestCycle, TOO_MANY_REQUESTS, (wait + second - 1) / second);
+            return;
+        }
+        if (!limiter.enter()) {
+            if (metrics != null) {
+                metrics.recordConcurrencyLimited();
+            }
+            reject(requestCycle, SERVICE_UNAVAILABLE, 0);
+            return;
+        }
+        if (metrics != null) {
+            metrics.recordInFlight(1);
+        }
+        try {
+            delegate.respond(requestCycle);
+        } finally {
+            limiter.exit();
+            if (metrics != null) {
+                metrics.recordInFlight(-1);
+            }
+        }
+    }
+
+    /**
+     * @param retryAfter seconds after which the client may try again, {@code 0} to leave it unknown
+     */
+    private void reject(final IRequestCycle requestCycle, final int status, final long retryAfter) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Request rejected with status {} by {}", status, limiter);
+        }
+        final WebResponse response = (WebResponse) requestCycle.getResponse();
+        response.setStatus(status);
+        response.disableCaching();
+        if (retryAfter > 0) {
+            response.setHeader("Retry-After", String.valueOf(retryAfter));
+        }
+    }
+
+    @Override
+    public void detach(final IRequestCycle requestCycle) {
+        delegate.detach(requestCycle);
+    }
+}
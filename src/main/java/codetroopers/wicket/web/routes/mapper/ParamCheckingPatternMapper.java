@@ -21,8 +21,14 @@
 
 package codetroopers.wicket.web.routes.mapper;
 
+import codetroopers.wicket.web.routes.metrics.RouteMetrics;
 import codetroopers.wicket.web.routes.mounts.MountParameter;
+import org.apache.wicket.Session;
+import org.apache.wicket.core.request.handler.IPageProvider;
+import org.apache.wicket.core.request.handler.RenderPageRequestHandler;
 import org.apache.wicket.core.request.mapper.MountedMapper;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestHandlerDelegate;
 import org.apache.wicket.request.Request;
 import org.apache.wicket.request.Url;
 import org.apache.wicket.request.component.IRequestablePage;
@@ -31,14 +37,17 @@ import org.apache.wicket.request.mapper.parameter.IPageParametersEncoder;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.request.mapper.parameter.PageParametersEncoder;
 import org.apache.wicket.util.ClassProvider;
-import org.apache.wicket.util.string.StringValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Base extracted from fiftyfive.wicket.mapper.PatternMountedMapper
@@ -50,6 +59,11 @@ import java.util.regex.Pattern;
  * mount(new PatternMountedMapper("people/${personId:\\d+}", PersonPage.class));</pre>
  * This will map URLs like {@code people/12345} but yield a 404 not found for something like
  * {@code people/abc} since {@code abc} doesn't match the {@code \d+} regular expression.
+ * <p>
+ * Options are given through a {@link Builder}, the mapper being immutable once built : it can be shared by the
+ * request threads, or by the routes tables of successive reloads, without synchronization.
+ * <pre class="example">
+ * mount(ParamCheckingPatternMapper.builder("people/${personId:\\d+}", PersonPage.class).exact(true).build());</pre>
  *
  * @author 55minutes.com
  * @author cgatay
@@ -57,12 +71,24 @@ import java.util.regex.Pattern;
 public class ParamCheckingPatternMapper extends MountedMapper {
     private static final Logger LOGGER = LoggerFactory.getLogger(ParamCheckingPatternMapper.class);
 
-    protected List<PatternPlaceholder> patternPlaceholders;
+    protected final List<PatternPlaceholder> patternPlaceholders;
 
-    private int numSegments;
-    private boolean exact = false;
-    private boolean versionInUrl = true;
-    private boolean ignoreIncorrectParameters = true;
+    private final RouteSignature signature;
+    /* only changed by the deprecated setters, until the mapper is used */
+    private boolean exact;
+    private boolean versionInUrl;
+    private boolean ignoreIncorrectParameters;
+    /** whether the page parameters are lazy, the encoder and the mount path allowing it */
+    private final boolean lazyPageParameters;
+    private final RouteMetrics metrics;
+    private final CacheDirectives cacheDirectives;
+    /** whether new pages are wrapped for caching */
+    private final boolean caching;
+    private final ResponseCache responseCache;
+    private final AtomicBoolean statefulReported = new AtomicBoolean();
+    private final RouteLimiter limiter;
+    /** whether a request or a routes table has read the options of the mapper */
+    private volatile boolean used;
 
     public ParamCheckingPatternMapper(final String mountPath,
                                       final Class<? extends IRequestablePage> pageClass,
@@ -86,9 +112,41 @@ public class ParamCheckingPatternMapper extends MountedMapper {
                                       final ClassProvider<? extends IRequestablePage> pageClassProvider,
                                       final IPageParametersEncoder pageParametersEncoder,
                                       final List<MountParameter> mountParameters) {
-        super(mountPath, pageClassProvider, pageParametersEncoder);
-        this.numSegments = 0;
-        this.patternPlaceholders = buildPatternPlaceholdersList(mountParameters);
+        this(new Builder(mountPath, pageClassProvider).pageParametersEncoder(pageParametersEncoder)
+                     .mountParameters(mountParameters));
+    }
+
+    /**
+     * Builds a mapper with the options of the builder
+     */
+    protected ParamCheckingPatternMapper(final Builder builder) {
+        super(builder.mountPath, builder.pageClassProvider, builder.pageParametersEncoder);
+        this.patternPlaceholders = compact(buildPatternPlaceholdersList(builder.mountParameters));
+        this.signature = new RouteSignature(builder.mountPath, this.patternPlaceholders);
+        this.exact = builder.exact;
+        this.versionInUrl = builder.versionInUrl;
+        this.ignoreIncorrectParameters = builder.ignoreIncorrectParameters;
+        this.lazyPageParameters = builder.lazyPageParameters
+                                  && builder.pageParametersEncoder.getClass() == PageParametersEncoder.class
+                                  && signature.hasRequiredPlaceholder();
+        this.metrics = builder.metrics;
+        this.cacheDirectives = builder.cacheDirectives;
+        this.caching = builder.cacheDirectives.isEnabled();
+        this.responseCache = builder.responseCache;
+        this.limiter = builder.limiter;
+    }
+
+    /**
+     * Starts the options of a mapper, whose mount path may only have placeholders without regular expression
+     * unless {@link Builder#mountParameters(List) mount parameters} are given
+     */
+    public static Builder builder(final String mountPath, final Class<? extends IRequestablePage> pageClass) {
+        return new Builder(mountPath, ClassProvider.of(pageClass));
+    }
+
+    public static Builder builder(final String mountPath,
+                                  final ClassProvider<? extends IRequestablePage> pageClassProvider) {
+        return new Builder(mountPath, pageClassProvider);
     }
 
     /**
@@ -100,34 +158,39 @@ public class ParamCheckingPatternMapper extends MountedMapper {
         List<PatternPlaceholder> list = new ArrayList<PatternPlaceholder>();
         if (mountParameters != null) {
             for (MountParameter parameter : mountParameters) {
-                final PatternPlaceholder patternPlaceholder = new PatternPlaceholder(parameter);
-                if (!patternPlaceholder.optional) {
-                    this.numSegments++;
-                }
-                list.add(patternPlaceholder);
+                list.add(PatternPlaceholder.of(parameter));
             }
         }
         return list;
     }
 
+    /**
+     * @return an immutable list holding the placeholders in an array of their exact number, the empty and single
+     * placeholder lists needing no array
+     */
+    private static List<PatternPlaceholder> compact(final List<PatternPlaceholder> placeholders) {
+        switch (placeholders.size()) {
+            case 0:
+                return Collections.emptyList();
+            case 1:
+                return Collections.singletonList(placeholders.get(0));
+            default:
+                return Collections.unmodifiableList(
+                        Arrays.asList(placeholders.toArray(new PatternPlaceholder[placeholders.size()])));
+        }
+    }
 
     /**
-     * Set to {@code true}, to force this mapper to strictly match URLs by disallowing any extra
+     * Set to {@code true}, to force the mapper to strictly match URLs by disallowing any extra
      * path elements that come after the matched pattern.
-     * <pre class="example">
-     * PatternMountedMapper m = new PatternMountedMapper(MyPage.class, "page/${id:\\d+}");
-     * // These will always be matched: "page/1", "page/2", "page/30", etc.
-     * // By default, these will be matched as well: "page/1/whatever/foo/bar", "page/2/baz"
-     * m.setExact(true);
-     * // Now these will not be matched: "page/1/whatever/foo/bar", "page/2/baz"</pre>
-     *
-     * In other words, if {@code exact} is set to {@code false}, extra path elements after the
-     * specified pattern will be allowed. The default is {@code false}, to match the default
-     * behavior of Wicket's {@link org.apache.wicket.core.request.mapper.MountedMapper}.
      *
      * @return {@code this} to allow chaining
+     * @throws IllegalStateException if the mapper has already mapped a request or been added to a routes table
+     * @deprecated the mapper is meant to be immutable, use {@link Builder#exact(boolean)}
      */
-    public ParamCheckingPatternMapper setExact(boolean exact) {
+    @Deprecated
+    public ParamCheckingPatternMapper setExact(final boolean exact) {
+        checkUnused();
         this.exact = exact;
         return this;
     }
@@ -138,72 +201,295 @@ public class ParamCheckingPatternMapper extends MountedMapper {
      * If set to ${@code false} any incorrect parameter will make the Mapper respond as it doesn't match
      * @param ignore ignore invalid request parameter
      * @return ${@code this} to allow chaining
+     * @throws IllegalStateException if the mapper has already mapped a request or been added to a routes table
+     * @deprecated the mapper is meant to be immutable, use {@link Builder#ignoreIncorrectParameters(boolean)}
      */
+    @Deprecated
     public ParamCheckingPatternMapper ignoreIncorrectParameters(final boolean ignore) {
+        checkUnused();
         this.ignoreIncorrectParameters = ignore;
         return this;
     }
 
     /**
      * Allows to bypass the version string in url if set to ${code false}. Default behavior is ${code true}
-     * The main benefit of doing this is the possibility of having "clean" URL even on stateful pages
-     * The drawback is that the built-in browser back button support will likely not work as expected
      * @param versionInUrl whether to display the version in url
      * @return ${code this} to allow chaining
+     * @throws IllegalStateException if the mapper has already mapped a request or been added to a routes table
+     * @deprecated the mapper is meant to be immutable, use {@link Builder#displayVersionInUrl(boolean)}
      */
+    @Deprecated
     public ParamCheckingPatternMapper displayVersionInUrl(final boolean versionInUrl) {
+        checkUnused();
         this.versionInUrl = versionInUrl;
         return this;
     }
 
+    private void checkUnused() {
+        if (used) {
+            throw new IllegalStateException("The options of " + this + " can not be changed once it is used,"
+                                            + " give them to ParamCheckingPatternMapper.builder instead");
+        }
+    }
+
     /**
-     * First delegate to the superclass to parse the request as normal, then additionally
+     * Freezes the options, which are read without synchronization from now on
+     */
+    private void use() {
+        if (!used) {
+            used = true;
+        }
+    }
+
+    boolean isIgnoringIncorrectParameters() {
+        use();
+        return ignoreIncorrectParameters;
+    }
+
+    boolean isExact() {
+        use();
+        return exact;
+    }
+
+    RouteLimiter getLimiter() {
+        return limiter;
+    }
+
+    RouteSignature getSignature() {
+        return signature;
+    }
+
+    /**
+     * @return whether this mapper may generate URLs to the given page class
+     */
+    boolean handlesPageClass(final Class<? extends IRequestablePage> pageClass) {
+        return checkPageClass(pageClass);
+    }
+
+    /**
+     * Rejects the URLs that can not start with the mount path without asking the superclass.
+     */
+    @Override
+    public int getCompatibilityScore(final Request request) {
+        if (!signature.mayStartWith(request.getUrl().getSegments())) {
+            return 0;
+        }
+        return super.getCompatibilityScore(request);
+    }
+
+    /**
+     * Wraps the rendering of new pages when the route has {@link Builder#cacheResponses caching directives} or is
+     * {@link Builder#limit limited}. Other handlers (listeners, existing pages...) are left as they are, so that
+     * Wicket still sees them as page handlers.
+     */
+    @Override
+    public IRequestHandler mapRequest(final Request request) {
+        final IRequestHandler handler = super.mapRequest(request);
+        final IPageProvider newPage = newPageProvider(handler);
+        if (newPage == null) {
+            return handler;
+        }
+        final IRequestHandler cached = cache(request, handler, newPage);
+        return limiter == null ? cached : new LimitingRequestHandler(cached, limiter, metrics);
+    }
+
+    /**
+     * @return the provider of the page rendered by the handler, {@code null} unless it renders a new page
+     */
+    private static IPageProvider newPageProvider(final IRequestHandler handler) {
+        if (!(handler instanceof RenderPageRequestHandler)) {
+            return null;
+        }
+        final IPageProvider provider = ((RenderPageRequestHandler) handler).getPageProvider();
+        return provider.isNewPageInstance() ? provider : null;
+    }
+
+    private IRequestHandler cache(final Request request, final IRequestHandler handler, final IPageProvider provider) {
+        if (!caching || !isGet(request)) {
+            return handler;
+        }
+        // the locale of anonymous users comes from their Accept-Language header
+        final Session session = Session.get();
+        return new CachingRequestHandler(handler, provider, cacheDirectives, responseCache,
+                                         cacheKey(HostRoutesMapper.hostOf(request), provider.getPageClass(),
+                                                  session.getLocale(), session.getStyle(), request.getUrl()),
+                                         statefulReported);
+    }
+
+    @Override
+    public Url mapHandler(IRequestHandler requestHandler) {
+        while (requestHandler instanceof LimitingRequestHandler || requestHandler instanceof CachingRequestHandler) {
+            requestHandler = ((IRequestHandlerDelegate) requestHandler).getDelegateHandler();
+        }
+        return super.mapHandler(requestHandler);
+    }
+
+    private static boolean isGet(final Request request) {
+        final Object containerRequest = request.getContainerRequest();
+        return containerRequest instanceof HttpServletRequest
+               && "GET".equals(((HttpServletRequest) containerRequest).getMethod());
+    }
+
+    /**
+     * The cache is shared by every route and every host : the key starts with the host of the request and the page
+     * class, as routes of different hosts may have the same path, and a page shared by several hosts may render
+     * differently for each of them. Pages are rendered with the locale and the style of the session, which are part
+     * of the key as well (the variation of a page is given by its class). The parameters are read from the URL as
+     * they are, so that {@link LazyPageParameters} are not built.
+     * @param host host of the request, {@code null} if unknown
+     * @return the host, the page class, the locale, the style and the mount path followed by the segments of the URL
+     * and its query parameters sorted by name, each part being prefixed by its length so that no value can be
+     * mistaken for several parameters
+     */
+    String cacheKey(final String host, final Class<?> pageClass, final Locale locale, final String style,
+                    final Url url) {
+        final StringBuilder key = new StringBuilder();
+        appendKeyPart(key, host);
+        appendKeyPart(key.append(' '), pageClass.getName());
+        appendKeyPart(key.append(' '), locale == null ? null : locale.toString());
+        appendKeyPart(key.append(' '), style);
+        key.append(' ').append(signature.getMountPath());
+        for (String segment : url.getSegments()) {
+            appendKeyPart(key.append('/'), segment);
+        }
+        final List<Url.QueryParameter> parameters = new ArrayList<>(url.getQueryParameters());
+        if (!parameters.isEmpty() && LazyPageParameters.isPageComponentInfo(parameters.get(0))) {
+            parameters.remove(0);
+        }
+        // stable, the values of a parameter keep their order
+        Collections.sort(parameters, new Comparator<Url.QueryParameter>() {
+            @Override
+            public int compare(final Url.QueryParameter first, final Url.QueryParameter second) {
+                return first.getName().compareTo(second.getName());
+            }
+        });
+        char separator = '?';
+        for (Url.QueryParameter parameter : parameters) {
+            appendKeyPart(key.append(separator), parameter.getName());
+            appendKeyPart(key.append('='), parameter.getValue());
+            separator = '&';
+        }
+        return key.toString();
+    }
+
+    private static void appendKeyPart(final StringBuilder key, final String part) {
+        if (part == null) {
+            key.append('-');
+        } else {
+            key.append(part.length()).append(':').append(part);
+        }
+    }
+
+    /**
+     * First reject the URLs whose raw segments can not match (literal segments, number of segments and, when
+     * incorrect parameters are not ignored, the regular expressions of the placeholders whose position is known).
+     * Then delegate to the superclass to parse the request as normal, and additionally
      * verify that all regular expressions specified in the placeholders match.
      */
     @Override
     protected UrlInfo parseRequest(Request request) {
+        use();
+        if (metrics == null) {
+            return parseAndCheckRequest(request);
+        }
+        final long start = System.nanoTime();
+        final UrlInfo info = parseAndCheckRequest(request);
+        metrics.recordParse(System.nanoTime() - start, info != null);
+        return info;
+    }
+
+    private UrlInfo parseAndCheckRequest(final Request request) {
+        if (!signature.mayMatch(request.getUrl().getSegments(), exact, !ignoreIncorrectParameters)) {
+            if (metrics != null && !ignoreIncorrectParameters
+                && signature.mayMatch(request.getUrl().getSegments(), exact, false)) {
+                // the path matches, one of its values does not
+                metrics.recordRejectedParameter();
+            }
+            return null;
+        }
+
         // Parse the request normally. If the standard impl can't parse it, we won't either.
         UrlInfo info = super.parseRequest(request);
         if (null == info || null == info.getPageParameters()) {
             return info;
         }
 
-        // If exact matching, reject URLs that have more than expected number of segments
-        if (exact) {
-            int requestNumSegments = request.getUrl().getSegments().size();
-            if (requestNumSegments > this.numSegments) {
-                return null;
-            }
-        }
-
         // Loop through each placeholder and verify that the regex of the placeholder matches
         // the value that was provided in the request url. If any of the values don't match,
         // immediately return null signifying that the url is not matched by this mapper.
         PageParameters params = info.getPageParameters();
-        for (PatternPlaceholder pp : getPatternPlaceholders()) {
-            List<StringValue> values = params.getValues(pp.getName());
+        final LazyPageParameters lazy = params instanceof LazyPageParameters ? (LazyPageParameters) params : null;
+        final List<PatternPlaceholder> placeholders = getPatternPlaceholders();
+        for (int p = 0; p < placeholders.size(); p++) {
+            final PatternPlaceholder pp = placeholders.get(p);
+            // the lazy parameters give the raw values, which are not copied
+            final List<?> values = lazy != null ? lazy.getRawValues(pp.getName()) : params.getValues(pp.getName());
             if (null == values || values.size() == 0) {
-                values = Arrays.asList(StringValue.valueOf(""));
+                if (!checkValue(params, pp, "")) {
+                    return null;
+                }
+                continue;
             }
-            for (StringValue val : values) {
-                if (!pp.matches(val.toString())) {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug(String.format(
-                                "Parameter \"%s\" did not match pattern placeholder %s", val, pp));
-                    }
-                    if (ignoreIncorrectParameters) {
-                        params.remove(pp.getName(), val.toString());
-                    } else {
-                        return null;
-                    }
+            for (int i = 0; i < values.size(); i++) {
+                if (!checkValue(params, pp, values.get(i).toString())) {
+                    return null;
                 }
             }
         }
         return info;
     }
 
+    /**
+     * Checks a value against its placeholder, stripping it from the parameters if it does not match and
+     * incorrect parameters are ignored.
+     * @return {@code false} if the request should not be matched by this mapper
+     */
+    private boolean checkValue(final PageParameters params, final PatternPlaceholder pp, final String value) {
+        if (pp.matches(value)) {
+            return true;
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Parameter \"{}\" did not match pattern placeholder {}", value, pp);
+        }
+        if (ignoreIncorrectParameters) {
+            if (params instanceof LazyPageParameters) {
+                ((LazyPageParameters) params).strip(pp.getName(), value);
+            } else {
+                params.remove(pp.getName(), value);
+            }
+            if (metrics != null) {
+                metrics.recordStrippedParameter();
+            }
+            return true;
+        }
+        if (metrics != null) {
+            metrics.recordRejectedParameter();
+        }
+        return false;
+    }
+
+    /**
+     * Gives a {@link LazyPageParameters} view when {@link Builder#lazyPageParameters(boolean) asked for}
+     */
+    @Override
+    protected PageParameters extractPageParameters(final Request request, final Url url) {
+        if (!lazyPageParameters) {
+            return super.extractPageParameters(request, url);
+        }
+        return new LazyPageParameters(this, request, url, signature.getPlaceholderNames(),
+                                      signature.placeholderValues(url.getSegments()));
+    }
+
+    /**
+     * Builds the page parameters as Wicket does, for {@link LazyPageParameters}
+     */
+    PageParameters extractEagerly(final Request request, final Url url) {
+        return super.extractPageParameters(request, url);
+    }
+
     @Override
     protected void encodePageComponentInfo(final Url url, final PageComponentInfo info) {
+        use();
         //we are generating an url to a behavior, we keep all information, otherwise we consider we don't want version in url
         if (versionInUrl || info.getComponentInfo() != null) {
             super.encodePageComponentInfo(url, info);
@@ -224,27 +510,54 @@ public class ParamCheckingPatternMapper extends MountedMapper {
      * Represents a placeholder that optionally contains a regular expression.
      */
     protected static class PatternPlaceholder {
-        private boolean optional;
-        private final Pattern pattern;
+        /** placeholders of the mounted routes, by path expression and regular expression */
+        private static final WeakInterner<String, PatternPlaceholder> INTERNED = new WeakInterner<>();
+
+        private final boolean optional;
+        private final ValueMatcher matcher;
         private final String name;
 
         public PatternPlaceholder(final MountParameter parameter) {
-            this.name = parameter.value();
+            this.name = parameter.value().intern();
             final String regex = parameter.regex();
-            this.pattern = regex == null ? null : Pattern.compile(regex);
+            this.matcher = regex == null ? null : ValueMatcher.of(regex);
             this.optional = MountParameter.Type.OPTIONAL.equals(parameter.type());
         }
 
+        /**
+         * @return the placeholder of the parameter, shared by every route having the same placeholder since
+         * placeholders are immutable
+         */
+        static PatternPlaceholder of(final MountParameter parameter) {
+            final String key = parameter.getPathExpr() + (parameter.regex() == null ? "" : ":" + parameter.regex());
+            final PatternPlaceholder interned = INTERNED.get(key);
+            if (interned != null) {
+                return interned;
+            }
+            return INTERNED.intern(key, new PatternPlaceholder(parameter));
+        }
+
         /**
          * Return {@code true} if this placeholder has a regex pattern and that pattern matches
          * the specified value. 
          * If this placeholder doesn't have a regex, always return {@code true}
          */
         public boolean matches(CharSequence value) {
-            if (optional && (value == null || "".equals(value))) {
+            if (optional && (value == null || value.length() == 0)) {
                 return true;
             }
-            return this.pattern == null || this.pattern.matcher(value).matches();
+            return this.matcher == null || this.matcher.matches(value);
+        }
+
+        /**
+         * The regular expression of this placeholder, {@code null} if any value is accepted.
+         */
+        String getRegex() {
+            return this.matcher == null ? null : this.matcher.getRegex();
+        }
+
+        boolean isOptional() {
+            return this.optional;
         }
 
         /**
@@ -262,11 +575,149 @@ public class ParamCheckingPatternMapper extends MountedMapper {
             final StringBuilder sb = new StringBuilder();
             sb.append("PatternPlaceholder");
             sb.append("{optional=").append(optional);
-            sb.append(", pattern='").append(pattern).append('\'');
+            sb.append(", pattern='").append(getRegex()).append('\'');
             sb.append(", name='").append(name).append('\'');
             sb.append('}');
             return sb.toString();
         }
     }
 
+    /**
+     * Options of a {@link ParamCheckingPatternMapper}, which is immutable once {@link #build() built}
+     */
+    public static class Builder {
+        private final String mountPath;
+        private final ClassProvider<? extends IRequestablePage> pageClassProvider;
+        private IPageParametersEncoder pageParametersEncoder = new PageParametersEncoder();
+        private List<MountParameter> mountParameters;
+        private boolean exact = false;
+        private boolean versionInUrl = true;
+        private boolean ignoreIncorrectParameters = true;
+        private boolean lazyPageParameters = false;
+        private RouteMetrics metrics;
+        private CacheDirectives cacheDirectives = CacheDirectives.NONE;
+        private ResponseCache responseCache;
+        private RouteLimiter limiter;
+
+        protected Builder(final String mountPath, final ClassProvider<? extends IRequestablePage> pageClassProvider) {
+            this.mountPath = mountPath;
+            this.pageClassProvider = pageClassProvider;
+        }
+
+        /**
+         * @param encoder encoder of the page parameters, a {@link PageParametersEncoder} by default
+         * @return {@code this} to allow chaining
+         */
+        public Builder pageParametersEncoder(final IPageParametersEncoder encoder) {
+            this.pageParametersEncoder = encoder;
+            return this;
+        }
+
+        /**
+         * @param parameters placeholders of the mount path, with their regular expressions
+         * @return {@code this} to allow chaining
+         * @see codetroopers.wicket.web.routes.mounts.MountPathExtractor
+         */
+        public Builder mountParameters(final List<MountParameter> parameters) {
+            this.mountParameters = parameters;
+            return this;
+        }
+
+        /**
+         * Set to {@code true}, to force the mapper to strictly match URLs by disallowing any extra
+         * path elements that come after the matched pattern.
+         * <pre class="example">
+         * ParamCheckingPatternMapper.Builder b = ParamCheckingPatternMapper.builder("page/${id}", MyPage.class);
+         * // These will always be matched: "page/1", "page/2", "page/30", etc.
+         * // By default, these will be matched as well: "page/1/whatever/foo/bar", "page/2/baz"
+         * b.exact(true);
+         * // Now these will not be matched: "page/1/whatever/foo/bar", "page/2/baz"</pre>
+         *
+         * In other words, if {@code exact} is set to {@code false}, extra path elements after the
+         * specified pattern will be allowed. The default is {@code false}, to match the default
+         * behavior of Wicket's {@link org.apache.wicket.core.request.mapper.MountedMapper}.
+         *
+         * @return {@code this} to allow chaining
+         */
+        public Builder exact(final boolean exact) {
+            this.exact = exact;
+            return this;
+        }
+
+        /**
+         * Allows to ignore incorrect parameters.
+         * If set to ${@code true} incorrect parameters will be stripped from the request.
+         * If set to ${@code false} any incorrect parameter will make the Mapper respond as it doesn't match
+         * @param ignore ignore invalid request parameter
+         * @return ${@code this} to allow chaining
+         */
+        public Builder ignoreIncorrectParameters(final boolean ignore) {
+            this.ignoreIncorrectParameters = ignore;
+            return this;
+        }
+
+        /**
+         * Allows to bypass the version string in url if set to ${code false}. Default behavior is ${code true}
+         * The main benefit of doing this is the possibility of having "clean" URL even on stateful pages
+         * The drawback is that the built-in browser back button support will likely not work as expected
+         * @param versionInUrl whether to display the version in url
+         * @return ${code this} to allow chaining
+         */
+        public Builder displayVersionInUrl(final boolean versionInUrl) {
+            this.versionInUrl = versionInUrl;
+            return this;
+        }
+
+        /**
+         * Gives the matched pages a view reading their parameters from the request URL when they are asked for,
+         * instead of copying every path segment and query parameter when the request is mapped. Placeholders are
+         * still checked when mapping, and the values read are the same.
+         * Only used with the default {@link PageParametersEncoder}, and for mount paths with a required placeholder.
+         * @param lazy whether to read the page parameters lazily
+         * @return {@code this} to allow chaining
+         */
+        public Builder lazyPageParameters(final boolean lazy) {
+            this.lazyPageParameters = lazy;
+            return this;
+        }
+
+        /**
+         * Records the matches, the rejected or stripped parameters and the parsing time of the mapper
+         * @param metrics metrics of the route, {@code null} (default) to record nothing
+         * @return {@code this} to allow chaining
+         */
+        public Builder recordMetrics(final RouteMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Gives the pages rendered by the mapper the caching headers of the directives, instead of the ones set by
+         * the pages. Only the GET requests creating a new page instance are concerned.
+         * @param directives caching of the pages, {@link CacheDirectives#NONE} to leave the headers to the pages
+         * @param cache cache of the rendered pages, used if the directives allow it, {@code null} to render every
+         *              request
+         * @return {@code this} to allow chaining
+         */
+        public Builder cacheResponses(final CacheDirectives directives, final ResponseCache cache) {
+            this.cacheDirectives = directives;
+            this.responseCache = cache;
+            return this;
+        }
+
+        /**
+         * Limits the rate and the concurrency of the new pages rendered by the mapper, the requests over the limits
+         * being answered at once with <code>429 Too Many Requests</code> or <code>503 Service Unavailable</code>.
+         * @param limiter limits of the route, {@code null} (default) for no limit
+         * @return {@code this} to allow chaining
+         */
+        public Builder limit(final RouteLimiter limiter) {
+            this.limiter = limiter;
+            return this;
+        }
+
+        public ParamCheckingPatternMapper build() {
+            return new ParamCheckingPatternMapper(this);
+        }
+    }
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+/**
+ * Size-bounded cache of rendered pages, shared by the routes whose {@link CacheDirectives} allow it.
+ * Pages are keyed by route and page parameters (once checked against the placeholders of the route), and are kept
+ * until their maximum age, so that requests to the hottest anonymous pages skip rendering.
+ * The same content is given to every user : only routes whose pages do not depend on the session should be
+ * cacheable.
+ *
+ * @author cgatay
+ */
+public final class ResponseCache {
+    private final ClockCache<String, CachedResponse> responses;
+
+    /**
+     * @param maxSize maximum number of pages kept
+     */
+    public ResponseCache(final int maxSize) {
+        this.responses = new ClockCache<>(maxSize);
+    }
+
+    /**
+     * @return the page kept for the key, {@code null} if there is none or if it expired
+     */
+    CachedResponse get(final String key, final long now) {
+        final CachedResponse response = responses.get(key);
+        return response == null || response.isExpired(now) ? null : response;
+    }
+
+    void put(final String key, final CachedResponse response) {
+        responses.put(key, response);
+    }
+
+    /**
+     * Forgets every page, for instance after a deployment changing their content
+     */
+    public void clear() {
+        responses.clear();
+    }
+
+    public CacheStatistics statistics() {
+        return responses.statistics();
+    }
+}
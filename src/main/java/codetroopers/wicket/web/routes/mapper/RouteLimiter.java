@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the requests handled by a route, applied by {@link ParamCheckingPatternMapper.Builder#limit(RouteLimiter)} :
+ * <ul>
+ *     <li>a token bucket gives the route a number of requests per period, a burst of requests being allowed
+ *     when the route has not been requested for a while</li>
+ *     <li>a bulkhead bounds the number of requests of the route being handled at the same time</li>
+ * </ul>
+ * Neither takes a lock : the bucket is kept as the time at which it will be full again, in a single
+ * {@link AtomicLong}, and the bulkhead as an {@link AtomicInteger}, both updated by compare and set.
+ *
+ * @author cgatay
+ */
+public final class RouteLimiter {
+    /** time between two requests at the given rate, in nanoseconds, {@code 0} for no rate */
+    private final long interval;
+    /** time allowed in advance of the rate, for the burst */
+    private final long tolerance;
+    private final int maxConcurrent;
+    /** time at which the next request would be in time if they came at the rate, in {@link System#nanoTime()} */
+    private final AtomicLong theoreticalArrival;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param permits number of requests allowed per period, {@code 0} for no rate
+     * @param period period of the rate
+     * @param burst number of requests allowed at once, at least {@code 1} when a rate is given
+     * @param maxConcurrent number of requests handled at the same time, {@code 0} for no bulkhead
+     */
+    public RouteLimiter(final long permits, final TimeUnit period, final int burst, final int maxConcurrent) {
+        if (permits < 0 || maxConcurrent < 0) {
+            throw new IllegalArgumentException("Limits can not be negative : " + permits + ", " + maxConcurrent);
+        }
+        if (permits > 0 && burst < 1) {
+            throw new IllegalArgumentException("Burst must be positive : " + burst);
+        }
+        this.interval = permits == 0 ? 0 : Math.max(1, period.toNanos(1) / permits);
+        this.tolerance = interval * burst;
+        this.maxConcurrent = maxConcurrent;
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes a token from the bucket
+     * @param now current {@link System#nanoTime()}
+     * @return {@code 0} if the request is allowed, otherwise the time to wait for a token, in nanoseconds
+     */
+    long acquire(final long now) {
+        if (interval == 0) {
+            return 0;
+        }
+        while (true) {
+            final long arrival = theoreticalArrival.get();
+            final long next = (arrival - now < 0 ? now : arrival) + interval;
+            final long wait = next - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Enters the bulkhead, {@link #exit()} must be called once the request is handled
+     * @return whether the request may be handled, {@code false} if too many requests are in flight
+     */
+    boolean enter() {
+        if (maxConcurrent == 0) {
+            inFlight.incrementAndGet();
+            return true;
+        }
+        while (true) {
+            final int current = inFlight.get();
+            if (current >= maxConcurrent) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void exit() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * @return number of requests of the route being handled
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return maximum number of requests handled at the same time, {@code 0} if unbounded
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * @return requests allowed per second, {@code 0} if unbounded
+     */
+    public double getRate() {
+        return interval == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / (double) interval;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteLimiter{rate=" + getRate() + "/s, maxConcurrent=" + maxConcurrent + ", inFlight="
+               + inFlight.get() + '}';
+    }
+}
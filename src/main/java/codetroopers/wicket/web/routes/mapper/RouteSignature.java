@@ -0,0 +1,292 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import codetroopers.wicket.web.routes.mounts.MountParameter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cheap description of the URLs a mount path can match, computed once from the path.
+ *
+ * It holds the literal segments and the required placeholders found before the first optional placeholder (their
+ * position in the URL is known), as well as the number of segments the path needs and accepts. It allows rejecting
+ * most of the URLs on their raw segments, before Wicket parses them.
+ *
+ * @author cgatay
+ */
+final class RouteSignature {
+    private final String mountPath;
+    /** literal expected at each fixed position, {@code null} for a placeholder */
+    private final String[] literals;
+    /** placeholder at each fixed position, {@code null} for a literal */
+    private final ParamCheckingPatternMapper.PatternPlaceholder[] placeholders;
+    /** type of each segment of the path, {@code null} for a literal */
+    private final MountParameter.Type[] types;
+    /** each segment of the path, for the literals */
+    private final String[] pathSegments;
+    /** names of the placeholders, in the order of the path */
+    private final String[] names;
+    private final int minSegments;
+    private final int maxSegments;
+
+    RouteSignature(final String mountPath, final List<ParamCheckingPatternMapper.PatternPlaceholder> patternPlaceholders) {
+        this.mountPath = mountPath;
+        final List<String> fixedLiterals = new ArrayList<>();
+        final List<ParamCheckingPatternMapper.PatternPlaceholder> fixedPlaceholders = new ArrayList<>();
+        final List<MountParameter.Type> segmentTypes = new ArrayList<>();
+        final List<String> segments = new ArrayList<>();
+        final List<String> placeholderNames = new ArrayList<>();
+        int required = 0;
+        int total = 0;
+        boolean fixed = true;
+        for (String segment : mountPath.split("/")) {
+            if (segment.length() == 0) {
+                continue;
+            }
+            total++;
+            final MountParameter.Type type = placeholderType(segment);
+            segmentTypes.add(type);
+            segments.add(segment);
+            if (type != null) {
+                placeholderNames.add(name(segment));
+            }
+            if (type == MountParameter.Type.OPTIONAL) {
+                fixed = false;
+                continue;
+            }
+            required++;
+            if (fixed) {
+                fixedLiterals.add(type == null ? segment : null);
+                fixedPlaceholders.add(type == null ? null : find(patternPlaceholders, segment));
+            }
+        }
+        this.literals = fixedLiterals.toArray(new String[fixedLiterals.size()]);
+        this.placeholders = fixedPlaceholders.toArray(
+                new ParamCheckingPatternMapper.PatternPlaceholder[fixedPlaceholders.size()]);
+        this.types = segmentTypes.toArray(new MountParameter.Type[segmentTypes.size()]);
+        this.pathSegments = segments.toArray(new String[segments.size()]);
+        this.names = placeholderNames.toArray(new String[placeholderNames.size()]);
+        this.minSegments = required;
+        this.maxSegments = total;
+    }
+
+    /**
+     * @return the mount path, without the regular expressions of its placeholders
+     */
+    String getMountPath() {
+        return mountPath;
+    }
+
+    /**
+     * @return the names of the placeholders of the mount path, in the order of the path
+     */
+    String[] getPlaceholderNames() {
+        return names;
+    }
+
+    /**
+     * @return whether the mount path has a placeholder which is not optional
+     */
+    boolean hasRequiredPlaceholder() {
+        for (MountParameter.Type type : types) {
+            if (type != null && type != MountParameter.Type.OPTIONAL) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the values of the placeholders in the segments of a URL matched by the mount path, the way Wicket's
+     * {@link org.apache.wicket.core.request.mapper.MountedMapper} does : the path is split into groups of
+     * placeholders ended by a literal segment, each group takes as few optional segments as needed to find its
+     * literal in the URL (the last group as many as the URL has), and the optional placeholders of a group are given
+     * its extra segments from left to right.
+     * @return the value of each placeholder of {@link #getPlaceholderNames()}, {@code null} if not in the URL
+     */
+    String[] placeholderValues(final List<String> segments) {
+        final String[] values = new String[names.length];
+        int segment = 0;
+        int placeholder = 0;
+        int start = 0;
+        for (int end = 0; end <= types.length; end++) {
+            if (end < types.length && types[end] != null) {
+                continue;
+            }
+            // placeholders from start to end, ended by the literal at end if any
+            int required = 0;
+            int optional = 0;
+            for (int i = start; i < end; i++) {
+                if (types[i] == MountParameter.Type.OPTIONAL) {
+                    optional++;
+                } else {
+                    required++;
+                }
+            }
+            int extra;
+            if (end < types.length) {
+                extra = 0;
+                while (extra < optional && !pathSegments[end].equals(segmentAt(segments, segment + required + extra))) {
+                    extra++;
+                }
+                if (!pathSegments[end].equals(segmentAt(segments, segment + required + extra))) {
+                    // not matched by Wicket, optional placeholders are left out
+                    extra = 0;
+                }
+            } else {
+                extra = Math.max(0, Math.min(optional, segments.size() - segment - required));
+            }
+            for (int i = start; i < end; i++) {
+                if (types[i] != MountParameter.Type.OPTIONAL) {
+                    values[placeholder++] = segmentAt(segments, segment++);
+                } else if (extra > 0) {
+                    extra--;
+                    values[placeholder++] = segmentAt(segments, segment++);
+                } else {
+                    placeholder++;
+                }
+            }
+            // the literal ending the group
+            segment++;
+            start = end + 1;
+        }
+        return values;
+    }
+
+    private static String segmentAt(final List<String> segments, final int index) {
+        return index < segments.size() ? segments.get(index) : null;
+    }
+
+    /**
+     * @return {@code false} if a URL with these segments can not start with the mount path
+     */
+    boolean mayStartWith(final List<String> segments) {
+        if (segments.isEmpty()) {
+            // the home page may be mapped whatever the mount path
+            return true;
+        }
+        if (segments.size() < minSegments) {
+            return false;
+        }
+        for (int i = 0; i < literals.length; i++) {
+            if (literals[i] != null && !literals[i].equals(segments.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param exact whether extra segments are rejected
+     * @param checkPlaceholders whether the regular expressions of the placeholders must match
+     * @return {@code false} if a URL with these segments can not be matched by the mount path
+     */
+    boolean mayMatch(final List<String> segments, final boolean exact, final boolean checkPlaceholders) {
+        if (!mayStartWith(segments)) {
+            return false;
+        }
+        if (exact && segments.size() > maxSegments) {
+            return false;
+        }
+        if (checkPlaceholders && !segments.isEmpty()) {
+            for (int i = 0; i < placeholders.length; i++) {
+                if (placeholders[i] != null && !placeholders[i].matches(segments.get(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether two mount paths may match the same non empty URL, looking at their fixed segments and at the
+     * number of segments they accept. The answer is conservative : {@code true} unless an overlap is impossible.
+     * The regular expressions of the placeholders are only used against the literal segments of the other path,
+     * when incorrect parameters make the mapper reject the URL.
+     *
+     * @param exact whether extra segments are refused by the mapper of the first path
+     * @param strict whether the mapper of the first path rejects the incorrect parameters
+     */
+    boolean mayOverlap(final boolean exact, final boolean strict,
+                       final RouteSignature other, final boolean otherExact, final boolean otherStrict) {
+        final int fixed = Math.min(literals.length, other.literals.length);
+        for (int i = 0; i < fixed; i++) {
+            if (literals[i] != null && other.literals[i] != null) {
+                if (!literals[i].equals(other.literals[i])) {
+                    return false;
+                }
+            } else if (literals[i] != null) {
+                if (otherStrict && other.placeholders[i] != null && !other.placeholders[i].matches(literals[i])) {
+                    return false;
+                }
+            } else if (other.literals[i] != null) {
+                if (strict && placeholders[i] != null && !placeholders[i].matches(other.literals[i])) {
+                    return false;
+                }
+            }
+        }
+        final int longest = exact ? maxSegments : Integer.MAX_VALUE;
+        final int otherLongest = otherExact ? other.maxSegments : Integer.MAX_VALUE;
+        return Math.max(minSegments, other.minSegments) <= Math.min(longest, otherLongest);
+    }
+
+    /**
+     * @return the number of segments of the mount path, placeholders included
+     */
+    int getMaxSegments() {
+        return maxSegments;
+    }
+
+    /**
+     * @return the type of the placeholder of a mount path segment, {@code null} for a literal segment
+     */
+    static MountParameter.Type placeholderType(final String segment) {
+        if (segment.length() > 3 && segment.charAt(1) == '{' && segment.charAt(segment.length() - 1) == '}') {
+            return MountParameter.Type.parse(segment);
+        }
+        return null;
+    }
+
+    /**
+     * @return the placeholder of a mount path segment, {@code null} if not found
+     */
+    static ParamCheckingPatternMapper.PatternPlaceholder find(
+            final List<ParamCheckingPatternMapper.PatternPlaceholder> patternPlaceholders, final String segment) {
+        final String name = name(segment);
+        for (ParamCheckingPatternMapper.PatternPlaceholder placeholder : patternPlaceholders) {
+            if (placeholder.getName().equals(name)) {
+                return placeholder;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the name of a placeholder segment, without its regular expression
+     */
+    private static String name(final String segment) {
+        final int colon = segment.indexOf(':');
+        return segment.substring(2, colon > 0 ? colon : segment.length() - 1);
+    }
+}
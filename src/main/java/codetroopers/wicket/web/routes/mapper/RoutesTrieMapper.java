@@ -0,0 +1,549 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import codetroopers.wicket.web.routes.mounts.MountParameter;
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.core.request.handler.BookmarkablePageRequestHandler;
+import org.apache.wicket.core.request.handler.IPageClassRequestHandler;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.component.IRequestablePage;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Single mapper dispatching to the mappers created from the routes file through a segment trie.
+ *
+ * Literal segments of the mount paths are stored in a hash map on each node, required placeholders
+ * are edges tried in declaration order and everything following the first optional placeholder
+ * (or a package mount) is left to the mapper itself. Dispatching a request only walks the nodes
+ * matching its segments and asks the mappers found on the way, so the cost depends on the depth of
+ * the path rather than on the number of routes.
+ * <p/>
+ * Candidates are tried the way Wicket's {@link org.apache.wicket.request.mapper.CompoundRequestMapper}
+ * would : by compatibility score, then the most recently added first, which gives the same result as
+ * mounting every mapper on its own.
+ * <p/>
+ * URLs are generated through a reverse index : for page requests, only the mappers mounting the requested
+ * page class (and the mappers which are not bound to a single class, like package mounts) are asked.
+ * Generated URLs of bookmarkable pages may also be kept in a bounded cache, see {@link #cacheUrls(int)}.
+ * <p/>
+ * The mapper which handled a path may be cached as well, see {@link #cacheMatches(int)} : the following requests
+ * to this path go straight to it. Paths no mapper handles may be cached separately, see {@link #cacheNotFound(int)}.
+ * <p/>
+ * Wicket asks for the compatibility score before mapping the request : the candidates found for the score are kept
+ * in the request cycle, so that the trie is walked and the placeholders checked once per request.
+ * <p/>
+ * Routes must all be added before the mapper is mounted, it is not meant to be modified afterwards.
+ *
+ * @author cgatay
+ */
+public class RoutesTrieMapper implements IRequestMapper {
+    private static final int MAX_KEY_LENGTH = 1024;
+    /** candidates of the URL of the current request */
+    private static final MetaDataKey<RequestCandidates> CANDIDATES = new MetaDataKey<RequestCandidates>() {
+        private static final long serialVersionUID = 1L;
+    };
+    private final Node root = new Node();
+    private final List<Route> routes = new ArrayList<>();
+    private final ConcurrentMap<Class<?>, Route[]> routesByPageClass = new ConcurrentHashMap<>();
+    private final Set<String> placeholderNames = new HashSet<>();
+    private UrlCache urlCache;
+    private ClockCache<String, Match> matchCache;
+    private ClockCache<String, Match> notFoundCache;
+
+    /**
+     * Adds a mapper to the trie.
+     * If the mapper is a {@link ParamCheckingPatternMapper} rejecting incorrect parameters, the regular
+     * expressions of its required placeholders are used to prune the walk.
+     *
+     * @param mountPath path the mapper is mounted on (with its <code>${name:regex}</code> placeholders)
+     * @param mapper mapper handling the requests under this path
+     * @return {@code this} to allow chaining
+     */
+    public RoutesTrieMapper add(final String mountPath, final IRequestMapper mapper) {
+        final Route route = new Route(routes.size(), mapper);
+        final String[] segments = mountPath.split("/");
+        // the values of every placeholder, even those after the walked part of the path, may be given as query
+        // parameters, they are part of the key of the match caches
+        for (String segment : segments) {
+            if (isPlaceholder(segment, MountParameter.Type.REQUIRED)
+                || isPlaceholder(segment, MountParameter.Type.OPTIONAL)) {
+                placeholderNames.add(placeholderName(segment));
+            }
+        }
+        Node node = root;
+        for (String segment : segments) {
+            if (segment.length() == 0) {
+                continue;
+            }
+            if (isPlaceholder(segment, MountParameter.Type.OPTIONAL)) {
+                break;
+            }
+            if (isPlaceholder(segment, MountParameter.Type.REQUIRED)) {
+                node = node.placeholderChild(edgePlaceholder(mapper, segment));
+            } else {
+                node = node.literalChild(segment);
+            }
+        }
+        node.routes.add(route);
+        routes.add(route);
+        return this;
+    }
+
+    @Override
+    public IRequestHandler mapRequest(final Request request) {
+        final String key = matchKey(request.getUrl());
+        if (key != null) {
+            if (matchCache != null) {
+                final Match match = matchCache.get(key);
+                if (match != null) {
+                    final IRequestHandler handler = match.route.mapper.mapRequest(request);
+                    if (handler != null) {
+                        return handler;
+                    }
+                }
+            }
+            if (notFoundCache != null && notFoundCache.get(key) != null) {
+                return null;
+            }
+        }
+        final List<Candidate> candidates = candidates(request);
+        for (Candidate candidate : candidates) {
+            final IRequestHandler handler = candidate.route.mapper.mapRequest(request);
+            if (handler != null) {
+                if (key != null && matchCache != null) {
+                    matchCache.put(key, new Match(candidate.route, candidates.get(0).score));
+                }
+                return handler;
+            }
+        }
+        if (key != null && notFoundCache != null) {
+            notFoundCache.put(key, new Match(null, candidates.isEmpty() ? 0 : candidates.get(0).score));
+        }
+        return null;
+    }
+
+    @Override
+    public int getCompatibilityScore(final Request request) {
+        final String key = matchCache != null || notFoundCache != null ? matchKey(request.getUrl()) : null;
+        if (key != null) {
+            // the request is then given to mapRequest, which counts the lookup
+            final Match match = matchCache != null ? matchCache.peek(key) : null;
+            if (match != null) {
+                return match.score;
+            }
+            final Match notFound = notFoundCache != null ? notFoundCache.peek(key) : null;
+            if (notFound != null) {
+                return notFound.score;
+            }
+        }
+        final List<Candidate> candidates = candidates(request);
+        return candidates.isEmpty() ? 0 : candidates.get(0).score;
+    }
+
+    /**
+     * Builds the key of the request in the match caches : its path, followed by the query parameters having the
+     * name of a placeholder, as their values are checked as well.
+     * @return the key, {@code null} if the request should not be cached
+     */
+    private String matchKey(final Url url) {
+        if (matchCache == null && notFoundCache == null) {
+            return null;
+        }
+        final StringBuilder key = new StringBuilder();
+        final List<String> segments = url.getSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            if (i > 0) {
+                key.append('/');
+            }
+            key.append(segments.get(i));
+        }
+        if (!placeholderNames.isEmpty()) {
+            for (Url.QueryParameter parameter : url.getQueryParameters()) {
+                if (placeholderNames.contains(parameter.getName())) {
+                    key.append('\n').append(parameter.getName()).append('=').append(parameter.getValue());
+                }
+            }
+        }
+        return key.length() > MAX_KEY_LENGTH ? null : key.toString();
+    }
+
+    /**
+     * Remembers which mapper handled each path, so that the next requests to this path are given to it directly.
+     * A path is handled by the same mapper whatever its query string, except for the query parameters having the
+     * name of a placeholder, which are part of the key.
+     *
+     * @param maxSize maximum number of paths kept, {@code 0} to disable the cache
+     * @return {@code this} to allow chaining
+     */
+    public RoutesTrieMapper cacheMatches(final int maxSize) {
+        this.matchCache = maxSize > 0 ? new ClockCache<String, Match>(maxSize) : null;
+        return this;
+    }
+
+    /**
+     * Remembers the paths no mapper handles. Kept apart from the matches so that requests to random paths cannot
+     * evict them.
+     *
+     * @param maxSize maximum number of paths kept, {@code 0} to disable the cache
+     * @return {@code this} to allow chaining
+     */
+    public RoutesTrieMapper cacheNotFound(final int maxSize) {
+        this.notFoundCache = maxSize > 0 ? new ClockCache<String, Match>(maxSize) : null;
+        return this;
+    }
+
+    /**
+     * @return counters of the matches cache, {@code null} if disabled
+     */
+    public CacheStatistics getMatchCacheStatistics() {
+        return matchCache == null ? null : matchCache.statistics();
+    }
+
+    /**
+     * @return counters of the not found cache, {@code null} if disabled
+     */
+    public CacheStatistics getNotFoundCacheStatistics() {
+        return notFoundCache == null ? null : notFoundCache.statistics();
+    }
+
+    @Override
+    public Url mapHandler(final IRequestHandler requestHandler) {
+        if (!(requestHandler instanceof IPageClassRequestHandler)) {
+            return mapHandler(requestHandler, routes.size() - 1, null);
+        }
+        final IPageClassRequestHandler pageHandler = (IPageClassRequestHandler) requestHandler;
+        final Route[] candidates = routesFor(pageHandler.getPageClass());
+        if (urlCache == null || requestHandler.getClass() != BookmarkablePageRequestHandler.class) {
+            return mapHandler(requestHandler, candidates.length - 1, candidates);
+        }
+        final UrlKey key = new UrlKey(pageHandler.getPageClass(), pageHandler.getPageParameters());
+        Url url = urlCache.get(key);
+        if (url == null) {
+            url = mapHandler(requestHandler, candidates.length - 1, candidates);
+            if (url == null) {
+                return null;
+            }
+            urlCache.put(key, new Url(url));
+            return url;
+        }
+        return new Url(url);
+    }
+
+    /**
+     * Asks the mappers from the last added to the first one, like the compound mapper would.
+     */
+    private Url mapHandler(final IRequestHandler requestHandler, final int last, final Route[] candidates) {
+        for (int i = last; i >= 0; i--) {
+            final Route route = candidates == null ? routes.get(i) : candidates[i];
+            final Url url = route.mapper.mapHandler(requestHandler);
+            if (url != null) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the routes which may generate an URL to the given page class, in the order they were added.
+     */
+    private Route[] routesFor(final Class<? extends IRequestablePage> pageClass) {
+        Route[] found = routesByPageClass.get(pageClass);
+        if (found == null) {
+            final List<Route> matching = new ArrayList<>();
+            for (Route route : routes) {
+                if (!(route.mapper instanceof ParamCheckingPatternMapper)
+                    || ((ParamCheckingPatternMapper) route.mapper).handlesPageClass(pageClass)) {
+                    matching.add(route);
+                }
+            }
+            found = matching.toArray(new Route[matching.size()]);
+            routesByPageClass.put(pageClass, found);
+        }
+        return found;
+    }
+
+    /**
+     * Keeps the URLs generated for bookmarkable pages, the least recently used being evicted first.
+     * Only URLs of {@link BookmarkablePageRequestHandler}s are cached, as they only depend on the page class and its
+     * parameters.
+     *
+     * @param maxSize maximum number of URLs kept, {@code 0} to disable the cache
+     * @return {@code this} to allow chaining
+     */
+    public RoutesTrieMapper cacheUrls(final int maxSize) {
+        this.urlCache = maxSize > 0 ? new UrlCache(maxSize) : null;
+        return this;
+    }
+
+    /**
+     * Collects the mappers able to handle the request, sorted like the compound mapper would.
+     */
+    /**
+     * @return the candidates of the request, found once per request
+     */
+    private List<Candidate> candidates(final Request request) {
+        final RequestCycle cycle = RequestCycle.get();
+        if (cycle == null) {
+            return findCandidates(request);
+        }
+        final RequestCandidates current = cycle.getMetaData(CANDIDATES);
+        if (current != null && current.mapper == this && current.url == request.getUrl()) {
+            return current.candidates;
+        }
+        final List<Candidate> candidates = findCandidates(request);
+        cycle.setMetaData(CANDIDATES, new RequestCandidates(this, request.getUrl(), candidates));
+        return candidates;
+    }
+
+    private List<Candidate> findCandidates(final Request request) {
+        final List<String> segments = request.getUrl().getSegments();
+        final List<Route> matching;
+        if (segments.isEmpty()) {
+            // the home page may be handled by any mounted page, whatever its path
+            matching = routes;
+        } else {
+            matching = new ArrayList<>();
+            collect(root, segments, 0, matching);
+        }
+        final List<Candidate> candidates = new ArrayList<>(matching.size());
+        for (Route route : matching) {
+            candidates.add(new Candidate(route, route.mapper.getCompatibilityScore(request)));
+        }
+        Collections.sort(candidates);
+        return candidates;
+    }
+
+    private static void collect(final Node node, final List<String> segments, final int depth, final List<Route> found) {
+        found.addAll(node.routes);
+        if (depth < segments.size()) {
+            final String segment = segments.get(depth);
+            final Node literal = node.literals.get(segment);
+            if (literal != null) {
+                collect(literal, segments, depth + 1, found);
+            }
+            for (PlaceholderEdge edge : node.placeholders) {
+                if (edge.accepts(segment)) {
+                    collect(edge.target, segments, depth + 1, found);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the placeholder whose regex may be used to prune the walk, {@code null} when any value
+     * should be accepted.
+     */
+    private static ParamCheckingPatternMapper.PatternPlaceholder edgePlaceholder(final IRequestMapper mapper,
+                                                                                 final String segment) {
+        if (mapper instanceof ParamCheckingPatternMapper) {
+            final ParamCheckingPatternMapper patternMapper = (ParamCheckingPatternMapper) mapper;
+            if (!patternMapper.isIgnoringIncorrectParameters()) {
+                final String name = placeholderName(segment);
+                for (ParamCheckingPatternMapper.PatternPlaceholder placeholder : patternMapper.getPatternPlaceholders()) {
+                    if (placeholder.getName().equals(name) && placeholder.getRegex() != null) {
+                        return placeholder;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isPlaceholder(final String segment, final MountParameter.Type type) {
+        return segment.length() > 3 && segment.charAt(0) == type.marker() && segment.charAt(1) == '{'
+               && segment.charAt(segment.length() - 1) == '}';
+    }
+
+    private static String placeholderName(final String segment) {
+        final int colon = segment.indexOf(':');
+        return segment.substring(2, colon > 0 ? colon : segment.length() - 1);
+    }
+
+    private static final class Node {
+        private final Map<String, Node> literals = new HashMap<>();
+        private final List<PlaceholderEdge> placeholders = new ArrayList<>();
+        private final List<Route> routes = new ArrayList<>();
+
+        Node literalChild(final String segment) {
+            Node child = literals.get(segment);
+            if (child == null) {
+                child = new Node();
+                literals.put(segment, child);
+            }
+            return child;
+        }
+
+        Node placeholderChild(final ParamCheckingPatternMapper.PatternPlaceholder placeholder) {
+            final String regex = placeholder == null ? null : placeholder.getRegex();
+            for (PlaceholderEdge edge : placeholders) {
+                if (regex == null ? edge.regex == null : regex.equals(edge.regex)) {
+                    return edge.target;
+                }
+            }
+            final PlaceholderEdge edge = new PlaceholderEdge(regex, placeholder, new Node());
+            placeholders.add(edge);
+            return edge.target;
+        }
+    }
+
+    private static final class PlaceholderEdge {
+        private final String regex;
+        private final ParamCheckingPatternMapper.PatternPlaceholder placeholder;
+        private final Node target;
+
+        PlaceholderEdge(final String regex, final ParamCheckingPatternMapper.PatternPlaceholder placeholder,
+                        final Node target) {
+            this.regex = regex;
+            this.placeholder = placeholder;
+            this.target = target;
+        }
+
+        boolean accepts(final String segment) {
+            return placeholder == null || placeholder.matches(segment);
+        }
+    }
+
+    private static final class Route {
+        private final int order;
+        private final IRequestMapper mapper;
+
+        Route(final int order, final IRequestMapper mapper) {
+            this.order = order;
+            this.mapper = mapper;
+        }
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+        private final Route route;
+        private final int score;
+
+        Candidate(final Route route, final int score) {
+            this.route = route;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(final Candidate other) {
+            if (score != other.score) {
+                return score > other.score ? -1 : 1;
+            }
+            return route.order > other.route.order ? -1 : (route.order == other.route.order ? 0 : 1);
+        }
+    }
+
+    /**
+     * Result of the dispatching of a path : the mapper which handled it ({@code null} if none did) and the best
+     * compatibility score.
+     */
+    /**
+     * Candidates found for the URL of a request
+     */
+    private static final class RequestCandidates {
+        private final RoutesTrieMapper mapper;
+        private final Url url;
+        private final List<Candidate> candidates;
+
+        RequestCandidates(final RoutesTrieMapper mapper, final Url url, final List<Candidate> candidates) {
+            this.mapper = mapper;
+            this.url = url;
+            this.candidates = candidates;
+        }
+    }
+
+    private static final class Match {
+        private final Route route;
+        private final int score;
+
+        Match(final Route route, final int score) {
+            this.route = route;
+            this.score = score;
+        }
+    }
+
+    private static final class UrlKey {
+        private final Class<?> pageClass;
+        private final PageParameters parameters;
+
+        UrlKey(final Class<?> pageClass, final PageParameters parameters) {
+            this.pageClass = pageClass;
+            // copied as the parameters of the handler may be changed afterwards
+            this.parameters = parameters == null ? null : new PageParameters(parameters);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof UrlKey)) {
+                return false;
+            }
+            final UrlKey that = (UrlKey) o;
+            return pageClass.equals(that.pageClass)
+                   && (parameters == null ? that.parameters == null : parameters.equals(that.parameters));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * pageClass.hashCode() + (parameters == null ? 0 : parameters.hashCode());
+        }
+    }
+
+    private static final class UrlCache {
+        private final Map<UrlKey, Url> urls;
+
+        UrlCache(final int maxSize) {
+            this.urls = new LinkedHashMap<UrlKey, Url>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<UrlKey, Url> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized Url get(final UrlKey key) {
+            return urls.get(key);
+        }
+
+        synchronized void put(final UrlKey key, final Url url) {
+            urls.put(key, url);
+        }
+    }
+}
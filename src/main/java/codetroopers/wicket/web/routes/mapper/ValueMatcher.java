@@ -0,0 +1,465 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+
+import codetroopers.wicket.web.routes.automaton.Automaton;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks placeholder values against a regular expression without allocating.
+ *
+ * The most common shapes found in routes files are recognised when the placeholder is built and checked by hand :
+ * a single character class ({@code [0-9]}, {@code [a-z0-9-]}, {@code \d}, {@code \w}, {@code .}...) repeated with
+ * {@code +}, {@code *}, {@code ?} or length bounds ({@code {2,5}}), or an alternation of fixed values
+ * ({@code (asc|desc)}). Other expressions are compiled to a deterministic {@link Automaton}, checking values in
+ * linear time whatever the expression, so that a crafted value cannot make a placeholder backtrack. Expressions
+ * the automaton does not support are checked by a {@link Matcher} reused per thread.
+ * <p/>
+ * Matchers are immutable and shared : {@link #of(String)} compiles each distinct expression once, the placeholders of
+ * every route using the same expression getting the same matcher. The pool only holds the matchers weakly, those of
+ * the routes dropped by a reload are collected.
+ *
+ * @author cgatay
+ */
+abstract class ValueMatcher {
+    private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+    private static final WeakInterner<String, ValueMatcher> INTERNED = new WeakInterner<>();
+
+    /** expression of the matcher, only known for the interned matchers */
+    private String regex;
+
+    /**
+     * Return {@code true} if the whole value matches the regular expression
+     */
+    abstract boolean matches(CharSequence value);
+
+    /**
+     * @param regex regular expression, validated by {@link Pattern#compile(String)}
+     * @return the shared matcher of this expression, compiled on first use
+     */
+    static ValueMatcher of(final String regex) {
+        final ValueMatcher interned = INTERNED.get(regex);
+        if (interned != null) {
+            return interned;
+        }
+        final ValueMatcher compiled = compile(regex);
+        compiled.regex = regex;
+        return INTERNED.intern(regex, compiled);
+    }
+
+    /**
+     * @return the number of distinct expressions compiled by {@link #of(String)} and still used
+     */
+    static int internedCount() {
+        return INTERNED.size();
+    }
+
+    /**
+     * @return the expression of an interned matcher, {@code null} for a matcher {@link #compile(String) compiled}
+     * on its own
+     */
+    String getRegex() {
+        return regex;
+    }
+
+    /**
+     * @param regex regular expression, validated by {@link Pattern#compile(String)}
+     * @return the cheapest matcher for this expression
+     */
+    static ValueMatcher compile(final String regex) {
+        final Pattern pattern = Pattern.compile(regex);
+        ValueMatcher matcher = CharClassMatcher.parse(regex, pattern);
+        if (matcher == null) {
+            matcher = AlternationMatcher.parse(regex);
+        }
+        if (matcher == null) {
+            matcher = AutomatonMatcher.compile(regex, pattern);
+        }
+        if (matcher == null) {
+            matcher = new RegexMatcher(pattern);
+        }
+        return matcher;
+    }
+
+    private static boolean isMeta(final char c) {
+        return META_CHARACTERS.indexOf(c) >= 0;
+    }
+
+    /**
+     * Single character class repeated between {@code min} and {@code max} times.
+     */
+    static final class CharClassMatcher extends ValueMatcher {
+        private static final int ASCII = 128;
+        private final boolean[] ascii = new boolean[ASCII];
+        /** pairs of (low, high) bounds for non ASCII characters */
+        private final StringBuilder ranges = new StringBuilder();
+        private boolean negated;
+        private int min;
+        private int max;
+        private RegexMatcher fallback;
+
+        private CharClassMatcher() {
+        }
+
+        static CharClassMatcher parse(final String regex, final Pattern pattern) {
+            final CharClassMatcher matcher = new CharClassMatcher();
+            final int afterAtom = matcher.parseAtom(regex);
+            if (afterAtom < 0 || !matcher.parseQuantifier(regex, afterAtom)) {
+                return null;
+            }
+            matcher.fallback = new RegexMatcher(pattern);
+            return matcher;
+        }
+
+        @Override
+        boolean matches(final CharSequence value) {
+            final int length = value.length();
+            if (length < min || length > max) {
+                // values holding surrogate pairs are counted in code points by the regex
+                return hasSurrogate(value) && fallback.matches(value);
+            }
+            for (int i = 0; i < length; i++) {
+                final char c = value.charAt(i);
+                if (Character.isSurrogate(c)) {
+                    return fallback.matches(value);
+                }
+                if (!accepts(c)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean hasSurrogate(final CharSequence value) {
+            for (int i = 0; i < value.length(); i++) {
+                if (Character.isSurrogate(value.charAt(i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean accepts(final char c) {
+            boolean inClass;
+            if (c < ASCII) {
+                inClass = ascii[c];
+            } else {
+                inClass = false;
+                for (int i = 0; i < ranges.length() && !inClass; i += 2) {
+                    inClass = c >= ranges.charAt(i) && c <= ranges.charAt(i + 1);
+                }
+            }
+            return inClass != negated;
+        }
+
+        private void add(final char low, final char high) {
+            for (int c = low; c <= high; c++) {
+                if (c >= ASCII) {
+                    ranges.append((char) c).append(high);
+                    return;
+                }
+                ascii[c] = true;
+            }
+        }
+
+        /**
+         * @return position following the atom, -1 if not supported
+         */
+        private int parseAtom(final String regex) {
+            if (regex.isEmpty()) {
+                return -1;
+            }
+            final char first = regex.charAt(0);
+            if (first == '.') {
+                // anything but a line terminator
+                negated = true;
+                add('\n', '\n');
+                add('\r', '\r');
+                add('\u0085', '\u0085');
+                add('\u2028', '\u2029');
+                return 1;
+            }
+            if (first == '\\') {
+                return regex.length() > 1 && addShorthand(regex.charAt(1)) ? 2 : -1;
+            }
+            if (first != '[') {
+                return -1;
+            }
+            int i = 1;
+            if (i < regex.length() && regex.charAt(i) == '^') {
+                negated = true;
+                i++;
+            }
+            boolean empty = true;
+            while (i < regex.length()) {
+                char c = regex.charAt(i);
+                if (c == ']' && !empty) {
+                    return i + 1;
+                }
+                if (c == '[' || c == ']' || (c == '&' && i + 1 < regex.length() && regex.charAt(i + 1) == '&')) {
+                    return -1;
+                }
+                if (c == '\\') {
+                    if (i + 1 >= regex.length()) {
+                        return -1;
+                    }
+                    final char escaped = regex.charAt(i + 1);
+                    if (Character.isLetterOrDigit(escaped)) {
+                        if (!addShorthand(escaped)) {
+                            return -1;
+                        }
+                        i += 2;
+                        empty = false;
+                        continue;
+                    }
+                    c = escaped;
+                    i++;
+                }
+                // c is a literal, possibly the lower bound of a range
+                if (i + 2 < regex.length() && regex.charAt(i + 1) == '-' && regex.charAt(i + 2) != ']') {
+                    char high = regex.charAt(i + 2);
+                    int next = i + 3;
+                    if (high == '\\') {
+                        if (i + 3 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 3))) {
+                            return -1;
+                        }
+                        high = regex.charAt(i + 3);
+                        next++;
+                    } else if (high == '[') {
+                        return -1;
+                    }
+                    if (high < c) {
+                        return -1;
+                    }
+                    add(c, high);
+                    i = next;
+                } else {
+                    add(c, c);
+                    i++;
+                }
+                empty = false;
+            }
+            return -1;
+        }
+
+        private boolean addShorthand(final char shorthand) {
+            switch (shorthand) {
+                case 'd':
+                    add('0', '9');
+                    return true;
+                case 'w':
+                    add('a', 'z');
+                    add('A', 'Z');
+                    add('0', '9');
+                    add('_', '_');
+                    return true;
+                case 's':
+                    add(' ', ' ');
+                    add('\t', '\r');
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private boolean parseQuantifier(final String regex, final int position) {
+            int i = position;
+            if (i == regex.length()) {
+                min = 1;
+                max = 1;
+                return true;
+            }
+            final char quantifier = regex.charAt(i++);
+            switch (quantifier) {
+                case '+':
+                    min = 1;
+                    max = Integer.MAX_VALUE;
+                    break;
+                case '*':
+                    min = 0;
+                    max = Integer.MAX_VALUE;
+                    break;
+                case '?':
+                    min = 0;
+                    max = 1;
+                    break;
+                case '{':
+                    final int close = regex.indexOf('}', i);
+                    if (close < 0) {
+                        return false;
+                    }
+                    final String bounds = regex.substring(i, close);
+                    final int comma = bounds.indexOf(',');
+                    try {
+                        if (comma < 0) {
+                            min = Integer.parseInt(bounds);
+                            max = min;
+                        } else {
+                            min = Integer.parseInt(bounds.substring(0, comma));
+                            max = comma == bounds.length() - 1 ? Integer.MAX_VALUE
+                                                               : Integer.parseInt(bounds.substring(comma + 1));
+                        }
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                    i = close + 1;
+                    break;
+                default:
+                    return false;
+            }
+            // reluctant and possessive quantifiers accept the same values when the whole input must match
+            if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+                i++;
+            }
+            return i == regex.length() && min <= max;
+        }
+    }
+
+    /**
+     * Alternation of fixed values, such as {@code (asc|desc)} or a single literal value.
+     */
+    static final class AlternationMatcher extends ValueMatcher {
+        private final String[] values;
+
+        private AlternationMatcher(final String[] values) {
+            this.values = values;
+        }
+
+        static AlternationMatcher parse(final String regex) {
+            String alternatives = regex;
+            if (alternatives.startsWith("(?:") && alternatives.endsWith(")")) {
+                alternatives = alternatives.substring(3, alternatives.length() - 1);
+            } else if (alternatives.startsWith("(") && alternatives.endsWith(")")) {
+                alternatives = alternatives.substring(1, alternatives.length() - 1);
+            }
+            final List<String> values = new ArrayList<>();
+            final StringBuilder value = new StringBuilder();
+            for (int i = 0; i < alternatives.length(); i++) {
+                char c = alternatives.charAt(i);
+                if (c == '|') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                    continue;
+                }
+                if (c == '\\') {
+                    if (i + 1 >= alternatives.length() || Character.isLetterOrDigit(alternatives.charAt(i + 1))) {
+                        return null;
+                    }
+                    c = alternatives.charAt(++i);
+                } else if (isMeta(c)) {
+                    return null;
+                }
+                value.append(c);
+            }
+            values.add(value.toString());
+            return new AlternationMatcher(values.toArray(new String[values.size()]));
+        }
+
+        @Override
+        boolean matches(final CharSequence value) {
+            for (String candidate : values) {
+                if (sameCharacters(candidate, value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean sameCharacters(final String expected, final CharSequence value) {
+            if (expected.length() != value.length()) {
+                return false;
+            }
+            for (int i = 0; i < expected.length(); i++) {
+                if (expected.charAt(i) != value.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Regular expression compiled to a deterministic automaton.
+     */
+    static final class AutomatonMatcher extends ValueMatcher {
+        private final Automaton automaton;
+        private final RegexMatcher fallback;
+
+        private AutomatonMatcher(final Automaton automaton, final RegexMatcher fallback) {
+            this.automaton = automaton;
+            this.fallback = fallback;
+        }
+
+        static AutomatonMatcher compile(final String regex, final Pattern pattern) {
+            final Automaton automaton = Automaton.compile(regex);
+            return automaton == null ? null : new AutomatonMatcher(automaton, new RegexMatcher(pattern));
+        }
+
+        @Override
+        boolean matches(final CharSequence value) {
+            int state = automaton.getInitialState();
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (Character.isSurrogate(c)) {
+                    // the automaton reads characters, the regex reads code points
+                    return fallback.matches(value);
+                }
+                state = automaton.step(state, c);
+                if (state < 0) {
+                    return CharClassMatcher.hasSurrogate(value) && fallback.matches(value);
+                }
+            }
+            return automaton.isAccepting(state);
+        }
+    }
+
+    /**
+     * Any other regular expression, checked with a {@link Matcher} kept per thread.
+     */
+    static final class RegexMatcher extends ValueMatcher {
+        private final ThreadLocal<Matcher> matchers;
+
+        RegexMatcher(final Pattern pattern) {
+            this.matchers = new ThreadLocal<Matcher>() {
+                @Override
+                protected Matcher initialValue() {
+                    return pattern.matcher("");
+                }
+            };
+        }
+
+        @Override
+        boolean matches(final CharSequence value) {
+            final Matcher matcher = matchers.get();
+            try {
+                return matcher.reset(value).matches();
+            } finally {
+                // do not keep the last checked value reachable from the thread
+                matcher.reset("");
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.mapper;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pool of immutable values shared by key, holding them only while something else does : a value no route uses any
+ * more is collected and its entry removed, so that reloading routes files does not grow the pool.
+ *
+ * @author cgatay
+ */
+final class WeakInterner<K, V> {
+    private final ConcurrentMap<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    private final ReferenceQueue<V> collected = new ReferenceQueue<>();
+
+    /**
+     * @return the value shared for this key, {@code null} if there is none
+     */
+    V get(final K key) {
+        purge();
+        final Entry<K, V> entry = entries.get(key);
+        return entry == null ? null : entry.get();
+    }
+
+    /**
+     * @return the value shared for this key, the given value if there was none
+     */
+    V intern(final K key, final V value) {
+        purge();
+        final Entry<K, V> entry = new Entry<>(key, value, collected);
+        while (true) {
+            final Entry<K, V> previous = entries.putIfAbsent(key, entry);
+            if (previous == null) {
+                return value;
+            }
+            final V interned = previous.get();
+            if (interned != null) {
+                return interned;
+            }
+            if (entries.replace(key, previous, entry)) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * @return the number of values still shared
+     */
+    int size() {
+        purge();
+        return entries.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void purge() {
+        Reference<? extends V> reference;
+        while ((reference = collected.poll()) != null) {
+            final Entry<K, V> entry = (Entry<K, V>) reference;
+            entries.remove(entry.key, entry);
+        }
+    }
+
+    private static final class Entry<K, V> extends WeakReference<V> {
+        private final K key;
+
+        private Entry(final K key, final V value, final ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+}
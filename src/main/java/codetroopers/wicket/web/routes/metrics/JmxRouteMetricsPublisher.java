@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers a {@link RouteMetricsMXBean} per route in the platform MBean server, named
+ * <code>codetroopers.wicket.routes:type=Route,application=&lt;application&gt;,route=&lt;mount point and target&gt;</code>.
+ *
+ * @author cgatay
+ */
+public class JmxRouteMetricsPublisher implements RouteMetricsPublisher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmxRouteMetricsPublisher.class);
+    static final String DOMAIN = "codetroopers.wicket.routes";
+
+    private final MBeanServer server;
+    private final String application;
+
+    /**
+     * @param application name of the application, to tell the routes of several applications apart
+     */
+    public JmxRouteMetricsPublisher(final String application) {
+        this(ManagementFactory.getPlatformMBeanServer(), application);
+    }
+
+    public JmxRouteMetricsPublisher(final MBeanServer server, final String application) {
+        this.server = server;
+        this.application = application;
+    }
+
+    @Override
+    public void publish(final RouteMetrics metrics) {
+        try {
+            server.registerMBean(new RouteMetricsView(metrics), objectName(metrics));
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register the metrics of route {} : {}", metrics, e.getMessage());
+        }
+    }
+
+    @Override
+    public void unpublish(final RouteMetrics metrics) {
+        try {
+            final ObjectName name = objectName(metrics);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Unable to unregister the metrics of route {} : {}", metrics, e.getMessage());
+        }
+    }
+
+    ObjectName objectName(final RouteMetrics metrics) throws JMException {
+        return new ObjectName(DOMAIN + ":type=Route,application=" + ObjectName.quote(application)
+                              + ",route=" + ObjectName.quote(metrics.toString()));
+    }
+
+    private static final class RouteMetricsView implements RouteMetricsMXBean {
+        private final RouteMetrics metrics;
+
+        RouteMetricsView(final RouteMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public String getMountPoint() {
+            return metrics.getMountPoint();
+        }
+
+        @Override
+        public String getTarget() {
+            return metrics.getTarget();
+        }
+
+        @Override
+        public long getMatches() {
+            return metrics.getMatches();
+        }
+
+        @Override
+        public long getStrippedParameters() {
+            return metrics.getStrippedParameters();
+        }
+
+        @Override
+        public long getRejectedParameters() {
+            return metrics.getRejectedParameters();
+        }
+
+        @Override
+        public long getRateLimited() {
+            return metrics.getRateLimited();
+        }
+
+        @Override
+        public long getConcurrencyLimited() {
+            return metrics.getConcurrencyLimited();
+        }
+
+        @Override
+        public long getInFlight() {
+            return metrics.getInFlight();
+        }
+
+        @Override
+        public long getParseCount() {
+            return metrics.getParseTime().getCount();
+        }
+
+        @Override
+        public double getParseTimeMean() {
+            return metrics.getParseTime().getMean();
+        }
+
+        @Override
+        public long getParseTime50thPercentile() {
+            return metrics.getParseTime().getValueAtPercentile(50);
+        }
+
+        @Override
+        public long getParseTime99thPercentile() {
+            return metrics.getParseTime().getValueAtPercentile(99);
+        }
+
+        @Override
+        public long getParseTimeMax() {
+            return metrics.getParseTime().getMax();
+        }
+    }
+}
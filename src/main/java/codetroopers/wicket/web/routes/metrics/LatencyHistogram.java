@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds, with buckets growing exponentially like in HdrHistogram.
+ *
+ * Durations below {@code 8} ns get their own bucket, each power of two above is split into {@code 8} linear
+ * buckets, so a recorded value is known within 12.5%. Durations are capped to about 68 seconds, which keeps the
+ * histogram to a fixed array of 272 counters. Recording a value is a single atomic increment.
+ *
+ * @author cgatay
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final long MAX_VALUE = (1L << 36) - 1;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final StripedCounter total = new StripedCounter();
+
+    public void record(final long nanos) {
+        final long value = nanos < 0 ? 0 : Math.min(nanos, MAX_VALUE);
+        counts.incrementAndGet(index(value));
+        total.add(value);
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return mean of the recorded values, {@code 0} if none was recorded
+     */
+    public double getMean() {
+        final long count = getCount();
+        return count == 0 ? 0 : (double) total.sum() / count;
+    }
+
+    /**
+     * @param percentile percentile to compute, between {@code 0} and {@code 100}
+     * @return the highest value of the bucket holding the given percentile, {@code 0} if no value was recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        final long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(BUCKETS - 1);
+    }
+
+    /**
+     * @return the highest value of the bucket holding the maximum recorded value, {@code 0} if none was recorded
+     */
+    public long getMax() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return highestValue(i);
+            }
+        }
+        return 0;
+    }
+
+    static int index(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValue(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long subBucket = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
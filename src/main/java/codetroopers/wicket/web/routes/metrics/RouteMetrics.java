@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.metrics;
+
+/**
+ * Counters of a route of the routes file, filled by its mapper.
+ *
+ * @author cgatay
+ */
+public final class RouteMetrics {
+    private final String mountPoint;
+    private final String target;
+    private final StripedCounter matches = new StripedCounter();
+    private final StripedCounter strippedParameters = new StripedCounter();
+    private final StripedCounter rejectedParameters = new StripedCounter();
+    private final StripedCounter rateLimited = new StripedCounter();
+    private final StripedCounter concurrencyLimited = new StripedCounter();
+    private final StripedCounter inFlight = new StripedCounter();
+    private final LatencyHistogram parseTime = new LatencyHistogram();
+
+    public RouteMetrics(final String mountPoint, final String target) {
+        this.mountPoint = mountPoint;
+        this.target = target;
+    }
+
+    /**
+     * Records a request parsed by the mapper of the route
+     * @param nanos time spent parsing the request
+     * @param matched whether the mapper handles the request
+     */
+    public void recordParse(final long nanos, final boolean matched) {
+        parseTime.record(nanos);
+        if (matched) {
+            matches.increment();
+        }
+    }
+
+    /**
+     * Records a parameter not matching its regular expression, removed from the request parameters
+     */
+    public void recordStrippedParameter() {
+        strippedParameters.increment();
+    }
+
+    /**
+     * Records a request rejected because a parameter does not match its regular expression
+     */
+    public void recordRejectedParameter() {
+        rejectedParameters.increment();
+    }
+
+    /**
+     * Records a request rejected because the rate of the route is exceeded
+     */
+    public void recordRateLimited() {
+        rateLimited.increment();
+    }
+
+    /**
+     * Records a request rejected because too many requests of the route are in flight
+     */
+    public void recordConcurrencyLimited() {
+        concurrencyLimited.increment();
+    }
+
+    /**
+     * Records the start ({@code 1}) or the end ({@code -1}) of a request handled by a limited route
+     */
+    public void recordInFlight(final int delta) {
+        inFlight.add(delta);
+    }
+
+    public String getMountPoint() {
+        return mountPoint;
+    }
+
+    /**
+     * @return name of the page class, or of the package for package mounts
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    public long getMatches() {
+        return matches.sum();
+    }
+
+    public long getStrippedParameters() {
+        return strippedParameters.sum();
+    }
+
+    public long getRejectedParameters() {
+        return rejectedParameters.sum();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.sum();
+    }
+
+    public long getConcurrencyLimited() {
+        return concurrencyLimited.sum();
+    }
+
+    /**
+     * @return number of requests being handled, only counted for routes having limits
+     */
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * @return durations of the parsing of the requests given to the mapper, in nanoseconds
+     */
+    public LatencyHistogram getParseTime() {
+        return parseTime;
+    }
+
+    @Override
+    public String toString() {
+        return mountPoint + " " + target;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.metrics;
+
+/**
+ * JMX view of the metrics of a route, durations are in nanoseconds.
+ *
+ * @author cgatay
+ */
+public interface RouteMetricsMXBean {
+    String getMountPoint();
+
+    String getTarget();
+
+    long getMatches();
+
+    long getStrippedParameters();
+
+    long getRejectedParameters();
+
+    long getRateLimited();
+
+    long getConcurrencyLimited();
+
+    long getInFlight();
+
+    long getParseCount();
+
+    double getParseTimeMean();
+
+    long getParseTime50thPercentile();
+
+    long getParseTime99thPercentile();
+
+    long getParseTimeMax();
+}
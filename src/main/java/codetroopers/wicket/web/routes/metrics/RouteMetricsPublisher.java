@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.metrics;
+
+/**
+ * Exposes the metrics of the mounted routes to a monitoring system.
+ *
+ * The metrics of a route are given once, when its mapper is created, and updated in place afterwards : the
+ * publisher reads them when its monitoring system asks. A {@link JmxRouteMetricsPublisher} is provided, bridges to
+ * other metrics libraries only need to implement this interface.
+ *
+ * @author cgatay
+ */
+public interface RouteMetricsPublisher {
+    /**
+     * Called when a route is mounted
+     */
+    void publish(RouteMetrics metrics);
+
+    /**
+     * Called when a route is removed or the application destroyed
+     */
+    void unpublish(RouteMetrics metrics);
+}
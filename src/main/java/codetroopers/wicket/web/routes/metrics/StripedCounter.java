@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 Code-troopers.com
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package codetroopers.wicket.web.routes.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spreading its updates over several cells, so that threads incrementing it concurrently rarely write to
+ * the same cache line. Reading the value sums the cells.
+ * This is a simpler take on {@code java.util.concurrent.atomic.LongAdder}, which is not available on Java 7 :
+ * the cell of a thread is chosen from its id and is not changed when contention is detected.
+ *
+ * @author cgatay
+ */
+public final class StripedCounter {
+    /**
+     * Distance between two cells, in longs, so that each cell gets its own cache line
+     */
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(final long value) {
+        cells.getAndAdd(cell(), value);
+    }
+
+    /**
+     * @return the sum of the cells, which may miss the updates happening concurrently
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    private static int cell() {
+        final long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return ((int) (hash >>> 32) & (STRIPES - 1)) * PADDING;
+    }
+
+    /**
+     * @return the power of two at least equal to the number of processors, up to 16
+     */
+    static int stripes(final int processors) {
+        int stripes = 1;
+        while (stripes < processors && stripes < 16) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
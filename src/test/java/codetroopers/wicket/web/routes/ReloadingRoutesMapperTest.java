@@ -0,0 +1,150 @@
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.authorization.RoutesRoleAuthorizationStrategy;
+import codetroopers.wicket.web.routes.metrics.RouteMetrics;
+import codetroopers.wicket.web.routes.metrics.RouteMetricsPublisher;
+import org.apache.wicket.authroles.authorization.strategies.role.IRoleCheckingStrategy;
+import org.apache.wicket.authroles.authorization.strategies.role.Roles;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.mock.MockApplication;
+import org.apache.wicket.mock.MockWebRequest;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @author cgatay
+ */
+public class ReloadingRoutesMapperTest {
+    private static final IRoleCheckingStrategy NO_ROLES = new IRoleCheckingStrategy() {
+        @Override
+        public boolean hasAnyRole(final Roles roles) {
+            return false;
+        }
+    };
+
+    private WicketTester tester;
+    private File routesFile;
+    private ReloadingRoutesMapper mapper;
+
+    @Before
+    public void setUp() throws Exception {
+        tester = new WicketTester(new MockApplication());
+        routesFile = File.createTempFile("routes", ".conf");
+        writeRoutes("/login     org.apache.wicket.markup.html.WebPage",
+                    "/logout    org.apache.wicket.markup.html.WebPage");
+        mapper = new ReloadingRoutesMapper(tester.getApplication(), new RoutesMountSettings(),
+                                           routesFile.toURI().toURL());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tester.destroy();
+        routesFile.delete();
+    }
+
+    @Test
+    public void testUnchangedFileIsNotReloaded() throws Exception {
+        Assert.assertFalse(mapper.reloadIfChanged());
+        Assert.assertEquals(0, mapper.getReloadCount());
+        Assert.assertEquals(2, mapper.getRoutesCount());
+    }
+
+    @Test
+    public void testChangedRoutesAreSwapped() throws Exception {
+        Assert.assertNotNull(mapper.mapRequest(request("login")));
+        Assert.assertNull(mapper.mapRequest(request("signin")));
+
+        writeRoutes("/signin    org.apache.wicket.markup.html.WebPage",
+                    "/logout    org.apache.wicket.markup.html.WebPage");
+        Assert.assertTrue(mapper.reloadIfChanged());
+
+        Assert.assertNull(mapper.mapRequest(request("login")));
+        Assert.assertNotNull(mapper.mapRequest(request("signin")));
+        Assert.assertNotNull(mapper.mapRequest(request("logout")));
+        Assert.assertEquals(1, mapper.getReloadCount());
+        Assert.assertEquals(1, mapper.getLastAddedRoutes());
+        Assert.assertEquals(1, mapper.getLastRemovedRoutes());
+    }
+
+    @Test
+    public void testInvalidFileKeepsCurrentRoutes() throws Exception {
+        routesFile.delete();
+        Assert.assertFalse(mapper.reloadIfChanged());
+        Assert.assertNotNull(mapper.mapRequest(request("login")));
+    }
+
+    @Test
+    public void testRemovedRolesAreForgotten() throws Exception {
+        tester.destroy();
+        tester = new WicketTester(new MockApplication());
+        writeRoutes("/admin     " + AdminPage.class.getName() + "    ADMIN");
+        mapper = new ReloadingRoutesMapper(tester.getApplication(), new RoutesMountSettings().indexRoles(NO_ROLES),
+                                           routesFile.toURI().toURL());
+        final RoutesRoleAuthorizationStrategy strategy = RoutesRoleAuthorizationStrategy.get(tester.getApplication());
+        Assert.assertFalse(strategy.isInstantiationAuthorized(AdminPage.class));
+
+        writeRoutes("/admin     " + AdminPage.class.getName());
+        Assert.assertTrue(mapper.reloadIfChanged());
+        Assert.assertSame(strategy, RoutesRoleAuthorizationStrategy.get(tester.getApplication()));
+        Assert.assertTrue(strategy.isInstantiationAuthorized(AdminPage.class));
+    }
+
+    @Test
+    public void testRolesWithoutRoleCheckingStrategyKeepCurrentRoutes() throws Exception {
+        writeRoutes("/admin     " + AdminPage.class.getName() + "    ADMIN");
+        Assert.assertFalse(mapper.reloadIfChanged());
+        Assert.assertNotNull(mapper.mapRequest(request("login")));
+        Assert.assertNull(mapper.mapRequest(request("admin")));
+    }
+
+    @Test
+    public void testRejectedReloadUnpublishesNoMetrics() throws Exception {
+        final Set<RouteMetrics> published = new HashSet<>();
+        mapper = new ReloadingRoutesMapper(tester.getApplication(), new RoutesMountSettings().publishMetrics(
+                new RouteMetricsPublisher() {
+                    @Override
+                    public void publish(final RouteMetrics metrics) {
+                        published.add(metrics);
+                    }
+
+                    @Override
+                    public void unpublish(final RouteMetrics metrics) {
+                        published.remove(metrics);
+                    }
+                }), routesFile.toURI().toURL());
+        Assert.assertEquals(2, published.size());
+
+        writeRoutes("/login     org.apache.wicket.markup.html.WebPage",
+                    "/admin     " + AdminPage.class.getName() + "    ADMIN");
+        Assert.assertFalse(mapper.reloadIfChanged());
+        Assert.assertEquals("Metrics of the rejected routes should not be published", 2, published.size());
+    }
+
+    private void writeRoutes(final String... lines) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(routesFile), "UTF-8")) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static MockWebRequest request(final String url) {
+        return new MockWebRequest(Url.parse(url));
+    }
+
+    public static class AdminPage extends WebPage {
+    }
+}
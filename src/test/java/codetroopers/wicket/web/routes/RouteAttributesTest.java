@@ -0,0 +1,99 @@
+package codetroopers.wicket.web.routes;
+
+import codetroopers.wicket.web.routes.mapper.CacheDirectives;
+import codetroopers.wicket.web.routes.mapper.RouteLimiter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author cgatay
+ */
+public class RouteAttributesTest {
+
+    @Test
+    public void testCacheDirectives() throws Exception {
+        final CacheDirectives directives = RouteAttributes.parse(
+                Arrays.asList("cache=10m", "stateless=true", "validate=last-modified")).getCacheDirectives();
+        Assert.assertEquals(600, directives.getMaxAge());
+        Assert.assertTrue(directives.isStateless());
+        Assert.assertEquals(CacheDirectives.Validation.LAST_MODIFIED, directives.getValidation());
+        Assert.assertTrue(directives.isShared());
+        Assert.assertFalse(directives.privately().isShared());
+    }
+
+    @Test
+    public void testNoAttributes() throws Exception {
+        Assert.assertSame(RouteAttributes.NONE, RouteAttributes.parse(Collections.<String>emptyList()));
+        Assert.assertSame(CacheDirectives.NONE, RouteAttributes.NONE.getCacheDirectives());
+    }
+
+    @Test
+    public void testDurations() throws Exception {
+        Assert.assertEquals(30, RouteAttributes.parseDuration("30"));
+        Assert.assertEquals(30, RouteAttributes.parseDuration("30s"));
+        Assert.assertEquals(7200, RouteAttributes.parseDuration("2h"));
+        Assert.assertEquals(86400, RouteAttributes.parseDuration("1d"));
+        for (String invalid : new String[]{"", "m", "-5", "ten", "5w"}) {
+            try {
+                RouteAttributes.parseDuration(invalid);
+                Assert.fail(invalid + " should not be a duration");
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals("Invalid duration " + invalid, e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testMatchingOptions() throws Exception {
+        Assert.assertFalse(RouteAttributes.NONE.isExact());
+        Assert.assertFalse(RouteAttributes.NONE.isStrict());
+        Assert.assertTrue(RouteAttributes.NONE.isVersionInUrl());
+        final RouteAttributes attributes =
+                RouteAttributes.parse(Arrays.asList("exact=true", "strict=true", "versionInUrl=false"));
+        Assert.assertTrue(attributes.isExact());
+        Assert.assertTrue(attributes.isStrict());
+        Assert.assertFalse(attributes.isVersionInUrl());
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        Assert.assertNull(RouteAttributes.parse(Arrays.asList("cache=10m")).newLimiter());
+        final RouteLimiter limiter = RouteAttributes.parse(Arrays.asList("rate=120/m", "concurrency=4")).newLimiter();
+        Assert.assertEquals(2.0, limiter.getRate(), 0.001);
+        Assert.assertEquals(4, limiter.getMaxConcurrent());
+        Assert.assertEquals(0, RouteAttributes.parse(Arrays.asList("concurrency=1")).newLimiter().getRate(), 0);
+        Assert.assertEquals(0, RouteAttributes.parse(Arrays.asList("rate=5", "burst=10")).newLimiter()
+                .getMaxConcurrent());
+    }
+
+    @Test
+    public void testHosts() throws Exception {
+        Assert.assertTrue(RouteAttributes.NONE.getHosts().isEmpty());
+        final RouteAttributes attributes = RouteAttributes.parse(Arrays.asList("host=A.example.com,b.example.com"));
+        Assert.assertEquals(Arrays.asList("a.example.com", "b.example.com"),
+                            new ArrayList<>(attributes.getHosts()));
+        Assert.assertFalse(attributes.hasMapperOptions());
+        Assert.assertTrue(RouteAttributes.parse(Arrays.asList("host=a.example.com", "exact=true")).hasMapperOptions());
+        Assert.assertTrue(RouteAttributes.parse(Arrays.asList("exact=true")).hasMapperOptions());
+    }
+
+    @Test
+    public void testInvalidAttributes() throws Exception {
+        for (String[] attributes : new String[][]{{"cache=5", "cache=6"}, {"ttl=5"}, {"stateless=yes"},
+                                                  {"validate=md5"}, {"rate=0/s"}, {"rate=5/w"}, {"rate=fast"},
+                                                  {"burst=5"}, {"concurrency=-1"}, {"exact=1"},
+                                                  {"versionInUrl=no"}, {"host="}, {"host=a.com,"},
+                                                  {"host=a.com:8080"}}) {
+            try {
+                RouteAttributes.parse(Arrays.asList(attributes));
+                Assert.fail(Arrays.toString(attributes) + " should be rejected");
+            } catch (IllegalArgumentException e) {
+                Assert.assertNotNull(e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package codetroopers.wicket.web.routes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+/**
+ * @author cgatay
+ */
+public class RouteTableTest {
+
+    @Test
+    public void testPrecompiledTableGivesSameMappings() throws Exception {
+        for (String file : new String[]{"four_routes.conf", "routes_with_roles.conf", "routes_package.conf",
+                                        "routes_with_attributes.conf"}) {
+            final RouteTable table = RouteTable.read(new ByteArrayInputStream(write(compile(file))));
+            Assert.assertEquals("Loading the table of " + file + " should give the same mappings",
+                                new RoutesMountParser().parseFile(file), new RoutesMountParser().load(table));
+        }
+    }
+
+    @Test
+    public void testPlaceholdersAreExtracted() throws Exception {
+        final RouteTable table = RouteTable.compile("routes.conf", new StringReader(
+                "/user/${id:[0-9]+}/#{tab}     org.apache.wicket.markup.html.WebPage     USER"), loader());
+        final RouteTable.Route route = table.getRoutes().get(0);
+        Assert.assertEquals("/user/${id}/#{tab}", route.getPath());
+        Assert.assertEquals(2, route.getParameters().size());
+        Assert.assertEquals("[0-9]+", route.getParameters().get(0).regex());
+        Assert.assertEquals(1, route.getRoles().size());
+    }
+
+    @Test
+    public void testErrorsAreReportedWithLines() throws Exception {
+        try {
+            compile("routes_bad_class.conf");
+            Assert.fail("A missing class should be reported");
+        } catch (InvalidRoutesException e) {
+            Assert.assertEquals(1, e.getErrors().size());
+            Assert.assertTrue(e.getErrors().get(0), e.getErrors().get(0).startsWith("routes_bad_class.conf:3: "));
+        }
+        try {
+            compile("routes_not_page.conf");
+            Assert.fail("A class which is not a page should be reported");
+        } catch (InvalidRoutesException e) {
+            Assert.assertTrue(e.getErrors().get(0), e.getErrors().get(0).endsWith("is not a wicket Page !"));
+        }
+    }
+
+    @Test
+    public void testMalformedPatternsAreReported() throws Exception {
+        try {
+            RouteTable.compile("routes.conf", new StringReader(
+                    "/user/${id:[0-9}     org.apache.wicket.markup.html.WebPage\n"
+                    + "/user/${id/edit     org.apache.wicket.markup.html.WebPage"), loader());
+            Assert.fail("Malformed patterns should be reported");
+        } catch (InvalidRoutesException e) {
+            Assert.assertEquals(2, e.getErrors().size());
+            Assert.assertTrue(e.getErrors().get(0).startsWith("routes.conf:1: "));
+            Assert.assertTrue(e.getErrors().get(1).startsWith("routes.conf:2: "));
+        }
+    }
+
+    @Test
+    public void testAttributesAreKept() throws Exception {
+        final RouteTable table = RouteTable.read(new ByteArrayInputStream(write(
+                compile("routes_with_attributes.conf"))));
+        Assert.assertEquals(Arrays.asList("cache=10m", "stateless=true", "validate=etag"),
+                            table.getRoutes().get(0).getAttributes());
+        Assert.assertEquals(Arrays.asList("cache=60", "validate=last-modified"),
+                            table.getRoutes().get(1).getAttributes());
+        Assert.assertTrue(table.getRoutes().get(2).getAttributes().isEmpty());
+    }
+
+    @Test
+    public void testInvalidAttributesAreReported() throws Exception {
+        try {
+            RouteTable.compile("routes.conf", new StringReader(
+                    "/news     org.apache.wicket.markup.html.WebPage     cache=soon\n"
+                    + "/pages    org.apache.wicket.markup.html     cache=10"), loader());
+            Assert.fail("Invalid attributes should be reported");
+        } catch (InvalidRoutesException e) {
+            Assert.assertEquals(Arrays.asList("routes.conf:1: Invalid duration soon",
+                                              "routes.conf:2: Attributes cannot be given to package "
+                                              + "org.apache.wicket.markup.html"), e.getErrors());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadingSomethingElseFails() throws Exception {
+        RouteTable.read(new ByteArrayInputStream("/login org.apache.wicket.markup.html.WebPage".getBytes("UTF-8")));
+    }
+
+    private static RouteTable compile(final String file) throws Exception {
+        try (Reader reader = new InputStreamReader(RouteTableTest.class.getResourceAsStream(file), "UTF-8")) {
+            return RouteTable.compile(file, reader, loader());
+        }
+    }
+
+    private static byte[] write(final RouteTable table) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.write(out);
+        return out.toByteArray();
+    }
+
+    private static ClassLoader loader() {
+        return RouteTableTest.class.getClassLoader();
+    }
+}
@@ -0,0 +1,115 @@
+package codetroopers.wicket.web.routes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author cgatay
+ */
+public class RoutesAnalyzerTest {
+
+    @Test
+    public void testDuplicatedRoutes() throws Exception {
+        final RoutesAnalyzer.Report report = analyze("/same\tcom.example.FirstPage\n/same\tcom.example.SecondPage\n");
+        Assert.assertEquals(1, report.getFindings().size());
+        final RoutesAnalyzer.Finding finding = report.getFindings().get(0);
+        Assert.assertEquals(RoutesAnalyzer.Finding.Kind.DUPLICATE, finding.getKind());
+        Assert.assertEquals(1, finding.getRoute().getLine());
+        Assert.assertEquals(2, finding.getOther().getLine());
+        Assert.assertEquals("/same", finding.getExample());
+        Assert.assertTrue(report.hasErrors());
+    }
+
+    @Test
+    public void testShadowedRoutes() throws Exception {
+        // equal scores, the last route wins and accepts extra segments
+        final RoutesAnalyzer.Report report = analyze("/docs/#{section:[a-z]+}\tcom.example.DocsPage\n"
+                                                     + "/docs\tcom.example.DocsIndexPage\n");
+        Assert.assertEquals(1, report.getFindings(RoutesAnalyzer.Finding.Kind.SHADOWED).size());
+        Assert.assertEquals("/docs/#{section:[a-z]+}",
+                            report.getFindings().get(0).getRoute().getMountPoint());
+    }
+
+    @Test
+    public void testSpecificRoutesBeforeCatchAllAreNotReported() throws Exception {
+        final RoutesAnalyzer.Report report = analyze("/user/${id}\tcom.example.UserPage\n"
+                                                     + "/user/new\tcom.example.NewUserPage\n"
+                                                     + "/\tcom.example.HomePage\n");
+        Assert.assertTrue(report.getFindings().isEmpty());
+        Assert.assertFalse(report.hasErrors());
+    }
+
+    @Test
+    public void testRegularExpressionsOfStrictRoutes() throws Exception {
+        final List<RoutesAnalyzer.Route> routes = Arrays.asList(
+                new RoutesAnalyzer.Route(1, "/user/${id:[0-9]+}", "IdPage", true, false, true),
+                new RoutesAnalyzer.Route(2, "/user/${name:[a-z]+}", "NamePage", true, false, true),
+                new RoutesAnalyzer.Route(3, "/user/${id:\\d{1,3}}", "ShortIdPage", true, false, true),
+                new RoutesAnalyzer.Route(4, "/user/${key:[a-z0-9]+}", "KeyPage", true, false, true));
+        final RoutesAnalyzer.Report report = RoutesAnalyzer.analyze("test", routes);
+        final List<String> findings = new ArrayList<>();
+        for (RoutesAnalyzer.Finding finding : report.getFindings()) {
+            findings.add(finding.getRoute().getLine() + " " + finding.getKind() + " " + finding.getOther().getLine());
+        }
+        // the numeric and alphabetic routes never overlap, the last one contains them all
+        Assert.assertEquals(Arrays.asList("1 SHADOWED 4", "2 SHADOWED 4", "3 SHADOWED 4"), findings);
+    }
+
+    @Test
+    public void testStrictAttributeOfRoutesFile() throws Exception {
+        final String routes = "/user/${id:[0-9]+}\tcom.example.IdPage%s\n"
+                              + "/user/${name:[a-z]+}\tcom.example.NamePage%s\n";
+        Assert.assertFalse(analyze(String.format(routes, "", "")).getFindings().isEmpty());
+        Assert.assertTrue(analyze(String.format(routes, "\tstrict=true", "\tstrict=true")).getFindings().isEmpty());
+    }
+
+    @Test
+    public void testRoutesOfOtherHostsDoNotConflict() throws Exception {
+        final String routes = "/user/${id}\tcom.example.UserPage\thost=a.example.com\n"
+                              + "/user/${name}\tcom.example.NamePage\thost=%s\n";
+        Assert.assertTrue(analyze(String.format(routes, "b.example.com")).getFindings().isEmpty());
+        Assert.assertFalse(analyze(String.format(routes, "b.example.com,a.example.com")).getFindings().isEmpty());
+    }
+
+    @Test
+    public void testOverlappingRoutes() throws Exception {
+        final RoutesAnalyzer.Report report = analyze("/user/${id}\tcom.example.UserPage\n"
+                                                     + "/${lang}/about\tcom.example.AboutPage\n");
+        Assert.assertEquals(1, report.getFindings(RoutesAnalyzer.Finding.Kind.OVERLAP).size());
+        Assert.assertEquals("/user/about", report.getFindings().get(0).getExample());
+        Assert.assertEquals(1, report.getUnprefixedRoutes().size());
+        Assert.assertFalse(report.hasErrors());
+    }
+
+    @Test
+    public void testSuggestedOrderGroupsPrefixesAndKeepsTies() throws Exception {
+        final RoutesAnalyzer.Report report = analyze("/b/one\tcom.example.B1\n"
+                                                     + "/a/${id}\tcom.example.A1\n"
+                                                     + "/b/${id}\tcom.example.B2\n"
+                                                     + "/a/${name}\tcom.example.A2\n");
+        final List<String> targets = new ArrayList<>();
+        for (RoutesAnalyzer.Route route : report.getSuggestedOrder()) {
+            targets.add(route.getTarget());
+        }
+        Assert.assertEquals(Arrays.asList("com.example.A1", "com.example.A2", "com.example.B1", "com.example.B2"),
+                            targets);
+    }
+
+    @Test
+    public void testUnsupportedExpressionsAcceptAnyValue() throws Exception {
+        final RoutesAnalyzer.Report report = RoutesAnalyzer.analyze("test", Arrays.asList(
+                new RoutesAnalyzer.Route(1, "/x/${b:[0-9]+}", "NumberPage", true, false, true),
+                new RoutesAnalyzer.Route(2, "/x/${a:(\\w)\\1}", "RepeatPage", true, false, true)));
+        Assert.assertEquals(Arrays.asList("test:2: (\\w)\\1"), report.getUnsupportedExpressions());
+        Assert.assertEquals(RoutesAnalyzer.Finding.Kind.SHADOWED, report.getFindings().get(0).getKind());
+    }
+
+    private static RoutesAnalyzer.Report analyze(final String routes) throws Exception {
+        return RoutesAnalyzer.analyze("routes.conf", new StringReader(routes), null);
+    }
+}
@@ -1,17 +1,33 @@
 package codetroopers.wicket.web.routes;
 
+import codetroopers.wicket.web.routes.authorization.RoleIndex;
+import codetroopers.wicket.web.routes.mapper.HostRoutesMapper;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.mock.MockWebRequest;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Url;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author cgatay
  */
 public class RoutesMountParserTest {
 
+    /** number of page classes whose static initializer ran */
+    private static final AtomicInteger INITIALIZED_PAGES = new AtomicInteger();
+
     private RoutesMountParser routesMountParser;
 
     @Before
@@ -75,6 +91,38 @@ public class RoutesMountParserTest {
 
     }
 
+    @Test
+    public void testRolesSharedByRoutes() throws Exception {
+        final List<RoutesMountParser.URLPageMapping> mappings = routesMountParser.parse(new StringReader(
+                "/a org.apache.wicket.markup.html.WebPage ADMIN,USER\n"
+                + "/b org.apache.wicket.markup.html.WebPage ADMIN,USER\n"
+                + "/c org.apache.wicket.markup.html.WebPage USER\n"));
+        Assert.assertSame(mappings.get(0).getRoles(), mappings.get(1).getRoles());
+        Assert.assertEquals(Arrays.asList("USER"), mappings.get(2).getRoles());
+        try {
+            mappings.get(0).getRoles().add("GUEST");
+            Assert.fail("Shared roles should not be modified");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(Arrays.asList("ADMIN", "USER"), mappings.get(1).getRoles());
+        }
+        // the roles are only shared by the routes of a parser, not kept for the next reload
+        Assert.assertNotSame(mappings.get(0).getRoles(), new RoutesMountParser().parse(new StringReader(
+                "/a org.apache.wicket.markup.html.WebPage ADMIN,USER\n")).get(0).getRoles());
+    }
+
+    @Test
+    public void testRolesIndexedInBulk() throws Exception {
+        final RoleIndex.Builder builder = RoleIndex.builder();
+        for (RoutesMountParser.URLPageMapping mapping : routesMountParser.parseFile("routes_with_roles.conf")) {
+            mapping.authorizeRoles(builder);
+        }
+        final RoleIndex index = builder.build();
+        Assert.assertEquals(Arrays.asList("ADMIN", "USER", "TEMP", "SUPER_ROLE"), index.getRoles());
+        Assert.assertEquals("Roles of the routes of the same page are merged", 1, index.size());
+        Assert.assertTrue(index.isAuthorized(WebPage.class, index.bitsOf(Arrays.asList("TEMP"))));
+        Assert.assertFalse(index.isAuthorized(WebPage.class, index.bitsOf(Arrays.asList("GUEST"))));
+    }
+
     @Test
     public void testParsingPackage() throws IOException {
         final List<RoutesMountParser.URLPageMapping> urlPageMappings =
@@ -82,4 +130,162 @@ public class RoutesMountParserTest {
         Assert.assertEquals(1, urlPageMappings.size());
     }
 
+    @Test
+    public void testParallelResolution_sameMappingsInLineOrder() throws IOException {
+        final RoutesMountParser parallelParser =
+                new RoutesMountParser(new RoutesMountSettings().resolveClasses(ClassResolution.PARALLEL).parallelism(4));
+        for (String file : new String[]{"four_routes.conf", "routes_bad_class.conf", "routes_not_page.conf",
+                                        "routes_with_roles.conf", "routes_package.conf"}) {
+            Assert.assertEquals("Parallel resolution should give the same mappings for " + file,
+                                routesMountParser.parseFile(file), parallelParser.parseFile(file));
+        }
+    }
+
+    @Test
+    public void testParallelResolution_pageClassesNotInitialized() throws IOException {
+        final RoutesMountParser parallelParser =
+                new RoutesMountParser(new RoutesMountSettings().resolveClasses(ClassResolution.PARALLEL).parallelism(2));
+        final List<RoutesMountParser.URLPageMapping> mappings = parallelParser.parse(new StringReader(
+                "/first " + FirstStaticPage.class.getName() + "\n"
+                + "/second " + SecondStaticPage.class.getName() + "\n"));
+        Assert.assertEquals(2, mappings.size());
+        Assert.assertEquals("Page classes should be initialized on first use only", 0, INITIALIZED_PAGES.get());
+    }
+
+    @Test
+    public void testLazyResolution_sameMappings() throws IOException {
+        final RoutesMountParser lazyParser =
+                new RoutesMountParser(new RoutesMountSettings().resolveClasses(ClassResolution.LAZY));
+        for (String file : new String[]{"four_routes.conf", "routes_bad_class.conf", "routes_with_roles.conf",
+                                        "routes_package.conf"}) {
+            Assert.assertEquals("Lazy resolution should give the same mappings for " + file,
+                                routesMountParser.parseFile(file), lazyParser.parseFile(file));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLazyResolution_notAPageFailsOnFirstUse() throws IOException {
+        final List<RoutesMountParser.URLPageMapping> urlPageMappings =
+                new RoutesMountParser(new RoutesMountSettings().resolveClasses(ClassResolution.LAZY))
+                        .parseFile("routes_not_page.conf");
+        Assert.assertEquals("Only the class file is checked while parsing", 1, urlPageMappings.size());
+        final IRequestMapper mapper = urlPageMappings.get(0).newRequestMapper(null);
+        mapper.mapRequest(new MockWebRequest(Url.parse("invalid")));
+    }
+
+    @Test
+    public void testIncludes_routesInLineOrder() throws IOException {
+        final List<RoutesMountParser.URLPageMapping> included = routesMountParser.parseFile("routes_include.conf");
+        Assert.assertEquals(10, included.size());
+        Assert.assertEquals(routesMountParser.parseFile("four_routes.conf"), included.subList(0, 4));
+        Assert.assertEquals("/home", included.get(4).getMountPoint());
+        Assert.assertEquals("/admin", included.get(5).getMountPoint());
+        Assert.assertEquals(routesMountParser.parseFile("routes_with_roles.conf"), included.subList(6, 9));
+        Assert.assertEquals("/last", included.get(9).getMountPoint());
+        for (ClassResolution resolution : ClassResolution.values()) {
+            final RoutesMountParser parallelParser =
+                    new RoutesMountParser(new RoutesMountSettings().resolveClasses(resolution).parallelism(4));
+            Assert.assertEquals("Included files read concurrently should keep the order with " + resolution,
+                                included, parallelParser.parseFile("routes_include.conf"));
+        }
+    }
+
+    @Test
+    public void testIncludes_filesAreTracked() throws IOException {
+        routesMountParser.parseFile("routes_include.conf");
+        final List<URL> sources = routesMountParser.getSources();
+        Assert.assertEquals(4, sources.size());
+        Assert.assertTrue(sources.get(0).getPath().endsWith("/routes_include.conf"));
+    }
+
+    @Test
+    public void testIncludes_cycleIsAnError() throws IOException {
+        try {
+            routesMountParser.parseFile("routes_include_cycle.conf");
+            Assert.fail("A file including itself should not be read");
+        } catch (IOException e) {
+            Assert.assertEquals("routes_include_cycle.conf:2: routes_include_cycle.conf includes itself",
+                                e.getMessage());
+        }
+    }
+
+    @Test
+    public void testIncludes_missingFileIsAnError() throws IOException {
+        for (int parallelism : new int[]{1, 4}) {
+            try {
+                new RoutesMountParser(new RoutesMountSettings().parallelism(parallelism))
+                        .parseFile("routes_include_missing.conf");
+                Assert.fail("A missing included file should be reported");
+            } catch (IOException e) {
+                Assert.assertTrue(e.getMessage(),
+                                  e.getMessage().startsWith("routes_include_missing.conf:2: cannot "));
+            }
+        }
+    }
+
+    @Test
+    public void testStreaming_mappingsGivenAsRead() throws IOException {
+        final List<RoutesMountParser.URLPageMapping> streamed = new ArrayList<>();
+        routesMountParser.parse("four_routes.conf", null,
+                                new StringReader("/a org.apache.wicket.markup.html.WebPage\n"
+                                                 + "/b org.apache.wicket.markup.html.WebPage\n"),
+                                new RoutesMountParser.MappingListener() {
+                                    @Override
+                                    public void mapping(final RoutesMountParser.URLPageMapping mapping) {
+                                        streamed.add(mapping);
+                                    }
+                                });
+        Assert.assertEquals(2, streamed.size());
+        Assert.assertEquals("/b", streamed.get(1).getMountPoint());
+    }
+
+    @Test
+    public void testIndexesOfAnnotatedPages() throws IOException {
+        final URLClassLoader indexes = new URLClassLoader(new URL[]{getClass().getResource("/indexes/")}, null);
+        final List<RoutesMountParser.URLPageMapping> indexed = routesMountParser.parseIndexes(indexes);
+        Assert.assertEquals(1, indexed.size());
+        Assert.assertEquals("/indexed/${id:[0-9]+}", indexed.get(0).getMountPoint());
+        Assert.assertEquals(Arrays.asList("ADMIN"), indexed.get(0).getRoles());
+        Assert.assertTrue(routesMountParser.parseIndexes().isEmpty());
+    }
+
+    @Test
+    public void testRoutesTablesOfHosts() throws IOException {
+        final List<RoutesMountParser.URLPageMapping> mappings = routesMountParser.parse(new StringReader(
+                "/home org.apache.wicket.markup.html.WebPage\n"
+                + "/a org.apache.wicket.markup.html.WebPage host=a.example.com,www.a.example.com\n"
+                + "/b org.apache.wicket.markup.html.WebPage host=b.example.com\n"
+                + "/pages org.apache.wicket.markup.html host=b.example.com\n"));
+        Assert.assertEquals(4, mappings.size());
+        final List<IRequestMapper> mappers = new ArrayList<>();
+        for (RoutesMountParser.URLPageMapping mapping : mappings) {
+            mappers.add(mapping.newRequestMapper());
+        }
+        final IRequestMapper table = RoutesMountParser.newRoutesTable(mappings, mappers,
+                                                                      new RoutesMountSettings().compileToTrie(true));
+        Assert.assertTrue(table instanceof HostRoutesMapper);
+        final HostRoutesMapper hostMapper = (HostRoutesMapper) table;
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a.example.com", "www.a.example.com", "b.example.com")),
+                            hostMapper.getHosts());
+        // a.example.com and www.a.example.com have the same routes, hence the same table
+        Assert.assertEquals(3, hostMapper.getTables().size());
+        Assert.assertFalse(RoutesMountParser.newRoutesTable(mappings.subList(0, 1), mappers.subList(0, 1),
+                                                            new RoutesMountSettings()) instanceof HostRoutesMapper);
+    }
+
+    public static class FirstStaticPage extends WebPage {
+        static final Class<?> OTHER = SecondStaticPage.class;
+
+        static {
+            INITIALIZED_PAGES.incrementAndGet();
+        }
+    }
+
+    public static class SecondStaticPage extends WebPage {
+        static final Class<?> OTHER = FirstStaticPage.class;
+
+        static {
+            INITIALIZED_PAGES.incrementAndGet();
+        }
+    }
 }
@@ -0,0 +1,100 @@
+package codetroopers.wicket.web.routes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author cgatay
+ */
+public class RoutesReaderTest {
+    /** expression the routes files used to be parsed with */
+    private static final Pattern ROUTE_PATTERN =
+            Pattern.compile("^([^\\t\\s]*)[\\t\\s]*([^\\t\\s]*)[\\t\\s]*([^\\t\\s]*)[\\t\\s]*$");
+
+    @Test
+    public void testSameFieldsAsRegex() throws IOException {
+        assertSameFields("/user/${id:[0-9]+}   codetroopers.UserPage   ADMIN,USER\n"
+                         + "# comment\n"
+                         + "\n"
+                         + "   \t\n"
+                         + "  /leading   codetroopers.Page\n"
+                         + "/too many fields here\n"
+                         + "/crlf\tcodetroopers.Page\r\n"
+                         + "/cr codetroopers.Page\r"
+                         + "/last codetroopers.Page");
+    }
+
+    @Test
+    public void testSameFieldsAsRegexOnRandomLines() throws IOException {
+        final char[] chars = {'/', 'a', '.', '#', ' ', '\t', '\u000B', '\f', '\n', '\r', '\u0001', '$', '{', '}'};
+        final Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            final StringBuilder file = new StringBuilder();
+            for (int length = random.nextInt(60); length > 0; length--) {
+                file.append(chars[random.nextInt(chars.length)]);
+            }
+            assertSameFields(file.toString());
+        }
+    }
+
+    @Test
+    public void testAttributesFollowTheClass() throws IOException {
+        final List<RoutesMountParser.RouteLine> lines = RoutesMountParser.readLines(new StringReader(
+                "/news codetroopers.Page cache=10m  stateless=true\n"
+                + "/account codetroopers.Page USER validate=etag\n"
+                + "/mixed codetroopers.Page cache=10m USER\n"
+                + "/x=y codetroopers.Page"));
+        Assert.assertEquals(3, lines.size());
+        Assert.assertEquals("", lines.get(0).roles);
+        Assert.assertEquals(Arrays.asList("cache=10m", "stateless=true"), lines.get(0).attributes);
+        Assert.assertEquals("USER", lines.get(1).roles);
+        Assert.assertEquals(Arrays.asList("validate=etag"), lines.get(1).attributes);
+        Assert.assertEquals("Fields cannot follow attributes", "/x=y", lines.get(2).mountPoint);
+        Assert.assertTrue(lines.get(2).attributes.isEmpty());
+    }
+
+    @Test
+    public void testLongLines() throws IOException {
+        final StringBuilder mountPoint = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            mountPoint.append("/segment").append(i);
+        }
+        final List<RoutesMountParser.RouteLine> lines =
+                RoutesMountParser.readLines(new StringReader(mountPoint + " codetroopers.Page\n/next codetroopers.Page"));
+        Assert.assertEquals(2, lines.size());
+        Assert.assertEquals(mountPoint.toString(), lines.get(0).mountPoint);
+        Assert.assertEquals(2, lines.get(1).number);
+    }
+
+    private static void assertSameFields(final String file) throws IOException {
+        final List<String> expected = new ArrayList<>();
+        final String[] fileLines = file.split("\r\n|\r|\n", -1);
+        for (int number = 1; number <= fileLines.length; number++) {
+            final String line = fileLines[number - 1];
+            if (number == fileLines.length && line.isEmpty()) {
+                break;
+            }
+            if (!line.startsWith("#") && line.trim().length() > 0) {
+                final Matcher matcher = ROUTE_PATTERN.matcher(line);
+                if (matcher.matches()) {
+                    expected.add(number + "|" + matcher.group(1) + "|" + matcher.group(2) + "|" + matcher.group(3)
+                                 + "|" + line);
+                }
+            }
+        }
+        final List<String> actual = new ArrayList<>();
+        for (RoutesMountParser.RouteLine line : RoutesMountParser.readLines(new StringReader(file))) {
+            actual.add(line.number + "|" + line.mountPoint + "|" + line.className + "|" + line.roles + "|" + line.text);
+        }
+        Assert.assertEquals("Fields of " + file, expected, actual);
+    }
+}
@@ -0,0 +1,110 @@
+package codetroopers.wicket.web.routes;
+
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * @author cgatay
+ */
+public class RoutesWarmUpTest {
+
+    @Test
+    public void testSampleValues() throws Exception {
+        for (String regex : Arrays.asList("[0-9]+", "[a-z]{3}", "\\d{4}-\\d{2}", "(fr|en)", "a*b")) {
+            final String accepted = RoutesWarmUp.accepted(regex);
+            Assert.assertNotNull(regex, accepted);
+            Assert.assertTrue(regex + " : " + accepted, Pattern.matches(regex, accepted));
+            final String rejected = RoutesWarmUp.rejected(regex);
+            Assert.assertNotNull(regex, rejected);
+            Assert.assertFalse(regex + " : " + rejected, Pattern.matches(regex, rejected));
+        }
+        Assert.assertTrue(Pattern.matches("[^/]+", RoutesWarmUp.accepted("[^/]+")));
+        Assert.assertNull(RoutesWarmUp.rejected("[^/]+"));
+    }
+
+    @Test
+    public void testUrlsOfRoute() throws Exception {
+        final List<List<String>> urls = RoutesWarmUp.urls("/users/${id:[0-9]+}/posts/${slug}");
+        Assert.assertEquals(2, urls.size());
+        final List<String> hit = urls.get(0);
+        Assert.assertEquals(4, hit.size());
+        Assert.assertEquals("users", hit.get(0));
+        Assert.assertTrue(hit.get(1), Pattern.matches("[0-9]+", hit.get(1)));
+        Assert.assertEquals("posts", hit.get(2));
+        Assert.assertFalse(hit.get(3).isEmpty());
+        final List<String> miss = urls.get(1);
+        Assert.assertEquals(4, miss.size());
+        Assert.assertFalse(miss.get(1), Pattern.matches("[0-9]+", miss.get(1)));
+        Assert.assertEquals(hit.get(3), miss.get(3));
+    }
+
+    @Test
+    public void testUrlsOfRouteWithoutRegex() throws Exception {
+        final List<List<String>> urls = RoutesWarmUp.urls("/about/${page}");
+        Assert.assertEquals(Arrays.asList("about", "warmup"), urls.get(0));
+        Assert.assertEquals(Arrays.asList("about", "warmup~"), urls.get(1));
+        Assert.assertEquals(Arrays.asList(Arrays.asList("contact"), Arrays.asList("contact~")),
+                            RoutesWarmUp.urls("/contact"));
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        final CountingMapper mapper = new CountingMapper();
+        final RoutesWarmUp warmUp = new RoutesWarmUp(Arrays.asList("/users/${id:[0-9]+}", "/about"), 10);
+        Assert.assertFalse(warmUp.isWarmedUp());
+        warmUp.run(mapper);
+        Assert.assertTrue(warmUp.isWarmedUp());
+        Assert.assertTrue(warmUp.await(0, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(40, mapper.requests);
+        Assert.assertEquals(40, warmUp.getRequestCount());
+        Assert.assertEquals(20, mapper.handlers);
+        Assert.assertEquals(10, warmUp.getFailureCount());
+        Assert.assertTrue(warmUp.getDuration() > 0);
+    }
+
+    /**
+     * Maps the URLs starting with "users", fails on the unknown ones starting with "about"
+     */
+    private static class CountingMapper implements IRequestMapper {
+        private int requests;
+        private int handlers;
+
+        @Override
+        public IRequestHandler mapRequest(final Request request) {
+            requests++;
+            final String first = request.getUrl().getSegments().get(0);
+            if (first.equals("about~")) {
+                throw new IllegalStateException(first);
+            }
+            return first.equals("users") ? new IRequestHandler() {
+                @Override
+                public void respond(final org.apache.wicket.request.IRequestCycle requestCycle) {
+                }
+
+                @Override
+                public void detach(final org.apache.wicket.request.IRequestCycle requestCycle) {
+                }
+            } : null;
+        }
+
+        @Override
+        public int getCompatibilityScore(final Request request) {
+            return 0;
+        }
+
+        @Override
+        public Url mapHandler(final IRequestHandler requestHandler) {
+            handlers++;
+            return null;
+        }
+    }
+}
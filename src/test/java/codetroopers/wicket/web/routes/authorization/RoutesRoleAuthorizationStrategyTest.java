@@ -0,0 +1,103 @@
+package codetroopers.wicket.web.routes.authorization;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.authorization.Action;
+import org.apache.wicket.authorization.IAuthorizationStrategy;
+import org.apache.wicket.authroles.authorization.strategies.role.IRoleCheckingStrategy;
+import org.apache.wicket.authroles.authorization.strategies.role.Roles;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.request.component.IRequestableComponent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
+/**
+ * @author cgatay
+ */
+public class RoutesRoleAuthorizationStrategyTest {
+
+    @Test
+    public void testRolesAreInternedOnce() throws Exception {
+        final RoleIndex index = RoleIndex.builder()
+                .add(AdminPage.class, Arrays.asList("ADMIN"))
+                .add(UserPage.class, Arrays.asList("USER", "ADMIN"))
+                .add(AdminPage.class, Arrays.asList("SUPER_ROLE"))
+                .add(PublicPage.class, Collections.<String>emptyList())
+                .build();
+        Assert.assertEquals(Arrays.asList("ADMIN", "USER", "SUPER_ROLE"), index.getRoles());
+        Assert.assertEquals("Classes without roles are not indexed", 2, index.size());
+
+        final BitSet admin = index.bitsOf(Arrays.asList("ADMIN", "UNKNOWN"));
+        Assert.assertTrue(index.isAuthorized(AdminPage.class, admin));
+        Assert.assertTrue(index.isAuthorized(UserPage.class, admin));
+        Assert.assertTrue(index.isAuthorized(PublicPage.class, new BitSet()));
+
+        final BitSet superRole = index.bitsOf(Arrays.asList("SUPER_ROLE"));
+        Assert.assertTrue("Roles of the same class are merged", index.isAuthorized(AdminPage.class, superRole));
+        Assert.assertFalse(index.isAuthorized(UserPage.class, superRole));
+    }
+
+    @Test
+    public void testInstantiationChecksRolesThenDelegate() throws Exception {
+        final RoleIndex index = RoleIndex.builder().add(AdminPage.class, Arrays.asList("ADMIN")).build();
+        final UserRoles user = new UserRoles("USER");
+        final RoutesRoleAuthorizationStrategy strategy =
+                new RoutesRoleAuthorizationStrategy(index, user, new DenyPublicPage());
+
+        Assert.assertFalse(strategy.isInstantiationAuthorized(AdminPage.class));
+        Assert.assertTrue(strategy.isInstantiationAuthorized(UserPage.class));
+        Assert.assertFalse("The previous strategy is still asked",
+                           strategy.isInstantiationAuthorized(PublicPage.class));
+        Assert.assertEquals("Roles are only read for classes having roles", 1, user.checks);
+
+        strategy.setIndex(RoleIndex.builder().add(AdminPage.class, Arrays.asList("ADMIN", "USER")).build());
+        Assert.assertTrue(strategy.isInstantiationAuthorized(AdminPage.class));
+    }
+
+    @Test
+    public void testWithoutDelegate() throws Exception {
+        final RoutesRoleAuthorizationStrategy strategy =
+                new RoutesRoleAuthorizationStrategy(RoleIndex.EMPTY, new UserRoles(), null);
+        Assert.assertTrue(strategy.isInstantiationAuthorized(AdminPage.class));
+        Assert.assertTrue(strategy.isActionAuthorized(null, null));
+    }
+
+    private static class AdminPage extends WebPage {
+    }
+
+    private static class UserPage extends WebPage {
+    }
+
+    private static class PublicPage extends WebPage {
+    }
+
+    private static class UserRoles implements IRoleCheckingStrategy {
+        private final Roles roles;
+        private int checks;
+
+        private UserRoles(final String... roles) {
+            this.roles = new Roles(roles);
+        }
+
+        @Override
+        public boolean hasAnyRole(final Roles roles) {
+            checks++;
+            return this.roles.hasAnyRole(roles);
+        }
+    }
+
+    private static class DenyPublicPage implements IAuthorizationStrategy {
+        @Override
+        public <T extends IRequestableComponent> boolean isInstantiationAuthorized(final Class<T> componentClass) {
+            return componentClass != PublicPage.class;
+        }
+
+        @Override
+        public boolean isActionAuthorized(final Component component, final Action action) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package codetroopers.wicket.web.routes.automaton;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * @author cgatay
+ */
+public class AutomatonTest {
+    private static final String[] SUPPORTED = {"[0-9]+", "\\d{2,4}", "(asc|desc)", "[a-z][a-z0-9-]*", "^abc$",
+                                               "a|b|", "(?:ab)*c?", "[^/]+", "\\w+\\.html", ".*", "[a-c-]",
+                                               "[\\d_]+x", "(?<name>x+)y", "a{3}", "a{2,}", "[^abc]{1,3}",
+                                               "\\s*\\S", "\\x41\\u0042", "[\\-+]?\\d+(\\.\\d+)?",
+                                               "(a|ab)(c|bcd)(d*)", "[A-Z]{2}-[0-9]{3}", "", ".", "a*?b"};
+    private static final String[] UNSUPPORTED = {"(?i)a", "a++", "(a)\\1", "(?=a)b", "[a&&b]", "[[a]]", "\\bword",
+                                                 "\\p{L}+", "x^", "(?<=a)b", "\\Qa\\E"};
+    private static final char[] ALPHABET = "abcdxyzAB09-_./+ \n\t".toCharArray();
+
+    @Test
+    public void testSameMatchesAsRegex() throws Exception {
+        final Random random = new Random(42);
+        for (String regex : SUPPORTED) {
+            final Automaton automaton = Automaton.compile(regex);
+            Assert.assertNotNull("Should be supported : " + regex, automaton);
+            final Pattern pattern = Pattern.compile(regex);
+            for (int i = 0; i < 5000; i++) {
+                final StringBuilder value = new StringBuilder();
+                final int length = random.nextInt(7);
+                for (int j = 0; j < length; j++) {
+                    value.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+                }
+                Assert.assertEquals("'" + regex + "' on '" + value + "'",
+                                    pattern.matcher(value).matches(), automaton.matches(value));
+            }
+            final String example = automaton.example();
+            Assert.assertTrue(example == null || pattern.matcher(example).matches());
+        }
+    }
+
+    @Test
+    public void testUnsupportedExpressions() throws Exception {
+        for (String regex : UNSUPPORTED) {
+            Assert.assertNull("Should not be supported : " + regex, Automaton.compile(regex));
+        }
+    }
+
+    @Test
+    public void testIntersectionAndInclusion() throws Exception {
+        final Automaton digits = Automaton.compile("[0-9]+");
+        final Automaton letters = Automaton.compile("[a-z]+");
+        final Automaton alphanumerics = Automaton.compile("[a-z0-9]+");
+        Assert.assertFalse(digits.intersects(letters));
+        Assert.assertEquals("0", digits.intersectionExample(alphanumerics));
+        Assert.assertTrue(digits.isSubsetOf(alphanumerics));
+        Assert.assertFalse(alphanumerics.isSubsetOf(digits));
+        Assert.assertTrue(Automaton.literal("new").isSubsetOf(letters));
+        Assert.assertFalse(Automaton.compileOptional("new").isSubsetOf(letters));
+        Assert.assertTrue(letters.isSubsetOf(Automaton.anyValue()));
+        Assert.assertFalse(Automaton.anyValue().isSubsetOf(letters));
+        Assert.assertTrue(Automaton.compile("a{2,3}").isSubsetOf(Automaton.compile("aa|aaa")));
+        Assert.assertTrue(Automaton.compile("aa|aaa").isSubsetOf(Automaton.compile("a{2,3}")));
+    }
+
+    @Test
+    public void testNoBacktracking() throws Exception {
+        final Automaton automaton = Automaton.compile("(a+)+b");
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            value.append('a');
+        }
+        Assert.assertFalse(automaton.matches(value.append('c')));
+    }
+
+    @Test
+    public void testSeparatedSegments() throws Exception {
+        final Nfa nfa = new Nfa();
+        int state = nfa.addLiteral(nfa.newState(), "user");
+        final int separator = nfa.newState();
+        nfa.addRange(state, Automaton.SEPARATOR, Automaton.SEPARATOR, separator);
+        state = nfa.addRegex(separator, "[0-9]+", 100);
+        nfa.accept(state, 7);
+        final Automaton automaton = nfa.determinize(100);
+        int current = automaton.run(automaton.getInitialState(), "user");
+        current = automaton.step(current, Automaton.SEPARATOR);
+        current = automaton.run(current, "42");
+        Assert.assertArrayEquals(new int[]{7}, automaton.getTags(current));
+        Assert.assertEquals("user/0", automaton.example());
+    }
+}
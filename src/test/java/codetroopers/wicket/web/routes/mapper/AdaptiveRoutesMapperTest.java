@@ -0,0 +1,177 @@
+package codetroopers.wicket.web.routes.mapper;
+
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.DocsPage;
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.EditUserPage;
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.HomePage;
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.NewUserPage;
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.UserPage;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.mock.MockWebRequest;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.mapper.CompoundRequestMapper;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * @author cgatay
+ */
+public class AdaptiveRoutesMapperTest {
+    private static final String[] URLS = {"user/12", "user/abc", "user/new", "user/12/edit", "user/12/edit/more",
+                                          "user", "same", "docs", "docs/intro", "docs/42", "pages/WebPage",
+                                          "pages/Unknown", "unknown", "", "?param=value"};
+
+    private RoutesFixture fixture;
+    private CompoundRequestMapper compoundMapper;
+    private AdaptiveRoutesMapper adaptiveMapper;
+    private IRequestMapper docsMapper;
+
+    @Before
+    public void setUp() throws Exception {
+        adaptiveMapper = new AdaptiveRoutesMapper();
+        fixture = new RoutesFixture(new RoutesFixture.Table() {
+            @Override
+            public void add(final String mountPath, final IRequestMapper mapper) {
+                adaptiveMapper.add(mountPath, mapper);
+            }
+        });
+        compoundMapper = fixture.getCompoundMapper();
+        fixture.addPage("/user/${id:[0-9]+}", UserPage.class, false);
+        fixture.addPage("/user/new", NewUserPage.class, true);
+        fixture.addPage("/user/${id}/edit", EditUserPage.class, true);
+        docsMapper = fixture.addPage("/docs/#{section:[a-z]+}", DocsPage.class, true);
+        fixture.addPage("/user/${name}", EditUserPage.class, true);
+        fixture.addPage("/same", NewUserPage.class, true);
+        fixture.addPage("/same", EditUserPage.class, true);
+        fixture.addPage("/", HomePage.class, true);
+        fixture.addPackage("/pages");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        adaptiveMapper.stop();
+        fixture.destroy();
+    }
+
+    @Test
+    public void testSameResultsAsPerLineMounting() throws Exception {
+        assertSameResults();
+    }
+
+    @Test
+    public void testSameResultsAfterReordering() throws Exception {
+        // every url in turn is made the most requested one
+        for (String hot : URLS) {
+            for (int i = 0; i < 50; i++) {
+                adaptiveMapper.mapRequest(RoutesFixture.request(hot));
+            }
+            adaptiveMapper.reorder();
+            assertSameResults();
+        }
+    }
+
+    @Test
+    public void testMostRequestedRouteIsTriedFirst() throws Exception {
+        Assert.assertEquals(5, adaptiveMapper.getOrder().indexOf(docsMapper));
+        for (int i = 0; i < 10; i++) {
+            adaptiveMapper.mapRequest(RoutesFixture.request("docs/intro"));
+        }
+        adaptiveMapper.reorder();
+        // the home page accepts extra segments and is added after the docs, it stays first with the package mount
+        Assert.assertEquals(2, adaptiveMapper.getOrder().indexOf(docsMapper));
+    }
+
+    @Test
+    public void testConflictingRoutesKeepTheirPrecedence() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            adaptiveMapper.mapRequest(RoutesFixture.request("user/new"));
+        }
+        adaptiveMapper.reorder();
+        // the later '/user/${name}' route may match the same urls, it stays before '/user/new'
+        final List<IRequestMapper> order = adaptiveMapper.getOrder();
+        Assert.assertEquals(RoutesFixture.describe(compoundMapper, "user/new"), RoutesFixture.describe(adaptiveMapper, "user/new"));
+        Assert.assertEquals(EditUserPage.class, RoutesFixture.pageClass(adaptiveMapper.mapRequest(RoutesFixture.request("same"))));
+        Assert.assertEquals(order.size(), new HashSet<>(order).size());
+    }
+
+    @Test
+    public void testRoutesAreTriedOnceForTheScoreAndTheMapping() throws Exception {
+        final int[] tries = new int[1];
+        final IRequestHandler userHandler = RoutesFixture.bookmarkable(UserPage.class, null);
+        final IRequestMapper userMapper = new IRequestMapper() {
+            @Override
+            public IRequestHandler mapRequest(final Request request) {
+                tries[0]++;
+                return "user".equals(request.getUrl().getSegments().get(0)) ? userHandler : null;
+            }
+
+            @Override
+            public int getCompatibilityScore(final Request request) {
+                return 1;
+            }
+
+            @Override
+            public Url mapHandler(final IRequestHandler requestHandler) {
+                return null;
+            }
+        };
+        final AdaptiveRoutesMapper mapper = new AdaptiveRoutesMapper().add("/user/${id}", userMapper);
+        final MockWebRequest request = RoutesFixture.request("user/12");
+        Assert.assertEquals(1, mapper.getCompatibilityScore(request));
+        Assert.assertSame(userHandler, mapper.mapRequest(request));
+        Assert.assertEquals(1, tries[0]);
+        // the handler is only given once, mapping the request again tries the routes again
+        Assert.assertSame(userHandler, mapper.mapRequest(request));
+        Assert.assertEquals(2, tries[0]);
+        Assert.assertEquals(0, mapper.getCompatibilityScore(RoutesFixture.request("docs")));
+    }
+
+    @Test
+    public void testSameUrlsAsPerLineMounting() throws Exception {
+        final IRequestHandler[] handlers = {
+                RoutesFixture.bookmarkable(UserPage.class, new PageParameters().set("id", 12)),
+                RoutesFixture.bookmarkable(NewUserPage.class, null),
+                RoutesFixture.bookmarkable(EditUserPage.class, new PageParameters().set("id", "abc")),
+                RoutesFixture.bookmarkable(DocsPage.class, new PageParameters().set("section", "intro")),
+                RoutesFixture.bookmarkable(HomePage.class, null),
+                RoutesFixture.bookmarkable(WebPage.class, null)};
+        adaptiveMapper.mapRequest(RoutesFixture.request("docs/intro"));
+        adaptiveMapper.reorder();
+        for (IRequestHandler handler : handlers) {
+            Assert.assertEquals("Both mappers should generate the same url for " + handler,
+                                String.valueOf(compoundMapper.mapHandler(handler)),
+                                String.valueOf(adaptiveMapper.mapHandler(handler)));
+        }
+    }
+
+    private void assertSameResults() {
+        for (String url : URLS) {
+            Assert.assertEquals("Both mappers should agree on '" + url + "'",
+                                RoutesFixture.describe(compoundMapper, url), RoutesFixture.describe(adaptiveMapper, url));
+            Assert.assertEquals("The score of '" + url + "' should be the one of the route handling it",
+                                handlingScore(url), adaptiveMapper.getCompatibilityScore(RoutesFixture.request(url)));
+        }
+    }
+
+    /**
+     * @return the best score of the mappers handling the url, the one the compound mapper takes
+     */
+    private int handlingScore(final String url) {
+        int score = 0;
+        for (IRequestMapper mapper : adaptiveMapper.getOrder()) {
+            if (mapper.mapRequest(RoutesFixture.request(url)) != null) {
+                score = Math.max(score, mapper.getCompatibilityScore(RoutesFixture.request(url)));
+            }
+        }
+        return score;
+    }
+
+}
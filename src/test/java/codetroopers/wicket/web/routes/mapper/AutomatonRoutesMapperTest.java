@@ -0,0 +1,142 @@
+package codetroopers.wicket.web.routes.mapper;
+
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.DocsPage;
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.EditUserPage;
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.HomePage;
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.NewUserPage;
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.UserPage;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.mapper.CompoundRequestMapper;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * @author cgatay
+ */
+public class AutomatonRoutesMapperTest {
+    private static final String[] URLS = {"user/12", "user/abc", "user/new", "user/12/edit", "user/12/edit/more",
+                                          "user", "same", "docs", "docs/intro", "docs/42", "docs/intro/more",
+                                          "blog", "blog/2013", "blog/2013/07", "blog/13/07", "blog/2013/7/extra",
+                                          "files/a/b/c", "files", "pages/WebPage", "pages/Unknown", "unknown", "",
+                                          "?param=value"};
+
+    private RoutesFixture fixture;
+    private CompoundRequestMapper compoundMapper;
+    private AutomatonRoutesMapper automatonMapper;
+
+    @Before
+    public void setUp() throws Exception {
+        automatonMapper = new AutomatonRoutesMapper();
+        fixture = new RoutesFixture(new RoutesFixture.Table() {
+            @Override
+            public void add(final String mountPath, final IRequestMapper mapper) {
+                automatonMapper.add(mountPath, mapper);
+            }
+        });
+        compoundMapper = fixture.getCompoundMapper();
+        fixture.addPage("/user/${id:[0-9]+}", UserPage.class, false);
+        fixture.addPage("/user/new", NewUserPage.class, true);
+        fixture.addPage("/user/${id}/edit", EditUserPage.class, true);
+        fixture.addPage("/docs/#{section:[a-z]+}", DocsPage.class, false);
+        fixture.addPage("/user/${name}", EditUserPage.class, true);
+        fixture.addPage("/blog/${year:\\d{4}}/#{month:0?[1-9]|1[0-2]}", DocsPage.class, false);
+        fixture.addPage("/files", UserPage.class, false);
+        fixture.addPage("/same", NewUserPage.class, true);
+        fixture.addPage("/same", EditUserPage.class, true);
+        fixture.addPage("/", HomePage.class, true);
+        fixture.addPackage("/pages");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+    }
+
+    @Test
+    public void testSameResultsAsPerLineMounting() throws Exception {
+        assertSameResults(URLS);
+        Assert.assertTrue(automatonMapper.getStateCount() > 0);
+    }
+
+    @Test
+    public void testSameResultsOnRandomUrls() throws Exception {
+        final String[] segments = {"user", "new", "edit", "docs", "intro", "42", "blog", "2013", "07", "13", "files",
+                                   "same", "pages", "WebPage", "", "x"};
+        final Random random = new Random(42);
+        final String[] urls = new String[500];
+        for (int i = 0; i < urls.length; i++) {
+            final StringBuilder url = new StringBuilder();
+            for (int length = random.nextInt(5); length > 0; length--) {
+                url.append(segments[random.nextInt(segments.length)]);
+                if (length > 1) {
+                    url.append('/');
+                }
+            }
+            urls[i] = url.toString();
+        }
+        assertSameResults(urls);
+    }
+
+    @Test
+    public void testRoutesAddedAfterCompilation() throws Exception {
+        Assert.assertNull(automatonMapper.mapRequest(RoutesFixture.request("late/12")));
+        fixture.addPage("/late/${id:[0-9]+}", UserPage.class, false);
+        assertSameResults(new String[]{"late/12", "late/abc", "late"});
+    }
+
+    @Test
+    public void testManyRoutes() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            fixture.addPage("/section" + i + "/${id:[0-9]+}/#{page:[a-z]+}", UserPage.class, i % 2 == 0);
+        }
+        assertSameResults(new String[]{"section0/12", "section1/12/abc", "section1/ab", "section299/1/a/b",
+                                       "section300/1", "section15"});
+    }
+
+    @Test(timeout = 5000)
+    public void testNoCatastrophicBacktracking() throws Exception {
+        fixture.addPage("/evil/${value:(a+)+b}", UserPage.class, false);
+        final StringBuilder value = new StringBuilder("evil/");
+        for (int i = 0; i < 50; i++) {
+            value.append('a');
+        }
+        Assert.assertNull(RoutesFixture.pageClass(automatonMapper.mapRequest(RoutesFixture.request(value.toString()))));
+        Assert.assertEquals(UserPage.class, RoutesFixture.pageClass(automatonMapper.mapRequest(RoutesFixture.request("evil/aaab"))));
+    }
+
+    @Test
+    public void testSameUrlsAsPerLineMounting() throws Exception {
+        final IRequestHandler[] handlers = {
+                RoutesFixture.bookmarkable(UserPage.class, new PageParameters().set("id", 12)),
+                RoutesFixture.bookmarkable(NewUserPage.class, null),
+                RoutesFixture.bookmarkable(EditUserPage.class, new PageParameters().set("id", "abc")),
+                RoutesFixture.bookmarkable(DocsPage.class, new PageParameters().set("section", "intro")),
+                RoutesFixture.bookmarkable(HomePage.class, null),
+                RoutesFixture.bookmarkable(WebPage.class, null)};
+        for (IRequestHandler handler : handlers) {
+            Assert.assertEquals("Both mappers should generate the same url for " + handler,
+                                String.valueOf(compoundMapper.mapHandler(handler)),
+                                String.valueOf(automatonMapper.mapHandler(handler)));
+        }
+    }
+
+    private void assertSameResults(final String[] urls) {
+        for (String url : urls) {
+            final String expected = RoutesFixture.describe(compoundMapper, url);
+            Assert.assertEquals("Both mappers should agree on '" + url + "'", expected, RoutesFixture.describe(automatonMapper, url));
+            if (!"null".equals(expected)) {
+                Assert.assertEquals("Both mappers should give the same score to '" + url + "'",
+                                    compoundMapper.getCompatibilityScore(RoutesFixture.request(url)),
+                                    automatonMapper.getCompatibilityScore(RoutesFixture.request(url)));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package codetroopers.wicket.web.routes.mapper;
+
+import org.apache.wicket.core.request.handler.PageProvider;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.mock.MockApplication;
+import org.apache.wicket.mock.MockWebRequest;
+import org.apache.wicket.mock.MockWebResponse;
+import org.apache.wicket.request.IExceptionMapper;
+import org.apache.wicket.request.IRequestCycle;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.cycle.RequestCycleContext;
+import org.apache.wicket.request.http.WebResponse;
+import org.apache.wicket.request.mapper.CompoundRequestMapper;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author cgatay
+ */
+public class CachingRequestHandlerTest {
+    private static final String PAGE = "<html><body>news</body></html>";
+
+    private WicketTester tester;
+
+    @Before
+    public void setUp() throws Exception {
+        tester = new WicketTester(new MockApplication());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tester.destroy();
+    }
+
+    @Test
+    public void testRouteHeadersReplaceThePageOnes() throws Exception {
+        final CacheDirectives directives =
+                new CacheDirectives(10, TimeUnit.MINUTES, false, CacheDirectives.Validation.ETAG);
+        final MockWebResponse response = respond(handler(new Rendering(), new WebPage(), directives, null),
+                                                 new MockWebRequest(Url.parse("news")));
+        Assert.assertEquals("public, max-age=600", String.valueOf(response.getHeader("Cache-Control")));
+        Assert.assertEquals("Accept-Language, Cookie", String.valueOf(response.getHeader("Vary")));
+        Assert.assertNull(response.getHeader("Pragma"));
+        Assert.assertNotNull(response.getHeader("Expires"));
+        Assert.assertEquals("text/html", response.getContentType());
+        Assert.assertEquals(PAGE, String.valueOf(response.getTextResponse()));
+        Assert.assertEquals(CachedResponse.etag(PAGE, null), String.valueOf(response.getHeader("ETag")));
+    }
+
+    @Test
+    public void testMatchingEtagIsNotModified() throws Exception {
+        final CacheDirectives directives = new CacheDirectives(0, TimeUnit.SECONDS, false,
+                                                               CacheDirectives.Validation.ETAG);
+        final MockWebResponse response = respond(
+                handler(new Rendering(), new WebPage(), directives.privately(), null),
+                new MockWebRequest(Url.parse("news")).setHeader("If-None-Match", CachedResponse.etag(PAGE, null)));
+        Assert.assertTrue(304 == response.getStatus());
+        Assert.assertNull(response.getTextResponse());
+        Assert.assertEquals("private, no-cache", String.valueOf(response.getHeader("Cache-Control")));
+        Assert.assertNull(response.getHeader("Vary"));
+    }
+
+    @Test
+    public void testLastModifiedValidation() throws Exception {
+        final CacheDirectives directives = new CacheDirectives(0, TimeUnit.SECONDS, false,
+                                                               CacheDirectives.Validation.LAST_MODIFIED);
+        final MockWebResponse response = respond(
+                handler(new Rendering(), new WebPage(), directives, null),
+                new MockWebRequest(Url.parse("news"))
+                        .setHeader("If-Modified-Since", CachedResponse.formatDate(System.currentTimeMillis() + 60000)));
+        Assert.assertNotNull(response.getHeader("Last-Modified"));
+        Assert.assertTrue(304 == response.getStatus());
+    }
+
+    @Test
+    public void testStatelessPagesAreRenderedOnce() throws Exception {
+        final CacheDirectives directives =
+                new CacheDirectives(1, TimeUnit.MINUTES, true, CacheDirectives.Validation.NONE);
+        final ResponseCache cache = new ResponseCache(10);
+        final Rendering rendering = new Rendering();
+        for (int i = 0; i < 3; i++) {
+            final MockWebResponse response = respond(handler(rendering, new WebPage(), directives, cache),
+                                                     new MockWebRequest(Url.parse("news")));
+            Assert.assertEquals(PAGE, String.valueOf(response.getTextResponse()));
+            Assert.assertEquals("text/html", response.getContentType());
+            Assert.assertEquals("public, max-age=60", String.valueOf(response.getHeader("Cache-Control")));
+        }
+        Assert.assertEquals(1, rendering.renders);
+        Assert.assertEquals(2, cache.statistics().getHits());
+    }
+
+    @Test
+    public void testStatefulPagesKeepTheirHeaders() throws Exception {
+        final CacheDirectives directives =
+                new CacheDirectives(1, TimeUnit.MINUTES, true, CacheDirectives.Validation.NONE);
+        final ResponseCache cache = new ResponseCache(10);
+        final Rendering rendering = new Rendering();
+        final WebPage page = new WebPage();
+        page.setStatelessHint(false);
+        for (int i = 0; i < 2; i++) {
+            final MockWebResponse response = respond(handler(rendering, page, directives, cache),
+                                                     new MockWebRequest(Url.parse("news")));
+            Assert.assertEquals("no-cache, no-store", String.valueOf(response.getHeader("Cache-Control")));
+            Assert.assertEquals(PAGE, String.valueOf(response.getTextResponse()));
+        }
+        Assert.assertEquals(2, rendering.renders);
+    }
+
+    @Test
+    public void testRedirectsAreWrittenAsRendered() throws Exception {
+        final CacheDirectives directives =
+                new CacheDirectives(1, TimeUnit.MINUTES, true, CacheDirectives.Validation.ETAG);
+        final IRequestHandler redirect = new Rendering() {
+            @Override
+            public void respond(final IRequestCycle requestCycle) {
+                ((WebResponse) requestCycle.getResponse()).sendRedirect("news?1");
+            }
+        };
+        final MockWebResponse response = respond(handler(redirect, new WebPage(), directives, new ResponseCache(10)),
+                                                 new MockWebRequest(Url.parse("news")));
+        Assert.assertTrue(response.isRedirect());
+        Assert.assertNull(response.getHeader("ETag"));
+        Assert.assertNull(response.getHeader("Cache-Control"));
+    }
+
+    private static CachingRequestHandler handler(final IRequestHandler rendering, final WebPage page,
+                                                 final CacheDirectives directives, final ResponseCache cache) {
+        return new CachingRequestHandler(rendering, new PageProvider(page), directives, cache, "/news",
+                                         new AtomicBoolean());
+    }
+
+    private static MockWebResponse respond(final IRequestHandler handler, final MockWebRequest request) {
+        final MockWebResponse response = new MockWebResponse();
+        handler.respond(new RequestCycle(new RequestCycleContext(request, response, new CompoundRequestMapper(),
+                                                                 new IExceptionMapper() {
+                                                                     @Override
+                                                                     public IRequestHandler map(final Exception e) {
+                                                                         return null;
+                                                                     }
+                                                                 })));
+        return response;
+    }
+
+    /**
+     * Writes a page as Wicket does, disabling the caching
+     */
+    private static class Rendering implements IRequestHandler {
+        private int renders;
+
+        @Override
+        public void respond(final IRequestCycle requestCycle) {
+            renders++;
+            final WebResponse response = (WebResponse) requestCycle.getResponse();
+            response.disableCaching();
+            response.setContentType("text/html");
+            response.write(PAGE);
+        }
+
+        @Override
+        public void detach(final IRequestCycle requestCycle) {
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package codetroopers.wicket.web.routes.mapper;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author cgatay
+ */
+public class ClockCacheTest {
+
+    @Test
+    public void testSizeIsBounded() throws Exception {
+        final ClockCache<String, Integer> cache = new ClockCache<>(10);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, i);
+        }
+        final CacheStatistics statistics = cache.statistics();
+        Assert.assertEquals(10, statistics.getSize());
+        Assert.assertEquals(90, statistics.getEvictions());
+    }
+
+    @Test
+    public void testEntriesReadAgainSurviveScans() throws Exception {
+        final ClockCache<String, Integer> cache = new ClockCache<>(10);
+        for (int i = 0; i < 5; i++) {
+            cache.put("hot" + i, i);
+            cache.get("hot" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            cache.put("scan" + i, i);
+            for (int h = 0; h < 5; h++) {
+                cache.get("hot" + h);
+            }
+        }
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(Integer.valueOf(i), cache.get("hot" + i));
+        }
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        final ClockCache<String, Integer> cache = new ClockCache<>(2);
+        cache.put("a", 1);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(Integer.valueOf(1), cache.peek("a"));
+        final CacheStatistics statistics = cache.statistics();
+        Assert.assertEquals(1, statistics.getHits());
+        Assert.assertEquals(1, statistics.getMisses());
+        Assert.assertEquals(0.5, statistics.getHitRate(), 0.001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSizeMustBePositive() throws Exception {
+        new ClockCache<String, Integer>(0);
+    }
+}
@@ -0,0 +1,100 @@
+package codetroopers.wicket.web.routes.mapper;
+
+import org.apache.wicket.mock.MockWebRequest;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * @author cgatay
+ */
+public class HostRoutesMapperTest {
+    private final IRequestMapper shared = new NamedMapper(1);
+    private final IRequestMapper tenant = new NamedMapper(2);
+    private final IRequestMapper other = new NamedMapper(3);
+    private HostRoutesMapper mapper;
+
+    @Before
+    public void setUp() throws Exception {
+        final Map<String, IRequestMapper> tables = new HashMap<>();
+        tables.put("tenant.example.com", tenant);
+        tables.put("www.tenant.example.com", tenant);
+        tables.put("Other.Example.com", other);
+        mapper = new HostRoutesMapper(tables, shared);
+    }
+
+    @Test
+    public void testDispatchByHostHeader() throws Exception {
+        Assert.assertSame(tenant, mapper.tableOf(request("tenant.example.com")));
+        Assert.assertSame(tenant, mapper.tableOf(request("www.tenant.example.com:8080")));
+        Assert.assertSame(other, mapper.tableOf(request("OTHER.example.COM")));
+        Assert.assertEquals(2, mapper.getCompatibilityScore(request("tenant.example.com")));
+        Assert.assertEquals(3, mapper.getCompatibilityScore(request("other.example.com:443")));
+    }
+
+    @Test
+    public void testUnknownHostUsesSharedRoutes() throws Exception {
+        Assert.assertSame(shared, mapper.tableOf(request("unknown.example.com")));
+        Assert.assertSame(shared, mapper.tableOf(request(null)));
+        Assert.assertSame(shared, mapper.tableOf(null));
+        Assert.assertEquals(1, mapper.getCompatibilityScore(request("")));
+    }
+
+    @Test
+    public void testHostOf() throws Exception {
+        Assert.assertEquals("example.com", HostRoutesMapper.hostOf(request("Example.com:8080")));
+        Assert.assertEquals("[::1]", HostRoutesMapper.hostOf(request("[::1]:8080")));
+        Assert.assertEquals("[::1]", HostRoutesMapper.hostOf(request("[::1]")));
+        Assert.assertNull(HostRoutesMapper.hostOf(request(null)));
+    }
+
+    @Test
+    public void testTablesGivenOnce() throws Exception {
+        Assert.assertEquals(new HashSet<>(Arrays.asList("tenant.example.com", "www.tenant.example.com",
+                                                        "other.example.com")), mapper.getHosts());
+        Assert.assertEquals(3, mapper.getTables().size());
+    }
+
+    private static Request request(final String host) {
+        final MockWebRequest request = new MockWebRequest(Url.parse("page"));
+        if (host != null) {
+            request.setHeader("Host", host);
+        }
+        return request;
+    }
+
+    /**
+     * Mapper telling its score, handling nothing
+     */
+    private static final class NamedMapper implements IRequestMapper {
+        private final int score;
+
+        private NamedMapper(final int score) {
+            this.score = score;
+        }
+
+        @Override
+        public IRequestHandler mapRequest(final Request request) {
+            return null;
+        }
+
+        @Override
+        public int getCompatibilityScore(final Request request) {
+            return score;
+        }
+
+        @Override
+        public Url mapHandler(final IRequestHandler requestHandler) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package codetroopers.wicket.web.routes.mapper;
+
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.mock.MockApplication;
+import org.apache.wicket.util.lang.PackageName;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * @author cgatay
+ */
+public class IndexedPackageMapperTest {
+    private static final PackageName PACKAGE = PackageName.forClass(IndexedPackageMapperTest.class);
+    private static final String UNKNOWN = PACKAGE.getName() + ".NoSuchPage";
+
+    private WicketTester tester;
+
+    @Before
+    public void setUp() throws Exception {
+        tester = new WicketTester(new MockApplication());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tester.destroy();
+    }
+
+    @Test
+    public void testEveryLocationOfThePackageIsListed() throws Exception {
+        final Set<String> classNames = IndexedPackageMapper.listClasses(PACKAGE, getClass().getClassLoader());
+        Assert.assertNotNull(classNames);
+        // main and test classes are in different directories
+        Assert.assertTrue(classNames.contains(IndexedPackageMapper.class.getName()));
+        Assert.assertTrue(classNames.contains(IndexedPage.class.getName()));
+        Assert.assertFalse(classNames.contains(UNKNOWN));
+    }
+
+    @Test
+    public void testPackageNotSeenByTheClassLoaderIsNotIndexed() throws Exception {
+        final Set<String> classNames = IndexedPackageMapper.listClasses(PACKAGE,
+                                                                        new URLClassLoader(new URL[0], null));
+        Assert.assertNull(classNames);
+        final IndexedPackageMapper mapper = new IndexedPackageMapper(PACKAGE, classNames, 10);
+        Assert.assertFalse(mapper.isIndexed());
+        Assert.assertSame(IndexedPage.class, mapper.getPageClass(IndexedPage.class.getName()));
+    }
+
+    @Test
+    public void testIndexedPagesAreResolved() throws Exception {
+        final IndexedPackageMapper mapper = new IndexedPackageMapper(PACKAGE);
+        Assert.assertTrue(mapper.isIndexed());
+        Assert.assertNull(mapper.getNotFoundCacheStatistics());
+        for (int i = 0; i < 2; i++) {
+            Assert.assertSame(IndexedPage.class, mapper.getPageClass(IndexedPage.class.getName()));
+            Assert.assertNull(mapper.getPageClass(UNKNOWN));
+            // in the package, but not a page
+            Assert.assertNull(mapper.getPageClass(IndexedPackageMapper.class.getName()));
+        }
+    }
+
+    @Test
+    public void testNamesOutsideOfTheIndexAreNotResolved() throws Exception {
+        final IndexedPackageMapper mapper = new IndexedPackageMapper(PACKAGE, Collections.<String>emptySet(), 10);
+        Assert.assertNull(mapper.getPageClass(IndexedPage.class.getName()));
+    }
+
+    @Test
+    public void testNamesNotFoundAreCachedWithoutIndex() throws Exception {
+        final IndexedPackageMapper mapper = new IndexedPackageMapper(PACKAGE, null, 10);
+        Assert.assertFalse(mapper.isIndexed());
+        Assert.assertNull(mapper.getPageClass(UNKNOWN));
+        Assert.assertNull(mapper.getPageClass(UNKNOWN));
+        Assert.assertEquals(1, mapper.getNotFoundCacheStatistics().getHits());
+        Assert.assertSame(IndexedPage.class, mapper.getPageClass(IndexedPage.class.getName()));
+    }
+
+    public static class IndexedPage extends WebPage {
+    }
+}
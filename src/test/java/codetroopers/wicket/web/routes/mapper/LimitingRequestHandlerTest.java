@@ -0,0 +1,110 @@
+package codetroopers.wicket.web.routes.mapper;
+
+import codetroopers.wicket.web.routes.metrics.RouteMetrics;
+import org.apache.wicket.mock.MockWebRequest;
+import org.apache.wicket.mock.MockWebResponse;
+import org.apache.wicket.request.IExceptionMapper;
+import org.apache.wicket.request.IRequestCycle;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.cycle.RequestCycleContext;
+import org.apache.wicket.request.http.WebResponse;
+import org.apache.wicket.request.mapper.CompoundRequestMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author cgatay
+ */
+public class LimitingRequestHandlerTest {
+    private static final String PAGE = "<html><body>search</body></html>";
+
+    @Test
+    public void testRequestsOverTheRateAreRejected() throws Exception {
+        final RouteLimiter limiter = new RouteLimiter(1, TimeUnit.HOURS, 2, 0);
+        final RouteMetrics metrics = new RouteMetrics("/search", "SearchPage");
+        final Rendering rendering = new Rendering();
+        for (int i = 0; i < 2; i++) {
+            final MockWebResponse response = respond(new LimitingRequestHandler(rendering, limiter, metrics));
+            Assert.assertEquals(PAGE, String.valueOf(response.getTextResponse()));
+        }
+        final MockWebResponse rejected = respond(new LimitingRequestHandler(rendering, limiter, metrics));
+        Assert.assertTrue(LimitingRequestHandler.TOO_MANY_REQUESTS == rejected.getStatus());
+        Assert.assertTrue(Long.parseLong(String.valueOf(rejected.getHeader("Retry-After"))) > 0);
+        Assert.assertNull(rejected.getTextResponse());
+        Assert.assertEquals(2, rendering.renders);
+        Assert.assertEquals(1, metrics.getRateLimited());
+        Assert.assertEquals(0, metrics.getInFlight());
+    }
+
+    @Test
+    public void testRequestsOverTheConcurrencyAreRejected() throws Exception {
+        final RouteLimiter limiter = new RouteLimiter(0, TimeUnit.SECONDS, 0, 1);
+        final RouteMetrics metrics = new RouteMetrics("/export", "ExportPage");
+        final MockWebResponse[] nested = new MockWebResponse[1];
+        final IRequestHandler inFlight = new Rendering() {
+            @Override
+            public void respond(final IRequestCycle requestCycle) {
+                Assert.assertEquals(1, metrics.getInFlight());
+                // another request of the route while this one is handled
+                nested[0] = LimitingRequestHandlerTest.respond(
+                        new LimitingRequestHandler(new Rendering(), limiter, metrics));
+                super.respond(requestCycle);
+            }
+        };
+        final MockWebResponse response = respond(new LimitingRequestHandler(inFlight, limiter, metrics));
+        Assert.assertEquals(PAGE, String.valueOf(response.getTextResponse()));
+        Assert.assertTrue(LimitingRequestHandler.SERVICE_UNAVAILABLE == nested[0].getStatus());
+        Assert.assertNull(nested[0].getHeader("Retry-After"));
+        Assert.assertEquals(1, metrics.getConcurrencyLimited());
+        Assert.assertEquals(0, limiter.getInFlight());
+        Assert.assertEquals(0, metrics.getInFlight());
+    }
+
+    @Test
+    public void testPermitIsReleasedOnFailure() throws Exception {
+        final RouteLimiter limiter = new RouteLimiter(0, TimeUnit.SECONDS, 0, 1);
+        final IRequestHandler failing = new Rendering() {
+            @Override
+            public void respond(final IRequestCycle requestCycle) {
+                throw new IllegalStateException("rendering failed");
+            }
+        };
+        try {
+            respond(new LimitingRequestHandler(failing, limiter, null));
+            Assert.fail("the failure should be thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(0, limiter.getInFlight());
+        }
+    }
+
+    private static MockWebResponse respond(final IRequestHandler handler) {
+        final MockWebResponse response = new MockWebResponse();
+        handler.respond(new RequestCycle(new RequestCycleContext(new MockWebRequest(Url.parse("search")), response,
+                                                                 new CompoundRequestMapper(),
+                                                                 new IExceptionMapper() {
+                                                                     @Override
+                                                                     public IRequestHandler map(final Exception e) {
+                                                                         return null;
+                                                                     }
+                                                                 })));
+        return response;
+    }
+
+    private static class Rendering implements IRequestHandler {
+        private int renders;
+
+        @Override
+        public void respond(final IRequestCycle requestCycle) {
+            renders++;
+            ((WebResponse) requestCycle.getResponse()).write(PAGE);
+        }
+
+        @Override
+        public void detach(final IRequestCycle requestCycle) {
+        }
+    }
+}
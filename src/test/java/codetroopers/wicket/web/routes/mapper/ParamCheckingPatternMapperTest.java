@@ -0,0 +1,276 @@
+package codetroopers.wicket.web.routes.mapper;
+
+import codetroopers.wicket.web.routes.metrics.RouteMetrics;
+import codetroopers.wicket.web.routes.mounts.MountPathExtractor;
+import org.apache.wicket.core.request.handler.IPageClassRequestHandler;
+import org.apache.wicket.core.request.handler.IPageRequestHandler;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.mock.MockApplication;
+import org.apache.wicket.mock.MockWebRequest;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.mapper.parameter.INamedParameters;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author cgatay
+ */
+public class ParamCheckingPatternMapperTest {
+    private static final List<Url.QueryParameter> NO_QUERY = Collections.emptyList();
+
+    private WicketTester tester;
+
+    @Before
+    public void setUp() throws Exception {
+        tester = new WicketTester(new MockApplication());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tester.destroy();
+    }
+
+    private static ParamCheckingPatternMapper mapper(final String mountPath) {
+        return builder(mountPath).build();
+    }
+
+    private static ParamCheckingPatternMapper.Builder builder(final String mountPath) {
+        final MountPathExtractor extractor = new MountPathExtractor(mountPath);
+        return ParamCheckingPatternMapper.builder(extractor.getPath(), WebPage.class)
+                .mountParameters(extractor.getParameters());
+    }
+
+    private static IRequestHandler map(final ParamCheckingPatternMapper mapper, final String url) {
+        return mapper.mapRequest(new MockWebRequest(Url.parse(url)));
+    }
+
+    @Test
+    public void testIncorrectParameterIsStripped() throws Exception {
+        final IRequestHandler handler = map(mapper("/user/${id:[0-9]+}"), "user/abc");
+        Assert.assertNotNull(handler);
+        Assert.assertTrue(((IPageClassRequestHandler) handler).getPageParameters().get("id").isNull());
+    }
+
+    @Test
+    public void testIncorrectParameterIsRejected() throws Exception {
+        final ParamCheckingPatternMapper mapper = builder("/user/${id:[0-9]+}").ignoreIncorrectParameters(false).build();
+        Assert.assertNull(map(mapper, "user/abc"));
+        final IRequestHandler handler = map(mapper, "user/12");
+        Assert.assertEquals("12", ((IPageClassRequestHandler) handler).getPageParameters().get("id").toString());
+    }
+
+    @Test
+    public void testLiteralMismatchIsRejected() throws Exception {
+        final ParamCheckingPatternMapper mapper = mapper("/user/${id}/edit");
+        Assert.assertNull(map(mapper, "users/12/edit"));
+        Assert.assertNull(map(mapper, "user/12"));
+        Assert.assertEquals(0, mapper.getCompatibilityScore(new MockWebRequest(Url.parse("users/12/edit"))));
+        Assert.assertNotNull(map(mapper, "user/12/edit"));
+    }
+
+    @Test
+    public void testExactMatching() throws Exception {
+        final ParamCheckingPatternMapper mapper = builder("/docs/${chapter}/#{section}").exact(true).build();
+        Assert.assertNotNull(map(mapper, "docs/intro"));
+        Assert.assertNotNull(map(mapper, "docs/intro/setup"));
+        Assert.assertNull(map(mapper, "docs/intro/setup/more"));
+        Assert.assertNotNull(map(mapper("/docs/${chapter}/#{section}"), "docs/intro/setup/more"));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedSettersOnlyChangeUnusedMappers() throws Exception {
+        final ParamCheckingPatternMapper mapper =
+                mapper("/docs/${chapter}").setExact(true).ignoreIncorrectParameters(false);
+        Assert.assertTrue(mapper.isExact());
+        Assert.assertFalse(mapper.isIgnoringIncorrectParameters());
+        try {
+            mapper.displayVersionInUrl(false);
+            Assert.fail("The options of a used mapper should not be changed");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(mapper.isExact());
+        }
+    }
+
+    @Test
+    public void testMetricsAreRecorded() throws Exception {
+        final RouteMetrics stripping = new RouteMetrics("/user/${id:[0-9]+}", WebPage.class.getName());
+        final ParamCheckingPatternMapper strippingMapper = builder("/user/${id:[0-9]+}").recordMetrics(stripping).build();
+        map(strippingMapper, "user/12");
+        map(strippingMapper, "user/abc");
+        map(strippingMapper, "other/12");
+        Assert.assertEquals(2, stripping.getMatches());
+        Assert.assertEquals(1, stripping.getStrippedParameters());
+        Assert.assertEquals(0, stripping.getRejectedParameters());
+        Assert.assertEquals(3, stripping.getParseTime().getCount());
+
+        final RouteMetrics rejecting = new RouteMetrics("/user/${id:[0-9]+}", WebPage.class.getName());
+        final ParamCheckingPatternMapper rejectingMapper =
+                builder("/user/${id:[0-9]+}").ignoreIncorrectParameters(false).recordMetrics(rejecting).build();
+        map(rejectingMapper, "user/12");
+        map(rejectingMapper, "user/abc");
+        map(rejectingMapper, "user/12?id=abc");
+        Assert.assertEquals(1, rejecting.getMatches());
+        Assert.assertEquals(0, rejecting.getStrippedParameters());
+        Assert.assertEquals(2, rejecting.getRejectedParameters());
+    }
+
+    @Test
+    public void testOnlyNewPagesAreLimited() throws Exception {
+        final ParamCheckingPatternMapper mapper =
+                builder("/user/${id:[0-9]+}").limit(new RouteLimiter(0, TimeUnit.SECONDS, 0, 1)).build();
+        Assert.assertTrue(map(mapper, "user/12") instanceof LimitingRequestHandler);
+        // pages already created keep their handlers, which Wicket needs to see as page handlers
+        Assert.assertTrue(map(mapper, "user/12?3") instanceof IPageRequestHandler);
+        Assert.assertTrue(map(mapper, "user/12?3-1.ILinkListener-link") instanceof IPageRequestHandler);
+    }
+
+    @Test
+    public void testLazyParametersAreTheSame() throws Exception {
+        final String[][] cases = {
+                {"/user/${id:[0-9]+}", "user/12", "user/abc", "user/12/extra/segments", "user/12?id=34&other=x",
+                 "user/abc?id=12&id=abc", "user/12?5", "user/12?5&id=7"},
+                {"/docs/${chapter}/#{section:[a-z]+}/#{page}", "docs/intro", "docs/intro/setup", "docs/intro/42",
+                 "docs/intro/setup/3/more?section=other"},
+                {"/a/#{first}/${id}/#{second}", "a/1", "a/1/2", "a/1/2/3", "a/1/2/3/4?second=5"},
+                {"/r/${id}/#{first}/x/#{second}", "r/1/x", "r/1/x/2", "r/1/2/x/3", "r/1/x/x/2", "r/1/2/x"}};
+        for (String[] urls : cases) {
+            for (boolean ignore : new boolean[]{true, false}) {
+                final ParamCheckingPatternMapper eager = builder(urls[0]).ignoreIncorrectParameters(ignore).build();
+                final ParamCheckingPatternMapper lazy = builder(urls[0]).ignoreIncorrectParameters(ignore)
+                        .lazyPageParameters(true).build();
+                for (int i = 1; i < urls.length; i++) {
+                    final IRequestHandler eagerHandler = map(eager, urls[i]);
+                    final IRequestHandler lazyHandler = map(lazy, urls[i]);
+                    final String description = urls[0] + " on " + urls[i];
+                    Assert.assertEquals(description, eagerHandler == null, lazyHandler == null);
+                    if (eagerHandler == null) {
+                        continue;
+                    }
+                    final PageParameters expected = ((IPageClassRequestHandler) eagerHandler).getPageParameters();
+                    final PageParameters actual = ((IPageClassRequestHandler) lazyHandler).getPageParameters();
+                    Assert.assertTrue(description, actual instanceof LazyPageParameters);
+                    for (String name : new String[]{"id", "chapter", "section", "page", "first", "second", "other"}) {
+                        Assert.assertEquals(description, expected.get(name), actual.get(name));
+                        Assert.assertEquals(description, expected.getValues(name), actual.getValues(name));
+                    }
+                    Assert.assertEquals(description, describe(expected), describe(actual));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLazyParametersCanBeChanged() throws Exception {
+        final IRequestHandler handler = map(builder("/user/${id}").lazyPageParameters(true).build(), "user/12?sort=asc");
+        final PageParameters parameters = ((IPageClassRequestHandler) handler).getPageParameters();
+        parameters.set("id", 13).remove("sort");
+        Assert.assertEquals("13", parameters.get("id").toString());
+        Assert.assertTrue(parameters.get("sort").isNull());
+        Assert.assertEquals(1, parameters.getNamedKeys().size());
+    }
+
+    @Test
+    public void testLazyParametersAreSerializable() throws Exception {
+        final IRequestHandler handler = map(builder("/user/${id}").lazyPageParameters(true).build(), "user/12");
+        final PageParameters parameters = ((IPageClassRequestHandler) handler).getPageParameters();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(parameters);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            final PageParameters copy = (PageParameters) in.readObject();
+            Assert.assertEquals("12", copy.get("id").toString());
+            Assert.assertEquals(describe(parameters), describe(copy));
+        }
+    }
+
+    @Test
+    public void testCacheKeysOfDifferentParametersDiffer() throws Exception {
+        final ParamCheckingPatternMapper mapper = builder("/news/#{topic}").build();
+        Assert.assertFalse(key(mapper, url("news", "a", "1", "b", "2"))
+                                 .equals(key(mapper, url("news", "a", "1&b=2"))));
+        Assert.assertFalse(key(mapper, new Url(Arrays.asList("news", "a/b"), NO_QUERY))
+                                 .equals(key(mapper, new Url(Arrays.asList("news", "a", "b"), NO_QUERY))));
+        Assert.assertEquals(key(mapper, url("news", "b", "2", "a", "1")),
+                            key(mapper, url("news", "a", "1", "b", "2")));
+        Assert.assertFalse(key(mapper, url("news", "a", "1", "a", "2"))
+                                 .equals(key(mapper, url("news", "a", "2", "a", "1"))));
+    }
+
+    @Test
+    public void testCacheKeysOfDifferentHostsAndPagesDiffer() throws Exception {
+        final ParamCheckingPatternMapper mapper = builder("/offers").build();
+        final Url url = url("offers", "page", "2");
+        Assert.assertFalse(mapper.cacheKey("acme.example.com", WebPage.class, Locale.ENGLISH, null, url)
+                                 .equals(mapper.cacheKey("globex.example.com", WebPage.class, Locale.ENGLISH, null,
+                                                         url)));
+        Assert.assertFalse(mapper.cacheKey(null, WebPage.class, Locale.ENGLISH, null, url)
+                                 .equals(mapper.cacheKey("acme.example.com", WebPage.class, Locale.ENGLISH, null,
+                                                         url)));
+        Assert.assertFalse(mapper.cacheKey("acme.example.com", WebPage.class, Locale.ENGLISH, null, url)
+                                 .equals(mapper.cacheKey("acme.example.com", OffersPage.class, Locale.ENGLISH, null,
+                                                         url)));
+    }
+
+    @Test
+    public void testCacheKeysOfDifferentLocalesAndStylesDiffer() throws Exception {
+        final ParamCheckingPatternMapper mapper = builder("/offers").build();
+        final Url url = url("offers");
+        Assert.assertFalse(mapper.cacheKey("example.com", WebPage.class, Locale.ENGLISH, null, url)
+                                 .equals(mapper.cacheKey("example.com", WebPage.class, Locale.FRENCH, null, url)));
+        Assert.assertFalse(mapper.cacheKey("example.com", WebPage.class, Locale.ENGLISH, null, url)
+                                 .equals(mapper.cacheKey("example.com", WebPage.class, Locale.ENGLISH, "dark", url)));
+    }
+
+    @Test
+    public void testCacheKeysIgnoreThePageVersion() throws Exception {
+        final ParamCheckingPatternMapper mapper = builder("/offers").build();
+        Assert.assertEquals(key(mapper, url("offers", "3", "")), key(mapper, url("offers")));
+    }
+
+    /**
+     * @param pairs names and values of the query parameters
+     */
+    private static Url url(final String segment, final String... pairs) {
+        final List<Url.QueryParameter> parameters = new ArrayList<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            parameters.add(new Url.QueryParameter(pairs[i], pairs[i + 1]));
+        }
+        return new Url(Arrays.asList(segment), parameters);
+    }
+
+    private static String key(final ParamCheckingPatternMapper mapper, final Url url) {
+        return mapper.cacheKey("example.com", WebPage.class, Locale.ENGLISH, null, url);
+    }
+
+    private static String describe(final PageParameters parameters) {
+        final StringBuilder description = new StringBuilder();
+        for (INamedParameters.NamedPair pair : parameters.getAllNamed()) {
+            description.append(pair.getKey()).append('=').append(pair.getValue()).append(' ');
+        }
+        for (int i = 0; i < parameters.getIndexedCount(); i++) {
+            description.append(i).append('=').append(parameters.get(i)).append(' ');
+        }
+        return description.toString();
+    }
+
+    public static class OffersPage extends WebPage {
+    }
+}
@@ -0,0 +1,47 @@
+package codetroopers.wicket.web.routes.mapper;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author cgatay
+ */
+public class RouteLimiterTest {
+
+    @Test
+    public void testBurstThenRate() throws Exception {
+        final RouteLimiter limiter = new RouteLimiter(2, TimeUnit.SECONDS, 3, 0);
+        final long now = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(0, limiter.acquire(now));
+        }
+        final long wait = limiter.acquire(now);
+        Assert.assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(500));
+        Assert.assertEquals(0, limiter.acquire(now + wait));
+        Assert.assertTrue(limiter.acquire(now + wait) > 0);
+        // a quiet period gives the whole burst again
+        final long later = now + TimeUnit.SECONDS.toNanos(10);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(0, limiter.acquire(later));
+        }
+        Assert.assertTrue(limiter.acquire(later) > 0);
+        Assert.assertEquals(2.0, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    public void testBulkhead() throws Exception {
+        final RouteLimiter limiter = new RouteLimiter(0, TimeUnit.SECONDS, 0, 2);
+        Assert.assertEquals(0, limiter.acquire(System.nanoTime()));
+        Assert.assertTrue(limiter.enter());
+        Assert.assertTrue(limiter.enter());
+        Assert.assertFalse(limiter.enter());
+        Assert.assertEquals(2, limiter.getInFlight());
+        limiter.exit();
+        Assert.assertTrue(limiter.enter());
+        limiter.exit();
+        limiter.exit();
+        Assert.assertEquals(0, limiter.getInFlight());
+    }
+}
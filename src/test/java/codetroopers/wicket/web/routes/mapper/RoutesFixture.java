@@ -0,0 +1,125 @@
+package codetroopers.wicket.web.routes.mapper;
+
+import codetroopers.wicket.web.routes.mounts.MountPathExtractor;
+import org.apache.wicket.core.request.handler.BookmarkablePageRequestHandler;
+import org.apache.wicket.core.request.handler.IPageClassRequestHandler;
+import org.apache.wicket.core.request.handler.PageProvider;
+import org.apache.wicket.core.request.mapper.PackageMapper;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.mock.MockApplication;
+import org.apache.wicket.mock.MockWebRequest;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.mapper.CompoundRequestMapper;
+import org.apache.wicket.request.mapper.mount.MountMapper;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.lang.PackageName;
+import org.apache.wicket.util.tester.WicketTester;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Routes mounted both in a compound mapper, like the standard mounting does, and in the routes table under test, so
+ * that their results can be compared.
+ *
+ * @author cgatay
+ */
+final class RoutesFixture {
+    /**
+     * Routes table under test
+     */
+    interface Table {
+        void add(String mountPath, IRequestMapper mapper);
+    }
+
+    private final WicketTester tester = new WicketTester(new MockApplication());
+    private final CompoundRequestMapper compoundMapper = new CompoundRequestMapper();
+    private final Table table;
+
+    RoutesFixture(final Table table) {
+        this.table = table;
+    }
+
+    void destroy() {
+        tester.destroy();
+    }
+
+    CompoundRequestMapper getCompoundMapper() {
+        return compoundMapper;
+    }
+
+    IRequestMapper addPage(final String mountPath, final Class<? extends WebPage> pageClass, final boolean ignore) {
+        final MountPathExtractor extractor = new MountPathExtractor(mountPath);
+        return addMapper(mountPath, ParamCheckingPatternMapper.builder(extractor.getPath(), pageClass)
+                .mountParameters(extractor.getParameters())
+                .ignoreIncorrectParameters(ignore)
+                .build());
+    }
+
+    /**
+     * Mounts the package of {@link WebPage}
+     */
+    IRequestMapper addPackage(final String mountPath) {
+        return addMapper(mountPath, new MountMapper(mountPath, new PackageMapper(PackageName.forClass(WebPage.class))));
+    }
+
+    IRequestMapper addMapper(final String mountPath, final IRequestMapper mapper) {
+        compoundMapper.add(mapper);
+        table.add(mountPath, mapper);
+        return mapper;
+    }
+
+    static IRequestHandler bookmarkable(final Class<? extends WebPage> pageClass, final PageParameters parameters) {
+        return new BookmarkablePageRequestHandler(new PageProvider(pageClass, parameters));
+    }
+
+    static MockWebRequest request(final String url) {
+        return new MockWebRequest(Url.parse(url));
+    }
+
+    static Class<?> pageClass(final IRequestHandler handler) {
+        return handler instanceof IPageClassRequestHandler ? ((IPageClassRequestHandler) handler).getPageClass() : null;
+    }
+
+    /**
+     * @return the page class and the parameters the mapper gives to the url
+     */
+    static String describe(final IRequestMapper mapper, final String url) {
+        final IRequestHandler handler = mapper.mapRequest(request(url));
+        if (!(handler instanceof IPageClassRequestHandler)) {
+            return String.valueOf(handler);
+        }
+        final IPageClassRequestHandler pageHandler = (IPageClassRequestHandler) handler;
+        final PageParameters parameters = pageHandler.getPageParameters();
+        final StringBuilder description = new StringBuilder(pageHandler.getPageClass().getName());
+        if (parameters != null) {
+            final List<String> names = new ArrayList<>(parameters.getNamedKeys());
+            Collections.sort(names);
+            for (String name : names) {
+                description.append(' ').append(name).append('=').append(parameters.getValues(name));
+            }
+            for (int i = 0; i < parameters.getIndexedCount(); i++) {
+                description.append(' ').append(i).append('=').append(parameters.get(i));
+            }
+        }
+        return description.toString();
+    }
+
+    public static class HomePage extends WebPage {
+    }
+
+    public static class UserPage extends WebPage {
+    }
+
+    public static class NewUserPage extends WebPage {
+    }
+
+    public static class EditUserPage extends WebPage {
+    }
+
+    public static class DocsPage extends WebPage {
+    }
+}
@@ -0,0 +1,192 @@
+package codetroopers.wicket.web.routes.mapper;
+
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.DocsPage;
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.EditUserPage;
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.HomePage;
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.NewUserPage;
+import codetroopers.wicket.web.routes.mapper.RoutesFixture.UserPage;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.mock.MockWebRequest;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.IRequestMapper;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Url;
+import org.apache.wicket.request.mapper.CompoundRequestMapper;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author cgatay
+ */
+public class RoutesTrieMapperTest {
+
+    private RoutesFixture fixture;
+    private CompoundRequestMapper compoundMapper;
+    private RoutesTrieMapper trieMapper;
+
+    @Before
+    public void setUp() throws Exception {
+        trieMapper = new RoutesTrieMapper();
+        fixture = new RoutesFixture(new RoutesFixture.Table() {
+            @Override
+            public void add(final String mountPath, final IRequestMapper mapper) {
+                trieMapper.add(mountPath, mapper);
+            }
+        });
+        compoundMapper = fixture.getCompoundMapper();
+        fixture.addPage("/user/${id:[0-9]+}", UserPage.class, false);
+        fixture.addPage("/user/new", NewUserPage.class, true);
+        fixture.addPage("/user/${id}/edit", EditUserPage.class, true);
+        fixture.addPage("/docs/#{section:[a-z]+}", DocsPage.class, true);
+        fixture.addPage("/", HomePage.class, true);
+        fixture.addPackage("/pages");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+    }
+
+    @Test
+    public void testSameResultsAsPerLineMounting() throws Exception {
+        final String[] urls = {"user/12", "user/abc", "user/new", "user/12/edit", "user/12/edit/more", "user",
+                               "docs", "docs/intro", "docs/42", "docs/intro/more", "pages/WebPage",
+                               "pages/Unknown", "unknown", "", "?param=value"};
+        for (String url : urls) {
+            Assert.assertEquals("Both mappers should agree on '" + url + "'",
+                                RoutesFixture.describe(compoundMapper, url), RoutesFixture.describe(trieMapper, url));
+        }
+    }
+
+    @Test
+    public void testSameResultsWithMatchCaches() throws Exception {
+        trieMapper.cacheMatches(4).cacheNotFound(4);
+        final String[] urls = {"user/12", "user/12?id=abc", "user/12?id=13", "user/abc", "user/new", "user/12/edit",
+                               "docs/intro", "docs/42", "pages/WebPage", "pages/Unknown", "unknown", "",
+                               "?param=value"};
+        for (int i = 0; i < 3; i++) {
+            for (String url : urls) {
+                Assert.assertEquals("Both mappers should agree on '" + url + "'",
+                                    RoutesFixture.describe(compoundMapper, url), RoutesFixture.describe(trieMapper, url));
+                Assert.assertEquals("Both mappers should give the same score to '" + url + "'",
+                                    compoundMapper.getCompatibilityScore(RoutesFixture.request(url)),
+                                    trieMapper.getCompatibilityScore(RoutesFixture.request(url)));
+            }
+        }
+        Assert.assertTrue(trieMapper.getMatchCacheStatistics().getHits() > 0);
+        Assert.assertTrue(trieMapper.getMatchCacheStatistics().getEvictions() > 0);
+        Assert.assertTrue(trieMapper.getNotFoundCacheStatistics().getHits() > 0);
+    }
+
+    @Test
+    public void testOptionalPlaceholderQueryParametersInMatchCaches() throws Exception {
+        fixture.addPage("/search/${q}/#{page:[0-9]+}", SearchPage.class, false);
+        trieMapper.cacheMatches(16).cacheNotFound(16);
+        final String[] urls = {"search/abc?page=x", "search/abc", "search/abc?page=2", "search/abc?page=x",
+                               "search/abc", "search/abc?page=2"};
+        for (String url : urls) {
+            Assert.assertEquals("Both mappers should agree on '" + url + "'",
+                                RoutesFixture.describe(compoundMapper, url), RoutesFixture.describe(trieMapper, url));
+        }
+        Assert.assertEquals(SearchPage.class, RoutesFixture.pageClass(trieMapper.mapRequest(RoutesFixture.request("search/abc"))));
+        Assert.assertTrue(trieMapper.getMatchCacheStatistics().getHits() > 0);
+        Assert.assertTrue(trieMapper.getNotFoundCacheStatistics().getHits() > 0);
+    }
+
+    @Test
+    public void testLiteralAndRegexRoutes() throws Exception {
+        Assert.assertEquals(UserPage.class, RoutesFixture.pageClass(trieMapper.mapRequest(RoutesFixture.request("user/12"))));
+        Assert.assertEquals(NewUserPage.class, RoutesFixture.pageClass(trieMapper.mapRequest(RoutesFixture.request("user/new"))));
+        Assert.assertEquals(EditUserPage.class, RoutesFixture.pageClass(trieMapper.mapRequest(RoutesFixture.request("user/abc/edit"))));
+    }
+
+    @Test
+    public void testSameUrlsAsPerLineMounting() throws Exception {
+        trieMapper.cacheUrls(16);
+        final IRequestHandler[] handlers = {
+                RoutesFixture.bookmarkable(UserPage.class, new PageParameters().set("id", 12)),
+                RoutesFixture.bookmarkable(UserPage.class, new PageParameters().set("id", 12).set("tab", "info")),
+                RoutesFixture.bookmarkable(NewUserPage.class, null),
+                RoutesFixture.bookmarkable(EditUserPage.class, new PageParameters().set("id", "abc")),
+                RoutesFixture.bookmarkable(DocsPage.class, new PageParameters().set("section", "intro")),
+                RoutesFixture.bookmarkable(DocsPage.class, null),
+                RoutesFixture.bookmarkable(HomePage.class, null),
+                RoutesFixture.bookmarkable(WebPage.class, null)};
+        for (int i = 0; i < 2; i++) {
+            for (IRequestHandler handler : handlers) {
+                Assert.assertEquals("Both mappers should generate the same url for " + handler,
+                                    String.valueOf(compoundMapper.mapHandler(handler)),
+                                    String.valueOf(trieMapper.mapHandler(handler)));
+            }
+        }
+    }
+
+    @Test
+    public void testCachedUrlsAreCopies() throws Exception {
+        trieMapper.cacheUrls(16);
+        final IRequestHandler handler = RoutesFixture.bookmarkable(UserPage.class, new PageParameters().set("id", 12));
+        trieMapper.mapHandler(handler).getSegments().add("changed");
+        trieMapper.mapHandler(handler).getSegments().add("changed");
+        Assert.assertEquals(String.valueOf(compoundMapper.mapHandler(handler)),
+                            String.valueOf(trieMapper.mapHandler(handler)));
+    }
+
+    @Test
+    public void testLastAddedMapperWinsTies() throws Exception {
+        fixture.addPage("/same", NewUserPage.class, true);
+        fixture.addPage("/same", EditUserPage.class, true);
+        Assert.assertEquals(RoutesFixture.describe(compoundMapper, "same"), RoutesFixture.describe(trieMapper, "same"));
+        Assert.assertEquals(EditUserPage.class, RoutesFixture.pageClass(trieMapper.mapRequest(RoutesFixture.request("same"))));
+    }
+
+    @Test
+    public void testLastAddedMapperGeneratesTheUrl() throws Exception {
+        fixture.addPage("/profile/${id}", UserPage.class, true);
+        final IRequestHandler handler = RoutesFixture.bookmarkable(UserPage.class, new PageParameters().set("id", 12));
+        Assert.assertEquals(String.valueOf(compoundMapper.mapHandler(handler)),
+                            String.valueOf(trieMapper.mapHandler(handler)));
+        Assert.assertEquals("profile", trieMapper.mapHandler(handler).getSegments().get(0));
+    }
+
+    @Test
+    public void testCandidatesAreFoundOncePerRequest() throws Exception {
+        final int[] scores = new int[1];
+        final IRequestHandler userHandler = RoutesFixture.bookmarkable(UserPage.class, null);
+        final RoutesTrieMapper mapper = new RoutesTrieMapper().add("/user/${id}", new IRequestMapper() {
+            @Override
+            public IRequestHandler mapRequest(final Request request) {
+                return userHandler;
+            }
+
+            @Override
+            public int getCompatibilityScore(final Request request) {
+                scores[0]++;
+                return 1;
+            }
+
+            @Override
+            public Url mapHandler(final IRequestHandler requestHandler) {
+                return null;
+            }
+        });
+        final MockWebRequest request = RoutesFixture.request("user/12");
+        Assert.assertEquals(1, mapper.getCompatibilityScore(request));
+        Assert.assertSame(userHandler, mapper.mapRequest(request));
+        Assert.assertEquals(1, scores[0]);
+        // another request walks the trie again
+        Assert.assertSame(userHandler, mapper.mapRequest(RoutesFixture.request("user/13")));
+        Assert.assertEquals(2, scores[0]);
+    }
+
+    @Test
+    public void testNoMatch() throws Exception {
+        Assert.assertNull(trieMapper.mapRequest(RoutesFixture.request("unknown/path")));
+        Assert.assertEquals(0, trieMapper.getCompatibilityScore(RoutesFixture.request("unknown/path")));
+    }
+
+    public static class SearchPage extends WebPage {
+    }
+}
@@ -0,0 +1,96 @@
+package codetroopers.wicket.web.routes.mapper;
+
+import codetroopers.wicket.web.routes.mounts.MountParameter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+/**
+ * @author cgatay
+ */
+public class ValueMatcherTest {
+
+    private static final String[] VALUES = {"", "0", "42", "abc", "ABC", "a-b", "a_b", "asc", "desc", "ascdesc",
+                                            "abcdef", "a.json", ".json", "12ab", "a b", "a\nb", "\uD83D\uDE00"};
+
+    @Test
+    public void testMatchersAreShared() throws Exception {
+        final ValueMatcher matcher = ValueMatcher.of("[a-z-]+");
+        Assert.assertSame(matcher, ValueMatcher.of(new String("[a-z-]+")));
+        Assert.assertEquals("[a-z-]+", matcher.getRegex());
+        Assert.assertNotSame(matcher, ValueMatcher.of("[a-z]+"));
+        Assert.assertNull(ValueMatcher.compile("[a-z-]+").getRegex());
+    }
+
+    @Test
+    public void testPlaceholdersAreShared() throws Exception {
+        final ParamCheckingPatternMapper.PatternPlaceholder placeholder = ParamCheckingPatternMapper.PatternPlaceholder
+                .of(new MountParameter(MountParameter.Type.REQUIRED, "id", "[0-9]+"));
+        Assert.assertSame(placeholder, ParamCheckingPatternMapper.PatternPlaceholder
+                .of(new MountParameter(MountParameter.Type.REQUIRED, "id", "[0-9]+")));
+        Assert.assertNotSame(placeholder, ParamCheckingPatternMapper.PatternPlaceholder
+                .of(new MountParameter(MountParameter.Type.OPTIONAL, "id", "[0-9]+")));
+        Assert.assertNotSame(placeholder, ParamCheckingPatternMapper.PatternPlaceholder
+                .of(new MountParameter(MountParameter.Type.REQUIRED, "id")));
+        Assert.assertEquals("[0-9]+", placeholder.getRegex());
+    }
+
+    @Test
+    public void testUnusedValuesAreReleased() throws Exception {
+        final WeakInterner<String, Object> interner = new WeakInterner<>();
+        Object value = new Object();
+        Assert.assertSame(value, interner.intern("key", value));
+        Assert.assertSame(value, interner.intern("key", new Object()));
+        Assert.assertEquals(1, interner.size());
+        value = null;
+        for (int i = 0; i < 50 && interner.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, interner.size());
+        Assert.assertNull(interner.get("key"));
+    }
+
+    @Test
+    public void testCharacterClassesAreCheckedByHand() throws Exception {
+        assertCompiledTo(ValueMatcher.CharClassMatcher.class, "[0-9]+");
+        assertCompiledTo(ValueMatcher.CharClassMatcher.class, "\\d+");
+        assertCompiledTo(ValueMatcher.CharClassMatcher.class, "[a-z0-9-]+");
+        assertCompiledTo(ValueMatcher.CharClassMatcher.class, "[a-zA-Z]{2,5}");
+        assertCompiledTo(ValueMatcher.CharClassMatcher.class, "[^/]*");
+        assertCompiledTo(ValueMatcher.CharClassMatcher.class, ".+");
+    }
+
+    @Test
+    public void testAlternationsAreCheckedByHand() throws Exception {
+        assertCompiledTo(ValueMatcher.AlternationMatcher.class, "(asc|desc)");
+        assertCompiledTo(ValueMatcher.AlternationMatcher.class, "(?:asc|desc)");
+        assertCompiledTo(ValueMatcher.AlternationMatcher.class, "\\.json");
+    }
+
+    @Test
+    public void testRegularExpressionsUseAutomata() throws Exception {
+        assertCompiledTo(ValueMatcher.AutomatonMatcher.class, "[a-f0-9]{8}-[a-f0-9]{4}");
+        assertCompiledTo(ValueMatcher.AutomatonMatcher.class, "(a)|(b)");
+        assertCompiledTo(ValueMatcher.AutomatonMatcher.class, "(a+)+b");
+        assertCompiledTo(ValueMatcher.AutomatonMatcher.class, "[a-c]+(-[a-z]*)?");
+    }
+
+    @Test
+    public void testOtherExpressionsUseRegex() throws Exception {
+        assertCompiledTo(ValueMatcher.RegexMatcher.class, "\\p{Alpha}+");
+        assertCompiledTo(ValueMatcher.RegexMatcher.class, "(a)\\1");
+        assertCompiledTo(ValueMatcher.RegexMatcher.class, "a(?=b).*");
+    }
+
+    private static void assertCompiledTo(final Class<? extends ValueMatcher> expected, final String regex) {
+        final ValueMatcher matcher = ValueMatcher.compile(regex);
+        Assert.assertEquals("Unexpected matcher for " + regex, expected, matcher.getClass());
+        final Pattern pattern = Pattern.compile(regex);
+        for (String value : VALUES) {
+            Assert.assertEquals("'" + regex + "' on '" + value + "'",
+                                pattern.matcher(value).matches(), matcher.matches(value));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package codetroopers.wicket.web.routes.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+/**
+ * @author cgatay
+ */
+public class JmxRouteMetricsPublisherTest {
+
+    @Test
+    public void testRouteMetricsAreExposed() throws Exception {
+        final MBeanServer server = MBeanServerFactory.newMBeanServer();
+        final JmxRouteMetricsPublisher publisher = new JmxRouteMetricsPublisher(server, "test");
+        final RouteMetrics metrics = new RouteMetrics("/user/${id}", "org.apache.wicket.markup.html.WebPage");
+        publisher.publish(metrics);
+        metrics.recordParse(1000, true);
+        metrics.recordParse(3000, false);
+        metrics.recordRejectedParameter();
+        metrics.recordRateLimited();
+
+        final ObjectName name = publisher.objectName(metrics);
+        Assert.assertEquals(1L, server.getAttribute(name, "Matches"));
+        Assert.assertEquals(1L, server.getAttribute(name, "RejectedParameters"));
+        Assert.assertEquals(2L, server.getAttribute(name, "ParseCount"));
+        Assert.assertEquals(1L, server.getAttribute(name, "RateLimited"));
+        Assert.assertEquals(0L, server.getAttribute(name, "InFlight"));
+        Assert.assertEquals("/user/${id}", server.getAttribute(name, "MountPoint"));
+
+        publisher.unpublish(metrics);
+        Assert.assertFalse(server.isRegistered(name));
+    }
+}
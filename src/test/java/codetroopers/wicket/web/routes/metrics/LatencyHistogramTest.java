@@ -0,0 +1,51 @@
+package codetroopers.wicket.web.routes.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author cgatay
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsKeepValuesWithinPrecision() throws Exception {
+        for (long value = 0; value < 1 << 20; value += 7) {
+            final int index = LatencyHistogram.index(value);
+            final long highest = LatencyHistogram.highestValue(index);
+            final long lowest = index == 0 ? 0 : LatencyHistogram.highestValue(index - 1) + 1;
+            Assert.assertTrue(value + " should be in its bucket", lowest <= value && value <= highest);
+            Assert.assertTrue(value + " should be known within 12.5%", highest - value <= value / 8 + 1);
+        }
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(50500, histogram.getMean(), 0.001);
+        assertWithinPrecision(50000, histogram.getValueAtPercentile(50));
+        assertWithinPrecision(99000, histogram.getValueAtPercentile(99));
+        assertWithinPrecision(100000, histogram.getMax());
+    }
+
+    @Test
+    public void testEmptyAndOutOfRangeValues() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+        Assert.assertEquals(0, histogram.getMax());
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(2, histogram.getCount());
+        Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax());
+    }
+
+    private static void assertWithinPrecision(final long expected, final long actual) {
+        Assert.assertTrue(actual + " should be close to " + expected,
+                          actual >= expected && actual <= expected + expected / 8);
+    }
+}